@@ -25,6 +25,7 @@ import android.util.FeatureFlagUtils;
 import com.android.settings.activityembedding.ActivityEmbeddingRulesController;
 import com.android.settings.activityembedding.ActivityEmbeddingUtils;
 import com.android.settings.core.instrumentation.ElapsedTimeUtils;
+import com.android.settings.datetime.timezone.model.TimeZoneData;
 import com.android.settings.homepage.SettingsHomepageActivity;
 import com.android.settings.spa.SettingsSpaEnvironment;
 import com.android.settingslib.applications.AppIconCacheManager;
@@ -82,6 +83,7 @@ public class SettingsApplication extends Application {
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
         AppIconCacheManager.getInstance().trimMemory(level);
+        TimeZoneData.onTrimMemory(level);
     }
 
     private class DeviceProvisionedObserver extends ContentObserver {
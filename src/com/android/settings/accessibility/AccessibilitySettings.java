@@ -18,6 +18,7 @@ package com.android.settings.accessibility;
 
 import android.accessibilityservice.AccessibilityServiceInfo;
 import android.accessibilityservice.AccessibilityShortcutInfo;
+import android.app.admin.DevicePolicyManager;
 import android.app.settings.SettingsEnums;
 import android.content.ComponentName;
 import android.content.Context;
@@ -29,12 +30,15 @@ import android.os.UserHandle;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.view.accessibility.AccessibilityManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceGroup;
+import androidx.preference.PreferenceScreen;
 
 import com.android.internal.accessibility.AccessibilityShortcutController;
 import com.android.internal.accessibility.util.AccessibilityUtils;
@@ -53,6 +57,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /** Activity with the accessibility settings. */
 @SearchIndexable(forTarget = SearchIndexable.ALL & ~SearchIndexable.ARC)
@@ -114,30 +120,32 @@ public class AccessibilitySettings extends DashboardFragment {
     private final PackageMonitor mSettingsPackageMonitor = new PackageMonitor() {
         @Override
         public void onPackageAdded(String packageName, int uid) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageModified(@NonNull String packageName) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageAppeared(String packageName, int reason) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageDisappeared(String packageName, int reason) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageRemoved(String packageName, int uid) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
-        private void sendUpdate() {
+        private void sendUpdate(String packageName) {
+            // Label, icon or metadata of the services in this package may have changed.
+            mChangedPackages.add(packageName);
             mHandler.postDelayed(mUpdateRunnable, DELAY_UPDATE_SERVICES_MILLIS);
         }
     };
@@ -152,6 +160,19 @@ public class AccessibilitySettings extends DashboardFragment {
             new ArrayMap<>();
     private final Map<ComponentName, PreferenceCategory> mPreBundledServiceComponentToCategoryMap =
             new ArrayMap<>();
+    // Order of the service preferences defined in xml, by category key and preference key.
+    private final Map<String, Map<String, Integer>> mCategoryToServiceOrderMap = new ArrayMap<>();
+    // Service preferences currently shown, and the state they were built from, by key.
+    private final Map<String, RestrictedPreference> mServicePreferences = new ArrayMap<>();
+    private final Map<String, ServicePreferenceState> mServicePreferenceStates =
+            new ArrayMap<>();
+    // Infos the shown service preferences were built from, by key.
+    private final ArrayMap<String, AccessibilityShortcutInfo> mShownShortcutInfos =
+            new ArrayMap<>();
+    private final ArrayMap<String, AccessibilityServiceInfo> mShownServiceInfos =
+            new ArrayMap<>();
+    // Packages changed since the last update, whose service preferences must be rebuilt.
+    private final Set<String> mChangedPackages = new ArraySet<>();
 
     private boolean mNeedPreferencesUpdate = false;
     private boolean mIsForeground = true;
@@ -173,7 +194,7 @@ public class AccessibilitySettings extends DashboardFragment {
         shortcutFeatureKeys.add(Settings.Secure.ACCESSIBILITY_SHORTCUT_TARGET_SERVICE);
         mSettingsContentObserver = new AccessibilitySettingsContentObserver(mHandler);
         mSettingsContentObserver.registerKeysToObserverCallback(shortcutFeatureKeys,
-                key -> onContentChanged());
+                key -> onSettingsChanged());
     }
 
     @Override
@@ -306,11 +327,59 @@ public class AccessibilitySettings extends DashboardFragment {
         }
     }
 
+    /**
+     * Called when an observed setting changes. Settings can't add or remove services, so only
+     * the shown service preferences are updated.
+     */
+    @VisibleForTesting
+    void onSettingsChanged() {
+        if (mIsForeground) {
+            updateSystemPreferences();
+            updateShownServicePreferences();
+            updatePreferencesState();
+        } else {
+            mNeedPreferencesUpdate = true;
+        }
+    }
+
     private void initializeAllPreferences() {
         for (int i = 0; i < CATEGORIES.length; i++) {
             PreferenceCategory prefCategory = findPreference(CATEGORIES[i]);
             mCategoryToPrefCategoryMap.put(CATEGORIES[i], prefCategory);
         }
+
+        // The pre-bundled services and their order don't change while the page is alive.
+        initializePreBundledServicesMapFromArray(CATEGORY_SCREEN_READER,
+                R.array.config_preinstalled_screen_reader_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_CAPTIONS,
+                R.array.config_preinstalled_captions_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_AUDIO,
+                R.array.config_preinstalled_audio_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_DISPLAY,
+                R.array.config_preinstalled_display_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_SPEECH,
+                R.array.config_preinstalled_speech_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_INTERACTION_CONTROL,
+                R.array.config_preinstalled_interaction_control_services);
+
+        // ACCESSIBILITY_MENU_IN_SYSTEM is a default pre-bundled interaction control service.
+        // If the device opts out of including this service then this is a no-op.
+        mPreBundledServiceComponentToCategoryMap.put(
+                AccessibilityUtils.ACCESSIBILITY_MENU_IN_SYSTEM,
+                mCategoryToPrefCategoryMap.get(CATEGORY_INTERACTION_CONTROL));
+
+        initializeCategoryOrderFromArray(CATEGORY_SCREEN_READER,
+                R.array.config_order_screen_reader_services);
+        initializeCategoryOrderFromArray(CATEGORY_CAPTIONS,
+                R.array.config_order_captions_services);
+        initializeCategoryOrderFromArray(CATEGORY_AUDIO,
+                R.array.config_order_audio_services);
+        initializeCategoryOrderFromArray(CATEGORY_INTERACTION_CONTROL,
+                R.array.config_order_interaction_control_services);
+        initializeCategoryOrderFromArray(CATEGORY_DISPLAY,
+                R.array.config_order_display_services);
+        initializeCategoryOrderFromArray(CATEGORY_SPEECH,
+                R.array.config_order_speech_services);
     }
 
     @VisibleForTesting
@@ -337,35 +406,111 @@ public class AccessibilitySettings extends DashboardFragment {
         // Since services category is auto generated we have to do a pass
         // to generate it since services can come and go and then based on
         // the global accessibility state to decided whether it is enabled.
-        final ArrayList<Preference> servicePreferences =
-                new ArrayList<>(mServicePreferenceToPreferenceCategoryMap.keySet());
-        for (int i = 0; i < servicePreferences.size(); i++) {
-            Preference service = servicePreferences.get(i);
-            PreferenceCategory category = mServicePreferenceToPreferenceCategoryMap.get(service);
-            category.removePreference(service);
+        // Only the preferences of services that were added, removed or changed are touched.
+        final Context context = getPrefContext();
+        final AccessibilityManager a11yManager = AccessibilityManager.getInstance(context);
+        final List<AccessibilityShortcutInfo> installedShortcutList =
+                a11yManager.getInstalledAccessibilityShortcutListAsUser(context,
+                        UserHandle.myUserId());
+
+        // Remove duplicate item here, new a ArrayList to copy unmodifiable list result
+        // (getInstalledAccessibilityServiceList).
+        final List<AccessibilityServiceInfo> installedServiceList = new ArrayList<>(
+                a11yManager.getInstalledAccessibilityServiceList());
+        removeServicesInShortcutList(installedServiceList, installedShortcutList);
+
+        final ServiceStateReader stateReader = new ServiceStateReader(context);
+        final Set<String> installedKeys = new ArraySet<>();
+        final Map<String, ServicePreferenceState> newStates = new ArrayMap<>();
+        final List<AccessibilityShortcutInfo> shortcutsToBuild = new ArrayList<>();
+        for (int i = 0, count = installedShortcutList.size(); i < count; ++i) {
+            final AccessibilityShortcutInfo info = installedShortcutList.get(i);
+            final ComponentName componentName = info.getComponentName();
+            final String key = componentName.flattenToString();
+            final ServicePreferenceState state = stateReader.getShortcutState(info);
+            installedKeys.add(key);
+            if (needsRebuild(key, componentName.getPackageName(), state)) {
+                shortcutsToBuild.add(info);
+                newStates.put(key, state);
+            }
+        }
+        final List<AccessibilityServiceInfo> servicesToBuild = new ArrayList<>();
+        for (int i = 0, count = installedServiceList.size(); i < count; ++i) {
+            final AccessibilityServiceInfo info = installedServiceList.get(i);
+            final ComponentName componentName = info.getComponentName();
+            final String key = componentName.flattenToString();
+            final ServicePreferenceState state = stateReader.getServiceState(info);
+            installedKeys.add(key);
+            if (needsRebuild(key, componentName.getPackageName(), state)) {
+                servicesToBuild.add(info);
+                newStates.put(key, state);
+            }
+        }
+        mChangedPackages.clear();
+
+        // Remove the preferences of uninstalled services, and of those that will be rebuilt.
+        final List<String> shownKeys = new ArrayList<>(mServicePreferences.keySet());
+        for (int i = 0, count = shownKeys.size(); i < count; ++i) {
+            final String key = shownKeys.get(i);
+            if (!installedKeys.contains(key) || newStates.containsKey(key)) {
+                removeServicePreference(key);
+            }
         }
+        addServicePreferences(context, shortcutsToBuild, servicesToBuild, newStates);
+    }
 
-        initializePreBundledServicesMapFromArray(CATEGORY_SCREEN_READER,
-                R.array.config_preinstalled_screen_reader_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_CAPTIONS,
-                R.array.config_preinstalled_captions_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_AUDIO,
-                R.array.config_preinstalled_audio_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_DISPLAY,
-                R.array.config_preinstalled_display_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_SPEECH,
-                R.array.config_preinstalled_speech_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_INTERACTION_CONTROL,
-                R.array.config_preinstalled_interaction_control_services);
+    /**
+     * Rebuilds the shown service preferences whose state changed, without querying the installed
+     * services again. Used when a setting changes, since it can't add or remove services.
+     */
+    @VisibleForTesting
+    void updateShownServicePreferences() {
+        final Context context = getPrefContext();
+        final ServiceStateReader stateReader = new ServiceStateReader(context);
+        final Map<String, ServicePreferenceState> newStates = new ArrayMap<>();
+        final List<AccessibilityShortcutInfo> shortcutsToBuild = new ArrayList<>();
+        for (int i = 0, count = mShownShortcutInfos.size(); i < count; ++i) {
+            final ServicePreferenceState state =
+                    stateReader.getShortcutState(mShownShortcutInfos.valueAt(i));
+            if (!state.equals(mServicePreferenceStates.get(mShownShortcutInfos.keyAt(i)))) {
+                shortcutsToBuild.add(mShownShortcutInfos.valueAt(i));
+                newStates.put(mShownShortcutInfos.keyAt(i), state);
+            }
+        }
+        final List<AccessibilityServiceInfo> servicesToBuild = new ArrayList<>();
+        for (int i = 0, count = mShownServiceInfos.size(); i < count; ++i) {
+            final ServicePreferenceState state =
+                    stateReader.getServiceState(mShownServiceInfos.valueAt(i));
+            if (!state.equals(mServicePreferenceStates.get(mShownServiceInfos.keyAt(i)))) {
+                servicesToBuild.add(mShownServiceInfos.valueAt(i));
+                newStates.put(mShownServiceInfos.keyAt(i), state);
+            }
+        }
+        for (String key : newStates.keySet()) {
+            removeServicePreference(key);
+        }
+        addServicePreferences(context, shortcutsToBuild, servicesToBuild, newStates);
+    }
 
-        // ACCESSIBILITY_MENU_IN_SYSTEM is a default pre-bundled interaction control service.
-        // If the device opts out of including this service then this is a no-op.
-        mPreBundledServiceComponentToCategoryMap.put(
-                AccessibilityUtils.ACCESSIBILITY_MENU_IN_SYSTEM,
-                mCategoryToPrefCategoryMap.get(CATEGORY_INTERACTION_CONTROL));
+    private void addServicePreferences(Context context,
+            List<AccessibilityShortcutInfo> shortcutsToBuild,
+            List<AccessibilityServiceInfo> servicesToBuild,
+            Map<String, ServicePreferenceState> states) {
+        for (int i = 0, count = shortcutsToBuild.size(); i < count; ++i) {
+            final AccessibilityShortcutInfo info = shortcutsToBuild.get(i);
+            mShownShortcutInfos.put(info.getComponentName().flattenToString(), info);
+        }
+        for (int i = 0, count = servicesToBuild.size(); i < count; ++i) {
+            final AccessibilityServiceInfo info = servicesToBuild.get(i);
+            mShownServiceInfos.put(info.getComponentName().flattenToString(), info);
+        }
 
-        final List<RestrictedPreference> preferenceList = getInstalledAccessibilityList(
-                getPrefContext());
+        final RestrictedPreferenceHelper preferenceHelper = new RestrictedPreferenceHelper(context);
+        final List<RestrictedPreference> preferenceList = new ArrayList<>();
+        preferenceList.addAll(
+                preferenceHelper.createAccessibilityActivityPreferenceList(shortcutsToBuild));
+        preferenceList.addAll(
+                preferenceHelper.createAccessibilityServicePreferenceList(servicesToBuild));
 
         final PreferenceCategory downloadedServicesCategory =
                 mCategoryToPrefCategoryMap.get(CATEGORY_DOWNLOADED_SERVICES);
@@ -379,25 +524,21 @@ public class AccessibilitySettings extends DashboardFragment {
             if (mPreBundledServiceComponentToCategoryMap.containsKey(componentName)) {
                 prefCategory = mPreBundledServiceComponentToCategoryMap.get(componentName);
             }
+            // Update the order of the preference according to the order defined in xml file.
+            final Map<String, Integer> serviceOrder =
+                    mCategoryToServiceOrderMap.get(prefCategory.getKey());
+            final Integer order = serviceOrder == null ? null
+                    : serviceOrder.get(preference.getKey());
+            if (order != null) {
+                preference.setOrder(order);
+            }
             prefCategory.addPreference(preference);
             mServicePreferenceToPreferenceCategoryMap.put(preference, prefCategory);
+            mServicePreferences.put(preference.getKey(), preference);
+            mServicePreferenceStates.put(preference.getKey(), states.get(preference.getKey()));
         }
 
-        // Update the order of all the category according to the order defined in xml file.
-        updateCategoryOrderFromArray(CATEGORY_SCREEN_READER,
-                R.array.config_order_screen_reader_services);
-        updateCategoryOrderFromArray(CATEGORY_CAPTIONS,
-                R.array.config_order_captions_services);
-        updateCategoryOrderFromArray(CATEGORY_AUDIO,
-                R.array.config_order_audio_services);
-        updateCategoryOrderFromArray(CATEGORY_INTERACTION_CONTROL,
-                R.array.config_order_interaction_control_services);
-        updateCategoryOrderFromArray(CATEGORY_DISPLAY,
-                R.array.config_order_display_services);
-        updateCategoryOrderFromArray(CATEGORY_SPEECH,
-                R.array.config_order_speech_services);
-
-        // Need to check each time when updateServicePreferences() called.
+        // Need to check each time when the service preferences change.
         if (downloadedServicesCategory.getPreferenceCount() == 0) {
             getPreferenceScreen().removePreference(downloadedServicesCategory);
         } else {
@@ -409,50 +550,141 @@ public class AccessibilitySettings extends DashboardFragment {
         updatePreferenceCategoryVisibility(CATEGORY_SPEECH);
     }
 
-    private List<RestrictedPreference> getInstalledAccessibilityList(Context context) {
-        final AccessibilityManager a11yManager = AccessibilityManager.getInstance(context);
-        final RestrictedPreferenceHelper preferenceHelper = new RestrictedPreferenceHelper(context);
-
-        final List<AccessibilityShortcutInfo> installedShortcutList =
-                a11yManager.getInstalledAccessibilityShortcutListAsUser(context,
-                        UserHandle.myUserId());
+    private boolean needsRebuild(String key, String packageName, ServicePreferenceState state) {
+        return !state.equals(mServicePreferenceStates.get(key))
+                || mChangedPackages.contains(packageName)
+                || !mServicePreferences.containsKey(key);
+    }
 
-        // Remove duplicate item here, new a ArrayList to copy unmodifiable list result
-        // (getInstalledAccessibilityServiceList).
-        final List<AccessibilityServiceInfo> installedServiceList = new ArrayList<>(
-                a11yManager.getInstalledAccessibilityServiceList());
-        installedServiceList.removeIf(
-                target -> containsTargetNameInList(installedShortcutList, target));
+    private static boolean isPermitted(List<String> permittedServices, String packageName) {
+        // permittedServices null means all accessibility services are allowed.
+        return permittedServices == null || permittedServices.contains(packageName);
+    }
 
-        final List<RestrictedPreference> activityList =
-                preferenceHelper.createAccessibilityActivityPreferenceList(installedShortcutList);
+    private void removeServicePreference(String key) {
+        final RestrictedPreference preference = mServicePreferences.remove(key);
+        mServicePreferenceStates.remove(key);
+        mShownShortcutInfos.remove(key);
+        mShownServiceInfos.remove(key);
+        if (preference == null) {
+            return;
+        }
+        final PreferenceCategory category =
+                mServicePreferenceToPreferenceCategoryMap.remove(preference);
+        if (category != null) {
+            category.removePreference(preference);
+        }
+    }
 
-        final List<RestrictedPreference> serviceList =
-                preferenceHelper.createAccessibilityServicePreferenceList(installedServiceList);
+    /** Reads the {@link ServicePreferenceState} of the services for one update. */
+    private static final class ServiceStateReader {
+        private final Context mContext;
+        private final Set<ComponentName> mEnabledServices;
+        private final List<String> mPermittedServices;
+        private final RestrictedPreferenceHelper mPreferenceHelper;
+        private final boolean mEcmEnabled;
+
+        ServiceStateReader(Context context) {
+            mContext = context;
+            mEnabledServices = AccessibilityUtils.getEnabledServicesFromSettings(context);
+            mPermittedServices = context.getSystemService(DevicePolicyManager.class)
+                    .getPermittedAccessibilityServices(UserHandle.myUserId());
+            mPreferenceHelper = new RestrictedPreferenceHelper(context);
+            mEcmEnabled = mPreferenceHelper.isEnhancedConfirmationModeEnabled();
+        }
 
-        final List<RestrictedPreference> preferenceList = new ArrayList<>();
-        preferenceList.addAll(activityList);
-        preferenceList.addAll(serviceList);
+        ServicePreferenceState getShortcutState(AccessibilityShortcutInfo info) {
+            final ComponentName componentName = info.getComponentName();
+            final String packageName = componentName.getPackageName();
+            return new ServicePreferenceState(mEnabledServices.contains(componentName),
+                    /* crashed= */ false, AccessibilityUtil.UserShortcutType.EMPTY,
+                    isPermitted(mPermittedServices, packageName), mEcmEnabled,
+                    mPreferenceHelper.getAccessRestrictedSettingsMode(packageName,
+                            info.getActivityInfo().applicationInfo.uid));
+        }
 
-        return preferenceList;
+        ServicePreferenceState getServiceState(AccessibilityServiceInfo info) {
+            final ComponentName componentName = info.getComponentName();
+            final String packageName = componentName.getPackageName();
+            final boolean serviceEnabled = mEnabledServices.contains(componentName);
+            int shortcutTypes = AccessibilityUtil.UserShortcutType.EMPTY;
+            if (AccessibilityUtil.getAccessibilityServiceFragmentType(info)
+                    == AccessibilityServiceFragmentType.INVISIBLE_TOGGLE) {
+                shortcutTypes = AccessibilityUtil.getUserShortcutTypesFromSettings(
+                        mContext, componentName);
+            }
+            return new ServicePreferenceState(serviceEnabled, serviceEnabled && info.crashed,
+                    shortcutTypes, isPermitted(mPermittedServices, packageName), mEcmEnabled,
+                    mPreferenceHelper.getAccessRestrictedSettingsMode(packageName,
+                            info.getResolveInfo().serviceInfo.applicationInfo.uid));
+        }
     }
 
-    private boolean containsTargetNameInList(List<AccessibilityShortcutInfo> shortcutInfos,
-            AccessibilityServiceInfo targetServiceInfo) {
-        final ServiceInfo serviceInfo = targetServiceInfo.getResolveInfo().serviceInfo;
-        final String servicePackageName = serviceInfo.packageName;
-        final CharSequence serviceLabel = serviceInfo.loadLabel(getPackageManager());
+    /**
+     * The inputs a service preference was built from: its summary, and whether it is enabled by
+     * {@link RestrictedPreferenceHelper}. The preference is rebuilt when any of them changes.
+     */
+    @VisibleForTesting
+    static final class ServicePreferenceState {
+        private final boolean mServiceEnabled;
+        private final boolean mCrashed;
+        private final int mShortcutTypes;
+        private final boolean mPermitted;
+        private final boolean mEcmEnabled;
+        private final int mRestrictedSettingsMode;
+
+        ServicePreferenceState(boolean serviceEnabled, boolean crashed, int shortcutTypes,
+                boolean permitted, boolean ecmEnabled, int restrictedSettingsMode) {
+            mServiceEnabled = serviceEnabled;
+            mCrashed = crashed;
+            mShortcutTypes = shortcutTypes;
+            mPermitted = permitted;
+            mEcmEnabled = ecmEnabled;
+            mRestrictedSettingsMode = restrictedSettingsMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ServicePreferenceState)) return false;
+            final ServicePreferenceState that = (ServicePreferenceState) o;
+            return mServiceEnabled == that.mServiceEnabled
+                    && mCrashed == that.mCrashed
+                    && mShortcutTypes == that.mShortcutTypes
+                    && mPermitted == that.mPermitted
+                    && mEcmEnabled == that.mEcmEnabled
+                    && mRestrictedSettingsMode == that.mRestrictedSettingsMode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mServiceEnabled, mCrashed, mShortcutTypes, mPermitted,
+                    mEcmEnabled, mRestrictedSettingsMode);
+        }
+    }
 
+    /**
+     * Removes the services which are also listed as accessibility shortcut activities, matched
+     * by package name and label.
+     */
+    private void removeServicesInShortcutList(List<AccessibilityServiceInfo> serviceInfos,
+            List<AccessibilityShortcutInfo> shortcutInfos) {
+        if (serviceInfos.isEmpty() || shortcutInfos.isEmpty()) {
+            return;
+        }
+        final Map<String, Set<String>> shortcutLabelsByPackage = new ArrayMap<>();
         for (int i = 0, count = shortcutInfos.size(); i < count; ++i) {
             final ActivityInfo activityInfo = shortcutInfos.get(i).getActivityInfo();
-            final String activityPackageName = activityInfo.packageName;
-            final CharSequence activityLabel = activityInfo.loadLabel(getPackageManager());
-            if (servicePackageName.equals(activityPackageName)
-                    && serviceLabel.equals(activityLabel)) {
-                return true;
-            }
+            shortcutLabelsByPackage
+                    .computeIfAbsent(activityInfo.packageName, pkg -> new ArraySet<>())
+                    .add(String.valueOf(activityInfo.loadLabel(getPackageManager())));
         }
-        return false;
+        serviceInfos.removeIf(target -> {
+            final ServiceInfo serviceInfo = target.getResolveInfo().serviceInfo;
+            final Set<String> labels = shortcutLabelsByPackage.get(serviceInfo.packageName);
+            return labels != null && labels.contains(
+                    String.valueOf(serviceInfo.loadLabel(getPackageManager())));
+        });
     }
 
     private void initializePreBundledServicesMapFromArray(String categoryKey, int key) {
@@ -465,24 +697,27 @@ public class AccessibilitySettings extends DashboardFragment {
     }
 
     /**
-     * Update the order of preferences in the category by matching their preference
-     * key with the string array of preference order which is defined in the xml.
+     * Caches the order of preferences in the category, defined by the string array of
+     * preference keys in the xml.
      *
-     * @param categoryKey The key of the category need to update the order
+     * @param categoryKey The key of the category
      * @param key         The key of the string array which defines the order of category
      */
-    private void updateCategoryOrderFromArray(String categoryKey, int key) {
-        String[] services = getResources().getStringArray(key);
-        PreferenceCategory category = mCategoryToPrefCategoryMap.get(categoryKey);
-        int preferenceCount = category.getPreferenceCount();
-        int serviceLength = services.length;
-        for (int preferenceIndex = 0; preferenceIndex < preferenceCount; preferenceIndex++) {
-            for (int serviceIndex = 0; serviceIndex < serviceLength; serviceIndex++) {
-                if (category.getPreference(preferenceIndex).getKey()
-                        .equals(services[serviceIndex])) {
-                    category.getPreference(preferenceIndex).setOrder(serviceIndex);
-                    break;
-                }
+    private void initializeCategoryOrderFromArray(String categoryKey, int key) {
+        final String[] services = getResources().getStringArray(key);
+        final Map<String, Integer> serviceOrder = new ArrayMap<>(services.length);
+        for (int serviceIndex = 0; serviceIndex < services.length; serviceIndex++) {
+            serviceOrder.putIfAbsent(services[serviceIndex], serviceIndex);
+        }
+        mCategoryToServiceOrderMap.put(categoryKey, serviceOrder);
+
+        // The static preferences of the category may be ordered by the same array.
+        final PreferenceCategory category = mCategoryToPrefCategoryMap.get(categoryKey);
+        for (int i = 0, count = category.getPreferenceCount(); i < count; i++) {
+            final Preference preference = category.getPreference(i);
+            final Integer order = serviceOrder.get(preference.getKey());
+            if (order != null) {
+                preference.setOrder(order);
             }
         }
     }
@@ -505,10 +740,29 @@ public class AccessibilitySettings extends DashboardFragment {
     }
 
     private void updatePreferencesState() {
+        final PreferenceScreen screen = getPreferenceScreen();
+        final Map<String, Preference> preferences = new ArrayMap<>();
+        collectPreferences(screen, preferences);
         final List<AbstractPreferenceController> controllers = new ArrayList<>();
         getPreferenceControllers().forEach(controllers::addAll);
         controllers.forEach(controller -> controller.updateState(
-                findPreference(controller.getPreferenceKey())));
+                preferences.get(controller.getPreferenceKey())));
+    }
+
+    private static void collectPreferences(PreferenceGroup group,
+            Map<String, Preference> preferences) {
+        if (group == null) {
+            return;
+        }
+        for (int i = 0, count = group.getPreferenceCount(); i < count; i++) {
+            final Preference preference = group.getPreference(i);
+            if (preference.getKey() != null) {
+                preferences.putIfAbsent(preference.getKey(), preference);
+            }
+            if (preference instanceof PreferenceGroup) {
+                collectPreferences((PreferenceGroup) preference, preferences);
+            }
+        }
     }
 
     public static final BaseSearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
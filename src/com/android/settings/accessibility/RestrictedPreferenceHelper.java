@@ -229,6 +229,31 @@ public class RestrictedPreferenceHelper {
         return preference;
     }
 
+    /**
+     * Returns the mode of the restricted settings app-op of the app, which can disable its
+     * preference when {@link #isEnhancedConfirmationModeEnabled()}.
+     */
+    public int getAccessRestrictedSettingsMode(String packageName, int uid) {
+        try {
+            return mAppOps.checkOpNoThrow(AppOpsManager.OP_ACCESS_RESTRICTED_SETTINGS, uid,
+                    packageName);
+        } catch (Exception e) {
+            // Allow service in case if app ops is not available in testing.
+            return AppOpsManager.MODE_ALLOWED;
+        }
+    }
+
+    /** Returns whether the restricted settings app-op can disable the preferences. */
+    public boolean isEnhancedConfirmationModeEnabled() {
+        try {
+            return mContext.getResources().getBoolean(
+                    com.android.internal.R.bool.config_enhancedConfirmationModeEnabled);
+        } catch (Exception e) {
+            // Allow service in case if the resource is not available in testing.
+            return false;
+        }
+    }
+
     private void setRestrictedPreferenceEnabled(RestrictedPreference preference,
             final List<String> permittedServices, boolean serviceEnabled) {
         // permittedServices null means all accessibility services are allowed.
@@ -26,10 +26,12 @@ import java.util.List;
 
 public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
 
+    private final Context mContext;
     protected final PackageManager mPm;
     protected final UserManager mUm;
 
     public AppCounter(Context context, PackageManager packageManager) {
+        mContext = context;
         mPm = packageManager;
         mUm = (UserManager) context.getSystemService(Context.USER_SERVICE);
     }
@@ -38,11 +40,11 @@ public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
     protected Integer doInBackground(Void... params) {
         int count = 0;
         for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
+            final List<ApplicationInfo> list = PackageInventory.getInstalledApplicationsAsUser(
+                    mContext, mPm, PackageManager.GET_DISABLED_COMPONENTS
                             | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
                             | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
+                    user.id);
             for (ApplicationInfo info : list) {
                 if (includeInCount(info)) {
                     count++;
@@ -16,6 +16,7 @@
 
 package com.android.settings.applications;
 
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
@@ -33,10 +34,12 @@ import java.util.List;
  * of just counting them.
  */
 public abstract class AppLister extends AsyncTask<Void, Void, List<UserAppInfo>> {
+    private final Context mContext;
     protected final PackageManager mPm;
     protected final UserManager mUm;
 
-    public AppLister(PackageManager packageManager, UserManager userManager) {
+    public AppLister(Context context, PackageManager packageManager, UserManager userManager) {
+        mContext = context;
         mPm = packageManager;
         mUm = userManager;
     }
@@ -45,11 +48,11 @@ public abstract class AppLister extends AsyncTask<Void, Void, List<UserAppInfo>>
     protected List<UserAppInfo> doInBackground(Void... params) {
         final List<UserAppInfo> result = new ArrayList<>();
         for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
+            final List<ApplicationInfo> list = PackageInventory.getInstalledApplicationsAsUser(
+                    mContext, mPm, PackageManager.GET_DISABLED_COMPONENTS
                             | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
                             | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
+                    user.id);
             for (ApplicationInfo info : list) {
                 if (includeInCount(info)) {
                     result.add(new UserAppInfo(user, info));
@@ -22,6 +22,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.ComponentInfo;
 import android.content.pm.IPackageManager;
 import android.content.pm.PackageManager;
@@ -66,6 +67,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     private final IPackageManager mPms;
     private final DevicePolicyManager mDpm;
     private final UserManager mUm;
+    private final BatchedAppScanner mAppScanner;
     /** Flags to use when querying PackageManager for Euicc component implementations. */
     private static final int EUICC_QUERY_FLAGS =
             PackageManager.MATCH_SYSTEM_ONLY | PackageManager.MATCH_DEBUG_TRIAGED_MISSING
@@ -78,46 +80,49 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         mPms = pms;
         mDpm = dpm;
         mUm = UserManager.get(mContext);
+        mAppScanner = new BatchedAppScanner(mContext, mPm, mUm);
     }
 
     @Override
     public void calculateNumberOfPolicyInstalledApps(boolean async, NumberOfAppsCallback callback) {
-        final CurrentUserAndManagedProfilePolicyInstalledAppCounter counter =
-                new CurrentUserAndManagedProfilePolicyInstalledAppCounter(mContext, mPm, callback);
+        final BatchedAppScanner.AppFilter filter = this::isPolicyInstalled;
         if (async) {
-            counter.execute();
+            mAppScanner.count(filter, callback);
         } else {
-            counter.executeInForeground();
+            mAppScanner.countNow(filter, callback);
         }
     }
 
     @Override
     public void listPolicyInstalledApps(ListOfAppsCallback callback) {
-        final CurrentUserPolicyInstalledAppLister lister =
-                new CurrentUserPolicyInstalledAppLister(mPm, mUm, callback);
-        lister.execute();
+        mAppScanner.list(this::isPolicyInstalled, callback);
     }
 
     @Override
     public void calculateNumberOfAppsWithAdminGrantedPermissions(String[] permissions,
             boolean async, NumberOfAppsCallback callback) {
-        final CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter counter =
-                new CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter(mContext,
-                        permissions, mPm, mPms, mDpm, callback);
+        final BatchedAppScanner.AppFilter filter =
+                info -> hasAdminGrantedPermissions(permissions, info);
         if (async) {
-            counter.execute();
+            mAppScanner.count(filter, callback);
         } else {
-            counter.executeInForeground();
+            mAppScanner.countNow(filter, callback);
         }
     }
 
     @Override
     public void listAppsWithAdminGrantedPermissions(String[] permissions,
             ListOfAppsCallback callback) {
-        final CurrentUserAppWithAdminGrantedPermissionsLister lister =
-                new CurrentUserAppWithAdminGrantedPermissionsLister(permissions, mPm, mPms, mDpm,
-                        mUm, callback);
-        lister.execute();
+        mAppScanner.list(info -> hasAdminGrantedPermissions(permissions, info), callback);
+    }
+
+    private boolean isPolicyInstalled(ApplicationInfo info) {
+        return InstalledAppCounter.includeInCount(PackageManager.INSTALL_REASON_POLICY, mPm, info);
+    }
+
+    private boolean hasAdminGrantedPermissions(String[] permissions, ApplicationInfo info) {
+        return AppWithAdminGrantedPermissionsCounter.includeInCount(permissions, mDpm, mPm, mPms,
+                info);
     }
 
     @Override
@@ -198,74 +203,6 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         return keepEnabledPackages;
     }
 
-    private static class CurrentUserAndManagedProfilePolicyInstalledAppCounter
-            extends InstalledAppCounter {
-        private NumberOfAppsCallback mCallback;
-
-        CurrentUserAndManagedProfilePolicyInstalledAppCounter(Context context,
-                PackageManager packageManager, NumberOfAppsCallback callback) {
-            super(context, PackageManager.INSTALL_REASON_POLICY, packageManager);
-            mCallback = callback;
-        }
-
-        @Override
-        protected void onCountComplete(int num) {
-            mCallback.onNumberOfAppsResult(num);
-        }
-    }
-
-    private static class CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter
-            extends AppWithAdminGrantedPermissionsCounter {
-        private NumberOfAppsCallback mCallback;
-
-        CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter(Context context,
-                String[] permissions, PackageManager packageManager,
-                IPackageManager packageManagerService,
-                DevicePolicyManager devicePolicyManager, NumberOfAppsCallback callback) {
-            super(context, permissions, packageManager, packageManagerService, devicePolicyManager);
-            mCallback = callback;
-        }
-
-        @Override
-        protected void onCountComplete(int num) {
-            mCallback.onNumberOfAppsResult(num);
-        }
-    }
-
-    private static class CurrentUserPolicyInstalledAppLister extends InstalledAppLister {
-        private ListOfAppsCallback mCallback;
-
-        CurrentUserPolicyInstalledAppLister(PackageManager packageManager,
-                UserManager userManager, ListOfAppsCallback callback) {
-            super(packageManager, userManager);
-            mCallback = callback;
-        }
-
-        @Override
-        protected void onAppListBuilt(List<UserAppInfo> list) {
-            mCallback.onListOfAppsResult(list);
-        }
-    }
-
-    private static class CurrentUserAppWithAdminGrantedPermissionsLister extends
-            AppWithAdminGrantedPermissionsLister {
-        private ListOfAppsCallback mCallback;
-
-        CurrentUserAppWithAdminGrantedPermissionsLister(String[] permissions,
-                PackageManager packageManager, IPackageManager packageManagerService,
-                DevicePolicyManager devicePolicyManager, UserManager userManager,
-                ListOfAppsCallback callback) {
-            super(permissions, packageManager, packageManagerService, devicePolicyManager,
-                    userManager);
-            mCallback = callback;
-        }
-
-        @Override
-        protected void onAppListBuilt(List<UserAppInfo> list) {
-            mCallback.onListOfAppsResult(list);
-        }
-    }
-
     /**
      * Return the component info of the EuiccService to bind to, or null if none were found.
      */
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.applications.ApplicationFeatureProvider.ListOfAppsCallback;
+import com.android.settings.applications.ApplicationFeatureProvider.NumberOfAppsCallback;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts or lists the apps of the current user and its profiles that match some filters, with a
+ * single pass over the installed apps for all the filters requested together.
+ *
+ * This is the batched counterpart of {@link AppCounter} and {@link AppLister}: requests made
+ * during the same main thread pass, e.g. by the preference controllers of a page updating their
+ * state, are scanned together on the background thread and their results delivered on the main
+ * thread.
+ *
+ * Only the policy installed and admin granted permission counts and lists of
+ * {@link ApplicationFeatureProviderImpl} go through it. The default apps set by the admin are
+ * resolved per intent with {@link ApplicationFeatureProvider#findPersistentPreferredActivities}
+ * rather than by scanning the installed apps, and the {@link AppCounter} of the apps page runs
+ * alone on its page, so neither would share a scan.
+ */
+final class BatchedAppScanner {
+
+    /** Decides whether an app is counted or listed. */
+    interface AppFilter {
+        boolean includeInCount(ApplicationInfo info);
+    }
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    private final UserManager mUm;
+    // Requests waiting for the next scan, only accessed on the main thread.
+    private final List<Request> mPendingRequests = new ArrayList<>();
+
+    BatchedAppScanner(Context context, PackageManager packageManager, UserManager userManager) {
+        mContext = context;
+        mPm = packageManager;
+        mUm = userManager;
+    }
+
+    /** Asynchronously counts the apps matching {@code filter}. */
+    @MainThread
+    void count(@NonNull AppFilter filter, @NonNull NumberOfAppsCallback callback) {
+        enqueue(new Request(filter, callback, null /* listCallback */));
+    }
+
+    /** Counts the apps matching {@code filter} on the calling thread. */
+    @WorkerThread
+    void countNow(@NonNull AppFilter filter, @NonNull NumberOfAppsCallback callback) {
+        final Request request = new Request(filter, callback, null /* listCallback */);
+        scan(List.of(request));
+        request.deliver();
+    }
+
+    /** Asynchronously lists the apps matching {@code filter}. */
+    @MainThread
+    void list(@NonNull AppFilter filter, @NonNull ListOfAppsCallback callback) {
+        enqueue(new Request(filter, null /* countCallback */, callback));
+    }
+
+    private void enqueue(Request request) {
+        mPendingRequests.add(request);
+        if (mPendingRequests.size() == 1) {
+            // Let the other requests of this main thread pass join the batch before scanning.
+            ThreadUtils.postOnMainThread(this::scanPendingRequests);
+        }
+    }
+
+    private void scanPendingRequests() {
+        final List<Request> requests = new ArrayList<>(mPendingRequests);
+        mPendingRequests.clear();
+        ThreadUtils.postOnBackgroundThread(() -> {
+            scan(requests);
+            ThreadUtils.postOnMainThread(() -> {
+                for (Request request : requests) {
+                    request.deliver();
+                }
+            });
+        });
+    }
+
+    /** Evaluates all the {@code requests} in one pass over the apps of each profile. */
+    @VisibleForTesting
+    @WorkerThread
+    void scan(List<Request> requests) {
+        for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
+            final List<ApplicationInfo> list = PackageInventory.getInstalledApplicationsAsUser(
+                    mContext, mPm, PackageManager.GET_DISABLED_COMPONENTS
+                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
+                    user.id);
+            for (ApplicationInfo info : list) {
+                for (Request request : requests) {
+                    if (request.mFilter.includeInCount(info)) {
+                        request.add(user, info);
+                    }
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static final class Request {
+        private final AppFilter mFilter;
+        @Nullable
+        private final NumberOfAppsCallback mCountCallback;
+        @Nullable
+        private final ListOfAppsCallback mListCallback;
+        private final List<UserAppInfo> mApps = new ArrayList<>();
+        private int mCount;
+
+        @VisibleForTesting
+        Request(AppFilter filter, @Nullable NumberOfAppsCallback countCallback,
+                @Nullable ListOfAppsCallback listCallback) {
+            mFilter = filter;
+            mCountCallback = countCallback;
+            mListCallback = listCallback;
+        }
+
+        private void add(UserInfo user, ApplicationInfo info) {
+            mCount++;
+            if (mListCallback != null) {
+                mApps.add(new UserAppInfo(user, info));
+            }
+        }
+
+        @VisibleForTesting
+        void deliver() {
+            if (mCountCallback != null) {
+                mCountCallback.onNumberOfAppsResult(mCount);
+            }
+            if (mListCallback != null) {
+                mListCallback.onListOfAppsResult(mApps);
+            }
+        }
+    }
+}
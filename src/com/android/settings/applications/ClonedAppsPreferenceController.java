@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.os.UserHandle;
 import android.provider.DeviceConfig;
 
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
@@ -84,9 +85,7 @@ public class ClonedAppsPreferenceController extends BasePreferenceController
             protected Integer[] doInBackground(Void... unused) {
                 // Get list of allowlisted cloneable apps.
                 List<String> cloneableApps = appUtils.getCloneableAppListStr(mContext);
-                List<String> primaryUserApps = mContext.getPackageManager()
-                        .getInstalledPackagesAsUser(/* flags*/ 0, UserHandle.myUserId()).stream()
-                        .map(x -> x.packageName).toList();
+                List<String> primaryUserApps = getInstalledPackageNames(UserHandle.myUserId());
                 // Count number of installed apps in system user.
                 int availableAppsCount = (int) cloneableApps.stream()
                         .filter(x -> primaryUserApps.contains(x)).count();
@@ -96,9 +95,7 @@ public class ClonedAppsPreferenceController extends BasePreferenceController
                     return new Integer[]{0, availableAppsCount};
                 }
                 // Get all apps in clone profile if present.
-                List<String> cloneProfileApps = mContext.getPackageManager()
-                        .getInstalledPackagesAsUser(/* flags*/ 0, cloneUserId).stream()
-                        .map(x -> x.packageName).toList();
+                List<String> cloneProfileApps = getInstalledPackageNames(cloneUserId);
                 // Count number of allowlisted app present in clone profile.
                 int clonedAppsCount = (int) cloneableApps.stream()
                         .filter(x -> cloneProfileApps.contains(x)).count();
@@ -113,6 +110,13 @@ public class ClonedAppsPreferenceController extends BasePreferenceController
         }.execute();
     }
 
+    @WorkerThread
+    private List<String> getInstalledPackageNames(int userId) {
+        return PackageInventory.getInstalledApplicationsAsUser(mContext,
+                mContext.getPackageManager(), /* flags */ 0, userId).stream()
+                .map(x -> x.packageName).toList();
+    }
+
     private void updateSummary(int clonedAppsCount, int availableAppsCount) {
         mPreference.setSummary(mContext.getResources().getString(
                 R.string.cloned_apps_summary, clonedAppsCount, availableAppsCount));
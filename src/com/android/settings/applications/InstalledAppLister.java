@@ -16,14 +16,16 @@
 
 package com.android.settings.applications;
 
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.UserManager;
 
 public abstract class InstalledAppLister extends AppLister {
 
-    public InstalledAppLister(PackageManager packageManager, UserManager userManager) {
-        super(packageManager, userManager);
+    public InstalledAppLister(Context context, PackageManager packageManager,
+            UserManager userManager) {
+        super(context, packageManager, userManager);
     }
 
     @Override
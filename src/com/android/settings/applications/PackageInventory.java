@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.app.ApplicationPackageManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * Process-wide inventory of the applications installed for each user.
+ *
+ * The applications of a user are listed once per set of query flags and then kept up to date
+ * from the package broadcasts, which only query again the packages that changed. Every screen
+ * asking for the same user and flags shares the same immutable {@link Snapshot} instead of
+ * scanning the package manager again.
+ */
+public final class PackageInventory {
+    private static final String TAG = "PackageInventory";
+
+    private static final Object sLock = new Object();
+    private static PackageInventory sInstance;
+
+    /** Listener of the package changes seen by the inventory, called on the main thread. */
+    public interface OnPackagesChangedListener {
+        /** Called when {@code packageNames} were added, removed or changed for any user. */
+        void onPackagesChanged(@NonNull String[] packageNames);
+
+        /** Called when {@code userId} is removed. */
+        default void onUserRemoved(int userId) {
+        }
+    }
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    // Up to date snapshots keyed by user id and query flags, guarded by itself.
+    private final ArrayMap<Long, Snapshot> mSnapshots = new ArrayMap<>();
+    // Snapshots missing the changes of mChangedPackages, guarded by mSnapshots.
+    private final ArrayMap<Long, Snapshot> mStaleSnapshots = new ArrayMap<>();
+    // Packages changed since the stale snapshots were taken, guarded by mSnapshots.
+    private final ArraySet<String> mChangedPackages = new ArraySet<>();
+    // Bumped on every package change, so that a load racing with a change is not cached.
+    private int mGeneration;
+    // Bumped on every user removal, guarded by mSnapshots.
+    private int mUserRemovalCount;
+    // Serializes the updates of the stale snapshots, so that each one starts from the last one.
+    private final Object mUpdateLock = new Object();
+    private final List<OnPackagesChangedListener> mListeners = new CopyOnWriteArrayList<>();
+
+    @VisibleForTesting
+    Executor mUpdateExecutor = ThreadUtils::postOnBackgroundThread;
+
+    @VisibleForTesting
+    PackageInventory(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+    }
+
+    /** Returns the inventory of the process of {@code context}. */
+    @NonNull
+    public static PackageInventory getInstance(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (sLock) {
+            if (sInstance == null || sInstance.mContext != appContext) {
+                sInstance = new PackageInventory(appContext);
+                sInstance.registerReceivers();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Same as {@link PackageManager#getInstalledApplicationsAsUser}, served from the inventory
+     * when {@code packageManager} is the framework one. The returned list must not be modified.
+     */
+    @WorkerThread
+    @NonNull
+    public static List<ApplicationInfo> getInstalledApplicationsAsUser(@NonNull Context context,
+            @NonNull PackageManager packageManager, int flags, int userId) {
+        if (!isCacheable(packageManager)) {
+            return packageManager.getInstalledApplicationsAsUser(flags, userId);
+        }
+        return getInstance(context).getSnapshot(userId, flags).getApplications();
+    }
+
+    /** Returns whether the results of {@code packageManager} can be shared across screens. */
+    public static boolean isCacheable(@NonNull PackageManager packageManager) {
+        // A package manager supplied by the caller, e.g. a test double, is queried directly.
+        return packageManager instanceof ApplicationPackageManager;
+    }
+
+    /** Returns the applications of {@code userId} matching {@code flags}, loaded if needed. */
+    @WorkerThread
+    @NonNull
+    public Snapshot getSnapshot(int userId, int flags) {
+        final Long key = getKey(userId, flags);
+        final boolean isStale;
+        synchronized (mSnapshots) {
+            final Snapshot snapshot = mSnapshots.get(key);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            isStale = mStaleSnapshots.containsKey(key);
+        }
+        if (isStale) {
+            // Applies the pending changes now rather than serving an out of date snapshot.
+            updatePackages();
+        }
+        final int generation;
+        synchronized (mSnapshots) {
+            final Snapshot snapshot = mSnapshots.get(key);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            generation = mGeneration;
+        }
+        final Snapshot snapshot = new Snapshot(mPm, userId, flags,
+                mPm.getInstalledApplicationsAsUser(flags, userId));
+        synchronized (mSnapshots) {
+            // Skip the cache if a package changed while being loaded.
+            if (generation == mGeneration) {
+                mSnapshots.put(key, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the applications of {@code userId} matching {@code flags}, or {@code null} if they
+     * must be loaded with {@link #getSnapshot}.
+     */
+    @Nullable
+    public Snapshot getCachedSnapshot(int userId, int flags) {
+        synchronized (mSnapshots) {
+            return mSnapshots.get(getKey(userId, flags));
+        }
+    }
+
+    /**
+     * Returns a number bumped on every package or user change, so that data derived from the
+     * packages can be cached until it changes.
+     */
+    public int getGeneration() {
+        synchronized (mSnapshots) {
+            return mGeneration;
+        }
+    }
+
+    /** Registers {@code listener} to be told about the package changes of every user. */
+    public void addOnPackagesChangedListener(@NonNull OnPackagesChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnPackagesChangedListener(@NonNull OnPackagesChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @VisibleForTesting
+    static void resetForTesting() {
+        synchronized (sLock) {
+            sInstance = null;
+        }
+    }
+
+    @VisibleForTesting
+    void onPackagesChanged(@NonNull String[] packageNames) {
+        synchronized (mSnapshots) {
+            mGeneration++;
+            Collections.addAll(mChangedPackages, packageNames);
+            // A package change can affect the snapshots of other users, e.g. with
+            // MATCH_ANY_USER, so none of them is served until updated.
+            mStaleSnapshots.putAll(mSnapshots);
+            mSnapshots.clear();
+        }
+        mUpdateExecutor.execute(this::updatePackages);
+        for (OnPackagesChangedListener listener : mListeners) {
+            listener.onPackagesChanged(packageNames);
+        }
+    }
+
+    /** Applies all the pending package changes to the stale snapshots. */
+    @VisibleForTesting
+    @WorkerThread
+    void updatePackages() {
+        synchronized (mUpdateLock) {
+            final String[] packageNames;
+            final List<Snapshot> snapshots;
+            final int userRemovalCount;
+            synchronized (mSnapshots) {
+                if (mChangedPackages.isEmpty()) {
+                    return;
+                }
+                packageNames = mChangedPackages.toArray(new String[0]);
+                mChangedPackages.clear();
+                snapshots = new ArrayList<>(mStaleSnapshots.values());
+                mStaleSnapshots.clear();
+                userRemovalCount = mUserRemovalCount;
+            }
+            for (Snapshot snapshot : snapshots) {
+                final Snapshot updated = updateSnapshot(snapshot, packageNames);
+                synchronized (mSnapshots) {
+                    final Long key = getKey(snapshot.mUserId, snapshot.mFlags);
+                    if (userRemovalCount != mUserRemovalCount) {
+                        // A user was removed in the meantime, loads again if still needed.
+                        continue;
+                    }
+                    // Keep a snapshot loaded in the meantime, it is already up to date.
+                    if (mSnapshots.containsKey(key) || mStaleSnapshots.containsKey(key)) {
+                        continue;
+                    }
+                    // Packages changed again in the meantime, the next update applies them.
+                    if (mChangedPackages.isEmpty()) {
+                        mSnapshots.put(key, updated);
+                    } else {
+                        mStaleSnapshots.put(key, updated);
+                    }
+                }
+            }
+        }
+    }
+
+    private Snapshot updateSnapshot(Snapshot snapshot, String[] packageNames) {
+        final ArrayMap<String, ApplicationInfo> applications =
+                new ArrayMap<>(snapshot.mApplicationsByName);
+        for (String packageName : packageNames) {
+            try {
+                applications.put(packageName, mPm.getApplicationInfoAsUser(packageName,
+                        snapshot.mFlags, snapshot.mUserId));
+            } catch (PackageManager.NameNotFoundException e) {
+                applications.remove(packageName);
+            }
+        }
+        final Snapshot updated = new Snapshot(mPm, snapshot.mUserId, snapshot.mFlags,
+                new ArrayList<>(applications.values()));
+        // Carries the views loaded so far over, only querying again the changed packages.
+        final ArraySet<String> launchablePackages = snapshot.mLaunchablePackages;
+        if (launchablePackages != null) {
+            updated.mLaunchablePackages = updatePackageSet(launchablePackages, packageNames,
+                    updated::queryLaunchable);
+        }
+        final ArraySet<String> pipPackages = snapshot.mPictureInPicturePackages;
+        if (pipPackages != null) {
+            updated.mPictureInPicturePackages = updatePackageSet(pipPackages, packageNames,
+                    updated::queryPictureInPicture);
+        }
+        return updated;
+    }
+
+    private static ArraySet<String> updatePackageSet(ArraySet<String> packages,
+            String[] packageNames, Predicate<String> isIncluded) {
+        final ArraySet<String> updated = new ArraySet<>(packages);
+        for (String packageName : packageNames) {
+            if (isIncluded.test(packageName)) {
+                updated.add(packageName);
+            } else {
+                updated.remove(packageName);
+            }
+        }
+        return updated;
+    }
+
+    @VisibleForTesting
+    void onUserRemoved(int userId) {
+        synchronized (mSnapshots) {
+            mGeneration++;
+            mUserRemovalCount++;
+            removeSnapshotsOfUser(mSnapshots, userId);
+            removeSnapshotsOfUser(mStaleSnapshots, userId);
+        }
+        for (OnPackagesChangedListener listener : mListeners) {
+            listener.onUserRemoved(userId);
+        }
+    }
+
+    private void registerReceivers() {
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final String action = intent.getAction();
+                if (Intent.ACTION_USER_REMOVED.equals(action)) {
+                    onUserRemoved(intent.getIntExtra(Intent.EXTRA_USER_HANDLE,
+                            UserHandle.USER_NULL));
+                    return;
+                }
+                final Uri data = intent.getData();
+                final String[] packageNames = data != null
+                        ? new String[] {data.getSchemeSpecificPart()}
+                        : intent.getStringArrayExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST);
+                if (packageNames == null) {
+                    Log.w(TAG, "No package in " + action);
+                    return;
+                }
+                onPackagesChanged(packageNames);
+            }
+        };
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiverAsUser(receiver, UserHandle.ALL, packageFilter, null, null);
+
+        final IntentFilter listFilter = new IntentFilter();
+        listFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE);
+        listFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE);
+        listFilter.addAction(Intent.ACTION_PACKAGES_SUSPENDED);
+        listFilter.addAction(Intent.ACTION_PACKAGES_UNSUSPENDED);
+        listFilter.addAction(Intent.ACTION_USER_REMOVED);
+        mContext.registerReceiverAsUser(receiver, UserHandle.ALL, listFilter, null, null);
+    }
+
+    private static void removeSnapshotsOfUser(ArrayMap<Long, Snapshot> snapshots, int userId) {
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            if (snapshots.valueAt(i).mUserId == userId) {
+                snapshots.removeAt(i);
+            }
+        }
+    }
+
+    private static Long getKey(int userId, int flags) {
+        return ((long) userId << 32) | (flags & 0xffffffffL);
+    }
+
+    /**
+     * Immutable list of the applications of a user, with filtered views computed once on
+     * demand. The {@link ApplicationInfo}s are shared and must not be modified.
+     */
+    public static final class Snapshot {
+        private final PackageManager mPm;
+        private final int mUserId;
+        private final int mFlags;
+        private final List<ApplicationInfo> mApplications;
+        private final ArrayMap<String, ApplicationInfo> mApplicationsByName;
+        private volatile List<ApplicationInfo> mSystemApplications;
+        private volatile List<ApplicationInfo> mGames;
+        // Packages with a launcher activity, or with an activity supporting picture-in-picture.
+        private volatile ArraySet<String> mLaunchablePackages;
+        private volatile ArraySet<String> mPictureInPicturePackages;
+        private volatile List<ApplicationInfo> mLaunchableApplications;
+        private volatile List<ApplicationInfo> mPictureInPictureApplications;
+
+        private Snapshot(PackageManager pm, int userId, int flags,
+                List<ApplicationInfo> applications) {
+            mPm = pm;
+            mUserId = userId;
+            mFlags = flags;
+            mApplications = Collections.unmodifiableList(new ArrayList<>(applications));
+            mApplicationsByName = new ArrayMap<>(applications.size());
+            for (ApplicationInfo info : applications) {
+                mApplicationsByName.put(info.packageName, info);
+            }
+        }
+
+        public int getUserId() {
+            return mUserId;
+        }
+
+        /** Returns all the applications. */
+        @NonNull
+        public List<ApplicationInfo> getApplications() {
+            return mApplications;
+        }
+
+        /** Returns the application of {@code packageName}, or {@code null} if missing. */
+        @Nullable
+        public ApplicationInfo getApplication(@NonNull String packageName) {
+            return mApplicationsByName.get(packageName);
+        }
+
+        /** Returns the applications which are part of the system image. */
+        @NonNull
+        public List<ApplicationInfo> getSystemApplications() {
+            List<ApplicationInfo> applications = mSystemApplications;
+            if (applications == null) {
+                applications = filter(info -> (info.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
+                mSystemApplications = applications;
+            }
+            return applications;
+        }
+
+        /** Returns the games, from their category or the deprecated game flag. */
+        @NonNull
+        public List<ApplicationInfo> getGames() {
+            List<ApplicationInfo> applications = mGames;
+            if (applications == null) {
+                applications = filter(info -> info.category == ApplicationInfo.CATEGORY_GAME
+                        || (info.flags & ApplicationInfo.FLAG_IS_GAME) != 0);
+                mGames = applications;
+            }
+            return applications;
+        }
+
+        /** Returns the applications with an activity shown in the launcher. */
+        @WorkerThread
+        @NonNull
+        public List<ApplicationInfo> getLaunchableApplications() {
+            List<ApplicationInfo> applications = mLaunchableApplications;
+            if (applications == null) {
+                ArraySet<String> packages = mLaunchablePackages;
+                if (packages == null) {
+                    packages = new ArraySet<>();
+                    for (ResolveInfo info : mPm.queryIntentActivitiesAsUser(
+                            getLauncherIntent(), mFlags, mUserId)) {
+                        packages.add(info.activityInfo.packageName);
+                    }
+                    mLaunchablePackages = packages;
+                }
+                final ArraySet<String> launchable = packages;
+                applications = filter(info -> launchable.contains(info.packageName));
+                mLaunchableApplications = applications;
+            }
+            return applications;
+        }
+
+        /** Returns the applications with an activity supporting picture-in-picture. */
+        @WorkerThread
+        @NonNull
+        public List<ApplicationInfo> getPictureInPictureApplications() {
+            List<ApplicationInfo> applications = mPictureInPictureApplications;
+            if (applications == null) {
+                ArraySet<String> packages = mPictureInPicturePackages;
+                if (packages == null) {
+                    packages = new ArraySet<>();
+                    for (PackageInfo info : mPm.getInstalledPackagesAsUser(
+                            mFlags | PackageManager.GET_ACTIVITIES, mUserId)) {
+                        if (hasPictureInPictureActivity(info)) {
+                            packages.add(info.packageName);
+                        }
+                    }
+                    mPictureInPicturePackages = packages;
+                }
+                final ArraySet<String> pip = packages;
+                applications = filter(info -> pip.contains(info.packageName));
+                mPictureInPictureApplications = applications;
+            }
+            return applications;
+        }
+
+        /** Returns the applications matching {@code predicate}. */
+        @NonNull
+        public List<ApplicationInfo> filter(@NonNull Predicate<ApplicationInfo> predicate) {
+            final List<ApplicationInfo> applications = new ArrayList<>();
+            for (ApplicationInfo info : mApplications) {
+                if (predicate.test(info)) {
+                    applications.add(info);
+                }
+            }
+            return Collections.unmodifiableList(applications);
+        }
+
+        private boolean queryLaunchable(String packageName) {
+            final Intent intent = getLauncherIntent().setPackage(packageName);
+            return !mPm.queryIntentActivitiesAsUser(intent, mFlags, mUserId).isEmpty();
+        }
+
+        private boolean queryPictureInPicture(String packageName) {
+            try {
+                return hasPictureInPictureActivity(mPm.getPackageInfoAsUser(packageName,
+                        mFlags | PackageManager.GET_ACTIVITIES, mUserId));
+            } catch (PackageManager.NameNotFoundException e) {
+                return false;
+            }
+        }
+
+        private static Intent getLauncherIntent() {
+            return new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+        }
+
+        private static boolean hasPictureInPictureActivity(PackageInfo info) {
+            if (info.activities == null) {
+                return false;
+            }
+            for (ActivityInfo activity : info.activities) {
+                if (activity.supportsPictureInPicture()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -28,7 +28,6 @@ import android.content.pm.PackageManager;
 import android.os.PowerManager;
 import android.os.UserHandle;
 import android.os.UserManager;
-import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
 
@@ -44,10 +43,9 @@ import com.android.settingslib.utils.ThreadUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -70,6 +68,7 @@ public class RecentAppStatsMixin implements LifecycleObserver, OnStart {
     private final PowerManager mPowerManager;
     private final ApplicationsState mApplicationsState;
     private final List<RecentAppStatsListener> mAppStatsListeners;
+    private final RecentAppsTracker mRecentAppsTracker;
     private Calendar mCalendar;
 
     static {
@@ -93,10 +92,18 @@ public class RecentAppStatsMixin implements LifecycleObserver, OnStart {
                 (Application) mContext.getApplicationContext());
         mRecentApps = new ArrayList<>();
         mAppStatsListeners = new ArrayList<>();
+        mRecentAppsTracker = RecentAppsTracker.getInstance(mContext);
     }
 
     @Override
     public void onStart() {
+        // Shows the apps tracked so far right away, the load then brings them up to date.
+        final List<UsageStatsWrapper> trackedApps = loadTrackedRecentApps(mMaximumApps);
+        if (!trackedApps.isEmpty()) {
+            for (RecentAppStatsListener listener : mAppStatsListeners) {
+                listener.onReloadDataCompleted(trackedApps);
+            }
+        }
         ThreadUtils.postOnBackgroundThread(() -> {
             loadDisplayableRecentApps(mMaximumApps);
             for (RecentAppStatsListener listener : mAppStatsListeners) {
@@ -115,7 +122,7 @@ public class RecentAppStatsMixin implements LifecycleObserver, OnStart {
         mCalendar = Calendar.getInstance();
         mCalendar.add(Calendar.DAY_OF_YEAR, -1);
 
-        List<UsageStatsWrapper> usageStatsAllUsers = new ArrayList<>();
+        final List<List<UsageStatsWrapper>> usageStatsAllUsers = new ArrayList<>();
 
         List<UserHandle> profiles = mUserManager.getUserProfiles();
         for (UserHandle userHandle : profiles) {
@@ -134,53 +141,88 @@ public class RecentAppStatsMixin implements LifecycleObserver, OnStart {
             List<UsageStats> profileStats = usageStatsManager
                     .map(statsManager -> getRecentAppsStats(statsManager, userId))
                     .orElse(new ArrayList<>());
-            usageStatsAllUsers.addAll(profileStats.stream()
+            usageStatsAllUsers.add(profileStats.stream()
                         .map(usageStats-> new UsageStatsWrapper(usageStats, userId))
                         .collect(Collectors.toList()));
         }
 
-        // Sort apps by latest timestamp.
-        usageStatsAllUsers.sort(
-                Comparator.comparingLong(a -> -1 * a.mUsageStats.getLastTimeUsed()));
-        mRecentApps.addAll(usageStatsAllUsers.stream().limit(limit).collect(Collectors.toList()));
+        mRecentApps.addAll(mergeByLastTimeUsed(usageStatsAllUsers, limit));
     }
 
-    private List<UsageStats> getRecentAppsStats(UsageStatsManager usageStatsManager, int userId) {
-        final List<UsageStats> recentAppStats = mPowerManager.isPowerSaveMode()
-                ? new ArrayList<>()
-                : usageStatsManager.queryUsageStats(
-                        UsageStatsManager.INTERVAL_BEST, mCalendar.getTimeInMillis(),
-                        System.currentTimeMillis());
-
-        final Map<String, UsageStats> map = new ArrayMap<>();
-        for (final UsageStats pkgStats : recentAppStats) {
-            if (!shouldIncludePkgInRecents(pkgStats, userId)) {
-                continue;
-            }
-            final String pkgName = pkgStats.getPackageName();
-            final UsageStats existingStats = map.get(pkgName);
-            if (existingStats == null) {
-                map.put(pkgName, pkgStats);
-            } else {
-                existingStats.add(pkgStats);
-            }
+    /**
+     * Returns the {@code limit} latest apps tracked by {@link RecentAppsTracker}, without querying
+     * the usage stats. After Settings restarts, these are the apps persisted by the last load.
+     */
+    @VisibleForTesting
+    List<UsageStatsWrapper> loadTrackedRecentApps(int limit) {
+        if (mPowerManager.isPowerSaveMode()) {
+            return new ArrayList<>();
         }
-        final List<UsageStats> packageStats = new ArrayList<>(map.values());
-        packageStats.sort(Comparator.comparingLong(UsageStats::getLastTimeUsed).reversed());
-        return packageStats;
+        final Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, -1);
+        final List<List<UsageStatsWrapper>> usageStatsAllUsers = new ArrayList<>();
+        for (UserHandle userHandle : mUserManager.getUserProfiles()) {
+            final int userId = userHandle.getIdentifier();
+            usageStatsAllUsers.add(mRecentAppsTracker
+                    .getTrackedRecentApps(userId, calendar.getTimeInMillis())
+                    .stream()
+                    .map(usageStats -> new UsageStatsWrapper(usageStats, userId))
+                    .collect(Collectors.toList()));
+        }
+        return mergeByLastTimeUsed(usageStatsAllUsers, limit);
     }
 
     /**
-     * Whether or not the app should be included in recent list.
+     * Merges the apps of each profile, each sorted by latest timestamp, into the {@code limit}
+     * latest ones. Apps used at the same time are kept in the order of the profiles.
      */
-    private boolean shouldIncludePkgInRecents(UsageStats stat, int userId) {
-        final String pkgName = stat.getPackageName();
-        if (stat.getLastTimeUsed() < mCalendar.getTimeInMillis()) {
-            Log.d(TAG, "Invalid timestamp (usage time is more than 24 hours ago), skipping "
-                    + pkgName);
-            return false;
+    @VisibleForTesting
+    static List<UsageStatsWrapper> mergeByLastTimeUsed(
+            List<List<UsageStatsWrapper>> usageStatsAllUsers, int limit) {
+        // Position in the list of each profile, the profile with the latest next app on top.
+        final PriorityQueue<int[]> heads = new PriorityQueue<>(
+                Math.max(1, usageStatsAllUsers.size()), (a, b) -> {
+                    final int timeCmp = Long.compare(
+                            getLastTimeUsed(usageStatsAllUsers, b),
+                            getLastTimeUsed(usageStatsAllUsers, a));
+                    return timeCmp != 0 ? timeCmp : Integer.compare(a[0], b[0]);
+                });
+        for (int i = 0; i < usageStatsAllUsers.size(); i++) {
+            if (!usageStatsAllUsers.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        final List<UsageStatsWrapper> recentApps = new ArrayList<>(limit);
+        while (recentApps.size() < limit && !heads.isEmpty()) {
+            final int[] head = heads.poll();
+            final List<UsageStatsWrapper> profileStats = usageStatsAllUsers.get(head[0]);
+            recentApps.add(profileStats.get(head[1]));
+            if (++head[1] < profileStats.size()) {
+                heads.add(head);
+            }
+        }
+        return recentApps;
+    }
+
+    private static long getLastTimeUsed(List<List<UsageStatsWrapper>> usageStatsAllUsers,
+            int[] head) {
+        return usageStatsAllUsers.get(head[0]).get(head[1]).mUsageStats.getLastTimeUsed();
+    }
+
+    private List<UsageStats> getRecentAppsStats(UsageStatsManager usageStatsManager, int userId) {
+        if (mPowerManager.isPowerSaveMode()) {
+            return new ArrayList<>();
         }
+        return mRecentAppsTracker.getRecentApps(usageStatsManager, userId,
+                mCalendar.getTimeInMillis(), System.currentTimeMillis(),
+                this::shouldIncludePkgInRecents);
+    }
 
+    /**
+     * Whether or not the app should be included in recent list. The result is cached by
+     * {@link RecentAppsTracker} until the package changes.
+     */
+    private boolean shouldIncludePkgInRecents(String pkgName, int userId) {
         if (SKIP_SYSTEM_PACKAGES.contains(pkgName)) {
             Log.d(TAG, "System package, skipping " + pkgName);
             return false;
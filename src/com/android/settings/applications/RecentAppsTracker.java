@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Process-wide tracker of the apps recently used by each user.
+ *
+ * The last used time of the apps of a user is loaded once from the usage stats, then kept up to
+ * date from the usage events reported since the previous load. Only the most recent apps are kept
+ * and persisted, so that the recent apps can be shown right away after Settings restarts. Whether
+ * a package can be shown is checked once until the package changes.
+ *
+ * The usage stats are queried and filtered without holding the lock, so that the package changes
+ * reported on the main thread never wait for them.
+ */
+final class RecentAppsTracker implements PackageInventory.OnPackagesChangedListener {
+    private static final String TAG = "RecentAppsTracker";
+
+    @VisibleForTesting
+    static final String PREFS_NAME = "recent_apps";
+    @VisibleForTesting
+    static final String KEY_WATERMARK_PREFIX = "watermark_";
+    @VisibleForTesting
+    static final String KEY_APPS_PREFIX = "apps_";
+
+    @VisibleForTesting
+    static final int MAX_TRACKED_APPS = 32;
+
+    private static final Comparator<UsageStats> MOST_RECENT_FIRST =
+            Comparator.comparingLong(UsageStats::getLastTimeUsed).reversed();
+
+    private static final Object sLock = new Object();
+    private static RecentAppsTracker sInstance;
+
+    /** Checks which need the package manager, cached until the package changes. */
+    interface PackageFilter {
+        boolean isDisplayable(String packageName, int userId);
+    }
+
+    private final Context mContext;
+    private final Object mLock = new Object();
+    // Last used time of the most recent apps of each user, guarded by mLock.
+    private final SparseArray<ArrayMap<String, Long>> mLastTimeUsed = new SparseArray<>();
+    // End time of the last usage query of each user, guarded by mLock.
+    private final SparseLongArray mWatermarks = new SparseLongArray();
+    // Incremented each time the apps of a user are updated or removed, guarded by mLock.
+    private final SparseIntArray mVersions = new SparseIntArray();
+    // Whether a package can be shown, keyed by user id and package name, guarded by mLock.
+    private final ArrayMap<String, Boolean> mDisplayable = new ArrayMap<>();
+    // Incremented when the packages change, guarded by mLock.
+    private int mDisplayableGeneration;
+
+    private RecentAppsTracker(Context context) {
+        mContext = context;
+    }
+
+    static RecentAppsTracker getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (sLock) {
+            if (sInstance == null || sInstance.mContext != appContext) {
+                sInstance = new RecentAppsTracker(appContext);
+                PackageInventory.getInstance(appContext).addOnPackagesChangedListener(sInstance);
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Returns the apps of {@code userId} used between {@code beginTime} and {@code endTime} that
+     * pass {@code filter}, most recent first.
+     */
+    @WorkerThread
+    @NonNull
+    List<UsageStats> getRecentApps(@NonNull UsageStatsManager usageStatsManager, int userId,
+            long beginTime, long endTime, @NonNull PackageFilter filter) {
+        ArrayMap<String, Long> lastTimeUsed;
+        final long watermark;
+        final int version;
+        synchronized (mLock) {
+            lastTimeUsed = getLastTimeUsedLocked(userId);
+            if (lastTimeUsed != null) {
+                // Updated out of the lock, the tracked apps are replaced when merging.
+                lastTimeUsed = new ArrayMap<>(lastTimeUsed);
+            }
+            watermark = mWatermarks.get(userId);
+            version = mVersions.get(userId);
+        }
+        final List<UsageStats> recentApps;
+        if (lastTimeUsed == null || watermark < beginTime || watermark > endTime) {
+            recentApps = queryUsageStats(usageStatsManager, userId, beginTime, endTime, filter);
+            lastTimeUsed = new ArrayMap<>(recentApps.size());
+            for (UsageStats stats : recentApps) {
+                lastTimeUsed.put(stats.getPackageName(), stats.getLastTimeUsed());
+            }
+        } else {
+            queryEvents(usageStatsManager, userId, watermark, endTime, filter, lastTimeUsed);
+            recentApps = new ArrayList<>(lastTimeUsed.size());
+            for (int i = lastTimeUsed.size() - 1; i >= 0; i--) {
+                final String packageName = lastTimeUsed.keyAt(i);
+                if (lastTimeUsed.valueAt(i) < beginTime) {
+                    lastTimeUsed.removeAt(i);
+                } else if (isDisplayable(packageName, userId, filter)) {
+                    recentApps.add(createUsageStats(packageName, lastTimeUsed.valueAt(i)));
+                }
+            }
+            recentApps.sort(MOST_RECENT_FIRST);
+        }
+        trimToSize(lastTimeUsed, MAX_TRACKED_APPS);
+        synchronized (mLock) {
+            // Drops the update if another one was merged or the user was removed meanwhile, the
+            // apps of the user are then queried again from the newer watermark next time.
+            if (version == mVersions.get(userId)) {
+                mVersions.put(userId, version + 1);
+                mLastTimeUsed.put(userId, lastTimeUsed);
+                mWatermarks.put(userId, endTime);
+                persist(userId, lastTimeUsed, endTime);
+            }
+        }
+        return recentApps;
+    }
+
+    /**
+     * Returns the apps of {@code userId} tracked by the latest update, or persisted by a previous
+     * process, which were used after {@code beginTime}, most recent first. Nothing is queried, so
+     * the apps used since the latest update are missing.
+     */
+    @NonNull
+    List<UsageStats> getTrackedRecentApps(int userId, long beginTime) {
+        final List<UsageStats> recentApps = new ArrayList<>();
+        synchronized (mLock) {
+            final ArrayMap<String, Long> lastTimeUsed = getLastTimeUsedLocked(userId);
+            if (lastTimeUsed == null) {
+                return recentApps;
+            }
+            for (int i = 0; i < lastTimeUsed.size(); i++) {
+                final String packageName = lastTimeUsed.keyAt(i);
+                // Only the displayable apps are tracked, unless the package changed since.
+                if (lastTimeUsed.valueAt(i) >= beginTime
+                        && !Boolean.FALSE.equals(mDisplayable.get(userId + "/" + packageName))) {
+                    recentApps.add(createUsageStats(packageName, lastTimeUsed.valueAt(i)));
+                }
+            }
+        }
+        recentApps.sort(MOST_RECENT_FIRST);
+        return recentApps;
+    }
+
+    @Override
+    public void onPackagesChanged(@NonNull String[] packageNames) {
+        synchronized (mLock) {
+            mDisplayableGeneration++;
+            for (int i = mDisplayable.size() - 1; i >= 0; i--) {
+                final String key = mDisplayable.keyAt(i);
+                for (String packageName : packageNames) {
+                    if (key.endsWith("/" + packageName)) {
+                        mDisplayable.removeAt(i);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onUserRemoved(int userId) {
+        synchronized (mLock) {
+            mLastTimeUsed.remove(userId);
+            mWatermarks.delete(userId);
+            mVersions.put(userId, mVersions.get(userId) + 1);
+            getPrefs().edit()
+                    .remove(KEY_WATERMARK_PREFIX + userId)
+                    .remove(KEY_APPS_PREFIX + userId)
+                    .apply();
+        }
+    }
+
+    private List<UsageStats> queryUsageStats(UsageStatsManager usageStatsManager, int userId,
+            long beginTime, long endTime, PackageFilter filter) {
+        final List<UsageStats> usageStats = usageStatsManager.queryUsageStats(
+                UsageStatsManager.INTERVAL_BEST, beginTime, endTime);
+        final Map<String, UsageStats> map = new ArrayMap<>();
+        if (usageStats != null) {
+            for (final UsageStats pkgStats : usageStats) {
+                if (pkgStats.getLastTimeUsed() < beginTime) {
+                    Log.d(TAG, "Invalid timestamp (usage time is more than 24 hours ago), "
+                            + "skipping " + pkgStats.getPackageName());
+                    continue;
+                }
+                if (!isDisplayable(pkgStats.getPackageName(), userId, filter)) {
+                    continue;
+                }
+                final String pkgName = pkgStats.getPackageName();
+                final UsageStats existingStats = map.get(pkgName);
+                if (existingStats == null) {
+                    map.put(pkgName, pkgStats);
+                } else {
+                    existingStats.add(pkgStats);
+                }
+            }
+        }
+        final List<UsageStats> packageStats = new ArrayList<>(map.values());
+        packageStats.sort(MOST_RECENT_FIRST);
+        return packageStats;
+    }
+
+    private void queryEvents(UsageStatsManager usageStatsManager, int userId, long beginTime,
+            long endTime, PackageFilter filter, ArrayMap<String, Long> lastTimeUsed) {
+        final UsageEvents events = usageStatsManager.queryEvents(beginTime, endTime);
+        if (events == null) {
+            return;
+        }
+        final UsageEvents.Event event = new UsageEvents.Event();
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            switch (event.getEventType()) {
+                case UsageEvents.Event.ACTIVITY_RESUMED:
+                case UsageEvents.Event.ACTIVITY_PAUSED:
+                case UsageEvents.Event.ACTIVITY_STOPPED:
+                    final String packageName = event.getPackageName();
+                    final Long time = lastTimeUsed.get(packageName);
+                    if ((time == null || time < event.getTimeStamp())
+                            && isDisplayable(packageName, userId, filter)) {
+                        lastTimeUsed.put(packageName, event.getTimeStamp());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private boolean isDisplayable(String packageName, int userId, PackageFilter filter) {
+        final String key = userId + "/" + packageName;
+        final int generation;
+        synchronized (mLock) {
+            final Boolean displayable = mDisplayable.get(key);
+            if (displayable != null) {
+                return displayable;
+            }
+            generation = mDisplayableGeneration;
+        }
+        final boolean displayable = filter.isDisplayable(packageName, userId);
+        synchronized (mLock) {
+            // Doesn't cache a check which may be out of date, if the packages changed meanwhile.
+            if (generation == mDisplayableGeneration) {
+                mDisplayable.put(key, displayable);
+            }
+        }
+        return displayable;
+    }
+
+    /** Keeps the {@code maxSize} most recent apps, using a min-heap of their last used time. */
+    @VisibleForTesting
+    static void trimToSize(ArrayMap<String, Long> lastTimeUsed, int maxSize) {
+        if (lastTimeUsed.size() <= maxSize) {
+            return;
+        }
+        // Indexes of the most recent apps, the least recent one on top.
+        final PriorityQueue<Integer> heap = new PriorityQueue<>(maxSize + 1,
+                Comparator.comparingLong(lastTimeUsed::valueAt));
+        for (int i = 0; i < lastTimeUsed.size(); i++) {
+            heap.add(i);
+            if (heap.size() > maxSize) {
+                heap.poll();
+            }
+        }
+        final ArrayMap<String, Long> mostRecent = new ArrayMap<>(maxSize);
+        for (int index : heap) {
+            mostRecent.put(lastTimeUsed.keyAt(index), lastTimeUsed.valueAt(index));
+        }
+        lastTimeUsed.clear();
+        lastTimeUsed.putAll(mostRecent);
+    }
+
+    private ArrayMap<String, Long> getLastTimeUsedLocked(int userId) {
+        ArrayMap<String, Long> lastTimeUsed = mLastTimeUsed.get(userId);
+        if (lastTimeUsed == null) {
+            lastTimeUsed = restore(userId);
+            if (lastTimeUsed != null) {
+                mLastTimeUsed.put(userId, lastTimeUsed);
+            }
+        }
+        return lastTimeUsed;
+    }
+
+    private ArrayMap<String, Long> restore(int userId) {
+        final SharedPreferences prefs = getPrefs();
+        final String apps = prefs.getString(KEY_APPS_PREFIX + userId, null);
+        if (apps == null) {
+            return null;
+        }
+        final ArrayMap<String, Long> lastTimeUsed = new ArrayMap<>();
+        for (String app : TextUtils.split(apps, ",")) {
+            final int separator = app.lastIndexOf(':');
+            try {
+                lastTimeUsed.put(app.substring(0, separator),
+                        Long.parseLong(app.substring(separator + 1)));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                Log.w(TAG, "Dropping malformed recent apps of user " + userId);
+                return null;
+            }
+        }
+        mWatermarks.put(userId, prefs.getLong(KEY_WATERMARK_PREFIX + userId, 0L));
+        return lastTimeUsed;
+    }
+
+    private void persist(int userId, ArrayMap<String, Long> lastTimeUsed, long watermark) {
+        final List<String> apps = new ArrayList<>(lastTimeUsed.size());
+        for (int i = 0; i < lastTimeUsed.size(); i++) {
+            apps.add(lastTimeUsed.keyAt(i) + ":" + lastTimeUsed.valueAt(i));
+        }
+        getPrefs().edit()
+                .putLong(KEY_WATERMARK_PREFIX + userId, watermark)
+                .putString(KEY_APPS_PREFIX + userId, TextUtils.join(",", apps))
+                .apply();
+    }
+
+    private SharedPreferences getPrefs() {
+        return mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static UsageStats createUsageStats(String packageName, long lastTimeUsed) {
+        final UsageStats stats = new UsageStats();
+        stats.mPackageName = packageName;
+        stats.mLastTimeUsed = lastTimeUsed;
+        return stats;
+    }
+}
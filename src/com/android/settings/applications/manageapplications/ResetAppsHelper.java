@@ -38,6 +38,7 @@ import android.util.Log;
 import androidx.appcompat.app.AlertDialog;
 
 import com.android.settings.R;
+import com.android.settings.applications.PackageInventory;
 import com.android.settings.fuelgauge.BatteryOptimizeUtils;
 
 import java.util.Arrays;
@@ -123,8 +124,8 @@ public class ResetAppsHelper implements DialogInterface.OnClickListener,
                             R.array.config_skip_reset_apps_package_name));
             for (UserHandle userHandle : mUm.getEnabledProfiles()) {
                 final int userId = userHandle.getIdentifier();
-                final List<ApplicationInfo> apps = mPm.getInstalledApplicationsAsUser(
-                        PackageManager.GET_DISABLED_COMPONENTS, userId);
+                final List<ApplicationInfo> apps = PackageInventory.getInstalledApplicationsAsUser(
+                        mContext, mPm, PackageManager.GET_DISABLED_COMPONENTS, userId);
                 for (ApplicationInfo app : apps) {
                     if (allowList.contains(app.packageName)) {
                         continue;
@@ -25,14 +25,18 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.IconDrawableFactory;
 import android.util.Pair;
 import android.view.View;
 
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import androidx.preference.Preference;
 import androidx.preference.Preference.OnPreferenceClickListener;
 import androidx.preference.PreferenceScreen;
@@ -40,9 +44,11 @@ import androidx.preference.PreferenceScreen;
 import com.android.settings.R;
 import com.android.settings.Utils;
 import com.android.settings.applications.AppInfoBase;
+import com.android.settings.applications.PackageInventory;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.widget.EmptyTextSettings;
 import com.android.settingslib.search.SearchIndexable;
+import com.android.settingslib.utils.ThreadUtils;
 import com.android.settingslib.widget.AppPreference;
 
 import java.text.Collator;
@@ -57,18 +63,21 @@ public class PictureInPictureSettings extends EmptyTextSettings {
     @VisibleForTesting
     static final List<String> IGNORE_PACKAGE_LIST = new ArrayList<>();
 
+    private static final int ROW_BATCH_SIZE = 20;
+
     static {
         IGNORE_PACKAGE_LIST.add(Utils.SYSTEMUI_PACKAGE_NAME);
     }
 
     /**
-     * Comparator by name, then user id.
+     * Comparator by name, then user id. Each label is loaded once.
      * {@see PackageItemInfo#DisplayNameComparator}
      */
     static class AppComparator implements Comparator<Pair<ApplicationInfo, Integer>> {
 
         private final Collator mCollator = Collator.getInstance();
         private final PackageManager mPm;
+        private final ArrayMap<ApplicationInfo, String> mLabels = new ArrayMap<>();
 
         public AppComparator(PackageManager pm) {
             mPm = pm;
@@ -76,23 +85,50 @@ public class PictureInPictureSettings extends EmptyTextSettings {
 
         public final int compare(Pair<ApplicationInfo, Integer> a,
                 Pair<ApplicationInfo, Integer> b) {
-            CharSequence sa = a.first.loadLabel(mPm);
-            if (sa == null) sa = a.first.name;
-            CharSequence sb = b.first.loadLabel(mPm);
-            if (sb == null) sb = b.first.name;
-            int nameCmp = mCollator.compare(sa.toString(), sb.toString());
+            int nameCmp = mCollator.compare(getLabel(a.first), getLabel(b.first));
             if (nameCmp != 0) {
                 return nameCmp;
             } else {
                 return a.second - b.second;
             }
         }
+
+        private String getLabel(ApplicationInfo info) {
+            String label = mLabels.get(info);
+            if (label == null) {
+                CharSequence sa = info.loadLabel(mPm);
+                if (sa == null) sa = info.name;
+                label = sa.toString();
+                mLabels.put(info, label);
+            }
+            return label;
+        }
+    }
+
+    /** Row of the list, prepared in the background. */
+    private static class AppRow {
+        final String mKey;
+        final ApplicationInfo mInfo;
+        final CharSequence mTitle;
+        final Drawable mIcon;
+        final CharSequence mSummary;
+
+        AppRow(String key, ApplicationInfo info, CharSequence title, Drawable icon,
+                CharSequence summary) {
+            mKey = key;
+            mInfo = info;
+            mTitle = title;
+            mIcon = icon;
+            mSummary = summary;
+        }
     }
 
     private Context mContext;
     private PackageManager mPackageManager;
     private UserManager mUserManager;
     private IconDrawableFactory mIconDrawableFactory;
+    // Bumped when the list is reloaded or the screen paused, to drop the rows of older loads.
+    private volatile int mLoadGeneration;
 
     /**
      * @return true if the package has any activities that declare that they support
@@ -141,41 +177,94 @@ public class PictureInPictureSettings extends EmptyTextSettings {
     public void onResume() {
         super.onResume();
 
-        // Clear the prefs
-        final PreferenceScreen screen = getPreferenceScreen();
-        screen.removeAll();
-
         // Fetch the set of applications for each profile which have at least one activity that
-        // declare that they support picture-in-picture
+        // declare that they support picture-in-picture, off the main thread.
+        final int generation = ++mLoadGeneration;
+        final Context prefContext = getPrefContext();
+        ThreadUtils.postOnBackgroundThread(() -> loadAppRows(prefContext, generation));
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mLoadGeneration++;
+    }
+
+    @WorkerThread
+    private void loadAppRows(Context prefContext, int generation) {
         final ArrayList<Pair<ApplicationInfo, Integer>> pipApps =
                 collectPipApps(UserHandle.myUserId());
         Collections.sort(pipApps, new AppComparator(mPackageManager));
 
-        // Rebuild the list of prefs
-        final Context prefContext = getPrefContext();
+        // Stream the rows in batches, so that the top of the list shows up before all the icons
+        // are loaded.
+        final List<AppRow> rows = new ArrayList<>(pipApps.size());
         for (final Pair<ApplicationInfo, Integer> appData : pipApps) {
-            final ApplicationInfo appInfo = appData.first;
-            final int userId = appData.second;
-            final UserHandle user = UserHandle.of(userId);
-            final String packageName = appInfo.packageName;
-            final CharSequence label = appInfo.loadLabel(mPackageManager);
-
-            final Preference pref = new AppPreference(prefContext);
-            pref.setIcon(mIconDrawableFactory.getBadgedIcon(appInfo, userId));
-            pref.setTitle(mPackageManager.getUserBadgedLabel(label, user));
-            pref.setSummary(PictureInPictureDetails.getPreferenceSummary(prefContext,
-                    appInfo.uid, packageName));
-            pref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
-                @Override
-                public boolean onPreferenceClick(Preference preference) {
-                    AppInfoBase.startAppInfoFragment(PictureInPictureDetails.class,
-                            getString(R.string.picture_in_picture_app_detail_title),
-                            packageName, appInfo.uid,
-                            PictureInPictureSettings.this, -1, getMetricsCategory());
-                    return true;
+            if (generation != mLoadGeneration) {
+                return;
+            }
+            rows.add(createAppRow(prefContext, appData.first, appData.second));
+            if (rows.size() % ROW_BATCH_SIZE == 0 && rows.size() < pipApps.size()) {
+                final List<AppRow> batch = new ArrayList<>(rows);
+                ThreadUtils.postOnMainThread(() -> updatePreferences(batch, generation, false));
+            }
+        }
+        ThreadUtils.postOnMainThread(() -> updatePreferences(rows, generation, true));
+    }
+
+    private AppRow createAppRow(Context prefContext, ApplicationInfo appInfo, int userId) {
+        final String packageName = appInfo.packageName;
+        final CharSequence label = appInfo.loadLabel(mPackageManager);
+        return new AppRow(packageName + "|" + userId, appInfo,
+                mPackageManager.getUserBadgedLabel(label, UserHandle.of(userId)),
+                mIconDrawableFactory.getBadgedIcon(appInfo, userId),
+                PictureInPictureDetails.getPreferenceSummary(prefContext, appInfo.uid,
+                        packageName));
+    }
+
+    /**
+     * Updates the list to show {@code rows}, reusing the preferences of the rows already shown.
+     * The preferences of other rows are removed once the list is {@code complete}.
+     */
+    private void updatePreferences(List<AppRow> rows, int generation, boolean complete) {
+        if (generation != mLoadGeneration || !isAdded()) {
+            return;
+        }
+        final PreferenceScreen screen = getPreferenceScreen();
+        final Context prefContext = getPrefContext();
+        final ArraySet<String> keys = new ArraySet<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            final AppRow row = rows.get(i);
+            keys.add(row.mKey);
+            Preference pref = screen.findPreference(row.mKey);
+            if (pref == null) {
+                pref = new AppPreference(prefContext);
+                pref.setKey(row.mKey);
+                final ApplicationInfo appInfo = row.mInfo;
+                pref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        AppInfoBase.startAppInfoFragment(PictureInPictureDetails.class,
+                                getString(R.string.picture_in_picture_app_detail_title),
+                                appInfo.packageName, appInfo.uid,
+                                PictureInPictureSettings.this, -1, getMetricsCategory());
+                        return true;
+                    }
+                });
+                screen.addPreference(pref);
+            }
+            pref.setOrder(i);
+            pref.setIcon(row.mIcon);
+            pref.setTitle(row.mTitle);
+            pref.setSummary(row.mSummary);
+        }
+        if (complete) {
+            for (int i = screen.getPreferenceCount() - 1; i >= 0; i--) {
+                final Preference pref = screen.getPreference(i);
+                if (!keys.contains(pref.getKey())) {
+                    screen.removePreference(pref);
                 }
-            });
-            screen.addPreference(pref);
+            }
         }
     }
 
@@ -207,12 +296,22 @@ public class PictureInPictureSettings extends EmptyTextSettings {
         }
 
         for (int id : userIds) {
-            final List<PackageInfo> installedPackages = mPackageManager.getInstalledPackagesAsUser(
-                    GET_ACTIVITIES, id);
-            for (PackageInfo packageInfo : installedPackages) {
-                if (checkPackageHasPictureInPictureActivities(packageInfo.packageName,
-                        packageInfo.activities)) {
-                    pipApps.add(new Pair<>(packageInfo.applicationInfo, id));
+            if (mContext == null || !PackageInventory.isCacheable(mPackageManager)) {
+                final List<PackageInfo> installedPackages =
+                        mPackageManager.getInstalledPackagesAsUser(GET_ACTIVITIES, id);
+                for (PackageInfo packageInfo : installedPackages) {
+                    if (checkPackageHasPictureInPictureActivities(packageInfo.packageName,
+                            packageInfo.activities)) {
+                        pipApps.add(new Pair<>(packageInfo.applicationInfo, id));
+                    }
+                }
+                continue;
+            }
+            // The inventory scans the activities once, then only the packages that change.
+            for (ApplicationInfo appInfo : PackageInventory.getInstance(mContext)
+                    .getSnapshot(id, /* flags */ 0).getPictureInPictureApplications()) {
+                if (!IGNORE_PACKAGE_LIST.contains(appInfo.packageName)) {
+                    pipApps.add(new Pair<>(appInfo, id));
                 }
             }
         }
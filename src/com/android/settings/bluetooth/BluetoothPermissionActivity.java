@@ -27,7 +27,6 @@ import android.content.IntentFilter;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.telephony.SubscriptionInfo;
-import android.telephony.SubscriptionManager;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -254,8 +253,7 @@ public class BluetoothPermissionActivity extends AlertActivity implements
 
     // find any phone number available from active subscriptions
     String getAnyPhoneNumberFromSubscriptions() {
-        SubscriptionManager sm = getSystemService(SubscriptionManager.class);
-        List<SubscriptionInfo> subs = SubscriptionUtil.getActiveSubscriptions(sm);
+        List<SubscriptionInfo> subs = SubscriptionUtil.getActiveSubscriptions(this);
         if ((subs == null) || (subs.size() == 0)) {
             return "";
         }
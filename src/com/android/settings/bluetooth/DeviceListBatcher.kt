@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.bluetooth
+
+import com.android.settingslib.bluetooth.CachedBluetoothDevice
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * Collects discovered or updated devices and hands them over in batches, instead of one main
+ * thread hop per scan callback.
+ *
+ * Devices added within one batch interval are deduplicated by address. [select] then picks the
+ * devices to handle on [mainDispatcher], where the state they are checked against lives,
+ * [prepare] runs on [backgroundDispatcher] to filter and build what is needed, and [commit]
+ * applies the result on [mainDispatcher].
+ */
+class DeviceListBatcher<T>(
+    private val scope: CoroutineScope,
+    private val select: (List<CachedBluetoothDevice>) -> List<CachedBluetoothDevice>,
+    private val prepare: (List<CachedBluetoothDevice>) -> List<T>,
+    private val commit: (List<T>) -> Unit,
+    private val intervalMillis: Long = BATCH_INTERVAL_MILLIS,
+    private val backgroundDispatcher: CoroutineDispatcher = Dispatchers.Default,
+    private val mainDispatcher: CoroutineDispatcher = Dispatchers.Main,
+) {
+    private val lock = Any()
+    private val pendingDevices = LinkedHashMap<String, CachedBluetoothDevice>()
+    private var flushJob: Job? = null
+    // Bumped by clear() so that a batch drained before it is not committed after it.
+    @Volatile
+    private var generation = 0
+    private var cancelled = false
+
+    /** Queues [cachedDevice] for the next batch, replacing any queued update of the same device. */
+    fun add(cachedDevice: CachedBluetoothDevice) {
+        synchronized(lock) {
+            if (cancelled) return
+            pendingDevices[cachedDevice.address] = cachedDevice
+            if (flushJob == null) {
+                flushJob = scope.launch(backgroundDispatcher) { flush() }
+            }
+        }
+    }
+
+    /** Drops the queued devices and any batch which is not committed yet. */
+    fun clear() {
+        synchronized(lock) {
+            generation++
+            flushJob?.cancel()
+            flushJob = null
+            pendingDevices.clear()
+        }
+    }
+
+    /** Drops the queued devices like [clear], and ignores any device added afterwards. */
+    fun cancel() {
+        synchronized(lock) {
+            cancelled = true
+            clear()
+        }
+    }
+
+    private suspend fun flush() {
+        delay(intervalMillis)
+        val batchGeneration: Int
+        val devices: List<CachedBluetoothDevice>
+        synchronized(lock) {
+            flushJob = null
+            batchGeneration = generation
+            devices = pendingDevices.values.toList()
+            pendingDevices.clear()
+        }
+        val selectedDevices = withContext(mainDispatcher) {
+            if (batchGeneration == generation) select(devices) else emptyList()
+        }
+        if (selectedDevices.isEmpty()) return
+        val batch = prepare(selectedDevices)
+        if (batch.isEmpty()) return
+        withContext(mainDispatcher) {
+            if (batchGeneration == generation) {
+                commit(batch)
+            }
+        }
+    }
+
+    companion object {
+        /** Roughly one frame, so that the list changes at most once per frame. */
+        const val BATCH_INTERVAL_MILLIS = 16L
+    }
+}
@@ -90,6 +90,16 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
 
     private var showDevicesWithoutNames = false
 
+    // Only set between onStart() and onStop(), read from the scan callbacks as well.
+    @Volatile
+    private var deviceListBatcher: DeviceListBatcher<BluetoothDevicePreference>? = null
+
+    // Device preferences beyond the visible limit, shown when "See more" is clicked.
+    private val hiddenDevicePreferences = ArrayList<BluetoothDevicePreference>()
+    private var visibleDeviceLimit = DEVICE_PAGE_SIZE
+    private var visibleDeviceCount = 0
+    private var showMorePreference: Preference? = null
+
     protected fun setFilter(filterType: Int) {
         filter = BluetoothDeviceFilter.getFilter(filterType)
     }
@@ -132,6 +142,11 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
     override fun onStart() {
         super.onStart()
         if (mLocalManager == null || isUiRestricted) return
+        deviceListBatcher = lifecycleScope?.let {
+            DeviceListBatcher(
+                it, ::selectNewDevices, ::createDevicePreferences, ::addDevicePreferences
+            )
+        }
         mLocalManager!!.foregroundActivity = activity
         mLocalManager!!.eventManager.registerCallback(this)
     }
@@ -141,13 +156,20 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
         if (mLocalManager == null || isUiRestricted) {
             return
         }
+        // Pending batches must not touch the list once the fragment is stopped
+        deviceListBatcher?.cancel()
+        deviceListBatcher = null
         removeAllDevices()
         mLocalManager!!.foregroundActivity = null
         mLocalManager!!.eventManager.unregisterCallback(this)
     }
 
     fun removeAllDevices() {
+        deviceListBatcher?.clear()
         devicePreferenceMap.clear()
+        hiddenDevicePreferences.clear()
+        visibleDeviceLimit = DEVICE_PAGE_SIZE
+        visibleDeviceCount = 0
         mDeviceListGroup!!.removeAll()
     }
 
@@ -184,23 +206,45 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
     }
 
     override fun onDeviceAdded(cachedDevice: CachedBluetoothDevice) {
-        lifecycleScope?.launch {
-            addDevice(cachedDevice)
-        }
+        deviceListBatcher?.add(cachedDevice)
     }
 
-    private suspend fun addDevice(cachedDevice: CachedBluetoothDevice) =
-        withContext(Dispatchers.Default) {
-            // TODO(b/289189853): Replace checking if `filter` is null or not to decide which type
-            // of Bluetooth scanning method will be used
-            val filterMatched = filter == null || filter!!.matches(cachedDevice.device) == true
-            // Prevent updates while the list shows one of the state messages
-            if (mBluetoothAdapter!!.state == BluetoothAdapter.STATE_ON && filterMatched) {
-                createDevicePreference(cachedDevice)
+    /** Returns the devices of a batch which are not in the list yet, called on main thread. */
+    @VisibleForTesting
+    fun selectNewDevices(cachedDevices: List<CachedBluetoothDevice>) =
+        cachedDevices.filter { !devicePreferenceMap.containsKey(it) }
+
+    /** Filters a batch of new devices and creates their preferences, sorted. */
+    @VisibleForTesting
+    fun createDevicePreferences(
+        cachedDevices: List<CachedBluetoothDevice>
+    ): List<BluetoothDevicePreference> {
+        // Prevent updates while the list shows one of the state messages
+        if (mBluetoothAdapter!!.state != BluetoothAdapter.STATE_ON) return emptyList()
+        return cachedDevices
+            .filter { cachedDevice ->
+                // TODO(b/289189853): Replace checking if `filter` is null or not to decide which
+                // type of Bluetooth scanning method will be used
+                filter == null || filter!!.matches(cachedDevice.device) == true
             }
-        }
+            .sorted()
+            .map { cachedDevice ->
+                BluetoothDevicePreference(
+                    prefContext,
+                    cachedDevice,
+                    showDevicesWithoutNames,
+                    BluetoothDevicePreference.SortType.TYPE_FIFO,
+                ).apply {
+                    key = cachedDevice.device.address
+                    //Set hideSecondTarget is true if it's bonded device.
+                    hideSecondTarget(true)
+                }
+            }
+    }
 
-    private suspend fun createDevicePreference(cachedDevice: CachedBluetoothDevice) {
+    /** Adds a batch of device preferences, up to the visible limit. */
+    @VisibleForTesting
+    fun addDevicePreferences(preferences: List<BluetoothDevicePreference>) {
         if (mDeviceListGroup == null) {
             Log.w(
                 TAG,
@@ -208,23 +252,57 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
             )
             return
         }
-        // Only add device preference when it's not found in the map and there's no other state
-        // message showing in the list
-        val preference = devicePreferenceMap.computeIfAbsent(cachedDevice) {
-            BluetoothDevicePreference(
-                prefContext,
-                cachedDevice,
-                showDevicesWithoutNames,
-                BluetoothDevicePreference.SortType.TYPE_FIFO,
-            ).apply {
-                key = cachedDevice.device.address
-                //Set hideSecondTarget is true if it's bonded device.
-                hideSecondTarget(true)
+        for (preference in preferences) {
+            // Only add device preference when it's not found in the map
+            if (devicePreferenceMap.putIfAbsent(preference.cachedDevice, preference) != null) {
+                continue
+            }
+            if (visibleDeviceCount < visibleDeviceLimit) {
+                showDevicePreference(preference)
+            } else {
+                hiddenDevicePreferences.add(preference)
             }
         }
-        withContext(Dispatchers.Main) {
-            mDeviceListGroup!!.addPreference(preference)
-            initDevicePreference(preference)
+        updateShowMorePreference()
+    }
+
+    private fun showDevicePreference(preference: BluetoothDevicePreference) {
+        mDeviceListGroup!!.addPreference(preference)
+        initDevicePreference(preference)
+        visibleDeviceCount++
+    }
+
+    @VisibleForTesting
+    fun showMoreDevices() {
+        visibleDeviceLimit += DEVICE_PAGE_SIZE
+        showHiddenDevices()
+        updateShowMorePreference()
+    }
+
+    private fun showHiddenDevices() {
+        while (visibleDeviceCount < visibleDeviceLimit && hiddenDevicePreferences.isNotEmpty()) {
+            showDevicePreference(hiddenDevicePreferences.removeAt(0))
+        }
+    }
+
+    private fun updateShowMorePreference() {
+        val group = mDeviceListGroup ?: return
+        if (hiddenDevicePreferences.isEmpty()) {
+            showMorePreference?.let { group.removePreference(it) }
+            return
+        }
+        val preference = showMorePreference ?: Preference(prefContext).apply {
+            key = KEY_SHOW_MORE
+            setTitle(R.string.see_more)
+            // Stays below the devices, which are ordered as added.
+            order = Int.MAX_VALUE - 1
+            setOnPreferenceClickListener {
+                showMoreDevices()
+                true
+            }
+        }.also { showMorePreference = it }
+        if (group.findPreference<Preference>(KEY_SHOW_MORE) == null) {
+            group.addPreference(preference)
         }
     }
 
@@ -243,7 +321,11 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
 
     override fun onDeviceDeleted(cachedDevice: CachedBluetoothDevice) {
         devicePreferenceMap.remove(cachedDevice)?.let {
+            if (hiddenDevicePreferences.remove(it)) return
             mDeviceListGroup!!.removePreference(it)
+            visibleDeviceCount--
+            showHiddenDevices()
+            updateShowMorePreference()
         }
     }
 
@@ -335,19 +417,22 @@ abstract class DeviceListPreferenceFragment(restrictedKey: String?) :
     }
 
     private fun handleLeScanResult(result: ScanResult) {
-        lifecycleScope?.launch {
-            withContext(Dispatchers.Default) {
-                val device = result.device
-                val cachedDevice = mCachedDeviceManager!!.findDevice(device)
-                    ?: mCachedDeviceManager!!.addDevice(device, leScanFilters)
-                addDevice(cachedDevice)
-            }
+        lifecycleScope?.launch(Dispatchers.Default) {
+            val device = result.device
+            val cachedDevice = mCachedDeviceManager!!.findDevice(device)
+                ?: mCachedDeviceManager!!.addDevice(device, leScanFilters)
+            onDeviceAdded(cachedDevice)
         }
     }
 
     companion object {
         private const val TAG = "DeviceListPreferenceFragment"
         private const val KEY_BT_SCAN = "bt_scan"
+        private const val KEY_SHOW_MORE = "bt_show_more_devices"
+
+        // Number of discovered devices shown at once, more are shown page by page.
+        @VisibleForTesting
+        const val DEVICE_PAGE_SIZE = 50
 
         // Copied from BluetoothDeviceNoNamePreferenceController.java
         private const val BLUETOOTH_SHOW_DEVICES_WITHOUT_NAMES_PROPERTY =
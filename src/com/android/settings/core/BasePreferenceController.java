@@ -30,10 +30,12 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
 import com.android.settings.Utils;
+import com.android.settings.dashboard.AsyncSummaryLoader;
 import com.android.settings.slices.SettingsSliceProvider;
 import com.android.settings.slices.SliceData;
 import com.android.settings.slices.Sliceable;
@@ -122,6 +124,8 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     protected final String mPreferenceKey;
     protected UiBlockListener mUiBlockListener;
     protected boolean mUiBlockerFinished;
+    @Nullable
+    private AsyncSummaryLoader mAsyncSummaryLoader;
     private boolean mIsForWork;
     @Nullable
     private UserHandle mWorkProfileUser;
@@ -385,6 +389,30 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
         mUiBlockerFinished = isFinished;
     }
 
+    /**
+     * Set {@link AsyncSummaryLoader} used to load the summary of {@link AsyncSummary} controllers.
+     */
+    public void setAsyncSummaryLoader(@Nullable AsyncSummaryLoader asyncSummaryLoader) {
+        mAsyncSummaryLoader = asyncSummaryLoader;
+    }
+
+    /**
+     * @return whether the summary of this {@link AsyncSummary} controller is loaded by an
+     * {@link AsyncSummaryLoader}.
+     */
+    protected boolean hasAsyncSummaryLoader() {
+        return mAsyncSummaryLoader != null && this instanceof AsyncSummary;
+    }
+
+    @Override
+    protected void refreshSummary(Preference preference) {
+        if (preference != null && hasAsyncSummaryLoader()) {
+            mAsyncSummaryLoader.loadSummary(this, preference);
+            return;
+        }
+        super.refreshSummary(preference);
+    }
+
     public boolean getSavedPrefVisibility() {
         return mPrefVisibility;
     }
@@ -415,6 +443,22 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     public interface UiBlocker {
     }
 
+    /**
+     * Used for {@link BasePreferenceController} whose summary needs binder calls or disk I/O.
+     * When hosted by a {@link com.android.settings.dashboard.DashboardFragment}, the summary is
+     * loaded by {@link AsyncSummaryLoader} instead of {@link #getSummary()}, and the last known
+     * summary is shown until it's loaded.
+     *
+     * This must be used in {@link BasePreferenceController}
+     */
+    public interface AsyncSummary {
+        /**
+         * @return the summary text, computed on a background thread.
+         */
+        @WorkerThread
+        CharSequence getSummaryInBackground();
+    }
+
     /**
      * Set the metrics category of the parent fragment.
      *
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.Preference;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads summaries of {@link BasePreferenceController.AsyncSummary} controllers off the main
+ * thread.
+ *
+ * The last known summary of each preference is persisted, so that it can be shown immediately on
+ * cold start while the real summary is being computed. Loaded summaries are applied to the
+ * preferences together in the next frame.
+ */
+public class AsyncSummaryLoader {
+    private static final String TAG = "AsyncSummaryLoader";
+
+    @VisibleForTesting
+    static final String SHARED_PREFS_NAME = "async_summary_cache";
+    @VisibleForTesting
+    static final String KEY_LOCALE = "locale";
+
+    private final SharedPreferences mSummaryCache;
+    private final String mNamespace;
+    private final Map<String, Preference> mPreferences = new ArrayMap<>();
+    private final Map<String, CharSequence> mPendingSummaries = new ArrayMap<>();
+    private final Set<String> mInFlightKeys = new ArraySet<>();
+    private final Choreographer.FrameCallback mFrameCallback =
+            frameTimeNanos -> applyPendingSummaries();
+
+    private boolean mFrameScheduled;
+    private boolean mReleased;
+
+    /**
+     * @param namespace scope of the persisted summaries, usually the log tag of the host page.
+     */
+    public AsyncSummaryLoader(@NonNull Context context, @NonNull String namespace) {
+        mSummaryCache = context.getApplicationContext()
+                .getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        mNamespace = namespace;
+        // Persisted summaries are localized strings, drop them once the locale changes.
+        final String locale = Locale.getDefault().toLanguageTag();
+        if (!TextUtils.equals(locale, mSummaryCache.getString(KEY_LOCALE, null))) {
+            mSummaryCache.edit().clear().putString(KEY_LOCALE, locale).apply();
+        }
+    }
+
+    /**
+     * Shows the cached summary of {@code controller} on {@code preference} if any, and starts
+     * computing the up-to-date summary in background. Requests for a key that is already being
+     * loaded are ignored.
+     */
+    @MainThread
+    public void loadSummary(@NonNull BasePreferenceController controller,
+            @NonNull Preference preference) {
+        if (mReleased || !(controller instanceof BasePreferenceController.AsyncSummary)) {
+            return;
+        }
+        final String key = controller.getPreferenceKey();
+        mPreferences.put(key, preference);
+        if (preference.getSummary() == null) {
+            final String cachedSummary = mSummaryCache.getString(getCacheKey(key), null);
+            if (cachedSummary != null) {
+                preference.setSummary(cachedSummary);
+            }
+        }
+        if (!mInFlightKeys.add(key)) {
+            return;
+        }
+
+        final BasePreferenceController.AsyncSummary asyncSummary =
+                (BasePreferenceController.AsyncSummary) controller;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            CharSequence summary = null;
+            try {
+                summary = asyncSummary.getSummaryInBackground();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to load summary for " + key, e);
+            }
+            final CharSequence result = summary;
+            ThreadUtils.postOnMainThread(() -> onSummaryLoaded(key, result));
+        });
+    }
+
+    /** Stops applying summaries. Called when the host page is destroyed. */
+    @MainThread
+    public void release() {
+        mReleased = true;
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        mPendingSummaries.clear();
+        mPreferences.clear();
+        mInFlightKeys.clear();
+    }
+
+    @VisibleForTesting
+    void onSummaryLoaded(String key, CharSequence summary) {
+        mInFlightKeys.remove(key);
+        if (mReleased || summary == null) {
+            return;
+        }
+        mPendingSummaries.put(key, summary);
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    @VisibleForTesting
+    void applyPendingSummaries() {
+        mFrameScheduled = false;
+        if (mReleased || mPendingSummaries.isEmpty()) {
+            return;
+        }
+        final SharedPreferences.Editor editor = mSummaryCache.edit();
+        boolean cacheChanged = false;
+        for (Map.Entry<String, CharSequence> entry : mPendingSummaries.entrySet()) {
+            final String key = entry.getKey();
+            final CharSequence summary = entry.getValue();
+            final Preference preference = mPreferences.get(key);
+            if (preference != null && !TextUtils.equals(preference.getSummary(), summary)) {
+                preference.setSummary(summary);
+            }
+            final String cacheKey = getCacheKey(key);
+            final String text = summary.toString();
+            if (!TextUtils.equals(mSummaryCache.getString(cacheKey, null), text)) {
+                editor.putString(cacheKey, text);
+                cacheChanged = true;
+            }
+        }
+        mPendingSummaries.clear();
+        if (cacheChanged) {
+            editor.apply();
+        }
+    }
+
+    private String getCacheKey(String key) {
+        return mNamespace + "/" + key;
+    }
+}
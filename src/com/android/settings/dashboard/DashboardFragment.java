@@ -84,6 +84,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private final List<AbstractPreferenceController> mControllers = new ArrayList<>();
     @VisibleForTesting
     UiBlockerController mBlockerController;
+    @VisibleForTesting
+    AsyncSummaryLoader mAsyncSummaryLoader;
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
@@ -159,6 +161,19 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
     }
 
+    @VisibleForTesting
+    void checkAsyncSummary(List<AbstractPreferenceController> controllers) {
+        for (AbstractPreferenceController controller : controllers) {
+            if (!(controller instanceof BasePreferenceController.AsyncSummary)) {
+                continue;
+            }
+            if (mAsyncSummaryLoader == null) {
+                mAsyncSummaryLoader = new AsyncSummaryLoader(getContext(), getLogTag());
+            }
+            ((BasePreferenceController) controller).setAsyncSummaryLoader(mAsyncSummaryLoader);
+        }
+    }
+
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
@@ -202,6 +217,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         checkUiBlocker(mControllers);
+        checkAsyncSummary(mControllers);
         refreshAllPreferences(getLogTag());
         mControllers.stream()
                 .map(controller -> (Preference) findPreference(controller.getPreferenceKey()))
@@ -271,6 +287,15 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
     }
 
+    @Override
+    public void onDestroy() {
+        if (mAsyncSummaryLoader != null) {
+            mAsyncSummaryLoader.release();
+            mAsyncSummaryLoader = null;
+        }
+        super.onDestroy();
+    }
+
     @Override
     protected abstract int getPreferenceScreenResId();
 
@@ -16,7 +16,6 @@
 
 package com.android.settings.datetime.timezone;
 
-import android.icu.text.BreakIterator;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -32,8 +31,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.settings.R;
 import com.android.settings.datetime.timezone.BaseTimeZonePicker.OnListItemClickListener;
+import com.android.settings.datetime.timezone.model.TimeZoneData;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -57,6 +56,9 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
 
     private List<T> mItems;
     private ArrayFilter mFilter;
+    @Nullable
+    private TimeZoneData mTimeZoneData;
+    private String mSearchIndexKey;
 
     /**
      * @param headerText the text shown in the header, or null to show no header.
@@ -73,6 +75,16 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
         setHasStableIds(true);
     }
 
+    /**
+     * Shares the search index of the items with the other adapters showing the list identified by
+     * {@code listKey}, for as long as {@code timeZoneData} is loaded. The items must only depend
+     * on {@code timeZoneData} and the locale.
+     */
+    public void setSharedSearchIndex(@NonNull TimeZoneData timeZoneData, @NonNull String listKey) {
+        mTimeZoneData = timeZoneData;
+        mSearchIndexKey = listKey;
+    }
+
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -225,14 +237,17 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
      * a prefix. Each item that does not start with the supplied prefix
      * is removed from the list.</p>
      *
-     * The filtering operation is not optimized, due to small data size (~260 regions),
-     * require additional pre-processing. Potentially, a trie structure can be used to match
-     * prefixes of the search keys.
+     * The search keys are split into words once, into a {@link TimeZoneSearchIndex} built on the
+     * first query or shared through {@link TimeZoneData}, so that each keystroke is a binary
+     * search over the word starts. A keystroke extending the previous query only searches the
+     * previous matches.
      */
     @VisibleForTesting
     public class ArrayFilter extends Filter {
 
-        private BreakIterator mBreakIterator = BreakIterator.getWordInstance(mLocale);
+        private TimeZoneSearchIndex mSearchIndex;
+        // Matches of the last query, only accessed on the filtering thread.
+        private TimeZoneSearchIndex.Match<T> mLastMatch;
 
         @WorkerThread
         @Override
@@ -240,33 +255,16 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
             final List<T> newItems;
             if (TextUtils.isEmpty(prefix)) {
                 newItems = mOriginalItems;
+                mLastMatch = null;
             } else {
-                final String prefixString = prefix.toString().toLowerCase(mLocale);
-                newItems = new ArrayList<>();
-
-                for (T item : mOriginalItems) {
-                    outer:
-                    for (String searchKey : item.getSearchKeys()) {
-                        searchKey = searchKey.toLowerCase(mLocale);
-                        // First match against the whole, non-splitted value
-                        if (searchKey.startsWith(prefixString)) {
-                            newItems.add(item);
-                            break outer;
-                        } else {
-                            mBreakIterator.setText(searchKey);
-                            for (int wordStart = 0, wordLimit = mBreakIterator.next();
-                                    wordLimit != BreakIterator.DONE;
-                                    wordStart = wordLimit,
-                                            wordLimit = mBreakIterator.next()) {
-                                if (mBreakIterator.getRuleStatus() != BreakIterator.WORD_NONE
-                                        && searchKey.startsWith(prefixString, wordStart)) {
-                                    newItems.add(item);
-                                    break outer;
-                                }
-                            }
-                        }
-                    }
+                if (mSearchIndex == null) {
+                    mSearchIndex = mTimeZoneData == null
+                            ? new TimeZoneSearchIndex(mOriginalItems, mLocale)
+                            : mTimeZoneData.getSearchIndex(mSearchIndexKey, mLocale,
+                                    () -> new TimeZoneSearchIndex(mOriginalItems, mLocale));
                 }
+                mLastMatch = mSearchIndex.query(mOriginalItems, prefix.toString(), mLastMatch);
+                newItems = mLastMatch.getItems();
             }
 
             final FilterResults results = new FilterResults();
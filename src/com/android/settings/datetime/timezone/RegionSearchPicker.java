@@ -46,6 +46,7 @@ import java.util.TreeSet;
 public class RegionSearchPicker extends BaseTimeZonePicker {
     private static final int REQUEST_CODE_ZONE_PICKER = 1;
     private static final String TAG = "RegionSearchPicker";
+    private static final String SEARCH_INDEX_KEY = "regions";
 
     private BaseTimeZoneAdapter<RegionItem> mAdapter;
     private TimeZoneData mTimeZoneData;
@@ -65,6 +66,7 @@ public class RegionSearchPicker extends BaseTimeZonePicker {
         mAdapter = new BaseTimeZoneAdapter<>(createAdapterItem(timeZoneData.getRegionIds()),
                 this::onListItemClick, getLocale(), false /* showItemSummary */,
                     null /* headerText */);
+        mAdapter.setSharedSearchIndex(timeZoneData, SEARCH_INDEX_KEY);
         return mAdapter;
     }
 
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datetime.timezone;
+
+import android.icu.text.BreakIterator;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Word-prefix index over the search keys of a list of {@link BaseTimeZoneAdapter.AdapterItem}.
+ *
+ * Every search key is lowercased and split into words once, when the index is built. Each word
+ * start is stored as the suffix of the key starting at that word, in a sorted array, so that a
+ * prefix query is a binary search followed by a scan of the matching range.
+ */
+class TimeZoneSearchIndex {
+
+    // Sorted suffixes of the normalized search keys, starting at a word start.
+    private final String[] mWordStarts;
+    // Index of the item owning the suffix at the same position in mWordStarts.
+    private final int[] mItemIndices;
+    private final int mItemCount;
+    private final Locale mLocale;
+
+    @WorkerThread
+    TimeZoneSearchIndex(List<? extends BaseTimeZoneAdapter.AdapterItem> items, Locale locale) {
+        mLocale = locale;
+        mItemCount = items.size();
+
+        final BreakIterator breakIterator = BreakIterator.getWordInstance(locale);
+        final List<String> wordStarts = new ArrayList<>();
+        final List<Integer> itemIndices = new ArrayList<>();
+        for (int i = 0; i < mItemCount; i++) {
+            for (String searchKey : items.get(i).getSearchKeys()) {
+                final String normalizedKey = searchKey.toLowerCase(locale);
+                // The whole, non-splitted value always matches.
+                wordStarts.add(normalizedKey);
+                itemIndices.add(i);
+                breakIterator.setText(normalizedKey);
+                for (int wordStart = 0, wordLimit = breakIterator.next();
+                        wordLimit != BreakIterator.DONE;
+                        wordStart = wordLimit, wordLimit = breakIterator.next()) {
+                    if (wordStart > 0
+                            && breakIterator.getRuleStatus() != BreakIterator.WORD_NONE) {
+                        wordStarts.add(normalizedKey.substring(wordStart));
+                        itemIndices.add(i);
+                    }
+                }
+            }
+        }
+
+        final int size = wordStarts.size();
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (o1, o2) -> wordStarts.get(o1).compareTo(wordStarts.get(o2)));
+        mWordStarts = new String[size];
+        mItemIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            mWordStarts[i] = wordStarts.get(order[i]);
+            mItemIndices[i] = itemIndices.get(order[i]);
+        }
+    }
+
+    /**
+     * Returns the items having a word in their search keys that starts with {@code prefix}, in
+     * the same order as in {@code items}.
+     *
+     * When {@code prefix} extends the prefix of {@code previous}, e.g. while the user types, only
+     * the previous matches are searched.
+     */
+    @WorkerThread
+    <T> Match<T> query(List<T> items, String prefix, @Nullable Match<T> previous) {
+        final String normalizedPrefix = prefix.toLowerCase(mLocale);
+        // The suffixes starting with the longer prefix are a subrange of the previous ones.
+        final boolean isRefinement = previous != null && previous.mIndex == this
+                && previous.mItems == items && normalizedPrefix.startsWith(previous.mPrefix);
+        final int low = isRefinement ? previous.mLow : 0;
+        final int high = isRefinement ? previous.mHigh : mWordStarts.length;
+        final int start = lowerBound(normalizedPrefix, low, high);
+        int end = start;
+        while (end < high && mWordStarts[end].startsWith(normalizedPrefix)) {
+            end++;
+        }
+
+        // The index can be shared by the filters of several adapters, keep the state local.
+        final int[] itemIndices = Arrays.copyOfRange(mItemIndices, start, end);
+        Arrays.sort(itemIndices);
+        int matchCount = 0;
+        for (int i = 0; i < itemIndices.length; i++) {
+            if (i == 0 || itemIndices[i] != itemIndices[i - 1]) {
+                itemIndices[matchCount++] = itemIndices[i];
+            }
+        }
+        if (isRefinement && matchCount == previous.mItemIndices.length) {
+            // Every previous item still matches, keep the previous list.
+            return new Match<>(this, items, normalizedPrefix, start, end,
+                    previous.mItemIndices, previous.mMatchedItems);
+        }
+
+        final List<T> result = new ArrayList<>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            result.add(items.get(itemIndices[i]));
+        }
+        return new Match<>(this, items, normalizedPrefix, start, end,
+                Arrays.copyOf(itemIndices, matchCount), result);
+    }
+
+    private int lowerBound(String key, int low, int high) {
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mWordStarts[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Items matching a query, and the range of the index they were found in. */
+    static final class Match<T> {
+        private final TimeZoneSearchIndex mIndex;
+        private final List<T> mItems;
+        private final String mPrefix;
+        private final int mLow;
+        private final int mHigh;
+        // Ascending indices in mItems of the matched items.
+        private final int[] mItemIndices;
+        private final List<T> mMatchedItems;
+
+        private Match(TimeZoneSearchIndex index, List<T> items, String prefix, int low, int high,
+                int[] itemIndices, List<T> matchedItems) {
+            mIndex = index;
+            mItems = items;
+            mPrefix = prefix;
+            mLow = low;
+            mHigh = high;
+            mItemIndices = itemIndices;
+            mMatchedItems = matchedItems;
+        }
+
+        /** Returns the matched items, in the same order as in the queried items. */
+        List<T> getItems() {
+            return mMatchedItems;
+        }
+    }
+}
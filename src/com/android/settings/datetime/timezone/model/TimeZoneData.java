@@ -15,41 +15,58 @@
  */
 package com.android.settings.datetime.timezone.model;
 
+import android.content.ComponentCallbacks2;
+
 import androidx.annotation.VisibleForTesting;
+import androidx.collection.ArrayMap;
 import androidx.collection.ArraySet;
 
 import com.android.i18n.timezone.CountryTimeZones;
 import com.android.i18n.timezone.CountryZonesFinder;
 import com.android.i18n.timezone.TimeZoneFinder;
 
-import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Wrapper of CountryZonesFinder to normalize the country code and only show the regions that are
  * has time zone shown in the time zone picker.
  * getInstance() reads the data from underlying file, and this means it should not be called
- * from the UI thread.
+ * from the UI thread. The loaded data is kept until {@link #onTrimMemory(int)} evicts it.
  */
 public class TimeZoneData {
 
-    private static WeakReference<TimeZoneData> sCache = null;
+    private static TimeZoneData sCache = null;
 
     private final CountryZonesFinder mCountryZonesFinder;
     private final Set<String> mRegionIds;
+    // Search indexes over the lists derived from this data, keyed by list and locale.
+    private final Map<String, Object> mSearchIndexes = new ArrayMap<>();
 
     public static synchronized TimeZoneData getInstance() {
-        TimeZoneData data = sCache == null ? null : sCache.get();
-        if (data != null) {
-            return data;
+        if (sCache == null) {
+            sCache = new TimeZoneData(TimeZoneFinder.getInstance().getCountryZonesFinder());
+        }
+        return sCache;
+    }
+
+    /**
+     * Drops the cached instance when the system is running low on memory, or when the process
+     * has become a candidate for being killed. Leaving the UI alone doesn't evict it.
+     */
+    public static synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            if (sCache != null) {
+                sCache.clearSearchIndexes();
+            }
+            sCache = null;
         }
-        data = new TimeZoneData(TimeZoneFinder.getInstance().getCountryZonesFinder());
-        sCache = new WeakReference<>(data);
-        return data;
     }
 
     @VisibleForTesting
@@ -58,6 +75,29 @@ public class TimeZoneData {
         mRegionIds = getNormalizedRegionIds(mCountryZonesFinder.lookupAllCountryIsoCodes());
     }
 
+    /**
+     * Returns the search index of the list identified by {@code listKey} in {@code locale},
+     * built by {@code factory} the first time it is requested for this data.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getSearchIndex(String listKey, Locale locale, Supplier<T> factory) {
+        final String key = listKey + "/" + locale.toLanguageTag();
+        synchronized (mSearchIndexes) {
+            Object index = mSearchIndexes.get(key);
+            if (index == null) {
+                index = factory.get();
+                mSearchIndexes.put(key, index);
+            }
+            return (T) index;
+        }
+    }
+
+    private void clearSearchIndexes() {
+        synchronized (mSearchIndexes) {
+            mSearchIndexes.clear();
+        }
+    }
+
     public Set<String> getRegionIds() {
         return mRegionIds;
     }
@@ -22,6 +22,7 @@ import android.os.storage.StorageManager;
 import android.text.format.Formatter;
 
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import androidx.preference.Preference;
 
 import com.android.settings.R;
@@ -35,7 +36,8 @@ import com.android.settingslib.utils.ThreadUtils;
 import java.text.NumberFormat;
 import java.util.concurrent.Future;
 
-public class TopLevelStoragePreferenceController extends BasePreferenceController {
+public class TopLevelStoragePreferenceController extends BasePreferenceController
+        implements BasePreferenceController.AsyncSummary {
 
     private final StorageManager mStorageManager;
     private final StorageManagerVolumeProvider mStorageManagerVolumeProvider;
@@ -57,31 +59,54 @@ public class TopLevelStoragePreferenceController extends BasePreferenceControlle
             return;
         }
 
+        if (hasAsyncSummaryLoader()) {
+            showCachedSummary(preference, getStorageCacheHelper());
+            super.refreshSummary(preference);
+            return;
+        }
         refreshSummaryThread(preference);
     }
 
+    @Override
+    public CharSequence getSummaryInBackground() {
+        return loadSummary(getStorageCacheHelper());
+    }
+
     @VisibleForTesting
     protected Future refreshSummaryThread(Preference preference) {
+        final StorageCacheHelper storageCacheHelper = getStorageCacheHelper();
+        showCachedSummary(preference, storageCacheHelper);
+
+        return ThreadUtils.postOnBackgroundThread(() -> {
+            final String summary = loadSummary(storageCacheHelper);
+            ThreadUtils.postOnMainThread(() -> {
+                preference.setSummary(summary);
+            });
+        });
+    }
+
+    private StorageCacheHelper getStorageCacheHelper() {
         int userId = Utils.getCurrentUserId(mContext.getSystemService(UserManager.class),
                 /* isWorkProfile */ false);
-        final StorageCacheHelper storageCacheHelper = new StorageCacheHelper(mContext, userId);
+        return new StorageCacheHelper(mContext, userId);
+    }
+
+    private void showCachedSummary(Preference preference, StorageCacheHelper storageCacheHelper) {
         long cachedUsedSize = storageCacheHelper.retrieveUsedSize();
         long cachedTotalSize = storageCacheHelper.retrieveCachedSize().totalSize;
         if (cachedUsedSize != 0 && cachedTotalSize != 0) {
             preference.setSummary(getSummary(cachedUsedSize, cachedTotalSize));
         }
+    }
 
-        return ThreadUtils.postOnBackgroundThread(() -> {
-            final PrivateStorageInfo info = PrivateStorageInfo.getPrivateStorageInfo(
-                    getStorageManagerVolumeProvider());
+    @WorkerThread
+    private String loadSummary(StorageCacheHelper storageCacheHelper) {
+        final PrivateStorageInfo info = PrivateStorageInfo.getPrivateStorageInfo(
+                getStorageManagerVolumeProvider());
 
-            long usedBytes = info.totalBytes - info.freeBytes;
-            storageCacheHelper.cacheUsedSize(usedBytes);
-            ThreadUtils.postOnMainThread(() -> {
-                preference.setSummary(
-                        getSummary(usedBytes, info.totalBytes));
-            });
-        });
+        long usedBytes = info.totalBytes - info.freeBytes;
+        storageCacheHelper.cacheUsedSize(usedBytes);
+        return getSummary(usedBytes, info.totalBytes);
     }
 
     @VisibleForTesting
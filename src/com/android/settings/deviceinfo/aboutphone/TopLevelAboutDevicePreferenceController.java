@@ -21,7 +21,8 @@ import android.content.Context;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.deviceinfo.DeviceNamePreferenceController;
 
-public class TopLevelAboutDevicePreferenceController extends BasePreferenceController {
+public class TopLevelAboutDevicePreferenceController extends BasePreferenceController
+        implements BasePreferenceController.AsyncSummary {
 
     public TopLevelAboutDevicePreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
@@ -38,4 +39,9 @@ public class TopLevelAboutDevicePreferenceController extends BasePreferenceContr
                 new DeviceNamePreferenceController(mContext, "unused_key");
         return deviceNamePreferenceController.getSummary();
     }
+
+    @Override
+    public CharSequence getSummaryInBackground() {
+        return getSummary();
+    }
 }
@@ -41,12 +41,19 @@ import com.android.settings.fuelgauge.BatteryOptimizeHistoricalLogEntry.Action;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /** An implementation to backup and restore battery configurations. */
 public final class BatteryBackupHelper implements BackupHelper {
@@ -65,10 +72,16 @@ public final class BatteryBackupHelper implements BackupHelper {
     private static final String BATTERY_OPTIMIZE_BACKUP_FILE_NAME =
             "battery_optimize_backup_historical_logs";
     private static final int DEVICE_BUILD_INFO_SIZE = 6;
+    // Version of the package optimization modes recorded in the backup state.
+    private static final int BACKUP_STATE_VERSION = 2;
 
     static final String DELIMITER = ",";
     static final String DELIMITER_MODE = ":";
+    // Legacy key for the full optimization mode list, still written for older builds to restore.
     static final String KEY_OPTIMIZATION_LIST = "optimization_mode_list";
+    // Key prefix for the optimization mode of each package.
+    static final String KEY_OPTIMIZATION_MODE_PREFIX = "optimization_mode:";
+    static final int RESTORE_BATCH_SIZE = 50;
 
     @VisibleForTesting
     ArraySet<ApplicationInfo> mTestApplicationInfoList = null;
@@ -83,12 +96,17 @@ public final class BatteryBackupHelper implements BackupHelper {
     BatteryOptimizeUtils mBatteryOptimizeUtils;
 
     private byte[] mOptimizationModeBytes;
+    private boolean mHasPackageModes = false;
     private boolean mVerifyMigrateConfiguration = false;
+    private int mRestoreCount = 0;
 
     private final Context mContext;
     // Device information map from the restoreEntity() method.
     private final ArrayMap<String, String> mDeviceBuildInfoMap =
             new ArrayMap<>(DEVICE_BUILD_INFO_SIZE);
+    // Package optimization modes from the restoreEntity() method, applied in batches.
+    private final LinkedHashMap<String, Integer> mPendingOptimizationModes =
+            new LinkedHashMap<>();
 
     public BatteryBackupHelper(Context context) {
         mContext = context.getApplicationContext();
@@ -116,7 +134,7 @@ public final class BatteryBackupHelper implements BackupHelper {
         writeBackupData(data, KEY_BUILD_METADATA_1, provider.getBuildMetadata1(mContext));
         writeBackupData(data, KEY_BUILD_METADATA_2, provider.getBuildMetadata2(mContext));
 
-        backupOptimizationMode(data, allowlistedApps);
+        backupOptimizationMode(data, allowlistedApps, readBackupState(oldState), newState);
     }
 
     @Override
@@ -144,12 +162,19 @@ public final class BatteryBackupHelper implements BackupHelper {
                 // Hold the optimization mode data until all conditions are matched.
                 mOptimizationModeBytes = getBackupData(dataKey, data);
                 break;
+            default:
+                if (dataKey.startsWith(KEY_OPTIMIZATION_MODE_PREFIX)) {
+                    restorePackageMode(dataKey, data);
+                }
+                break;
         }
-        performRestoreIfNeeded();
+        performRestoreIfNeeded(/* isRestoreFinished= */ false);
     }
 
     @Override
     public void writeNewStateDescription(ParcelFileDescriptor newState) {
+        // Invoked after all entities are restored, applies the remaining optimization modes.
+        performRestoreIfNeeded(/* isRestoreFinished= */ true);
     }
 
     private List<String> getFullPowerList() {
@@ -173,6 +198,18 @@ public final class BatteryBackupHelper implements BackupHelper {
 
     @VisibleForTesting
     void backupOptimizationMode(BackupDataOutput data, List<String> allowlistedApps) {
+        backupOptimizationMode(data, allowlistedApps, /* oldModes= */ null, /* newState= */ null);
+    }
+
+    /**
+     * Backups the optimization mode of packages which are changed from {@code oldModes}, or all
+     * packages if {@code oldModes} is {@code null}, and records the modes into {@code newState}.
+     * The full list is also kept under the legacy key for the builds which can't restore the
+     * per-package data.
+     */
+    @VisibleForTesting
+    void backupOptimizationMode(BackupDataOutput data, List<String> allowlistedApps,
+            Map<String, Integer> oldModes, ParcelFileDescriptor newState) {
         final long timestamp = System.currentTimeMillis();
         final ArraySet<ApplicationInfo> applications = getInstalledApplications();
         if (applications == null || applications.isEmpty()) {
@@ -180,6 +217,7 @@ public final class BatteryBackupHelper implements BackupHelper {
             return;
         }
         int backupCount = 0;
+        final ArrayMap<String, Integer> newModes = new ArrayMap<>();
         final StringBuilder builder = new StringBuilder();
         final AppOpsManager appOps = mContext.getSystemService(AppOpsManager.class);
         final SharedPreferences sharedPreferences = getSharedPreferences(mContext);
@@ -192,21 +230,40 @@ public final class BatteryBackupHelper implements BackupHelper {
             // Ignores default optimized/unknown state or system/default apps.
             if (optimizationMode == BatteryOptimizeUtils.MODE_OPTIMIZED
                     || optimizationMode == BatteryOptimizeUtils.MODE_UNKNOWN
-                    || isSystemOrDefaultApp(info.packageName, info.uid)) {
+                    || isSystemOrDefaultApp(info.packageName, info.uid)
+                    || newModes.containsKey(info.packageName)) {
+                continue;
+            }
+            newModes.put(info.packageName, optimizationMode);
+            builder.append(info.packageName + DELIMITER_MODE + optimizationMode + DELIMITER);
+            final Integer oldMode = oldModes == null ? null : oldModes.get(info.packageName);
+            if (oldMode != null && oldMode == optimizationMode) {
                 continue;
             }
-            final String packageOptimizeMode =
-                    info.packageName + DELIMITER_MODE + optimizationMode;
-            builder.append(packageOptimizeMode + DELIMITER);
-            Log.d(TAG, "backupOptimizationMode: " + packageOptimizeMode);
+            writeBackupData(data, KEY_OPTIMIZATION_MODE_PREFIX + info.packageName,
+                    String.valueOf(optimizationMode));
             BatteryOptimizeLogUtils.writeLog(
                     sharedPreferences, Action.BACKUP, info.packageName,
                     /* actionDescription */ "mode: " + optimizationMode);
             backupCount++;
         }
-
-        writeBackupData(data, KEY_OPTIMIZATION_LIST, builder.toString());
-        Log.d(TAG, String.format("backup getInstalledApplications():%d count=%d in %d/ms",
+        if (oldModes != null) {
+            for (String packageName : oldModes.keySet()) {
+                if (!newModes.containsKey(packageName)) {
+                    deleteBackupData(data, KEY_OPTIMIZATION_MODE_PREFIX + packageName);
+                    backupCount++;
+                }
+            }
+        }
+        if (oldModes == null || backupCount > 0) {
+            if (builder.length() == 0) {
+                deleteBackupData(data, KEY_OPTIMIZATION_LIST);
+            } else {
+                writeBackupData(data, KEY_OPTIMIZATION_LIST, builder.toString());
+            }
+        }
+        writeBackupState(newState, newModes);
+        Log.d(TAG, String.format("backup getInstalledApplications():%d changed=%d in %d/ms",
                 applications.size(), backupCount, (System.currentTimeMillis() - timestamp)));
     }
 
@@ -223,7 +280,7 @@ public final class BatteryBackupHelper implements BackupHelper {
             Log.w(TAG, "no data found from the split() processing");
             return 0;
         }
-        int restoreCount = 0;
+        final LinkedHashMap<String, Integer> packageModes = new LinkedHashMap<>();
         for (int index = 0; index < appConfigurations.length; index++) {
             final String[] results = appConfigurations[index]
                     .split(BatteryBackupHelper.DELIMITER_MODE);
@@ -232,32 +289,65 @@ public final class BatteryBackupHelper implements BackupHelper {
                 Log.w(TAG, "invalid raw data found:" + appConfigurations[index]);
                 continue;
             }
-            final String packageName = results[0];
-            final int uid = BatteryUtils.getInstance(mContext).getPackageUid(packageName);
-            // Ignores system/default apps.
-            if (isSystemOrDefaultApp(packageName, uid)) {
-                Log.w(TAG, "ignore from isSystemOrDefaultApp():" + packageName);
-                continue;
-            }
-            @BatteryOptimizeUtils.OptimizationMode
-            int optimizationMode = BatteryOptimizeUtils.MODE_UNKNOWN;
             try {
-                optimizationMode = Integer.parseInt(results[1]);
+                packageModes.put(results[0], Integer.parseInt(results[1]));
             } catch (NumberFormatException e) {
                 Log.e(TAG, "failed to parse the optimization mode: "
                         + appConfigurations[index], e);
-                continue;
             }
-            restoreOptimizationMode(packageName, optimizationMode);
-            restoreCount++;
         }
+        final int restoreCount = restoreOptimizationModes(packageModes);
         Log.d(TAG, String.format("restoreOptimizationMode() count=%d in %d/ms",
                 restoreCount, (System.currentTimeMillis() - timestamp)));
         return restoreCount;
     }
 
-    private void performRestoreIfNeeded() {
-        if (mOptimizationModeBytes == null || mOptimizationModeBytes.length == 0) {
+    /** Reads the package optimization modes recorded by the last backup. */
+    @VisibleForTesting
+    static ArrayMap<String, Integer> readBackupState(ParcelFileDescriptor oldState) {
+        if (oldState == null) {
+            return null;
+        }
+        // Don't buffer or close the stream, since the file descriptor is owned by the backup
+        // framework and shared with the other helpers, which read their state after this one.
+        final DataInputStream input =
+                new DataInputStream(new FileInputStream(oldState.getFileDescriptor()));
+        final int size;
+        try {
+            final int version = input.readInt();
+            if (version != BACKUP_STATE_VERSION) {
+                Log.w(TAG, "ignore the backup state with version " + version);
+                return null;
+            }
+            size = input.readInt();
+        } catch (IOException e) {
+            // An empty state for the first backup.
+            return null;
+        }
+        if (size < 0) {
+            Log.w(TAG, "ignore the backup state with size " + size);
+            return null;
+        }
+        final ArrayMap<String, Integer> packageModes = new ArrayMap<>(size);
+        try {
+            for (int index = 0; index < size; index++) {
+                final String packageName = input.readUTF();
+                packageModes.put(packageName, input.readInt());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "failed to readBackupState()", e);
+            return null;
+        }
+        return packageModes;
+    }
+
+    private void performRestoreIfNeeded(boolean isRestoreFinished) {
+        // The legacy list is only used if the backup has no per-package data, which could be
+        // restored in any order, so it is held until all entities are restored.
+        final boolean hasOptimizationModeList = isRestoreFinished && !mHasPackageModes
+                && mOptimizationModeBytes != null && mOptimizationModeBytes.length > 0;
+        if (!hasOptimizationModeList && mPendingOptimizationModes.size()
+                < (isRestoreFinished ? 1 : RESTORE_BATCH_SIZE)) {
             return;
         }
         final PowerUsageFeatureProvider provider = FeatureFactory.getFactory(mContext)
@@ -266,11 +356,45 @@ public final class BatteryBackupHelper implements BackupHelper {
             return;
         }
         // Start to restore the app optimization mode data.
-        final int restoreCount = restoreOptimizationMode(mOptimizationModeBytes);
-        if (restoreCount > 0) {
+        if (hasOptimizationModeList) {
+            mRestoreCount += restoreOptimizationMode(mOptimizationModeBytes);
+        }
+        if (isRestoreFinished) {
+            mOptimizationModeBytes = null; // clear data
+        }
+        if (!mPendingOptimizationModes.isEmpty()) {
+            mRestoreCount += restoreOptimizationModes(mPendingOptimizationModes);
+            mPendingOptimizationModes.clear();
+        }
+        if (isRestoreFinished && mRestoreCount > 0) {
+            mRestoreCount = 0;
             BatterySettingsMigrateChecker.verifyOptimizationModes(mContext);
         }
-        mOptimizationModeBytes = null; // clear data
+    }
+
+    private int restoreOptimizationModes(Map<String, Integer> packageModes) {
+        if (packageModes.isEmpty()) {
+            return 0;
+        }
+        // Refreshes the allowlist once for the whole batch.
+        final PowerAllowlistBackend allowlistBackend = getPowerAllowlistBackend();
+        allowlistBackend.refreshList();
+        final BatteryUtils batteryUtils = BatteryUtils.getInstance(mContext);
+        final AppOpsManager appOps = mContext.getSystemService(AppOpsManager.class);
+        int restoreCount = 0;
+        for (Map.Entry<String, Integer> entry : packageModes.entrySet()) {
+            final String packageName = entry.getKey();
+            final int uid = batteryUtils.getPackageUid(packageName);
+            // Ignores system/default apps.
+            if (isSystemOrDefaultApp(packageName, uid)) {
+                Log.w(TAG, "ignore from isSystemOrDefaultApp():" + packageName);
+                continue;
+            }
+            restoreOptimizationMode(
+                    appOps, batteryUtils, packageName, uid, entry.getValue());
+            restoreCount++;
+        }
+        return restoreCount;
     }
 
     /** Dump the app optimization mode backup history data. */
@@ -302,15 +426,17 @@ public final class BatteryBackupHelper implements BackupHelper {
                 BATTERY_OPTIMIZE_BACKUP_FILE_NAME, Context.MODE_PRIVATE);
     }
 
-    private void restoreOptimizationMode(
-            String packageName, @BatteryOptimizeUtils.OptimizationMode int mode) {
-        final BatteryOptimizeUtils batteryOptimizeUtils =
-                newBatteryOptimizeUtils(mContext, packageName, mBatteryOptimizeUtils);
-        if (batteryOptimizeUtils == null) {
+    private void restoreOptimizationMode(AppOpsManager appOps, BatteryUtils batteryUtils,
+            String packageName, int uid, @BatteryOptimizeUtils.OptimizationMode int mode) {
+        if (uid == BatteryUtils.UID_NULL) {
             return;
         }
-        batteryOptimizeUtils.setAppUsageState(
-                mode, BatteryOptimizeHistoricalLogEntry.Action.RESTORE);
+        if (mBatteryOptimizeUtils != null) {
+            mBatteryOptimizeUtils.setAppUsageState(mode, Action.RESTORE); /*testing only*/
+        } else {
+            BatteryOptimizeUtils.setAppUsageState(mContext, appOps, getPowerAllowlistBackend(),
+                    batteryUtils, uid, packageName, mode, Action.RESTORE);
+        }
         Log.d(TAG, String.format("restore:%s mode=%d", packageName, mode));
     }
 
@@ -362,6 +488,21 @@ public final class BatteryBackupHelper implements BackupHelper {
         Log.d(TAG, String.format("restore:%s:%s", dataKey, dataContent));
     }
 
+    private void restorePackageMode(String dataKey, BackupDataInputStream data) {
+        final byte[] dataBytes = getBackupData(dataKey, data);
+        if (dataBytes == null || dataBytes.length == 0) {
+            return;
+        }
+        final String packageName = dataKey.substring(KEY_OPTIMIZATION_MODE_PREFIX.length());
+        final String dataContent = new String(dataBytes, StandardCharsets.UTF_8);
+        mHasPackageModes = true;
+        try {
+            mPendingOptimizationModes.put(packageName, Integer.parseInt(dataContent));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "failed to parse the optimization mode: " + dataKey, e);
+        }
+    }
+
     private static byte[] getBackupData(String dataKey, BackupDataInputStream data) {
         final int dataSize = data.size();
         final byte[] dataBytes = new byte[dataSize];
@@ -388,4 +529,35 @@ public final class BatteryBackupHelper implements BackupHelper {
         }
         Log.d(TAG, String.format("backup:%s:%s", dataKey, dataContent));
     }
+
+    private static void deleteBackupData(BackupDataOutput data, String dataKey) {
+        try {
+            data.writeEntityHeader(dataKey, -1);
+        } catch (IOException e) {
+            Log.e(TAG, "deleteBackupData() is failed for " + dataKey, e);
+        }
+        Log.d(TAG, "delete backup:" + dataKey);
+    }
+
+    private static void writeBackupState(
+            ParcelFileDescriptor newState, ArrayMap<String, Integer> packageModes) {
+        if (newState == null) {
+            return;
+        }
+        // Don't close the stream, since the file descriptor is owned by the backup framework.
+        final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(newState.getFileDescriptor())));
+        try {
+            output.writeInt(BACKUP_STATE_VERSION);
+            // Records the size so the state is read without going past its own data.
+            output.writeInt(packageModes.size());
+            for (int index = 0; index < packageModes.size(); index++) {
+                output.writeUTF(packageModes.keyAt(index));
+                output.writeInt(packageModes.valueAt(index));
+            }
+            output.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write the backup state", e);
+        }
+    }
 }
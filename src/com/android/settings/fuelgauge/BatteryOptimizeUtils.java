@@ -128,6 +128,24 @@ public class BatteryOptimizeUtils {
                 mContext, mode, mUid, mPackageName, mBatteryUtils, mPowerAllowListBackend, action);
     }
 
+    /**
+     * Sets the {@link OptimizationMode} for the app with the allowlist state which is refreshed by
+     * the caller, so that a batch of apps only refreshes the allowlist once.
+     */
+    static void setAppUsageState(
+            Context context, AppOpsManager aom, PowerAllowlistBackend allowlistBackend,
+            BatteryUtils batteryUtils, int uid, String packageName,
+            @OptimizationMode int mode, Action action) {
+        final int currentMode = getAppOptimizationMode(getMode(aom, uid, packageName),
+                allowlistBackend.isAllowlisted(packageName, uid));
+        if (currentMode == mode) {
+            Log.w(TAG, "set the same optimization mode for  " + packageName);
+            return;
+        }
+        setAppUsageStateInternal(
+                context, mode, uid, packageName, batteryUtils, allowlistBackend, action);
+    }
+
     /** Return {@code true} if it is disabled for default optimized mode only. */
     public boolean isDisabledForOptimizeModeOnly() {
         return getAllowList(mContext).contains(mPackageName)
@@ -35,7 +35,8 @@ import com.android.settingslib.Utils;
 import com.android.settingslib.utils.ThreadUtils;
 
 public class TopLevelBatteryPreferenceController extends BasePreferenceController implements
-        LifecycleObserver, OnStart, OnStop, BatteryPreferenceController {
+        LifecycleObserver, OnStart, OnStop, BatteryPreferenceController,
+        BasePreferenceController.AsyncSummary {
 
     private static final String TAG = "TopLvBatteryPrefControl";
 
@@ -46,7 +47,8 @@ public class TopLevelBatteryPreferenceController extends BasePreferenceControlle
 
     private final BatteryBroadcastReceiver mBatteryBroadcastReceiver;
 
-    private BatteryInfo mBatteryInfo;
+    // Read by getSummaryInBackground() off the main thread.
+    private volatile BatteryInfo mBatteryInfo;
     private BatteryStatusFeatureProvider mBatteryStatusFeatureProvider;
     private String mBatteryStatusLabel;
 
@@ -98,6 +100,17 @@ public class TopLevelBatteryPreferenceController extends BasePreferenceControlle
         return getSummary(true /* batteryStatusUpdate */);
     }
 
+    @Override
+    public CharSequence getSummaryInBackground() {
+        // The battery info is pushed by the battery broadcast, keep the last known summary
+        // until it arrives.
+        if (mIsBatteryPresent && mBatteryInfo == null) {
+            return null;
+        }
+        // The charger check of the label queries the USB ports, so it is done here too.
+        return getSummary(false /* batteryStatusUpdate */);
+    }
+
     private CharSequence getSummary(boolean batteryStatusUpdate) {
         // Display help message if battery is not present.
         if (!mIsBatteryPresent) {
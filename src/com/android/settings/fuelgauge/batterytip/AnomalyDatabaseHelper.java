@@ -33,7 +33,9 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 6;
+    // Version from which the tables are kept as is on upgrade.
+    private static final int DATABASE_VERSION_WITHOUT_INDEX = 5;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -98,6 +100,11 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    // Serves the queries of anomalies in a state after a time.
+    private static final String CREATE_ANOMALY_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + Tables.TABLE_ANOMALY + "_time_state_index ON "
+                    + Tables.TABLE_ANOMALY + "(" + AnomalyColumns.TIME_STAMP_MS + ","
+                    + AnomalyColumns.ANOMALY_STATE + ")";
 
     public interface ActionColumns {
         /**
@@ -145,6 +152,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the UI read while the anomaly detection job writes.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -154,7 +163,9 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < DATABASE_VERSION) {
+        if (oldVersion == DATABASE_VERSION_WITHOUT_INDEX) {
+            db.execSQL(CREATE_ANOMALY_INDEX);
+        } else if (oldVersion < DATABASE_VERSION) {
             Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
                     "Index needs to be rebuilt for schema version '" + newVersion + "'.");
             // We need to drop the tables and recreate them
@@ -177,6 +188,7 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
+        db.execSQL(CREATE_ANOMALY_INDEX);
         db.execSQL(CREATE_ACTION_TABLE);
         Log.i(TAG, "Bootstrapped database");
     }
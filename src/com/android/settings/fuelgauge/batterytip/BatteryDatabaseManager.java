@@ -31,7 +31,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.text.TextUtils;
+import android.database.sqlite.SQLiteStatement;
 import android.util.ArrayMap;
 import android.util.SparseLongArray;
 
@@ -40,20 +40,23 @@ import androidx.annotation.VisibleForTesting;
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.ActionColumns;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. The database runs in write-ahead logging mode and
+ * {@link SQLiteDatabase} serializes the writes, so the reads are not blocked by a running write.
  */
 public class BatteryDatabaseManager {
     private static BatteryDatabaseManager sSingleton;
 
     private AnomalyDatabaseHelper mDatabaseHelper;
+    // Guards the compiled statement below, which can't be bound by two threads at once.
+    private final Object mStatementLock = new Object();
+    private SQLiteDatabase mStatementDatabase;
+    private SQLiteStatement mUpdateAnomalyStateStatement;
 
     private BatteryDatabaseManager(Context context) {
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
@@ -81,7 +84,7 @@ public class BatteryDatabaseManager {
      * @param timestampMs  the time when it is happened
      * @return {@code true} if insert operation succeed
      */
-    public synchronized boolean insertAnomaly(int uid, String packageName, int type,
+    public boolean insertAnomaly(int uid, String packageName, int type,
             int anomalyState,
             long timestampMs) {
         final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
@@ -98,7 +101,7 @@ public class BatteryDatabaseManager {
     /**
      * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
         final List<AppInfo> appInfos = new ArrayList<>();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
         final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
@@ -131,7 +134,7 @@ public class BatteryDatabaseManager {
         return appInfos;
     }
 
-    public synchronized void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
+    public void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
         final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
                 new String[]{String.valueOf(timestampMs)});
@@ -143,19 +146,41 @@ public class BatteryDatabaseManager {
      * @param appInfos represents the anomalies
      * @param state    which state to update to
      */
-    public synchronized void updateAnomalies(List<AppInfo> appInfos, int state) {
-        if (!appInfos.isEmpty()) {
-            final int size = appInfos.size();
-            final String[] whereArgs = new String[size];
-            for (int i = 0; i < size; i++) {
-                whereArgs[i] = appInfos.get(i).packageName;
+    public void updateAnomalies(List<AppInfo> appInfos, int state) {
+        if (appInfos.isEmpty()) {
+            return;
+        }
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        synchronized (mStatementLock) {
+            final SQLiteStatement statement = getUpdateAnomalyStateStatement(db);
+            db.beginTransaction();
+            try {
+                for (AppInfo appInfo : appInfos) {
+                    statement.bindLong(1, state);
+                    statement.bindString(2, appInfo.packageName);
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
+        }
+    }
 
-            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-            final ContentValues values = new ContentValues();
-            values.put(ANOMALY_STATE, state);
-            db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(",",
-                    Collections.nCopies(appInfos.size(), "?")) + ")", whereArgs);
+    /** Returns the UPDATE statement of the anomaly state, compiled once per open database. */
+    @VisibleForTesting
+    SQLiteStatement getUpdateAnomalyStateStatement(SQLiteDatabase db) {
+        synchronized (mStatementLock) {
+            if (mUpdateAnomalyStateStatement == null || mStatementDatabase != db) {
+                if (mUpdateAnomalyStateStatement != null) {
+                    mUpdateAnomalyStateStatement.close();
+                }
+                // Matches on package name, so the apps sharing a uid keep their own state.
+                mUpdateAnomalyStateStatement = db.compileStatement("UPDATE " + TABLE_ANOMALY
+                        + " SET " + ANOMALY_STATE + " = ? WHERE " + PACKAGE_NAME + " = ?");
+                mStatementDatabase = db;
+            }
+            return mUpdateAnomalyStateStatement;
         }
     }
 
@@ -165,7 +190,7 @@ public class BatteryDatabaseManager {
      * @param type of action been performed
      * @return {@link SparseLongArray} where key is uid and value is timestamp
      */
-    public synchronized SparseLongArray queryActionTime(
+    public SparseLongArray queryActionTime(
             @AnomalyDatabaseHelper.ActionType int type) {
         final SparseLongArray timeStamps = new SparseLongArray();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
@@ -191,7 +216,7 @@ public class BatteryDatabaseManager {
     /**
      * Insert an action, or update it if already existed
      */
-    public synchronized boolean insertAction(@AnomalyDatabaseHelper.ActionType int type,
+    public boolean insertAction(@AnomalyDatabaseHelper.ActionType int type,
             int uid, String packageName, long timestampMs) {
         final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         final ContentValues values = new ContentValues();
@@ -206,7 +231,7 @@ public class BatteryDatabaseManager {
     /**
      * Remove an action
      */
-    public synchronized boolean deleteAction(@AnomalyDatabaseHelper.ActionType int type,
+    public boolean deleteAction(@AnomalyDatabaseHelper.ActionType int type,
             int uid, String packageName) {
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         final String where =
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import android.content.Context;
+import android.os.BatteryUsageStats;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.fuelgauge.BatteryInfo;
+import com.android.settings.fuelgauge.BatteryUtils.DockDefenderMode;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryDefenderDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.DockDefenderDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.IncompatibleChargerDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.LowBatteryDetector;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryDefenderTip;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.DockDefenderTip;
+import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
+import com.android.settings.fuelgauge.batterytip.tips.IncompatibleChargerTip;
+import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the {@link BatteryTipDetector}s concurrently.
+ *
+ * Each detector declares whether it needs the {@link BatteryInfo}, which is computed once and in
+ * parallel with the detectors not needing it, and how long it may run once started. A detector
+ * exceeding its timeout is cancelled and replaced by its invisible tip. Detectors reading the
+ * {@link BatteryUsageStats} are memoized per stats window, so that coming back to the battery page
+ * does not run them again.
+ */
+public final class BatteryTipDetectorEngine {
+    private static final String TAG = "BatteryTipDetectorEngine";
+
+    private static final long DEFAULT_TIMEOUT_MS = 1000;
+    // Parses the whole battery history.
+    private static final long HIGH_USAGE_TIMEOUT_MS = 3000;
+    // The end of the current stats moves on every query, so it is only compared at this precision.
+    private static final long HIGH_USAGE_MEMO_WINDOW_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_THREADS = 4;
+    private static final int MAX_MEMOIZED_TIPS = 8;
+
+    private static final ExecutorService sExecutor = createExecutor();
+    private static final LruCache<String, BatteryTip> sMemoizedTips =
+            new LruCache<>(MAX_MEMOIZED_TIPS);
+    private static final ArrayMap<String, DetectorStats> sDetectorStats = new ArrayMap<>();
+
+    /** Inputs shared by all the detectors of a run. */
+    static final class Inputs {
+        final Context mContext;
+        final BatteryTipPolicy mPolicy;
+        final BatteryUsageStats mBatteryUsageStats;
+        final boolean mIsPowerSaveMode;
+
+        Inputs(Context context, BatteryTipPolicy policy, BatteryUsageStats batteryUsageStats,
+                boolean isPowerSaveMode) {
+            mContext = context;
+            mPolicy = policy;
+            mBatteryUsageStats = batteryUsageStats;
+            mIsPowerSaveMode = isPowerSaveMode;
+        }
+    }
+
+    /** Creates a detector from the inputs, {@code batteryInfo} is only set if declared. */
+    interface DetectorFactory {
+        BatteryTipDetector create(Inputs inputs, @Nullable BatteryInfo batteryInfo);
+    }
+
+    /** Returns the key of the inputs a detector result depends on. */
+    interface MemoKey {
+        String get(Inputs inputs, @Nullable BatteryInfo batteryInfo);
+    }
+
+    /** Creates the invisible tip returned in place of a detector which timed out. */
+    interface InvisibleTipFactory {
+        BatteryTip create(Inputs inputs);
+    }
+
+    /** Declares a detector, the inputs it needs and how long it may run. */
+    static final class DetectorSpec {
+        final String mName;
+        final boolean mNeedsBatteryInfo;
+        final long mTimeoutMs;
+        final DetectorFactory mFactory;
+        // Null if the result must not be memoized.
+        @Nullable
+        final MemoKey mMemoKey;
+        final InvisibleTipFactory mInvisibleTipFactory;
+
+        DetectorSpec(String name, boolean needsBatteryInfo, long timeoutMs,
+                DetectorFactory factory, @Nullable MemoKey memoKey,
+                InvisibleTipFactory invisibleTipFactory) {
+            mName = name;
+            mNeedsBatteryInfo = needsBatteryInfo;
+            mTimeoutMs = timeoutMs;
+            mFactory = factory;
+            mMemoKey = memoKey;
+            mInvisibleTipFactory = invisibleTipFactory;
+        }
+    }
+
+    private static final class DetectorStats {
+        int mRunCount;
+        int mMemoHitCount;
+        int mTimeoutCount;
+        long mLastDurationMs;
+        long mMaxDurationMs;
+    }
+
+    private final List<DetectorSpec> mSpecs;
+
+    BatteryTipDetectorEngine() {
+        this(getDefaultSpecs());
+    }
+
+    @VisibleForTesting
+    BatteryTipDetectorEngine(List<DetectorSpec> specs) {
+        mSpecs = specs;
+    }
+
+    /** Runs all the detectors and returns their sorted tips. */
+    @WorkerThread
+    List<BatteryTip> detect(@NonNull Inputs inputs,
+            @NonNull Supplier<BatteryInfo> batteryInfoSupplier) {
+        final int size = mSpecs.size();
+        final List<CompletableFuture<BatteryTip>> futures =
+                new ArrayList<>(Collections.nCopies(size, null));
+        for (int i = 0; i < size; i++) {
+            final DetectorSpec spec = mSpecs.get(i);
+            if (!spec.mNeedsBatteryInfo) {
+                futures.set(i, startDetector(spec, inputs, /* batteryInfo= */ null));
+            }
+        }
+        // Computed while the detectors above run, and not counted in any detector timeout.
+        final BatteryInfo batteryInfo = batteryInfoSupplier.get();
+        for (int i = 0; i < size; i++) {
+            final DetectorSpec spec = mSpecs.get(i);
+            if (spec.mNeedsBatteryInfo) {
+                futures.set(i, startDetector(spec, inputs, batteryInfo));
+            }
+        }
+
+        final List<BatteryTip> tips = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            try {
+                tips.add(futures.get(i).join());
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof TimeoutException)) {
+                    throw e;
+                }
+                final DetectorSpec spec = mSpecs.get(i);
+                Log.w(TAG, "detector timed out: " + spec.mName);
+                synchronized (sDetectorStats) {
+                    getDetectorStats(spec.mName).mTimeoutCount++;
+                }
+                tips.add(spec.mInvisibleTipFactory.create(inputs));
+            }
+        }
+        Collections.sort(tips);
+        return tips;
+    }
+
+    /** Writes the run count and timings of each detector. */
+    public static void dump(PrintWriter writer) {
+        writer.println("\n\tBatteryTip detectors:");
+        synchronized (sDetectorStats) {
+            for (int i = 0; i < sDetectorStats.size(); i++) {
+                final DetectorStats stats = sDetectorStats.valueAt(i);
+                writer.println(String.format(Locale.ENGLISH,
+                        "\t\t%s: runs=%d memoHits=%d timeouts=%d last=%dms max=%dms",
+                        sDetectorStats.keyAt(i),
+                        stats.mRunCount, stats.mMemoHitCount, stats.mTimeoutCount,
+                        stats.mLastDurationMs, stats.mMaxDurationMs));
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        sMemoizedTips.evictAll();
+        synchronized (sDetectorStats) {
+            sDetectorStats.clear();
+        }
+    }
+
+    private static CompletableFuture<BatteryTip> startDetector(DetectorSpec spec, Inputs inputs,
+            @Nullable BatteryInfo batteryInfo) {
+        final CompletableFuture<BatteryTip> result = new CompletableFuture<>();
+        final Future<?> task = sExecutor.submit(() -> {
+            // Only the detector is timed, not the wait for a free thread.
+            result.orTimeout(spec.mTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                result.complete(runDetector(spec, inputs, batteryInfo));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((tip, e) -> {
+            if (e instanceof TimeoutException) {
+                task.cancel(/* mayInterruptIfRunning= */ true);
+            }
+        });
+        return result;
+    }
+
+    private static BatteryTip runDetector(DetectorSpec spec, Inputs inputs,
+            @Nullable BatteryInfo batteryInfo) {
+        final String memoKey = spec.mMemoKey == null
+                ? null : spec.mName + "|" + spec.mMemoKey.get(inputs, batteryInfo);
+        if (memoKey != null) {
+            final BatteryTip memoizedTip = sMemoizedTips.get(memoKey);
+            if (memoizedTip != null) {
+                synchronized (sDetectorStats) {
+                    getDetectorStats(spec.mName).mMemoHitCount++;
+                }
+                return copyOf(memoizedTip);
+            }
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        final BatteryTip tip = spec.mFactory.create(inputs, batteryInfo).detect();
+        final long durationMs = SystemClock.elapsedRealtime() - startTime;
+        synchronized (sDetectorStats) {
+            final DetectorStats stats = getDetectorStats(spec.mName);
+            stats.mRunCount++;
+            stats.mLastDurationMs = durationMs;
+            stats.mMaxDurationMs = Math.max(stats.mMaxDurationMs, durationMs);
+        }
+        if (memoKey != null) {
+            sMemoizedTips.put(memoKey, copyOf(tip));
+        }
+        return tip;
+    }
+
+    private static DetectorStats getDetectorStats(String name) {
+        DetectorStats stats = sDetectorStats.get(name);
+        if (stats == null) {
+            stats = new DetectorStats();
+            sDetectorStats.put(name, stats);
+        }
+        return stats;
+    }
+
+    // Tips are updated by their users, so memoized ones are never handed out directly.
+    private static BatteryTip copyOf(BatteryTip tip) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(tip, /* flags= */ 0);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(BatteryTip.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static List<DetectorSpec> getDefaultSpecs() {
+        return List.of(
+                new DetectorSpec("LowBattery", /* needsBatteryInfo= */ true, DEFAULT_TIMEOUT_MS,
+                        (inputs, info) -> new LowBatteryDetector(inputs.mContext, inputs.mPolicy,
+                                info, inputs.mIsPowerSaveMode),
+                        /* memoKey= */ null,
+                        inputs -> new LowBatteryTip(BatteryTip.StateType.INVISIBLE,
+                                inputs.mIsPowerSaveMode)),
+                new DetectorSpec("HighUsage", /* needsBatteryInfo= */ true,
+                        HIGH_USAGE_TIMEOUT_MS,
+                        (inputs, info) -> new HighUsageDetector(inputs.mContext, inputs.mPolicy,
+                                inputs.mBatteryUsageStats, info),
+                        (inputs, info) -> String.format(Locale.ENGLISH, "%d|%d|%b|%b|%b",
+                                inputs.mBatteryUsageStats.getStatsStartTimestamp(),
+                                inputs.mBatteryUsageStats.getStatsEndTimestamp()
+                                        / HIGH_USAGE_MEMO_WINDOW_MS,
+                                info.discharging, inputs.mPolicy.highUsageEnabled,
+                                inputs.mPolicy.testHighUsageTip),
+                        inputs -> new HighUsageTip(
+                                inputs.mBatteryUsageStats.getStatsStartTimestamp(),
+                                new ArrayList<>())),
+                new DetectorSpec("BatteryDefender", /* needsBatteryInfo= */ true,
+                        DEFAULT_TIMEOUT_MS,
+                        (inputs, info) -> new BatteryDefenderDetector(info, inputs.mContext),
+                        /* memoKey= */ null,
+                        inputs -> new BatteryDefenderTip(BatteryTip.StateType.INVISIBLE,
+                                /* isPluggedIn= */ false)),
+                new DetectorSpec("DockDefender", /* needsBatteryInfo= */ true, DEFAULT_TIMEOUT_MS,
+                        (inputs, info) -> new DockDefenderDetector(info, inputs.mContext),
+                        /* memoKey= */ null,
+                        inputs -> new DockDefenderTip(BatteryTip.StateType.INVISIBLE,
+                                DockDefenderMode.DISABLED)),
+                new DetectorSpec("IncompatibleCharger", /* needsBatteryInfo= */ false,
+                        DEFAULT_TIMEOUT_MS,
+                        (inputs, info) -> new IncompatibleChargerDetector(inputs.mContext),
+                        /* memoKey= */ null,
+                        inputs -> new IncompatibleChargerTip(BatteryTip.StateType.INVISIBLE)));
+    }
+
+    private static ExecutorService createExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                /* keepAliveTime= */ 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
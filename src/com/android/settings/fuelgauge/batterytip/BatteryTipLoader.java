@@ -22,21 +22,10 @@ import android.os.PowerManager;
 
 import androidx.annotation.VisibleForTesting;
 
-import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
-import com.android.settings.fuelgauge.batterytip.detectors.BatteryDefenderDetector;
-import com.android.settings.fuelgauge.batterytip.detectors.DockDefenderDetector;
-import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
-import com.android.settings.fuelgauge.batterytip.detectors.IncompatibleChargerDetector;
-import com.android.settings.fuelgauge.batterytip.detectors.LowBatteryDetector;
-import com.android.settings.fuelgauge.batterytip.detectors.SmartBatteryDetector;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
-import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
-import com.android.settingslib.fuelgauge.EstimateKt;
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -49,6 +38,7 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
     private BatteryUsageStats mBatteryUsageStats;
     @VisibleForTesting
     BatteryUtils mBatteryUtils;
+    private final BatteryTipDetectorEngine mDetectorEngine = new BatteryTipDetectorEngine();
 
     public BatteryTipLoader(Context context, BatteryUsageStats batteryUsageStats) {
         super(context);
@@ -58,20 +48,12 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
 
     @Override
     public List<BatteryTip> loadInBackground() {
-        final List<BatteryTip> tips = new ArrayList<>();
-        final BatteryTipPolicy policy = new BatteryTipPolicy(getContext());
-        final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(TAG);
         final Context context = getContext().getApplicationContext();
         final boolean isPowerSaveMode =
                 context.getSystemService(PowerManager.class).isPowerSaveMode();
-
-        tips.add(new LowBatteryDetector(context, policy, batteryInfo, isPowerSaveMode).detect());
-        tips.add(new HighUsageDetector(context, policy, mBatteryUsageStats, batteryInfo).detect());
-        tips.add(new BatteryDefenderDetector(batteryInfo, context).detect());
-        tips.add(new DockDefenderDetector(batteryInfo, context).detect());
-        tips.add(new IncompatibleChargerDetector(context).detect());
-        Collections.sort(tips);
-        return tips;
+        final BatteryTipDetectorEngine.Inputs inputs = new BatteryTipDetectorEngine.Inputs(
+                context, new BatteryTipPolicy(getContext()), mBatteryUsageStats, isPowerSaveMode);
+        return mDetectorEngine.detect(inputs, () -> mBatteryUtils.getBatteryInfo(TAG));
     }
 
     @Override
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.getEffectivePackageName;
+
+import android.content.Context;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builds the {@link AppUsagePeriod}s of the hourly time slots in a single pass over the time
+ * sorted {@link AppUsageEvent}s.
+ *
+ * The periods of each (user, package, instance) are built from the whole event list rather than
+ * from a buffered window around every slot, then split at the slot boundaries. The completed
+ * periods and the open ones are kept by the builder across runs, so that a later run with the
+ * same events plus newer ones only processes the newer events. Any other change of the events,
+ * including old events dropped from the beginning, rebuilds all the periods.
+ */
+final class AppUsagePeriodBuilder {
+    private static final String TAG = "AppUsagePeriodBuilder";
+    private static final long NO_START_TIME = -1;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<InstanceKey, InstanceState> mInstances = new ArrayMap<>();
+    // Instances with a resumed activity, which a device shutdown event closes.
+    @GuardedBy("mLock")
+    private final ArraySet<InstanceState> mOpenInstances = new ArraySet<>();
+    // Identifies the events processed by the previous run.
+    @GuardedBy("mLock")
+    private AppUsageEvent mFirstEvent;
+    @GuardedBy("mLock")
+    private AppUsageEvent mLastEvent;
+    @GuardedBy("mLock")
+    private int mProcessedCount;
+    @GuardedBy("mLock")
+    private int mLastNewEventCount;
+
+    private static final class InstanceKey {
+        final long mUserId;
+        final String mPackageName;
+        final int mInstanceId;
+
+        InstanceKey(long userId, String packageName, int instanceId) {
+            mUserId = userId;
+            mPackageName = packageName;
+            mInstanceId = instanceId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof InstanceKey)) {
+                return false;
+            }
+            final InstanceKey other = (InstanceKey) o;
+            return mUserId == other.mUserId
+                    && mInstanceId == other.mInstanceId
+                    && Objects.equals(mPackageName, other.mPackageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mUserId, mPackageName, mInstanceId);
+        }
+    }
+
+    private static final class InstanceState {
+        final long mUserId;
+        // The package the usage is attributed to, which can be the task root package.
+        final String mPackageName;
+        // Completed periods in ascending order of start time.
+        final List<AppUsagePeriod> mPeriods = new ArrayList<>();
+        long mStartTime = NO_START_TIME;
+
+        InstanceState(long userId, String packageName) {
+            mUserId = userId;
+            mPackageName = packageName;
+        }
+
+        void addPeriod(long startTime, long endTime) {
+            if (startTime < endTime) {
+                mPeriods.add(AppUsagePeriod.newBuilder()
+                        .setStartTime(startTime)
+                        .setEndTime(endTime)
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * Returns the usage periods of each slot of {@code hourlyBatteryLevelsPerDay}, in the
+     * structure of {@link DataProcessor#generateAppUsagePeriodMap}.
+     *
+     * Both event lists must be sorted by timestamp.
+     */
+    Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> build(
+            Context context,
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            final List<AppUsageEvent> appUsageEventList,
+            final List<BatteryEvent> batteryEventList) {
+        final long startTime = System.currentTimeMillis();
+        synchronized (mLock) {
+            final int firstNewIndex = getFirstNewEventIndex(appUsageEventList);
+            if (firstNewIndex == 0) {
+                // Forgets the processed events too, even if none is processed by this run.
+                clearCache();
+            }
+            for (int i = firstNewIndex; i < appUsageEventList.size(); i++) {
+                processEvent(context, appUsageEventList.get(i));
+            }
+            mLastNewEventCount = appUsageEventList.size() - firstNewIndex;
+            if (!appUsageEventList.isEmpty()) {
+                mFirstEvent = appUsageEventList.get(0);
+                mLastEvent = appUsageEventList.get(appUsageEventList.size() - 1);
+                mProcessedCount = appUsageEventList.size();
+                prune(mFirstEvent.getTimestamp());
+            }
+            final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                    resultMap = distribute(hourlyBatteryLevelsPerDay, batteryEventList);
+            Log.d(TAG, String.format("build() events=%d new=%d instances=%d in %d/ms",
+                    appUsageEventList.size(), mLastNewEventCount, mInstances.size(),
+                    System.currentTimeMillis() - startTime));
+            return resultMap;
+        }
+    }
+
+    /** Drops the periods kept from the previous runs. */
+    void clearCache() {
+        synchronized (mLock) {
+            mInstances.clear();
+            mOpenInstances.clear();
+            mFirstEvent = null;
+            mLastEvent = null;
+            mProcessedCount = 0;
+        }
+    }
+
+    /** Returns the number of events processed by the last run. */
+    @VisibleForTesting
+    int getLastNewEventCount() {
+        synchronized (mLock) {
+            return mLastNewEventCount;
+        }
+    }
+
+    /**
+     * Returns the index of the first event not processed yet, or 0 if {@code events} is not the
+     * list processed by the previous run with events added at its end.
+     */
+    @GuardedBy("mLock")
+    private int getFirstNewEventIndex(List<AppUsageEvent> events) {
+        if (mLastEvent == null || events.isEmpty()) {
+            return 0;
+        }
+        final int lastIndex = indexOf(events, mLastEvent, /* last= */ true);
+        if (lastIndex < 0) {
+            return 0;
+        }
+        // The periods of dropped events are not tracked, so that case is rebuilt as well.
+        final int firstIndex = indexOf(events, mFirstEvent, /* last= */ false);
+        final boolean unchanged = firstIndex == 0 && lastIndex + 1 == mProcessedCount;
+        return unchanged ? lastIndex + 1 : 0;
+    }
+
+    private static int indexOf(List<AppUsageEvent> events, AppUsageEvent target, boolean last) {
+        final long timestamp = target.getTimestamp();
+        int low = 0;
+        int high = events.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (events.get(middle).getTimestamp() < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int result = -1;
+        for (int i = low; i < events.size() && events.get(i).getTimestamp() == timestamp; i++) {
+            if (target.equals(events.get(i))) {
+                result = i;
+                if (!last) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @GuardedBy("mLock")
+    private void processEvent(Context context, AppUsageEvent event) {
+        final long eventTime = event.getTimestamp();
+        switch (event.getType()) {
+            case ACTIVITY_RESUMED: {
+                // If there is an existing start time, simply ignore this start event.
+                final InstanceState state = getInstanceState(context, event);
+                if (state.mStartTime == NO_START_TIME) {
+                    state.mStartTime = eventTime;
+                    mOpenInstances.add(state);
+                }
+                break;
+            }
+            case ACTIVITY_STOPPED: {
+                final InstanceState state = getInstanceState(context, event);
+                state.addPeriod(state.mStartTime != NO_START_TIME
+                        ? state.mStartTime
+                        : eventTime - DataProcessor.DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL,
+                        eventTime);
+                state.mStartTime = NO_START_TIME;
+                mOpenInstances.remove(state);
+                break;
+            }
+            case DEVICE_SHUTDOWN:
+                // The end event might be lost when device is shutdown. Use the estimated end
+                // time for all the open periods.
+                for (int i = 0; i < mOpenInstances.size(); i++) {
+                    final InstanceState state = mOpenInstances.valueAt(i);
+                    state.addPeriod(state.mStartTime, Math.min(state.mStartTime
+                            + DataProcessor.DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL,
+                            eventTime));
+                    state.mStartTime = NO_START_TIME;
+                }
+                mOpenInstances.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private InstanceState getInstanceState(Context context, AppUsageEvent event) {
+        final InstanceKey key = new InstanceKey(
+                event.getUserId(), event.getPackageName(), event.getInstanceId());
+        InstanceState state = mInstances.get(key);
+        if (state == null) {
+            state = new InstanceState(event.getUserId(), getEffectivePackageName(
+                    context, DataProcessor.sUsageStatsManager, event.getPackageName(),
+                    event.getTaskRootPackageName()));
+            mInstances.put(key, state);
+        }
+        return state;
+    }
+
+    /** Drops the completed periods ending before the oldest event. */
+    @GuardedBy("mLock")
+    private void prune(long oldestTimestamp) {
+        final Iterator<InstanceState> iterator = mInstances.values().iterator();
+        while (iterator.hasNext()) {
+            final InstanceState state = iterator.next();
+            state.mPeriods.removeIf(period -> period.getEndTime() < oldestTimestamp);
+            if (state.mPeriods.isEmpty() && state.mStartTime == NO_START_TIME) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+            distribute(
+                    final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+                    final List<BatteryEvent> batteryEventList) {
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> resultMap =
+                new ArrayMap<>();
+        // Flattens the slots of all the days, which are in ascending order of time.
+        final List<long[]> slots = new ArrayList<>();
+        for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
+            final Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap =
+                    new ArrayMap<>();
+            resultMap.put(dailyIndex, dailyMap);
+            if (hourlyBatteryLevelsPerDay.get(dailyIndex) == null) {
+                continue;
+            }
+            final List<Long> timestamps = hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps();
+            for (int hourlyIndex = 0; hourlyIndex < timestamps.size() - 1; hourlyIndex++) {
+                // The value stays null when there is no data in the hourly slot.
+                dailyMap.put(hourlyIndex, null);
+                slots.add(new long[] {timestamps.get(hourlyIndex), timestamps.get(hourlyIndex + 1),
+                        dailyIndex, hourlyIndex});
+            }
+        }
+        if (slots.isEmpty()) {
+            return resultMap;
+        }
+
+        final long lastEndTime = slots.get(slots.size() - 1)[1];
+        for (InstanceState state : mInstances.values()) {
+            final List<AppUsagePeriod> periods = new ArrayList<>(state.mPeriods);
+            // The stop event of an open period might happen in the next time slot.
+            if (state.mStartTime != NO_START_TIME && state.mStartTime < lastEndTime) {
+                periods.add(AppUsagePeriod.newBuilder()
+                        .setStartTime(state.mStartTime)
+                        .setEndTime(lastEndTime)
+                        .build());
+            }
+            for (AppUsagePeriod period : DataProcessor
+                    .excludePowerConnectedTimeFromAppUsagePeriodList(periods, batteryEventList)) {
+                for (int i = findFirstSlotEndingAfter(slots, period.getStartTime());
+                        i < slots.size() && slots.get(i)[0] < period.getEndTime(); i++) {
+                    final long[] slot = slots.get(i);
+                    final long periodStartTime = Math.max(period.getStartTime(), slot[0]);
+                    final long periodEndTime = Math.min(period.getEndTime(), slot[1]);
+                    if (periodStartTime < periodEndTime) {
+                        addToSlot(resultMap.get((int) slot[2]), (int) slot[3], state,
+                                AppUsagePeriod.newBuilder()
+                                        .setStartTime(periodStartTime)
+                                        .setEndTime(periodEndTime)
+                                        .build());
+                    }
+                }
+            }
+        }
+
+        // Sorts the usage periods of the instances of a package by start time.
+        for (Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap
+                : resultMap.values()) {
+            for (Map<Long, Map<String, List<AppUsagePeriod>>> hourlyMap : dailyMap.values()) {
+                if (hourlyMap == null) {
+                    continue;
+                }
+                for (Map<String, List<AppUsagePeriod>> packageMap : hourlyMap.values()) {
+                    for (List<AppUsagePeriod> periods : packageMap.values()) {
+                        periods.sort(Comparator.comparing(AppUsagePeriod::getStartTime));
+                    }
+                }
+            }
+        }
+        return resultMap;
+    }
+
+    private static int findFirstSlotEndingAfter(List<long[]> slots, long timestamp) {
+        int low = 0;
+        int high = slots.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (slots.get(middle)[1] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void addToSlot(
+            final Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap,
+            final int hourlyIndex, final InstanceState state, final AppUsagePeriod period) {
+        Map<Long, Map<String, List<AppUsagePeriod>>> hourlyMap = dailyMap.get(hourlyIndex);
+        if (hourlyMap == null) {
+            hourlyMap = new ArrayMap<>();
+            dailyMap.put(hourlyIndex, hourlyMap);
+        }
+        hourlyMap.computeIfAbsent(state.mUserId, key -> new ArrayMap<>())
+                .computeIfAbsent(state.mPackageName, key -> new ArrayList<>())
+                .add(period);
+    }
+}
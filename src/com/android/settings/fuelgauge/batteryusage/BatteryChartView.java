@@ -33,7 +33,6 @@ import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.HapticFeedbackConstants;
@@ -54,10 +53,8 @@ import androidx.appcompat.widget.AppCompatImageView;
 import com.android.settings.R;
 import com.android.settingslib.Utils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Set;
 
 /** A widget component to draw chart graph. */
 public class BatteryChartView extends AppCompatImageView implements View.OnClickListener {
@@ -75,8 +72,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     private final String[] mPercentages = getPercentages();
     private final Rect mIndent = new Rect();
     private final Rect[] mPercentageBounds = new Rect[]{new Rect(), new Rect(), new Rect()};
-    private final List<Rect> mAxisLabelsBounds = new ArrayList<>();
-    private final Set<Integer> mLabelDrawnIndexes = new ArraySet<>();
+    private final float[] mHorizontalDividerY = new float[HORIZONTAL_DIVIDER_COUNT];
     private final int mLayoutDirection =
             getContext().getResources().getConfiguration().getLayoutDirection();
 
@@ -106,11 +102,31 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     private AccessibilityNodeProvider mAccessibilityNodeProvider;
     private BatteryChartView.OnSelectListener mOnSelectListener;
 
+    // Render model, recomputed when the view model, the size or the text bounds change.
+    private boolean mTextBoundsValid;
+    private boolean mRenderModelValid;
+    private int mRenderWidth;
+    private int mRenderHeight;
+    private float mUnitWidth;
+    private float mTrapezoidBottom;
+    private float mAxisLabelBaselineY;
+    private int mAxisLabelCount;
+    private Rect[] mAxisLabelsBounds = new Rect[0];
+    private int[] mAxisLabelLeft;
+    private int[] mAxisLabelRight;
+    private int[] mAxisLabelCenterX;
+    private boolean[] mAxisLabelDrawn;
+    private boolean[] mDividerHighlighted;
+    private float[] mVerticalDividerX;
+    private Path[] mTrapezoidPaths;
+
     @VisibleForTesting
     TrapezoidSlot[] mTrapezoidSlots;
     // Records the location to calculate selected index.
     @VisibleForTesting
     float mTouchUpEventX = Float.MIN_VALUE;
+    @VisibleForTesting
+    int mRenderModelUpdateCount;
 
     public BatteryChartView(Context context) {
         super(context, null);
@@ -129,6 +145,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     public void setViewModel(BatteryChartViewModel viewModel) {
         if (viewModel == null) {
             mViewModel = null;
+            mRenderModelValid = false;
             invalidate();
             return;
         }
@@ -137,7 +154,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 "setViewModel(): size: %d, selectedIndex: %d, getHighlightSlotIndex: %d",
                 viewModel.size(), viewModel.selectedIndex(), viewModel.getHighlightSlotIndex()));
         mViewModel = viewModel;
-        initializeAxisLabelsBounds();
+        initializeRenderModel(viewModel.size());
         initializeTrapezoidSlots(viewModel.size() - 1);
         setClickable(hasAnyValidTrapezoid(viewModel));
         requestLayout();
@@ -158,12 +175,19 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         } else {
             mTextPaint = null;
         }
+        mTextBoundsValid = false;
         requestLayout();
     }
 
     @Override
     public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        // Text bounds only change with the texts or the text paint.
+        if (mTextBoundsValid) {
+            return;
+        }
+        mTextBoundsValid = true;
+        mRenderModelValid = false;
         // Measures text bounds and updates indent configuration.
         if (mTextPaint != null) {
             mTextPaint.setTextAlign(Paint.Align.LEFT);
@@ -185,8 +209,8 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 int maxTop = 0;
                 for (int index = 0; index < mViewModel.size(); index++) {
                     final String text = mViewModel.getText(index);
-                    mTextPaint.getTextBounds(text, 0, text.length(), mAxisLabelsBounds.get(index));
-                    maxTop = Math.max(maxTop, -mAxisLabelsBounds.get(index).top);
+                    mTextPaint.getTextBounds(text, 0, text.length(), mAxisLabelsBounds[index]);
+                    maxTop = Math.max(maxTop, -mAxisLabelsBounds[index].top);
                 }
                 mIndent.bottom = maxTop + round(mTextPadding * 2f);
             }
@@ -199,6 +223,9 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
+        if (!mRenderModelValid || mRenderWidth != getWidth() || mRenderHeight != getHeight()) {
+            updateRenderModel();
+        }
         // Before mLevels initialized, the count of trapezoids is unknown. Only draws the
         // horizontal percentages and dividers.
         drawHorizontalDividers(canvas);
@@ -388,88 +415,45 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         mTransomIcon = getResources().getDrawable(R.drawable.ic_battery_tips_warning_icon);
     }
 
-    private void drawHorizontalDividers(Canvas canvas) {
-        final int width = getWidth() - abs(mIndent.width());
+    /**
+     * Recomputes everything drawn from the view model, the size and the text bounds, so that
+     * drawing itself does not compute layouts nor allocate.
+     */
+    private void updateRenderModel() {
+        mRenderWidth = getWidth();
+        mRenderHeight = getHeight();
+        mRenderModelValid = true;
+        mRenderModelUpdateCount++;
+        updateHorizontalDividers();
+        if (mViewModel == null) {
+            return;
+        }
+        updateVerticalDividers();
+        updateAxisLabels();
+        updateTrapezoids();
+    }
+
+    private void updateHorizontalDividers() {
         final int height = getHeight() - mIndent.top - mIndent.bottom;
         final float topOffsetY = mIndent.top + mDividerWidth * .5f;
         final float bottomOffsetY = mIndent.top + (height - mDividerHeight - mDividerWidth * .5f);
-        final float availableSpace = bottomOffsetY - topOffsetY;
-
-        mDividerPaint.setColor(DIVIDER_COLOR);
         final float dividerOffsetUnit =
-                availableSpace / (float) (HORIZONTAL_DIVIDER_COUNT - 1);
-
-        // Draws 5 divider lines.
+                (bottomOffsetY - topOffsetY) / (float) (HORIZONTAL_DIVIDER_COUNT - 1);
         for (int index = 0; index < HORIZONTAL_DIVIDER_COUNT; index++) {
-            float offsetY = topOffsetY + dividerOffsetUnit * index;
-            canvas.drawLine(mIndent.left, offsetY,
-                    mIndent.left + width, offsetY, mDividerPaint);
-
-            //  Draws percentage text only for 100% / 50% / 0%
-            if (index % 2 == 0) {
-                drawPercentage(canvas, /*index=*/ (index + 1) / 2, offsetY);
-            }
+            mHorizontalDividerY[index] = topOffsetY + dividerOffsetUnit * index;
         }
     }
 
-    private void drawPercentage(Canvas canvas, int index, float offsetY) {
-        if (mTextPaint != null) {
-            mTextPaint.setTextAlign(Paint.Align.RIGHT);
-            mTextPaint.setColor(mDefaultTextColor);
-            canvas.drawText(
-                    mPercentages[index],
-                    isRTL() ? mIndent.left - mTextPadding : getWidth(),
-                    offsetY + mPercentageBounds[index].height() * .5f,
-                    mTextPaint);
-        }
-    }
-
-    private void drawVerticalDividers(Canvas canvas) {
+    private void updateVerticalDividers() {
         final int width = getWidth() - abs(mIndent.width());
         final int dividerCount = mTrapezoidSlots.length + 1;
         final float dividerSpace = dividerCount * mDividerWidth;
-        final float unitWidth = (width - dividerSpace) / (float) mTrapezoidSlots.length;
-        final float bottomY = getHeight() - mIndent.bottom;
-        final float startY = bottomY - mDividerHeight;
+        mUnitWidth = (width - dividerSpace) / (float) mTrapezoidSlots.length;
         final float trapezoidSlotOffset = mTrapezoidHOffset + mDividerWidth * .5f;
-        // Draws the axis label slot information.
-        if (mViewModel != null) {
-            final float baselineY = getHeight() - mTextPadding;
-            Rect[] axisLabelDisplayAreas;
-            switch (mViewModel.axisLabelPosition()) {
-                case CENTER_OF_TRAPEZOIDS:
-                    axisLabelDisplayAreas = getAxisLabelDisplayAreas(
-                            /* size= */ mViewModel.size() - 1,
-                            /* baselineX= */ mIndent.left + mDividerWidth + unitWidth * .5f,
-                            /* offsetX= */ mDividerWidth + unitWidth,
-                            baselineY,
-                            /* shiftFirstAndLast= */ false);
-                    break;
-                case BETWEEN_TRAPEZOIDS:
-                default:
-                    axisLabelDisplayAreas = getAxisLabelDisplayAreas(
-                            /* size= */ mViewModel.size(),
-                            /* baselineX= */ mIndent.left + mDividerWidth * .5f,
-                            /* offsetX= */ mDividerWidth + unitWidth,
-                            baselineY,
-                            /* shiftFirstAndLast= */ true);
-                    break;
-            }
-            drawAxisLabels(canvas, axisLabelDisplayAreas, baselineY);
-        }
-        // Draws each vertical dividers.
         float startX = mDividerWidth * .5f + mIndent.left;
         for (int index = 0; index < dividerCount; index++) {
-            float dividerY = bottomY;
-            if (mViewModel.axisLabelPosition() == BETWEEN_TRAPEZOIDS
-                    && mLabelDrawnIndexes.contains(index)) {
-                mDividerPaint.setColor(mTrapezoidSolidColor);
-                dividerY += mDividerHeight / 4f;
-            } else {
-                mDividerPaint.setColor(DIVIDER_COLOR);
-            }
-            canvas.drawLine(startX, startY, startX, dividerY, mDividerPaint);
-            final float nextX = startX + mDividerWidth + unitWidth;
+            mVerticalDividerX[index] = startX;
+            final float nextX = startX + mDividerWidth + mUnitWidth;
             // Updates the trapezoid slots for drawing.
             if (index < mTrapezoidSlots.length) {
                 final int trapezoidIndex = isRTL() ? mTrapezoidSlots.length - index - 1 : index;
@@ -480,12 +464,50 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         }
     }
 
-    /** Gets all the axis label texts displaying area positions if they are shown. */
-    private Rect[] getAxisLabelDisplayAreas(final int size, final float baselineX,
+    private void updateAxisLabels() {
+        Arrays.fill(mAxisLabelDrawn, false);
+        Arrays.fill(mDividerHighlighted, false);
+        if (mTextPaint == null) {
+            mAxisLabelCount = 0;
+            return;
+        }
+        final float baselineY = getHeight() - mTextPadding;
+        switch (mViewModel.axisLabelPosition()) {
+            case CENTER_OF_TRAPEZOIDS:
+                updateAxisLabelDisplayAreas(
+                        /* size= */ mViewModel.size() - 1,
+                        /* baselineX= */ mIndent.left + mDividerWidth + mUnitWidth * .5f,
+                        /* offsetX= */ mDividerWidth + mUnitWidth,
+                        baselineY,
+                        /* shiftFirstAndLast= */ false);
+                break;
+            case BETWEEN_TRAPEZOIDS:
+            default:
+                updateAxisLabelDisplayAreas(
+                        /* size= */ mViewModel.size(),
+                        /* baselineX= */ mIndent.left + mDividerWidth * .5f,
+                        /* offsetX= */ mDividerWidth + mUnitWidth,
+                        baselineY,
+                        /* shiftFirstAndLast= */ true);
+                break;
+        }
+        if (mAxisLabelCount == 0) {
+            return;
+        }
+        // Suppose first and last labels are always able to draw.
+        final int lastIndex = mAxisLabelCount - 1;
+        markAxisLabelDrawn(0);
+        markAxisLabelDrawn(lastIndex);
+        markAxisLabelsBetweenStartIndexAndEndIndex(0, lastIndex);
+    }
+
+    /** Updates all the axis label texts displaying area positions if they are shown. */
+    private void updateAxisLabelDisplayAreas(final int size, final float baselineX,
             final float offsetX, final float baselineY, final boolean shiftFirstAndLast) {
-        final Rect[] result = new Rect[size];
-        for (int index = 0; index < result.length; index++) {
-            final float width = mAxisLabelsBounds.get(index).width();
+        mAxisLabelCount = size;
+        mAxisLabelBaselineY = baselineY;
+        for (int index = 0; index < size; index++) {
+            final float width = mAxisLabelsBounds[index].width();
             float middle = baselineX + index * offsetX;
             if (shiftFirstAndLast) {
                 if (index == 0) {
@@ -496,128 +518,88 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 }
             }
             final float left = middle - width * .5f;
-            final float right = left + width;
-            final float top = baselineY + mAxisLabelsBounds.get(index).top;
-            final float bottom = top + mAxisLabelsBounds.get(index).height();
-            result[index] = new Rect(round(left), round(top), round(right), round(bottom));
+            mAxisLabelLeft[index] = round(left);
+            mAxisLabelRight[index] = round(left + width);
+            mAxisLabelCenterX[index] = (mAxisLabelLeft[index] + mAxisLabelRight[index]) / 2;
         }
-        return result;
-    }
-
-    private void drawAxisLabels(Canvas canvas, final Rect[] displayAreas, final float baselineY) {
-        final int lastIndex = displayAreas.length - 1;
-        mLabelDrawnIndexes.clear();
-        // Suppose first and last labels are always able to draw.
-        drawAxisLabelText(canvas, 0, displayAreas[0], baselineY);
-        mLabelDrawnIndexes.add(0);
-        drawAxisLabelText(canvas, lastIndex, displayAreas[lastIndex], baselineY);
-        mLabelDrawnIndexes.add(lastIndex);
-        drawAxisLabelsBetweenStartIndexAndEndIndex(canvas, displayAreas, 0, lastIndex, baselineY);
     }
 
     /**
-     * Recursively draws axis labels between the start index and the end index. If the inner number
-     * can be exactly divided into 2 parts, check and draw the middle index label and then
-     * recursively draw the 2 parts. Otherwise, divide into 3 parts. Check and draw the middle two
-     * labels and then recursively draw the 3 parts. If there are any overlaps, skip drawing and go
-     * back to the uplevel of the recursion.
+     * Recursively marks axis labels to draw between the start index and the end index. If the
+     * inner number can be exactly divided into 2 parts, check and mark the middle index label and
+     * then recursively mark the 2 parts. Otherwise, divide into 3 parts. Check and mark the middle
+     * two labels and then recursively mark the 3 parts. If there are any overlaps, skip marking and
+     * go back to the uplevel of the recursion.
      */
-    private void drawAxisLabelsBetweenStartIndexAndEndIndex(Canvas canvas,
-            final Rect[] displayAreas, final int startIndex, final int endIndex,
-            final float baselineY) {
+    private void markAxisLabelsBetweenStartIndexAndEndIndex(
+            final int startIndex, final int endIndex) {
         if (endIndex - startIndex <= 1) {
             return;
         }
         if ((endIndex - startIndex) % 2 == 0) {
             int middleIndex = (startIndex + endIndex) / 2;
-            if (hasOverlap(displayAreas, startIndex, middleIndex)
-                    || hasOverlap(displayAreas, middleIndex, endIndex)) {
+            if (hasOverlap(startIndex, middleIndex) || hasOverlap(middleIndex, endIndex)) {
                 return;
             }
-            drawAxisLabelText(canvas, middleIndex, displayAreas[middleIndex], baselineY);
-            mLabelDrawnIndexes.add(middleIndex);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, startIndex, middleIndex, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex, endIndex, baselineY);
+            markAxisLabelDrawn(middleIndex);
+            markAxisLabelsBetweenStartIndexAndEndIndex(startIndex, middleIndex);
+            markAxisLabelsBetweenStartIndexAndEndIndex(middleIndex, endIndex);
         } else {
             int middleIndex1 = startIndex + round((endIndex - startIndex) / 3f);
             int middleIndex2 = startIndex + round((endIndex - startIndex) * 2 / 3f);
-            if (hasOverlap(displayAreas, startIndex, middleIndex1)
-                    || hasOverlap(displayAreas, middleIndex1, middleIndex2)
-                    || hasOverlap(displayAreas, middleIndex2, endIndex)) {
+            if (hasOverlap(startIndex, middleIndex1)
+                    || hasOverlap(middleIndex1, middleIndex2)
+                    || hasOverlap(middleIndex2, endIndex)) {
                 return;
             }
-            drawAxisLabelText(canvas, middleIndex1, displayAreas[middleIndex1], baselineY);
-            mLabelDrawnIndexes.add(middleIndex1);
-            drawAxisLabelText(canvas, middleIndex2, displayAreas[middleIndex2], baselineY);
-            mLabelDrawnIndexes.add(middleIndex2);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, startIndex, middleIndex1, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex1, middleIndex2, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex2, endIndex, baselineY);
+            markAxisLabelDrawn(middleIndex1);
+            markAxisLabelDrawn(middleIndex2);
+            markAxisLabelsBetweenStartIndexAndEndIndex(startIndex, middleIndex1);
+            markAxisLabelsBetweenStartIndexAndEndIndex(middleIndex1, middleIndex2);
+            markAxisLabelsBetweenStartIndexAndEndIndex(middleIndex2, endIndex);
         }
     }
 
-    private boolean hasOverlap(
-            final Rect[] displayAreas, final int leftIndex, final int rightIndex) {
-        return displayAreas[leftIndex].right + mTextPadding * 2.3f > displayAreas[rightIndex].left;
+    private boolean hasOverlap(final int leftIndex, final int rightIndex) {
+        return mAxisLabelRight[leftIndex] + mTextPadding * 2.3f > mAxisLabelLeft[rightIndex];
     }
 
-    private boolean isRTL() {
-        return mLayoutDirection == View.LAYOUT_DIRECTION_RTL;
+    private void markAxisLabelDrawn(int index) {
+        mAxisLabelDrawn[index] = true;
+        mDividerHighlighted[index] = true;
+        mDividerHighlighted[getAxisLabelTextIndex(index)] = true;
     }
 
-    private void drawAxisLabelText(
-            Canvas canvas, int index, final Rect displayArea, final float baselineY) {
-        mTextPaint.setColor(mTrapezoidSolidColor);
-        mTextPaint.setTextAlign(Paint.Align.CENTER);
+    private int getAxisLabelTextIndex(int index) {
         // Reverse the sort of axis labels for RTL
         if (isRTL()) {
-            index = mViewModel.axisLabelPosition() == BETWEEN_TRAPEZOIDS
-                            ? mViewModel.size() - index - 1     // for hourly
-                            : mViewModel.size() - index - 2;    // for daily
+            return mViewModel.axisLabelPosition() == BETWEEN_TRAPEZOIDS
+                    ? mViewModel.size() - index - 1     // for hourly
+                    : mViewModel.size() - index - 2;    // for daily
         }
-        canvas.drawText(
-                mViewModel.getText(index),
-                displayArea.centerX(),
-                baselineY,
-                mTextPaint);
-        mLabelDrawnIndexes.add(index);
+        return index;
     }
 
-    private void drawTrapezoids(Canvas canvas) {
-        // Ignores invalid trapezoid data.
-        if (mViewModel == null) {
-            return;
-        }
-        final float trapezoidBottom =
-                getHeight() - mIndent.bottom - mDividerHeight - mDividerWidth
-                        - mTrapezoidVOffset;
+    private boolean isRTL() {
+        return mLayoutDirection == View.LAYOUT_DIRECTION_RTL;
+    }
+
+    private void updateTrapezoids() {
+        mTrapezoidBottom = getHeight() - mIndent.bottom - mDividerHeight - mDividerWidth
+                - mTrapezoidVOffset;
         final float availableSpace =
-                trapezoidBottom - mDividerWidth * .5f - mIndent.top - mTrapezoidVOffset;
+                mTrapezoidBottom - mDividerWidth * .5f - mIndent.top - mTrapezoidVOffset;
         final float unitHeight = availableSpace / 100f;
-        // Draws all trapezoid shapes into the canvas.
-        final Path trapezoidPath = new Path();
-        Path trapezoidCurvePath = null;
         for (int index = 0; index < mTrapezoidSlots.length; index++) {
+            final Path trapezoidPath = mTrapezoidPaths[index];
+            trapezoidPath.reset();
             // Not draws the trapezoid for corner or not initialization cases.
             if (!isValidToDraw(mViewModel, index)) {
                 continue;
             }
-            // Configures the trapezoid paint color.
-            final int trapezoidColor = (mViewModel.selectedIndex() == index
-                    || mViewModel.selectedIndex() == BatteryChartViewModel.SELECTED_INDEX_ALL)
-                    ? mTrapezoidSolidColor : mTrapezoidColor;
-            final boolean isHoverState = mHoveredIndex == index && isValidToDraw(mViewModel,
-                    mHoveredIndex);
-            mTrapezoidPaint.setColor(isHoverState ? mTrapezoidHoverColor : trapezoidColor);
-
             float leftTop = round(
-                    trapezoidBottom - requireNonNull(mViewModel.getLevel(index)) * unitHeight);
-            float rightTop = round(trapezoidBottom
+                    mTrapezoidBottom - requireNonNull(mViewModel.getLevel(index)) * unitHeight);
+            float rightTop = round(mTrapezoidBottom
                     - requireNonNull(mViewModel.getLevel(index + 1)) * unitHeight);
             // Mirror the shape of the trapezoid for RTL
             if (isRTL()) {
@@ -625,16 +607,95 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 leftTop = rightTop;
                 rightTop = temp;
             }
-            trapezoidPath.reset();
-            trapezoidPath.moveTo(mTrapezoidSlots[index].mLeft, trapezoidBottom);
+            trapezoidPath.moveTo(mTrapezoidSlots[index].mLeft, mTrapezoidBottom);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, leftTop);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mRight, rightTop);
-            trapezoidPath.lineTo(mTrapezoidSlots[index].mRight, trapezoidBottom);
+            trapezoidPath.lineTo(mTrapezoidSlots[index].mRight, mTrapezoidBottom);
             // A tricky way to make the trapezoid shape drawing the rounded corner.
-            trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, trapezoidBottom);
+            trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, mTrapezoidBottom);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, leftTop);
+        }
+    }
+
+    private void drawHorizontalDividers(Canvas canvas) {
+        final int width = getWidth() - abs(mIndent.width());
+        mDividerPaint.setColor(DIVIDER_COLOR);
+        // Draws 5 divider lines.
+        for (int index = 0; index < HORIZONTAL_DIVIDER_COUNT; index++) {
+            final float offsetY = mHorizontalDividerY[index];
+            canvas.drawLine(mIndent.left, offsetY,
+                    mIndent.left + width, offsetY, mDividerPaint);
+
+            //  Draws percentage text only for 100% / 50% / 0%
+            if (index % 2 == 0) {
+                drawPercentage(canvas, /*index=*/ (index + 1) / 2, offsetY);
+            }
+        }
+    }
+
+    private void drawPercentage(Canvas canvas, int index, float offsetY) {
+        if (mTextPaint != null) {
+            mTextPaint.setTextAlign(Paint.Align.RIGHT);
+            mTextPaint.setColor(mDefaultTextColor);
+            canvas.drawText(
+                    mPercentages[index],
+                    isRTL() ? mIndent.left - mTextPadding : getWidth(),
+                    offsetY + mPercentageBounds[index].height() * .5f,
+                    mTextPaint);
+        }
+    }
+
+    private void drawVerticalDividers(Canvas canvas) {
+        final float bottomY = getHeight() - mIndent.bottom;
+        final float startY = bottomY - mDividerHeight;
+        drawAxisLabels(canvas);
+        // Draws each vertical dividers.
+        for (int index = 0; index < mTrapezoidSlots.length + 1; index++) {
+            float dividerY = bottomY;
+            if (mViewModel.axisLabelPosition() == BETWEEN_TRAPEZOIDS
+                    && mDividerHighlighted[index]) {
+                mDividerPaint.setColor(mTrapezoidSolidColor);
+                dividerY += mDividerHeight / 4f;
+            } else {
+                mDividerPaint.setColor(DIVIDER_COLOR);
+            }
+            final float startX = mVerticalDividerX[index];
+            canvas.drawLine(startX, startY, startX, dividerY, mDividerPaint);
+        }
+    }
+
+    private void drawAxisLabels(Canvas canvas) {
+        if (mAxisLabelCount == 0) {
+            return;
+        }
+        mTextPaint.setColor(mTrapezoidSolidColor);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        for (int index = 0; index < mAxisLabelCount; index++) {
+            if (mAxisLabelDrawn[index]) {
+                canvas.drawText(
+                        mViewModel.getText(getAxisLabelTextIndex(index)),
+                        mAxisLabelCenterX[index],
+                        mAxisLabelBaselineY,
+                        mTextPaint);
+            }
+        }
+    }
+
+    private void drawTrapezoids(Canvas canvas) {
+        // Draws all trapezoid shapes into the canvas.
+        for (int index = 0; index < mTrapezoidSlots.length; index++) {
+            // Not draws the trapezoid for corner or not initialization cases.
+            if (!isValidToDraw(mViewModel, index)) {
+                continue;
+            }
+            // Configures the trapezoid paint color.
+            final int trapezoidColor = (mViewModel.selectedIndex() == index
+                    || mViewModel.selectedIndex() == BatteryChartViewModel.SELECTED_INDEX_ALL)
+                    ? mTrapezoidSolidColor : mTrapezoidColor;
+            final boolean isHoverState = mHoveredIndex == index;
+            mTrapezoidPaint.setColor(isHoverState ? mTrapezoidHoverColor : trapezoidColor);
             // Draws the trapezoid shape into canvas.
-            canvas.drawPath(trapezoidPath, mTrapezoidPaint);
+            canvas.drawPath(mTrapezoidPaths[index], mTrapezoidPaint);
         }
     }
 
@@ -652,8 +713,6 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         mTransomLinePaint.setColor(mTransomLineDefaultColor);
         final int width = getWidth() - abs(mIndent.width());
         final float transomOffset = mTrapezoidHOffset + mDividerWidth * .5f + mTransomPadding;
-        final float trapezoidBottom = getHeight() - mIndent.bottom - mDividerHeight - mDividerWidth
-                - mTrapezoidVOffset;
         canvas.drawLine(mIndent.left + transomOffset, mTransomTop,
                 mIndent.left + width - transomOffset, mTransomTop,
                 mTransomLinePaint);
@@ -666,7 +725,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         canvas.drawLine(startX + mTransomPadding, mTransomTop,
                 endX - mTransomPadding, mTransomTop,
                 mTransomLinePaint);
-        canvas.drawRect(startX, mTransomTop, endX, trapezoidBottom,
+        canvas.drawRect(startX, mTransomTop, endX, mTrapezoidBottom,
                 mTransomSelectedSlotPaint);
     }
 
@@ -697,10 +756,25 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         return BatteryChartViewModel.SELECTED_INDEX_INVALID;
     }
 
-    private void initializeAxisLabelsBounds() {
-        mAxisLabelsBounds.clear();
-        for (int i = 0; i < mViewModel.size(); i++) {
-            mAxisLabelsBounds.add(new Rect());
+    private void initializeRenderModel(int size) {
+        mTextBoundsValid = false;
+        mRenderModelValid = false;
+        if (mAxisLabelsBounds.length == size) {
+            return;
+        }
+        mAxisLabelsBounds = new Rect[size];
+        for (int i = 0; i < size; i++) {
+            mAxisLabelsBounds[i] = new Rect();
+        }
+        mAxisLabelLeft = new int[size];
+        mAxisLabelRight = new int[size];
+        mAxisLabelCenterX = new int[size];
+        mAxisLabelDrawn = new boolean[size];
+        mDividerHighlighted = new boolean[size];
+        mVerticalDividerX = new float[size];
+        mTrapezoidPaths = new Path[Math.max(size - 1, 0)];
+        for (int i = 0; i < mTrapezoidPaths.length; i++) {
+            mTrapezoidPaths[i] = new Path();
         }
     }
 
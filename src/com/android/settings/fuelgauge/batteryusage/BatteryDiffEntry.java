@@ -32,20 +32,12 @@ import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settingslib.utils.StringUtil;
 
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 
 /** A container class to carry battery data in a specific time slot. */
 public class BatteryDiffEntry {
     private static final String TAG = "BatteryDiffEntry";
 
-    static Locale sCurrentLocale = null;
-    // Caches app label and icon to improve loading performance.
-    static final Map<String, BatteryEntry.NameAndIcon> sResourceCache = new HashMap<>();
-    // Whether a specific item is valid to launch restriction page?
-    @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
-    static final Map<String, Boolean> sValidForRestriction = new HashMap<>();
     /** A comparator for {@link BatteryDiffEntry} based on the sorting key. */
     static final Comparator<BatteryDiffEntry> COMPARATOR =
             (a, b) -> Double.compare(b.getSortingKey(), a.getSortingKey());
@@ -260,33 +252,35 @@ public class BatteryDiffEntry {
             return;
         }
         // Checks whether we have cached data or not first before fetching.
-        final BatteryEntry.NameAndIcon nameAndIcon = getCache();
-        if (nameAndIcon != null) {
-            mAppLabel = nameAndIcon.mName;
-            mAppIcon = nameAndIcon.mIcon;
-            mAppIconId = nameAndIcon.mIconId;
+        final BatteryResourceCache.Key cacheKey = getCacheKey();
+        final BatteryResourceCache.Resource resource =
+                BatteryResourceCache.get(mContext, cacheKey);
+        if (resource != null && resource.mNameAndIcon != null) {
+            mAppLabel = resource.mNameAndIcon.mName;
+            mAppIcon = resource.mNameAndIcon.mIcon;
+            mAppIconId = resource.mNameAndIcon.mIconId;
         }
-        final Boolean validForRestriction = sValidForRestriction.get(getKey());
-        if (validForRestriction != null) {
-            mValidForRestriction = validForRestriction;
+        if (resource != null && resource.mValidForRestriction != null) {
+            mValidForRestriction = resource.mValidForRestriction;
         }
         // Both nameAndIcon and restriction configuration have cached data.
-        if (nameAndIcon != null && validForRestriction != null) {
+        if (resource != null
+                && resource.mNameAndIcon != null && resource.mValidForRestriction != null) {
             return;
         }
         mIsLoaded = true;
 
         // Configures whether we can launch restriction page or not.
         updateRestrictionFlagState();
-        sValidForRestriction.put(getKey(), Boolean.valueOf(mValidForRestriction));
+        BatteryResourceCache.putValidForRestriction(cacheKey, mValidForRestriction);
 
         if (getKey() != null && SPECIAL_ENTRY_MAP.containsKey(getKey())) {
             Pair<Integer, Integer> pair = SPECIAL_ENTRY_MAP.get(getKey());
             mAppLabel = mContext.getString(pair.first);
             mAppIconId = pair.second;
             mAppIcon = mContext.getDrawable(mAppIconId);
-            sResourceCache.put(
-                    getKey(),
+            BatteryResourceCache.putNameAndIcon(
+                    cacheKey,
                     new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, mAppIconId));
             return;
         }
@@ -299,8 +293,8 @@ public class BatteryDiffEntry {
                 if (nameAndIconForUser != null) {
                     mAppIcon = nameAndIconForUser.mIcon;
                     mAppLabel = nameAndIconForUser.mName;
-                    sResourceCache.put(
-                            getKey(),
+                    BatteryResourceCache.putNameAndIcon(
+                            cacheKey,
                             new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
                 }
                 break;
@@ -313,8 +307,8 @@ public class BatteryDiffEntry {
                         mAppIconId = nameAndIconForSystem.mIconId;
                         mAppIcon = mContext.getDrawable(nameAndIconForSystem.mIconId);
                     }
-                    sResourceCache.put(
-                            getKey(),
+                    BatteryResourceCache.putNameAndIcon(
+                            cacheKey,
                             new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, mAppIconId));
                 }
                 break;
@@ -327,8 +321,8 @@ public class BatteryDiffEntry {
                 // Adds badge icon into app icon for work profile.
                 mAppIcon = getBadgeIconForUser(mAppIcon);
                 if (mAppLabel != null || mAppIcon != null) {
-                    sResourceCache.put(
-                            getKey(),
+                    BatteryResourceCache.putNameAndIcon(
+                            cacheKey,
                             new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
                 }
                 break;
@@ -339,6 +333,10 @@ public class BatteryDiffEntry {
         return mKey;
     }
 
+    BatteryResourceCache.Key getCacheKey() {
+        return new BatteryResourceCache.Key(getKey(), mUid, mUserId, getPackageName());
+    }
+
     @VisibleForTesting
     void updateRestrictionFlagState() {
         if (isSystemEntry()) {
@@ -368,17 +366,6 @@ public class BatteryDiffEntry {
         }
     }
 
-    private BatteryEntry.NameAndIcon getCache() {
-        final Locale locale = Locale.getDefault();
-        if (sCurrentLocale != locale) {
-            Log.d(TAG, String.format("clearCache() locale is changed from %s to %s",
-                    sCurrentLocale, locale));
-            sCurrentLocale = locale;
-            clearCache();
-        }
-        return sResourceCache.get(getKey());
-    }
-
     private void loadNameAndIconForUid() {
         final String packageName = getPackageName();
         final PackageManager packageManager = mContext.getPackageManager();
@@ -413,8 +400,6 @@ public class BatteryDiffEntry {
 
         final BatteryEntry.NameAndIcon nameAndIcon = BatteryEntry.loadNameAndIcon(
                 mContext, uid, /*batteryEntry=*/ null, packageName, mAppLabel, mAppIcon);
-        // Clears BatteryEntry internal cache since we will have another one.
-        BatteryEntry.clearUidCache();
         if (nameAndIcon != null) {
             mAppLabel = nameAndIcon.mName;
             mAppIcon = nameAndIcon.mIcon;
@@ -453,8 +438,7 @@ public class BatteryDiffEntry {
 
     /** Clears app icon and label cache data. */
     public static void clearCache() {
-        sResourceCache.clear();
-        sValidForRestriction.clear();
+        BatteryResourceCache.clear();
     }
 
     private Drawable getBadgeIconForUser(Drawable icon) {
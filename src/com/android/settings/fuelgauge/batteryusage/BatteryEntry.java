@@ -41,8 +41,6 @@ import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settingslib.Utils;
 
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Locale;
 
 /**
  * Wraps the power usage data of a BatterySipper with information about package name
@@ -90,15 +88,6 @@ public class BatteryEntry {
                     BatteryConsumer.POWER_COMPONENT_ANY, BatteryConsumer.PROCESS_STATE_CACHED),
     };
 
-    static final HashMap<String, UidToDetail> sUidCache = new HashMap<>();
-
-    static Locale sCurrentLocale = null;
-
-    /** Clears the UID cache. */
-    public static void clearUidCache() {
-        sUidCache.clear();
-    }
-
     public static final Comparator<BatteryEntry> COMPARATOR =
             (a, b) -> Double.compare(b.getConsumedPower(), a.getConsumedPower());
 
@@ -125,12 +114,6 @@ public class BatteryEntry {
     private double mConsumedPowerInBackground;
     private double mConsumedPowerInCached;
 
-    static class UidToDetail {
-        String mName;
-        String mPackageName;
-        Drawable mIcon;
-    }
-
     public BatteryEntry(Context context, UserManager um, BatteryConsumer batteryConsumer,
             boolean isHidden, int uid, String[] packages, String packageName) {
         this(context, um, batteryConsumer, isHidden, uid, packages, packageName, true);
@@ -252,7 +235,7 @@ public class BatteryEntry {
         return mPowerComponentId;
     }
 
-    /** Loads the app label and icon image and stores into the cache. */
+    /** Loads the app label and icon image. */
     public static NameAndIcon loadNameAndIcon(
             Context context,
             int uid,
@@ -331,17 +314,9 @@ public class BatteryEntry {
             }
         }
 
-        final String uidString = Integer.toString(uid);
         if (icon == null) {
             icon = pm.getDefaultActivityIcon();
         }
-
-        UidToDetail utd = new UidToDetail();
-        utd.mName = name;
-        utd.mIcon = icon;
-        utd.mPackageName = defaultPackageName;
-
-        sUidCache.put(uidString, utd);
         return new NameAndIcon(name, defaultPackageName, icon, /*iconId=*/ 0);
     }
 
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of the app label, icon and restriction eligibility of battery usage entries.
+ *
+ * Entries are keyed by uid, user and package, bounded in count and safe to use from any thread.
+ * Labels and icons depend on the locale, so they are dropped when it changes while the
+ * restriction eligibility is kept. All the entries of a package are dropped when the package is
+ * changed, replaced or removed.
+ */
+final class BatteryResourceCache {
+    private static final String TAG = "BatteryResourceCache";
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 512;
+
+    private static final LruCache<Key, Resource> sResources = new LruCache<>(MAX_ENTRIES);
+    // Guards the read-modify-write updates of sResources and the fields below.
+    private static final Object sLock = new Object();
+    private static final AtomicLong sHitCount = new AtomicLong();
+    private static final AtomicLong sMissCount = new AtomicLong();
+    private static Locale sLocale;
+    private static boolean sReceiverRegistered;
+
+    private BatteryResourceCache() {
+    }
+
+    /** Identifies the resources of a battery usage entry. */
+    static final class Key {
+        // Tells apart the system components and special entries, which share the same uid.
+        final String mEntryKey;
+        final long mUid;
+        final long mUserId;
+        @Nullable
+        final String mPackageName;
+
+        Key(String entryKey, long uid, long userId, @Nullable String packageName) {
+            mEntryKey = entryKey;
+            mUid = uid;
+            mUserId = userId;
+            mPackageName = packageName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mUid == other.mUid
+                    && mUserId == other.mUserId
+                    && Objects.equals(mEntryKey, other.mEntryKey)
+                    && Objects.equals(mPackageName, other.mPackageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mEntryKey, mUid, mUserId, mPackageName);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s|%d|%d|%s", mEntryKey, mUid, mUserId, mPackageName);
+        }
+    }
+
+    /** Cached resources of an entry, each of them is {@code null} if not loaded yet. */
+    static final class Resource {
+        @Nullable
+        final BatteryEntry.NameAndIcon mNameAndIcon;
+        @Nullable
+        final Boolean mValidForRestriction;
+
+        Resource(@Nullable BatteryEntry.NameAndIcon nameAndIcon,
+                @Nullable Boolean validForRestriction) {
+            mNameAndIcon = nameAndIcon;
+            mValidForRestriction = validForRestriction;
+        }
+    }
+
+    /** Returns the cached resources of {@code key}, or {@code null} if nothing is cached. */
+    @Nullable
+    static Resource get(@NonNull Context context, @NonNull Key key) {
+        ensureReceiverRegistered(context);
+        checkLocale();
+        final Resource resource = sResources.get(key);
+        (resource == null ? sMissCount : sHitCount).incrementAndGet();
+        return resource;
+    }
+
+    /** Caches the label and icon of {@code key}. */
+    static void putNameAndIcon(@NonNull Key key, @NonNull BatteryEntry.NameAndIcon nameAndIcon) {
+        synchronized (sLock) {
+            final Resource resource = sResources.get(key);
+            sResources.put(key, new Resource(
+                    nameAndIcon, resource == null ? null : resource.mValidForRestriction));
+        }
+    }
+
+    /** Caches whether the restriction page can be launched for {@code key}. */
+    static void putValidForRestriction(@NonNull Key key, boolean validForRestriction) {
+        synchronized (sLock) {
+            final Resource resource = sResources.get(key);
+            sResources.put(key, new Resource(
+                    resource == null ? null : resource.mNameAndIcon, validForRestriction));
+        }
+    }
+
+    /**
+     * Drops the entries of {@code packageName}, and of {@code uid} if valid since the label of a
+     * shared uid can come from any of its packages.
+     */
+    static void invalidatePackage(@Nullable String packageName, int uid) {
+        synchronized (sLock) {
+            for (Key key : sResources.snapshot().keySet()) {
+                if ((packageName != null && packageName.equals(key.mPackageName))
+                        || (uid != Process.INVALID_UID && key.mUid == uid)) {
+                    sResources.remove(key);
+                }
+            }
+        }
+    }
+
+    /** Drops all the cached resources. */
+    static void clear() {
+        sResources.evictAll();
+    }
+
+    @VisibleForTesting
+    static void resetForTesting() {
+        clear();
+        sHitCount.set(0);
+        sMissCount.set(0);
+        synchronized (sLock) {
+            sLocale = null;
+            sReceiverRegistered = false;
+        }
+    }
+
+    @VisibleForTesting
+    static int size() {
+        return sResources.size();
+    }
+
+    /** Writes the size and hit rate of the cache. */
+    static void dump(PrintWriter writer) {
+        final long hitCount = sHitCount.get();
+        final long requestCount = hitCount + sMissCount.get();
+        writer.println(String.format(Locale.ENGLISH,
+                "\t\tResourceCache: size=%d/%d hits=%d/%d (%.1f%%) evictions=%d",
+                sResources.size(), sResources.maxSize(), hitCount, requestCount,
+                requestCount == 0 ? 0f : 100f * hitCount / requestCount,
+                sResources.evictionCount()));
+    }
+
+    private static void checkLocale() {
+        final Locale locale = Locale.getDefault();
+        synchronized (sLock) {
+            if (locale.equals(sLocale)) {
+                return;
+            }
+            Log.d(TAG, String.format("locale is changed from %s to %s", sLocale, locale));
+            sLocale = locale;
+            // Keeps the restriction eligibility, which does not depend on the locale.
+            for (Map.Entry<Key, Resource> entry : sResources.snapshot().entrySet()) {
+                final Boolean validForRestriction = entry.getValue().mValidForRestriction;
+                if (validForRestriction == null) {
+                    sResources.remove(entry.getKey());
+                } else {
+                    sResources.put(entry.getKey(), new Resource(null, validForRestriction));
+                }
+            }
+        }
+    }
+
+    private static void ensureReceiverRegistered(Context context) {
+        synchronized (sLock) {
+            if (sReceiverRegistered) {
+                return;
+            }
+            sReceiverRegistered = true;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final String packageName =
+                        intent.getData() == null ? null : intent.getData().getSchemeSpecificPart();
+                invalidatePackage(packageName,
+                        intent.getIntExtra(Intent.EXTRA_UID, Process.INVALID_UID));
+            }
+        }, UserHandle.ALL, filter, null, null);
+    }
+}
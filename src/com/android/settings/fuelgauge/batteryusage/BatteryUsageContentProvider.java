@@ -17,7 +17,10 @@
 package com.android.settings.fuelgauge.batteryusage;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
@@ -43,6 +46,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Function;
 
 /** {@link ContentProvider} class to fetch battery usage data. */
 public class BatteryUsageContentProvider extends ContentProvider {
@@ -96,10 +100,14 @@ public class BatteryUsageContentProvider extends ContentProvider {
     }
 
     private Clock mClock;
+    private BatteryStateDatabase mDatabase;
     private BatteryStateDao mBatteryStateDao;
     private AppUsageEventDao mAppUsageEventDao;
     private BatteryEventDao mBatteryEventDao;
     private BatteryUsageSlotDao mBatteryUsageSlotDao;
+    // Whether insert() runs inside applyBatch() on the current thread, which then has to fail
+    // instead of logging the error, so that the batch transaction is rolled back.
+    private final ThreadLocal<Boolean> mInBatch = ThreadLocal.withInitial(() -> false);
 
     @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
     public void setClock(Clock clock) {
@@ -113,11 +121,11 @@ public class BatteryUsageContentProvider extends ContentProvider {
             return false;
         }
         mClock = Clock.systemUTC();
-        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(getContext());
-        mBatteryStateDao = database.batteryStateDao();
-        mAppUsageEventDao = database.appUsageEventDao();
-        mBatteryEventDao = database.batteryEventDao();
-        mBatteryUsageSlotDao = database.batteryUsageSlotDao();
+        mDatabase = BatteryStateDatabase.getInstance(getContext());
+        mBatteryStateDao = mDatabase.batteryStateDao();
+        mAppUsageEventDao = mDatabase.appUsageEventDao();
+        mBatteryEventDao = mDatabase.batteryEventDao();
+        mBatteryUsageSlotDao = mDatabase.batteryUsageSlotDao();
         Log.w(TAG, "create content provider from " + getCallingPackage());
         return true;
     }
@@ -177,7 +185,7 @@ public class BatteryUsageContentProvider extends ContentProvider {
                     throw new IllegalArgumentException("unknown URI: " + uri);
             }
         } catch (RuntimeException e) {
-            if (e instanceof  IllegalArgumentException) {
+            if (e instanceof IllegalArgumentException || mInBatch.get()) {
                 throw e;
             }
             Log.e(TAG, "insert() from:" + uri + " error:", e);
@@ -186,6 +194,56 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return uri;
     }
 
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] valuesArray) {
+        // Each insertAll() runs in one transaction, instead of one transaction per row.
+        final long timestamp = mClock.millis();
+        try {
+            switch (sUriMatcher.match(uri)) {
+                case BATTERY_STATE_CODE:
+                    mBatteryStateDao.insertAll(createEntities(valuesArray, BatteryState::create));
+                    break;
+                case APP_USAGE_EVENT_CODE:
+                    mAppUsageEventDao.insertAll(
+                            createEntities(valuesArray, AppUsageEventEntity::create));
+                    break;
+                case BATTERY_EVENT_CODE:
+                    mBatteryEventDao.insertAll(
+                            createEntities(valuesArray, BatteryEventEntity::create));
+                    break;
+                case BATTERY_USAGE_SLOT_CODE:
+                    mBatteryUsageSlotDao.insertAll(
+                            createEntities(valuesArray, BatteryUsageSlotEntity::create));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown URI: " + uri);
+            }
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            Log.e(TAG, "bulkInsert() from:" + uri + " error:", e);
+            return 0;
+        }
+        Log.d(TAG, String.format("bulkInsert() %d rows from:%s in %d/ms",
+                valuesArray.length, uri, mClock.millis() - timestamp));
+        return valuesArray.length;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        mInBatch.set(true);
+        try {
+            // Checked exceptions of the operations are rethrown as is by runInTransaction.
+            return mDatabase.runInTransaction(() -> super.applyBatch(operations));
+        } finally {
+            mInBatch.set(false);
+        }
+    }
+
     @Override
     public int delete(@NonNull Uri uri, @Nullable String s, @Nullable String[] strings) {
         throw new UnsupportedOperationException("unsupported!");
@@ -305,6 +363,15 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return cursor;
     }
 
+    private static <T> List<T> createEntities(
+            ContentValues[] valuesArray, Function<ContentValues, T> creator) {
+        final List<T> entities = new ArrayList<>(valuesArray.length);
+        for (ContentValues values : valuesArray) {
+            entities.add(creator.apply(values));
+        }
+        return entities;
+    }
+
     private List<Integer> getQueryBatteryEventTypes(Uri uri) {
         Log.d(TAG, "getQueryBatteryEventTypes from uri: " + uri);
         final String batteryEventTypesParameter =
@@ -16,7 +16,6 @@
 
 package com.android.settings.fuelgauge.batteryusage;
 
-import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.getEffectivePackageName;
 import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.isSystemConsumer;
 import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.isUidConsumer;
 import static com.android.settingslib.fuelgauge.BatteryStatus.BATTERY_LEVEL_UNKNOWN;
@@ -118,6 +117,10 @@ public final class DataProcessor {
             IUsageStatsManager.Stub.asInterface(
                     ServiceManager.getService(Context.USAGE_STATS_SERVICE));
 
+    // Keeps the app usage periods across the loads of the battery usage data.
+    private static final AppUsagePeriodBuilder sAppUsagePeriodBuilder =
+            new AppUsagePeriodBuilder();
+
     public static final String CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER =
             "CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER";
 
@@ -258,7 +261,8 @@ public final class DataProcessor {
     /**
      * Generates the indexed {@link AppUsagePeriod} list data for each corresponding time slot.
      * Attributes the list of {@link AppUsageEvent} into hourly time slots and reformat them into
-     * {@link AppUsagePeriod} for easier use in the following process.
+     * {@link AppUsagePeriod} for easier use in the following process. See
+     * {@link AppUsagePeriodBuilder} for how the periods are built across the time slots.
      *
      * <p>There could be 2 cases of the returned value:</p>
      * <ul>
@@ -288,33 +292,13 @@ public final class DataProcessor {
         // timestamp before distribution.
         Collections.sort(appUsageEventList, APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
         Collections.sort(batteryEventList, BATTERY_EVENT_TIMESTAMP_COMPARATOR);
-        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> resultMap =
-                new ArrayMap<>();
+        return sAppUsagePeriodBuilder.build(
+                context, hourlyBatteryLevelsPerDay, appUsageEventList, batteryEventList);
+    }
 
-        for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
-            final Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap =
-                    new ArrayMap<>();
-            resultMap.put(dailyIndex, dailyMap);
-            if (hourlyBatteryLevelsPerDay.get(dailyIndex) == null) {
-                continue;
-            }
-            final List<Long> timestamps = hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps();
-            for (int hourlyIndex = 0; hourlyIndex < timestamps.size() - 1; hourlyIndex++) {
-                final long startTimestamp = timestamps.get(hourlyIndex);
-                final long endTimestamp = timestamps.get(hourlyIndex + 1);
-                // Gets the app usage event list for this hourly slot first.
-                final List<AppUsageEvent> hourlyAppUsageEventList =
-                        getAppUsageEventListWithinTimeRangeWithBuffer(
-                                appUsageEventList, startTimestamp, endTimestamp);
-
-                // The value could be null when there is no data in the hourly slot.
-                dailyMap.put(
-                        hourlyIndex,
-                        buildAppUsagePeriodList(context, hourlyAppUsageEventList, batteryEventList,
-                                startTimestamp, endTimestamp));
-            }
-        }
-        return resultMap;
+    /** Drops the app usage periods kept from the previous loads. */
+    static void clearAppUsagePeriodCache() {
+        sAppUsagePeriodBuilder.clearCache();
     }
 
     /**
@@ -681,136 +665,6 @@ public final class DataProcessor {
                 /* isAccumulated= */ false);
     }
 
-    /**
-     * <p>{@code Long} stands for the userId.</p>
-     * <p>{@code String} stands for the packageName.</p>
-     */
-    @VisibleForTesting
-    @Nullable
-    static Map<Long, Map<String, List<AppUsagePeriod>>> buildAppUsagePeriodList(
-            Context context, final List<AppUsageEvent> appUsageEvents,
-            final List<BatteryEvent> batteryEventList, final long startTime, final long endTime) {
-        if (appUsageEvents.isEmpty()) {
-            return null;
-        }
-
-        // Attributes the list of AppUsagePeriod into device events and instance events for further
-        // use.
-        final List<AppUsageEvent> deviceEvents = new ArrayList<>();
-        final ArrayMap<Integer, List<AppUsageEvent>> usageEventsByInstanceId = new ArrayMap<>();
-        for (final AppUsageEvent event : appUsageEvents) {
-            final AppUsageEventType eventType = event.getType();
-            if (eventType == AppUsageEventType.ACTIVITY_RESUMED
-                    || eventType == AppUsageEventType.ACTIVITY_STOPPED) {
-                final int instanceId = event.getInstanceId();
-                if (usageEventsByInstanceId.get(instanceId) == null) {
-                    usageEventsByInstanceId.put(instanceId, new ArrayList<>());
-                }
-                usageEventsByInstanceId.get(instanceId).add(event);
-            } else if (eventType == AppUsageEventType.DEVICE_SHUTDOWN) {
-                // Track device-wide events in their own list as they affect any app.
-                deviceEvents.add(event);
-            }
-        }
-        if (usageEventsByInstanceId.isEmpty()) {
-            return null;
-        }
-
-        final Map<Long, Map<String, List<AppUsagePeriod>>> allUsagePeriods = new ArrayMap<>();
-
-        for (int i = 0; i < usageEventsByInstanceId.size(); i++) {
-            // The usage periods for an instance are determined by the usage events with its
-            // instance id and any device-wide events such as device shutdown.
-            final List<AppUsageEvent> usageEvents = usageEventsByInstanceId.valueAt(i);
-            if (usageEvents == null || usageEvents.isEmpty()) {
-                continue;
-            }
-            // The same instance must have same userId and packageName.
-            final AppUsageEvent firstEvent = usageEvents.get(0);
-            final long eventUserId = firstEvent.getUserId();
-            final String packageName = getEffectivePackageName(
-                    context,
-                    sUsageStatsManager,
-                    firstEvent.getPackageName(),
-                    firstEvent.getTaskRootPackageName());
-            usageEvents.addAll(deviceEvents);
-            // Sorts the usageEvents in ascending order based on the timestamp before computing the
-            // period.
-            Collections.sort(usageEvents, APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
-
-            // A package might have multiple instances. Computes the usage period per instance id
-            // and then merges them into the same user-package map.
-            final List<AppUsagePeriod> usagePeriodList =
-                    excludePowerConnectedTimeFromAppUsagePeriodList(
-                            buildAppUsagePeriodListPerInstance(usageEvents, startTime, endTime),
-                            batteryEventList);
-            if (!usagePeriodList.isEmpty()) {
-                addToUsagePeriodMap(allUsagePeriods, usagePeriodList, eventUserId, packageName);
-            }
-        }
-
-        // Sorts all usage periods by start time.
-        for (final long userId : allUsagePeriods.keySet()) {
-            if (allUsagePeriods.get(userId) == null) {
-                continue;
-            }
-            for (final String packageName: allUsagePeriods.get(userId).keySet()) {
-                Collections.sort(
-                        allUsagePeriods.get(userId).get(packageName),
-                        Comparator.comparing(AppUsagePeriod::getStartTime));
-            }
-        }
-        return allUsagePeriods.isEmpty() ? null : allUsagePeriods;
-    }
-
-    @VisibleForTesting
-    static List<AppUsagePeriod> buildAppUsagePeriodListPerInstance(
-            final List<AppUsageEvent> usageEvents, final long startTime, final long endTime) {
-        final List<AppUsagePeriod> usagePeriodList = new ArrayList<>();
-        AppUsagePeriod.Builder pendingUsagePeriod = AppUsagePeriod.newBuilder();
-
-        for (final AppUsageEvent event : usageEvents) {
-            final long eventTime = event.getTimestamp();
-
-            if (event.getType() == AppUsageEventType.ACTIVITY_RESUMED) {
-                // If there is an existing start time, simply ignore this start event.
-                // If there was no start time, then start a new period.
-                if (!pendingUsagePeriod.hasStartTime()) {
-                    pendingUsagePeriod.setStartTime(eventTime);
-                }
-            } else if (event.getType() == AppUsageEventType.ACTIVITY_STOPPED) {
-                pendingUsagePeriod.setEndTime(eventTime);
-                if (!pendingUsagePeriod.hasStartTime()) {
-                    pendingUsagePeriod.setStartTime(
-                            getStartTimeForIncompleteUsagePeriod(pendingUsagePeriod));
-                }
-                // If we already have start time, add it directly.
-                validateAndAddToPeriodList(
-                        usagePeriodList, pendingUsagePeriod.build(), startTime, endTime);
-                pendingUsagePeriod.clear();
-            } else if (event.getType() == AppUsageEventType.DEVICE_SHUTDOWN) {
-                // The end event might be lost when device is shutdown. Use the estimated end
-                // time for the period.
-                if (pendingUsagePeriod.hasStartTime()) {
-                    pendingUsagePeriod.setEndTime(
-                            getEndTimeForIncompleteUsagePeriod(pendingUsagePeriod, eventTime));
-                    validateAndAddToPeriodList(
-                            usagePeriodList, pendingUsagePeriod.build(), startTime, endTime);
-                    pendingUsagePeriod.clear();
-                }
-            }
-        }
-        // If there exists unclosed period, the stop event might happen in the next time
-        // slot. Use the endTime for the period.
-        if (pendingUsagePeriod.hasStartTime() && pendingUsagePeriod.getStartTime() < endTime) {
-            pendingUsagePeriod.setEndTime(endTime);
-            validateAndAddToPeriodList(
-                    usagePeriodList, pendingUsagePeriod.build(), startTime, endTime);
-            pendingUsagePeriod.clear();
-        }
-        return usagePeriodList;
-    }
-
     @VisibleForTesting
     static List<AppUsagePeriod> excludePowerConnectedTimeFromAppUsagePeriodList(
             final List<AppUsagePeriod> usagePeriodList,
@@ -917,87 +771,6 @@ public final class DataProcessor {
         return result;
     }
 
-    /**
-     * Generates the list of {@link AppUsageEvent} within the specific time range.
-     * The buffer is added to make sure the app usage calculation near the boundaries is correct.
-     *
-     * Note: The appUsageEventList should have been sorted when calling this function.
-     */
-    private static List<AppUsageEvent> getAppUsageEventListWithinTimeRangeWithBuffer(
-            final List<AppUsageEvent> appUsageEventList, final long startTime, final long endTime) {
-        final long start = startTime - DatabaseUtils.USAGE_QUERY_BUFFER_HOURS;
-        final long end = endTime + DatabaseUtils.USAGE_QUERY_BUFFER_HOURS;
-        final List<AppUsageEvent> resultList = new ArrayList<>();
-        for (final AppUsageEvent event : appUsageEventList) {
-            final long eventTime = event.getTimestamp();
-            // Because the appUsageEventList has been sorted, if any event is already after the end
-            // time, all the following events should be able to drop directly.
-            if (eventTime > end) {
-                break;
-            }
-            // If the event timestamp is in [start, end], add it into the result list.
-            if (eventTime >= start) {
-                resultList.add(event);
-            }
-        }
-        return resultList;
-    }
-
-    private static void validateAndAddToPeriodList(
-            final List<AppUsagePeriod> appUsagePeriodList,
-            final AppUsagePeriod appUsagePeriod,
-            final long startTime,
-            final long endTime) {
-        final long periodStartTime =
-                trimPeriodTime(appUsagePeriod.getStartTime(), startTime, endTime);
-        final long periodEndTime = trimPeriodTime(appUsagePeriod.getEndTime(), startTime, endTime);
-        // Only when the period is valid, add it into the list.
-        if (periodStartTime < periodEndTime) {
-            final AppUsagePeriod period =
-                    AppUsagePeriod.newBuilder()
-                            .setStartTime(periodStartTime)
-                            .setEndTime(periodEndTime)
-                            .build();
-            appUsagePeriodList.add(period);
-        }
-    }
-
-    private static long trimPeriodTime(
-            final long originalTime, final long startTime, final long endTime) {
-        long finalTime = Math.max(originalTime, startTime);
-        finalTime = Math.min(finalTime, endTime);
-        return finalTime;
-    }
-
-    private static void addToUsagePeriodMap(
-            final Map<Long, Map<String, List<AppUsagePeriod>>> usagePeriodMap,
-            final List<AppUsagePeriod> usagePeriodList,
-            final long userId,
-            final String packageName) {
-        usagePeriodMap.computeIfAbsent(userId, key -> new ArrayMap<>());
-        final Map<String, List<AppUsagePeriod>> packageNameMap = usagePeriodMap.get(userId);
-        packageNameMap.computeIfAbsent(packageName, key -> new ArrayList<>());
-        packageNameMap.get(packageName).addAll(usagePeriodList);
-    }
-
-    /**
-     * Returns the start time that gives {@code usagePeriod} the default usage duration.
-     */
-    private static long getStartTimeForIncompleteUsagePeriod(
-            final AppUsagePeriodOrBuilder usagePeriod) {
-        return usagePeriod.getEndTime() - DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL;
-    }
-
-    /**
-     * Returns the end time that gives {@code usagePeriod} the default usage duration.
-     */
-    private static long getEndTimeForIncompleteUsagePeriod(
-            final AppUsagePeriodOrBuilder usagePeriod, final long eventTime) {
-        return Math.min(
-                usagePeriod.getStartTime() + DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL,
-                eventTime);
-    }
-
     @Nullable
     private static UsageEvents getAppUsageEventsForUser(
             Context context, final UserManager userManager, final int userID,
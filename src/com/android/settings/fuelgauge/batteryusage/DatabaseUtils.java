@@ -384,6 +384,7 @@ public final class DatabaseUtils {
                 database.batteryEventDao().clearAll();
                 database.batteryStateDao().clearAll();
                 database.batteryUsageSlotDao().clearAll();
+                DataProcessor.clearAppUsagePeriodCache();
             } catch (RuntimeException e) {
                 Log.e(TAG, "clearAll() failed", e);
             }
@@ -656,6 +657,7 @@ public final class DatabaseUtils {
                 KEY_LAST_UPLOAD_FULL_CHARGE_TIME);
         writeString(context, writer, "DismissedPowerAnomalyKeys",
                 KEY_DISMISSED_POWER_ANOMALY_KEYS);
+        BatteryResourceCache.dump(writer);
     }
 
     static SharedPreferences getSharedPreferences(Context context) {
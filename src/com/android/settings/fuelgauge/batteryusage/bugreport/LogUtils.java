@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage.bugreport;
 import android.content.Context;
 import android.util.Log;
 
+import com.android.settings.fuelgauge.batterytip.BatteryTipDetectorEngine;
 import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
 import com.android.settings.fuelgauge.batteryusage.DatabaseUtils;
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventDao;
@@ -46,6 +47,7 @@ public final class LogUtils {
 
         // Dumps phenotype environments.
         DatabaseUtils.dump(context, writer);
+        BatteryTipDetectorEngine.dump(writer);
         writer.flush();
         final BatteryStateDao dao =
                 BatteryStateDatabase
@@ -32,7 +32,6 @@ import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.ApplicationInfoFlags;
 import android.content.pm.UserInfo;
-import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.content.res.Configuration;
 import android.net.Uri;
@@ -64,11 +63,8 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.window.embedding.SplitRule;
-import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import com.android.internal.util.UserIcons;
 
-import com.android.internal.util.UserIcons;
 
 import com.android.settings.R;
 import com.android.settings.Settings;
@@ -81,16 +77,16 @@ import com.android.settings.core.FeatureFlags;
 import com.android.settings.homepage.contextualcards.ContextualCardsFragment;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.safetycenter.SafetyCenterManagerWrapper;
+import com.android.settings.users.UserIconCache;
 import com.android.settingslib.Utils;
 import com.android.settingslib.core.lifecycle.HideNonSystemOverlayMixin;
-import com.android.settingslib.drawable.CircleFramedDrawable;
+import com.android.settingslib.utils.ThreadUtils;
 
 import com.google.android.setupcompat.util.WizardManagerHelper;
 
 import java.net.URISyntaxException;
 import java.util.Set;
 
-import com.android.settingslib.drawable.CircleFramedDrawable;
 
 /** Settings homepage activity */
 public class SettingsHomepageActivity extends FragmentActivity implements
@@ -230,7 +226,7 @@ public class SettingsHomepageActivity extends FragmentActivity implements
         avatarView = findViewById(R.id.account_avatar);
 
         if (avatarView != null) {
-          avatarView.setImageDrawable(getCircularUserIcon(getApplicationContext()));
+          updateAvatarView();
           avatarView.setVisibility(View.VISIBLE);
           avatarView.setOnClickListener(new View.OnClickListener() {
               @Override
@@ -246,7 +242,7 @@ public class SettingsHomepageActivity extends FragmentActivity implements
 
         avatarView = findViewById(R.id.account_avatar);
         //final AvatarViewMixin avatarViewMixin = new AvatarViewMixin(this, avatarView);
-        avatarView.setImageDrawable(getCircularUserIcon(context));
+        updateAvatarView();
         avatarView.setVisibility(View.VISIBLE);
         avatarView.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -768,27 +764,32 @@ public class SettingsHomepageActivity extends FragmentActivity implements
         }
     }
 
-    private Drawable getCircularUserIcon(Context context) {
-    	final UserManager mUserManager = getSystemService(UserManager.class);
-        Bitmap bitmapUserIcon = mUserManager.getUserIcon(UserHandle.myUserId());
-
-        if (bitmapUserIcon == null) {
-            // get default user icon.
-            final Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
-                    context.getResources(), UserHandle.myUserId(), false);
-            bitmapUserIcon = UserIcons.convertToBitmap(defaultUserIcon);
+    private void updateAvatarView() {
+        final Context context = getApplicationContext();
+        final int userId = UserHandle.myUserId();
+        final int iconSize = (int) context.getResources().getDimension(
+                com.android.internal.R.dimen.user_icon_size);
+        // The avatar is shared with the user settings, only decode it when it's not cached.
+        final Drawable cachedIcon = UserIconCache.getCachedIcon(context, userId, iconSize);
+        if (cachedIcon != null) {
+            avatarView.setImageDrawable(cachedIcon);
+            return;
         }
-        Drawable drawableUserIcon = new CircleFramedDrawable(bitmapUserIcon,
-                (int) context.getResources().getDimension(com.android.internal.R.dimen.user_icon_size));
-
-        return drawableUserIcon;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final Drawable icon = UserIconCache.loadIcon(context, userId, iconSize);
+            ThreadUtils.postOnMainThread(() -> {
+                if (avatarView != null) {
+                    avatarView.setImageDrawable(icon);
+                }
+            });
+        });
     }
 
     @Override
     public void onResume() {
         super.onResume();
         if (avatarView != null) {
-          avatarView.setImageDrawable(getCircularUserIcon(getApplicationContext()));
+          updateAvatarView();
         }
     }
 }
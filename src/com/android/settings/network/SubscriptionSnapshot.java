@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.android.internal.util.CollectionUtils.emptyIfNull;
+
+import android.content.Context;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.telephony.UiccSlotInfo;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the subscriptions, shared by all the controllers of a page.
+ *
+ * <p>The snapshot is rebuilt at most once after each subscriptions change or default subscription
+ * change, instead of each controller querying {@link SubscriptionManager} on every refresh. A
+ * snapshot is shared by all the contexts of the same application, and only after the changes are
+ * being monitored.
+ */
+public final class SubscriptionSnapshot {
+    private static final String TAG = "SubscriptionSnapshot";
+
+    private static final Object sLock = new Object();
+    private static final Object sBuildLock = new Object();
+    private static volatile SubscriptionSnapshot sSnapshot;
+
+    // Guarded by sLock.
+    private static Context sMonitoredContext;
+    private static boolean sIsMonitoring;
+    private static int sGeneration;
+
+    private final Context mAppContext;
+    private final List<SubscriptionInfo> mAvailableSubscriptions;
+    private final List<SubscriptionInfo> mActiveSubscriptions;
+    private final UiccSlotInfo[] mUiccSlotsInfo;
+    private final Map<Integer, CharSequence> mUniqueDisplayNames;
+    private final int mDefaultVoiceSubscriptionId;
+    private final int mDefaultSmsSubscriptionId;
+    private final int mDefaultDataSubscriptionId;
+
+    /**
+     * Returns the snapshot of the subscriptions. The snapshot is shared without locking until
+     * the subscriptions change.
+     */
+    @NonNull
+    public static SubscriptionSnapshot get(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            // Nothing tells when the subscriptions change, the snapshot can't be shared.
+            return new SubscriptionSnapshot(context, null);
+        }
+        SubscriptionSnapshot snapshot = sSnapshot;
+        if (snapshot != null && snapshot.mAppContext == appContext) {
+            return snapshot;
+        }
+        // Only one snapshot is built at a time, the others wait and share it.
+        synchronized (sBuildLock) {
+            snapshot = sSnapshot;
+            if (snapshot != null && snapshot.mAppContext == appContext) {
+                return snapshot;
+            }
+            final int generation;
+            synchronized (sLock) {
+                startMonitoringIfNeeded(appContext);
+                generation = sGeneration;
+            }
+            snapshot = new SubscriptionSnapshot(context, appContext);
+            synchronized (sLock) {
+                // Drops the snapshot if the subscriptions changed while it was being built.
+                if (sIsMonitoring && generation == sGeneration) {
+                    sSnapshot = snapshot;
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /** Drops the current snapshot and stops monitoring the subscriptions changes. */
+    @VisibleForTesting
+    public static void resetForTesting() {
+        synchronized (sLock) {
+            sSnapshot = null;
+            sMonitoredContext = null;
+            sIsMonitoring = false;
+            sGeneration++;
+        }
+    }
+
+    private static void startMonitoringIfNeeded(Context appContext) {
+        if (sMonitoredContext == appContext) {
+            return;
+        }
+        sMonitoredContext = appContext;
+        sIsMonitoring = false;
+        sSnapshot = null;
+        final SubscriptionManager subscriptionManager =
+                appContext.getSystemService(SubscriptionManager.class);
+        if (subscriptionManager == null) {
+            Log.w(TAG, "SubscriptionManager is not available");
+            return;
+        }
+        // The listener is invoked once after being added, which starts sharing the snapshot.
+        subscriptionManager.addOnSubscriptionsChangedListener(appContext.getMainExecutor(),
+                new SubscriptionManager.OnSubscriptionsChangedListener() {
+                    @Override
+                    public void onSubscriptionsChanged() {
+                        onChanged(appContext, /* isSubscriptionsChanged= */ true);
+                    }
+                });
+        new DefaultSubscriptionReceiver(appContext,
+                new DefaultSubscriptionReceiver.DefaultSubscriptionListener() {
+                    @Override
+                    public void onDefaultSubInfoChanged(int defaultSubId) {
+                        onChanged(appContext, /* isSubscriptionsChanged= */ false);
+                    }
+
+                    @Override
+                    public void onDefaultDataChanged(int defaultDataSubId) {
+                        onChanged(appContext, /* isSubscriptionsChanged= */ false);
+                    }
+
+                    @Override
+                    public void onDefaultVoiceChanged(int defaultVoiceSubId) {
+                        onChanged(appContext, /* isSubscriptionsChanged= */ false);
+                    }
+
+                    @Override
+                    public void onDefaultSmsChanged(int defaultSmsSubId) {
+                        onChanged(appContext, /* isSubscriptionsChanged= */ false);
+                    }
+                }).registerReceiver();
+    }
+
+    private static void onChanged(Context appContext, boolean isSubscriptionsChanged) {
+        synchronized (sLock) {
+            if (sMonitoredContext != appContext) {
+                return;
+            }
+            sIsMonitoring |= isSubscriptionsChanged;
+            sGeneration++;
+            sSnapshot = null;
+        }
+    }
+
+    private SubscriptionSnapshot(Context context, Context appContext) {
+        mAppContext = appContext;
+        mAvailableSubscriptions = Collections.unmodifiableList(
+                new ArrayList<>(emptyIfNull(
+                        SubscriptionUtil.getSelectableSubscriptionInfoList(context))));
+        final TelephonyManager telephonyManager =
+                context.getSystemService(TelephonyManager.class);
+        mUiccSlotsInfo = telephonyManager == null ? null : telephonyManager.getUiccSlotsInfo();
+        mUniqueDisplayNames = Collections.unmodifiableMap(
+                SubscriptionUtil.buildUniqueSubscriptionDisplayNames(
+                        context, mAvailableSubscriptions));
+        mActiveSubscriptions = Collections.unmodifiableList(new ArrayList<>(
+                SubscriptionUtil.getActiveSubscriptions(
+                        context.getSystemService(SubscriptionManager.class))));
+        mDefaultVoiceSubscriptionId = SubscriptionManager.getDefaultVoiceSubscriptionId();
+        mDefaultSmsSubscriptionId = SubscriptionManager.getDefaultSmsSubscriptionId();
+        mDefaultDataSubscriptionId = SubscriptionManager.getDefaultDataSubscriptionId();
+    }
+
+    /** Returns the subscriptions which are available to display to the user. */
+    @NonNull
+    public List<SubscriptionInfo> getAvailableSubscriptions() {
+        return mAvailableSubscriptions;
+    }
+
+    /** Returns the active subscriptions. */
+    @NonNull
+    public List<SubscriptionInfo> getActiveSubscriptions() {
+        return mActiveSubscriptions;
+    }
+
+    /** Returns the UICC slots info, which must not be modified. */
+    @Nullable
+    public UiccSlotInfo[] getUiccSlotsInfo() {
+        return mUiccSlotsInfo;
+    }
+
+    /** Returns the unique display names of the available subscriptions, by subscription id. */
+    @NonNull
+    public Map<Integer, CharSequence> getUniqueDisplayNames() {
+        return mUniqueDisplayNames;
+    }
+
+    public int getDefaultVoiceSubscriptionId() {
+        return mDefaultVoiceSubscriptionId;
+    }
+
+    public int getDefaultSmsSubscriptionId() {
+        return mDefaultSmsSubscriptionId;
+    }
+
+    public int getDefaultDataSubscriptionId() {
+        return mDefaultDataSubscriptionId;
+    }
+}
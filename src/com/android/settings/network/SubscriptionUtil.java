@@ -18,7 +18,6 @@ package com.android.settings.network;
 
 import static android.telephony.SubscriptionManager.INVALID_SIM_SLOT_INDEX;
 import static android.telephony.UiccSlotInfo.CARD_STATE_INFO_PRESENT;
-import static com.android.internal.util.CollectionUtils.emptyIfNull;
 
 import android.annotation.Nullable;
 import android.content.Context;
@@ -83,6 +82,24 @@ public class SubscriptionUtil {
         sActiveResultsForTesting = results;
     }
 
+    /**
+     * Get the active subscriptions from the {@link SubscriptionSnapshot} shared by the pages, which
+     * is rebuilt after the subscriptions change.
+     *
+     * @param context {@code Context}
+     * @return list of {@code SubscriptionInfo}
+     */
+    public static List<SubscriptionInfo> getActiveSubscriptions(Context context) {
+        if (sActiveResultsForTesting != null) {
+            return sActiveResultsForTesting;
+        }
+        return new ArrayList<>(SubscriptionSnapshot.get(context).getActiveSubscriptions());
+    }
+
+    /**
+     * Get the active subscriptions from {@code manager} directly, for the callers which must see a
+     * change before it is notified, e.g. while switching the SIM slots.
+     */
     public static List<SubscriptionInfo> getActiveSubscriptions(SubscriptionManager manager) {
         if (sActiveResultsForTesting != null) {
             return sActiveResultsForTesting;
@@ -124,7 +141,7 @@ public class SubscriptionUtil {
         if (sAvailableResultsForTesting != null) {
             return sAvailableResultsForTesting;
         }
-        return new ArrayList<>(emptyIfNull(getSelectableSubscriptionInfoList(context)));
+        return new ArrayList<>(SubscriptionSnapshot.get(context).getAvailableSubscriptions());
     }
 
     /**
@@ -148,7 +165,8 @@ public class SubscriptionUtil {
         final ParcelUuid groupUuid = subInfo.getGroupUuid();
 
         if (groupUuid != null) {
-            if (isPrimarySubscriptionWithinSameUuid(getUiccSlotsInfo(context), groupUuid,
+            if (isPrimarySubscriptionWithinSameUuid(
+                    SubscriptionSnapshot.get(context).getUiccSlotsInfo(), groupUuid,
                     subscriptionManager.getAccessibleSubscriptionsInfo(), subId)) {
                 return subInfo;
             }
@@ -158,11 +176,6 @@ public class SubscriptionUtil {
         return subInfo;
     }
 
-    private static UiccSlotInfo [] getUiccSlotsInfo(Context context) {
-        final TelephonyManager telMgr = context.getSystemService(TelephonyManager.class);
-        return telMgr.getUiccSlotsInfo();
-    }
-
     private static boolean isPrimarySubscriptionWithinSameUuid(UiccSlotInfo[] slotsInfo,
             ParcelUuid groupUuid, List<SubscriptionInfo> subscriptions, int subId) {
         // only interested in subscriptions with this group UUID
@@ -265,6 +278,18 @@ public class SubscriptionUtil {
      */
     @VisibleForTesting
     public static Map<Integer, CharSequence> getUniqueSubscriptionDisplayNames(Context context) {
+        if (sAvailableResultsForTesting != null) {
+            return buildUniqueSubscriptionDisplayNames(context, sAvailableResultsForTesting);
+        }
+        return new HashMap<>(SubscriptionSnapshot.get(context).getUniqueDisplayNames());
+    }
+
+    /**
+     * Builds the unique display names of {@code subscriptions}, see
+     * {@link #getUniqueSubscriptionDisplayNames(Context)}.
+     */
+    static Map<Integer, CharSequence> buildUniqueSubscriptionDisplayNames(Context context,
+            List<SubscriptionInfo> subscriptions) {
         class DisplayInfo {
             public SubscriptionInfo subscriptionInfo;
             public CharSequence originalName;
@@ -273,7 +298,7 @@ public class SubscriptionUtil {
 
         // Map of SubscriptionId to DisplayName
         final Supplier<Stream<DisplayInfo>> originalInfos =
-                () -> getAvailableSubscriptions(context)
+                () -> subscriptions
                         .stream()
                         .filter(i -> {
                             // Filter out null values.
@@ -685,9 +710,10 @@ public class SubscriptionUtil {
     }
 
     public static CharSequence getDefaultSimConfig(Context context, int subId) {
-        boolean isDefaultCall = subId == getDefaultVoiceSubscriptionId();
-        boolean isDefaultSms = subId == getDefaultSmsSubscriptionId();
-        boolean isDefaultData = subId == getDefaultDataSubscriptionId();
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(context);
+        boolean isDefaultCall = subId == snapshot.getDefaultVoiceSubscriptionId();
+        boolean isDefaultSms = subId == snapshot.getDefaultSmsSubscriptionId();
+        boolean isDefaultData = subId == snapshot.getDefaultDataSubscriptionId();
 
         if (!isDefaultData && !isDefaultCall && !isDefaultSms) {
             return "";
@@ -724,18 +750,6 @@ public class SubscriptionUtil {
         return context.getResources().getString(resId);
     }
 
-    private static int getDefaultVoiceSubscriptionId() {
-        return SubscriptionManager.getDefaultVoiceSubscriptionId();
-    }
-
-    private static int getDefaultSmsSubscriptionId() {
-        return SubscriptionManager.getDefaultSmsSubscriptionId();
-    }
-
-    private static int getDefaultDataSubscriptionId() {
-        return SubscriptionManager.getDefaultDataSubscriptionId();
-    }
-
 
     /**
      * Select one of the subscription as the default subscription.
@@ -416,7 +416,7 @@ public class SubscriptionsPreferenceController extends AbstractPreferenceControl
             return false;
         }
         List<SubscriptionInfo> subInfoList =
-                SubscriptionUtil.getActiveSubscriptions(mSubscriptionManager);
+                SubscriptionUtil.getActiveSubscriptions(mContext);
         if (subInfoList == null) {
             return false;
         }
@@ -24,7 +24,8 @@ import com.android.settings.Utils;
 import com.android.settings.activityembedding.ActivityEmbeddingUtils;
 import com.android.settings.core.BasePreferenceController;
 
-public class TopLevelNetworkEntryPreferenceController extends BasePreferenceController {
+public class TopLevelNetworkEntryPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.AsyncSummary {
 
     private final MobileNetworkPreferenceController mMobileNetworkPreferenceController;
 
@@ -52,4 +53,9 @@ public class TopLevelNetworkEntryPreferenceController extends BasePreferenceCont
                     .unicodeWrap(mContext.getString(R.string.network_dashboard_summary_no_mobile));
         }
     }
+
+    @Override
+    public CharSequence getSummaryInBackground() {
+        return getSummary();
+    }
 }
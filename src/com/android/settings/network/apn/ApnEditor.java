@@ -129,6 +129,8 @@ public class ApnEditor extends SettingsPreferenceFragment
 
     @VisibleForTesting
     ApnData mApnData;
+    private boolean mPendingFillUi;
+    private boolean mPendingFillUiFirstTime;
 
     private String mCurMnc;
     private String mCurMcc;
@@ -216,7 +218,7 @@ public class ApnEditor extends SettingsPreferenceFragment
     /**
      * Standard projection for the interesting columns of a normal note.
      */
-    private static final String[] sProjection = new String[] {
+    static final String[] sProjection = new String[] {
             Telephony.Carriers._ID,     // 0
             Telephony.Carriers.NAME,    // 1
             Telephony.Carriers.APN,     // 2
@@ -245,7 +247,7 @@ public class ApnEditor extends SettingsPreferenceFragment
             Telephony.Carriers.CARRIER_ID       // 25
     };
 
-    private static final int ID_INDEX = 0;
+    static final int ID_INDEX = 0;
     @VisibleForTesting
     static final int NAME_INDEX = 1;
     @VisibleForTesting
@@ -273,9 +275,9 @@ public class ApnEditor extends SettingsPreferenceFragment
     private static final int BEARER_BITMASK_INDEX = 19;
     @VisibleForTesting
     static final int ROAMING_PROTOCOL_INDEX = 20;
-    private static final int MVNO_TYPE_INDEX = 21;
-    private static final int MVNO_MATCH_DATA_INDEX = 22;
-    private static final int EDITED_INDEX = 23;
+    static final int MVNO_TYPE_INDEX = 21;
+    static final int MVNO_MATCH_DATA_INDEX = 22;
+    static final int EDITED_INDEX = 23;
     private static final int USER_EDITABLE_INDEX = 24;
     private static final int CARRIER_ID_INDEX = 25;
 
@@ -328,11 +330,52 @@ public class ApnEditor extends SettingsPreferenceFragment
         // Creates an ApnData to store the apn data temporary, so that we don't need the cursor to
         // get the apn data. The uri is null if the action is ACTION_INSERT, that mean there is no
         // record in the database, so create a empty ApnData to represent a empty row of database.
-        if (uri != null) {
-            mApnData = getApnDataFromUri(uri);
-        } else {
+        // The apn data is loaded in the background unless it's cached by the APN list.
+        if (uri == null) {
             mApnData = new ApnData(sProjection.length);
+        } else {
+            mApnData = ApnLoader.getCachedApnData(uri);
+        }
+        if (mApnData != null) {
+            applyApnData();
+        } else {
+            loadApnData(uri);
+        }
+
+        for (int i = 0; i < getPreferenceScreen().getPreferenceCount(); i++) {
+            getPreferenceScreen().getPreference(i).setOnPreferenceChangeListener(this);
         }
+    }
+
+    private void loadApnData(Uri uri) {
+        // The user can't edit the apn until the apn data is loaded.
+        getPreferenceScreen().setEnabled(false);
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final ApnData apnData = getApnDataFromUri(uri);
+            ThreadUtils.postOnMainThread(() -> onApnDataLoaded(apnData));
+        });
+    }
+
+    private void onApnDataLoaded(ApnData apnData) {
+        if (!isAdded()) {
+            return;
+        }
+        if (apnData == null) {
+            finish();
+            return;
+        }
+        mApnData = apnData;
+        applyApnData();
+        if (mPendingFillUi) {
+            mPendingFillUi = false;
+            fillUI(mPendingFillUiFirstTime);
+            setCarrierCustomizedConfigToUi();
+        }
+        getPreferenceScreen().setEnabled(true);
+        getActivity().invalidateOptionsMenu();
+    }
+
+    private void applyApnData() {
         final int carrierId = mApnData.getInteger(CARRIER_ID_INDEX,
                 TelephonyManager.UNKNOWN_CARRIER_ID);
         mIsCarrierIdApn = (carrierId > TelephonyManager.UNKNOWN_CARRIER_ID);
@@ -354,10 +397,6 @@ public class ApnEditor extends SettingsPreferenceFragment
         if (mIsCarrierIdApn) {
             disableFieldsForCarrieridApn();
         }
-
-        for (int i = 0; i < getPreferenceScreen().getPreferenceCount(); i++) {
-            getPreferenceScreen().getPreference(i).setOnPreferenceChangeListener(this);
-        }
     }
 
     /**
@@ -374,6 +413,12 @@ public class ApnEditor extends SettingsPreferenceFragment
     @Override
     public void onViewStateRestored(@Nullable Bundle savedInstanceState) {
         super.onViewStateRestored(savedInstanceState);
+        if (mApnData == null) {
+            // Fills the UI after the apn data is loaded.
+            mPendingFillUi = true;
+            mPendingFillUiFirstTime = savedInstanceState == null;
+            return;
+        }
         fillUI(savedInstanceState == null);
         setCarrierCustomizedConfigToUi();
     }
@@ -975,8 +1020,8 @@ public class ApnEditor extends SettingsPreferenceFragment
      */
     @VisibleForTesting
     boolean validateAndSaveApnData() {
-        // Nothing to do if it's a read only APN
-        if (mReadOnlyApn) {
+        // Nothing to do if it's a read only APN, or the apn data is still loading
+        if (mReadOnlyApn || mApnData == null) {
             return true;
         }
 
@@ -1178,6 +1223,7 @@ public class ApnEditor extends SettingsPreferenceFragment
                 getContentResolver().update(
                         uri, values, null /* where */, null /* selection Args */);
             }
+            ApnLoader.invalidateCache();
         });
     }
 
@@ -1237,8 +1283,9 @@ public class ApnEditor extends SettingsPreferenceFragment
     }
 
     private void deleteApn() {
-        if (mApnData.getUri() != null) {
+        if (mApnData != null && mApnData.getUri() != null) {
             getContentResolver().delete(mApnData.getUri(), null, null);
+            ApnLoader.invalidateCache();
             mApnData = new ApnData(sProjection.length);
         }
     }
@@ -1451,8 +1498,7 @@ public class ApnEditor extends SettingsPreferenceFragment
                 null /* selection */,
                 null /* selectionArgs */,
                 null /* sortOrder */)) {
-            if (cursor != null) {
-                cursor.moveToFirst();
+            if (cursor != null && cursor.moveToFirst()) {
                 apnData = new ApnData(uri, cursor);
             }
         }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.apn;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Telephony;
+import android.telephony.SubscriptionManager;
+import android.telephony.data.ApnSetting;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.network.apn.ApnEditor.ApnData;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Loads the APNs of a subscription off the main thread, and reloads them when the carriers table
+ * changes.
+ *
+ * <p>The rows of the latest load are cached while the loader is started, so that {@link ApnEditor}
+ * can open an APN of the list without querying the database again.
+ */
+class ApnLoader {
+    private static final String TAG = "ApnLoader";
+
+    private static final String APN_LIST_SELECTION =
+            "NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND user_visible!=0"
+            // Remove Emergency type, users should not mess with that
+            + " AND NOT (type='emergency')";
+    private static final String APN_LIST_SELECTION_HIDE_IMS =
+            APN_LIST_SELECTION + " AND NOT (type='ims')";
+
+    private static final Object sCacheLock = new Object();
+    // Guarded by sCacheLock.
+    private static final Map<Uri, ApnData> sApnDataCache = new ArrayMap<>();
+    // Incremented when the cache is invalidated, guarded by sCacheLock.
+    private static int sCacheGeneration;
+
+    /** Callback to receive the loaded APNs on the main thread. */
+    interface Callback {
+        /** Called when the APNs are loaded. */
+        void onApnListLoaded(ApnList apnList);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final boolean mHideImsApn;
+    private final Callback mCallback;
+    private final ContentObserver mCarriersObserver;
+
+    // Accessed on the main thread only.
+    private int mSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+    private int mGeneration;
+    private boolean mIsStarted;
+    private boolean mIsLoading;
+    private boolean mIsReloadPending;
+
+    ApnLoader(Context context, boolean hideImsApn, Callback callback) {
+        mContentResolver = context.getContentResolver();
+        mHideImsApn = hideImsApn;
+        mCallback = callback;
+        mCarriersObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidateCache();
+                load(mSubId);
+            }
+        };
+    }
+
+    /** Starts to observe the carriers table. */
+    void start() {
+        if (mIsStarted) {
+            return;
+        }
+        mIsStarted = true;
+        mContentResolver.registerContentObserver(Telephony.Carriers.CONTENT_URI,
+                true /* notifyForDescendants */, mCarriersObserver);
+    }
+
+    /**
+     * Stops observing the carriers table, the loads in flight are not delivered. The cached APNs
+     * are dropped, since nothing tells when they are out of date any more.
+     */
+    void stop() {
+        if (!mIsStarted) {
+            return;
+        }
+        mIsStarted = false;
+        mIsReloadPending = false;
+        mGeneration++;
+        mContentResolver.unregisterContentObserver(mCarriersObserver);
+        invalidateCache();
+    }
+
+    /**
+     * Loads the APNs of the subscription in the background. Loads requested while another one is
+     * in flight are merged into one reload.
+     */
+    void load(int subId) {
+        mSubId = subId;
+        if (!mIsStarted) {
+            return;
+        }
+        if (mIsLoading) {
+            mIsReloadPending = true;
+            return;
+        }
+        mIsLoading = true;
+        final int generation = mGeneration;
+        final String selection = mHideImsApn ? APN_LIST_SELECTION_HIDE_IMS : APN_LIST_SELECTION;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final ApnList apnList = queryApnList(mContentResolver, subId, selection);
+            ThreadUtils.postOnMainThread(() -> onLoaded(generation, apnList));
+        });
+    }
+
+    private void onLoaded(int generation, @Nullable ApnList apnList) {
+        mIsLoading = false;
+        if (mIsReloadPending) {
+            // The result may be out of date, drops it and loads again.
+            mIsReloadPending = false;
+            load(mSubId);
+            return;
+        }
+        if (generation != mGeneration || apnList == null) {
+            return;
+        }
+        mCallback.onApnListLoaded(apnList);
+    }
+
+    /** Returns the cached data of the APN, which must not be modified, or null if not cached. */
+    @Nullable
+    static ApnData getCachedApnData(Uri uri) {
+        synchronized (sCacheLock) {
+            return sApnDataCache.get(uri);
+        }
+    }
+
+    /** Drops the cached APNs, should be called after the carriers table is modified. */
+    static void invalidateCache() {
+        synchronized (sCacheLock) {
+            sCacheGeneration++;
+            sApnDataCache.clear();
+        }
+    }
+
+    @VisibleForTesting
+    @Nullable
+    static ApnList queryApnList(ContentResolver resolver, int subId, String selection) {
+        final Uri simApnUri = Uri.withAppendedPath(Telephony.Carriers.SIM_APN_URI,
+                String.valueOf(subId));
+        final List<ApnEntry> entries = new ArrayList<>();
+        final Map<Uri, ApnData> apnDataMap = new ArrayMap<>();
+        final int cacheGeneration;
+        synchronized (sCacheLock) {
+            cacheGeneration = sCacheGeneration;
+        }
+        try (Cursor cursor = resolver.query(simApnUri, ApnEditor.sProjection, selection,
+                null /* selectionArgs */, Telephony.Carriers.DEFAULT_SORT_ORDER)) {
+            if (cursor == null) {
+                Log.w(TAG, "Can't query the APNs of subId " + subId);
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                final Uri uri = ContentUris.withAppendedId(Telephony.Carriers.CONTENT_URI,
+                        cursor.getLong(ApnEditor.ID_INDEX));
+                final ApnData apnData = new ApnData(uri, cursor);
+                apnDataMap.put(uri, apnData);
+                entries.add(new ApnEntry(cursor.getString(ApnEditor.ID_INDEX), apnData));
+            }
+        }
+        synchronized (sCacheLock) {
+            // Doesn't cache the rows which may be out of date, if the cache was invalidated after
+            // the query started.
+            if (cacheGeneration == sCacheGeneration) {
+                sApnDataCache.clear();
+                sApnDataCache.putAll(apnDataMap);
+            }
+        }
+        return new ApnList(entries, querySelectedApnKey(resolver, subId));
+    }
+
+    @Nullable
+    private static String querySelectedApnKey(ContentResolver resolver, int subId) {
+        Uri uri = Uri.parse(ApnSettings.PREFERRED_APN_URI);
+        if (SubscriptionManager.isValidSubscriptionId(subId)) {
+            uri = Uri.withAppendedPath(uri, "subId/" + subId);
+        }
+        try (Cursor cursor = resolver.query(uri, new String[] {Telephony.Carriers._ID},
+                null /* selection */, null /* selectionArgs */,
+                Telephony.Carriers.DEFAULT_SORT_ORDER)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        }
+        return null;
+    }
+
+    /** The APNs of a subscription. */
+    static final class ApnList {
+        /** The APNs in the order of the database. */
+        final List<ApnEntry> mEntries;
+        @Nullable
+        final String mSelectedKey;
+
+        ApnList(List<ApnEntry> entries, @Nullable String selectedKey) {
+            mEntries = Collections.unmodifiableList(entries);
+            mSelectedKey = selectedKey;
+        }
+    }
+
+    /** The fields of an APN shown in the APN list. */
+    static final class ApnEntry {
+        final String mKey;
+        final String mName;
+        final String mApn;
+        final String mType;
+        final String mMvnoType;
+        final String mMvnoMatchData;
+        final int mEdited;
+
+        @VisibleForTesting
+        ApnEntry(String key, String name, String apn, String type, String mvnoType,
+                String mvnoMatchData, int edited) {
+            mKey = key;
+            mName = name;
+            mApn = apn;
+            mType = type;
+            mMvnoType = mvnoType;
+            mMvnoMatchData = mvnoMatchData;
+            mEdited = edited;
+        }
+
+        private ApnEntry(String key, ApnData apnData) {
+            this(key, apnData.getString(ApnEditor.NAME_INDEX),
+                    apnData.getString(ApnEditor.APN_INDEX),
+                    apnData.getString(ApnEditor.TYPE_INDEX),
+                    apnData.getString(ApnEditor.MVNO_TYPE_INDEX),
+                    apnData.getString(ApnEditor.MVNO_MATCH_DATA_INDEX),
+                    apnData.getInteger(ApnEditor.EDITED_INDEX, Telephony.Carriers.UNEDITED));
+        }
+
+        /** Returns whether the APN can be selected as the preferred APN. */
+        boolean isSelectable() {
+            return mType == null || mType.contains(ApnSetting.TYPE_DEFAULT_STRING);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ApnEntry)) {
+                return false;
+            }
+            final ApnEntry other = (ApnEntry) o;
+            return mEdited == other.mEdited
+                    && Objects.equals(mKey, other.mKey)
+                    && Objects.equals(mName, other.mName)
+                    && Objects.equals(mApn, other.mApn)
+                    && Objects.equals(mType, other.mType)
+                    && Objects.equals(mMvnoType, other.mMvnoType)
+                    && Objects.equals(mMvnoMatchData, other.mMvnoMatchData);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mKey, mName, mApn, mType, mMvnoType, mMvnoMatchData, mEdited);
+        }
+    }
+}
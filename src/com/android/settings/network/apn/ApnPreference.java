@@ -114,6 +114,13 @@ public class ApnPreference extends Preference implements CompoundButton.OnChecke
         sSelectedKey = getKey();
     }
 
+    /**
+     * Refresh the radio button after the checked preference is changed.
+     */
+    public void refreshChecked() {
+        notifyChanged();
+    }
+
     /**
      * Change the preference status.
      */
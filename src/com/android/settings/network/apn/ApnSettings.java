@@ -26,7 +26,6 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -43,8 +42,8 @@ import android.telephony.PreciseDataConnectionState;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
-import android.telephony.data.ApnSetting;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -61,10 +60,13 @@ import com.android.settings.network.SubscriptionUtil;
 import com.android.settingslib.RestrictedLockUtils.EnforcedAdmin;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /** Handle each different apn setting. */
 public class ApnSettings extends RestrictedSettingsFragment
-        implements Preference.OnPreferenceChangeListener {
+        implements Preference.OnPreferenceChangeListener, ApnLoader.Callback {
     static final String TAG = "ApnSettings";
 
     public static final String EXTRA_POSITION = "position";
@@ -78,16 +80,6 @@ public class ApnSettings extends RestrictedSettingsFragment
     public static final String MVNO_TYPE = "mvno_type";
     public static final String MVNO_MATCH_DATA = "mvno_match_data";
 
-    private static final String[] CARRIERS_PROJECTION = new String[] {
-            Telephony.Carriers._ID,
-            Telephony.Carriers.NAME,
-            Telephony.Carriers.APN,
-            Telephony.Carriers.TYPE,
-            Telephony.Carriers.MVNO_TYPE,
-            Telephony.Carriers.MVNO_MATCH_DATA,
-            Telephony.Carriers.EDITED_STATUS,
-    };
-
     /** Copied from {@code com.android.internal.telephony.TelephonyIntents} */
     private static final String ACTION_SIM_STATE_CHANGED =
             "android.intent.action.SIM_STATE_CHANGED";
@@ -95,14 +87,6 @@ public class ApnSettings extends RestrictedSettingsFragment
     public static final String INTENT_KEY_ICC_STATE = "ss";
     public static final String INTENT_VALUE_ICC_ABSENT = "ABSENT";
 
-    private static final int ID_INDEX = 0;
-    private static final int NAME_INDEX = 1;
-    private static final int APN_INDEX = 2;
-    private static final int TYPES_INDEX = 3;
-    private static final int MVNO_TYPE_INDEX = 4;
-    private static final int MVNO_MATCH_DATA_INDEX = 5;
-    private static final int EDITED_INDEX = 6;
-
     private static final int MENU_NEW = Menu.FIRST;
     private static final int MENU_RESTORE = Menu.FIRST + 1;
 
@@ -128,6 +112,10 @@ public class ApnSettings extends RestrictedSettingsFragment
     private String mMvnoMatchData;
 
     private String mSelectedKey;
+    private ApnLoader mApnLoader;
+    // The APNs shown in the list by key, and the subscription of them.
+    private Map<String, ApnLoader.ApnEntry> mApnEntries = new ArrayMap<>();
+    private int mApnListSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
 
     private IntentFilter mIntentFilter;
 
@@ -242,6 +230,7 @@ public class ApnSettings extends RestrictedSettingsFragment
         }
         mHidePresetApnDetails = b.getBoolean(CarrierConfigManager.KEY_HIDE_PRESET_APN_DETAILS_BOOL);
         mUserManager = UserManager.get(activity);
+        mApnLoader = new ApnLoader(activity, mHideImsApn, this);
     }
 
     @Override
@@ -271,6 +260,7 @@ public class ApnSettings extends RestrictedSettingsFragment
                 Context.RECEIVER_EXPORTED_UNAUDITED);
 
         restartPhoneStateListener(mSubId);
+        mApnLoader.start();
 
         if (!mRestoreDefaultApnMode) {
             fillList();
@@ -286,6 +276,7 @@ public class ApnSettings extends RestrictedSettingsFragment
         }
 
         getActivity().unregisterReceiver(mReceiver);
+        mApnLoader.stop();
 
         mTelephonyManager.listen(mPhoneStateListener,
                 PhoneStateListener.LISTEN_NONE);
@@ -318,74 +309,85 @@ public class ApnSettings extends RestrictedSettingsFragment
     private void fillList() {
         final int subId = mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
                 : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
-        final Uri simApnUri = Uri.withAppendedPath(Telephony.Carriers.SIM_APN_URI,
-                String.valueOf(subId));
-        final StringBuilder where =
-                new StringBuilder("NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND "
-                + "user_visible!=0");
-        // Remove Emergency type, users should not mess with that
-        where.append(" AND NOT (type='emergency')");
-
-        if (mHideImsApn) {
-            where.append(" AND NOT (type='ims')");
+        mApnLoader.load(subId);
+    }
+
+    @Override
+    public void onApnListLoaded(ApnLoader.ApnList apnList) {
+        final PreferenceGroup apnPrefList = (PreferenceGroup) findPreference("apn_list");
+        if (apnPrefList == null || mRestoreDefaultApnMode) {
+            return;
+        }
+        final int subId = mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
+                : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        final String previousSelectedKey = mSelectedKey;
+        mSelectedKey = apnList.mSelectedKey;
+
+        // Only recreates the preferences of the changed APNs, the others are kept as is.
+        final Map<String, ApnLoader.ApnEntry> previousEntries = mApnEntries;
+        mApnEntries = new ArrayMap<>();
+        final List<ApnLoader.ApnEntry> apnEntries = new ArrayList<>();
+        final List<ApnLoader.ApnEntry> mmsApnEntries = new ArrayList<>();
+        for (ApnLoader.ApnEntry entry : apnList.mEntries) {
+            mApnEntries.put(entry.mKey, entry);
+            mMvnoType = entry.mMvnoType;
+            mMvnoMatchData = entry.mMvnoMatchData;
+            if (entry.isSelectable()) {
+                apnEntries.add(entry);
+            } else {
+                mmsApnEntries.add(entry);
+            }
         }
+        for (int i = apnPrefList.getPreferenceCount() - 1; i >= 0; i--) {
+            final Preference preference = apnPrefList.getPreference(i);
+            final ApnLoader.ApnEntry entry = mApnEntries.get(preference.getKey());
+            if (entry == null || !entry.equals(previousEntries.get(preference.getKey()))
+                    || subId != mApnListSubId) {
+                apnPrefList.removePreference(preference);
+            }
+        }
+        mApnListSubId = subId;
 
-        final Cursor cursor = getContentResolver().query(simApnUri,
-                CARRIERS_PROJECTION, where.toString(), null,
-                Telephony.Carriers.DEFAULT_SORT_ORDER);
-
-        if (cursor != null) {
-            final PreferenceGroup apnPrefList = (PreferenceGroup) findPreference("apn_list");
-            apnPrefList.removeAll();
-
-            final ArrayList<ApnPreference> apnList = new ArrayList<ApnPreference>();
-            final ArrayList<ApnPreference> mmsApnList = new ArrayList<ApnPreference>();
-
-            mSelectedKey = getSelectedApnKey();
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                final String name = cursor.getString(NAME_INDEX);
-                final String apn = cursor.getString(APN_INDEX);
-                final String key = cursor.getString(ID_INDEX);
-                final String type = cursor.getString(TYPES_INDEX);
-                final int edited = cursor.getInt(EDITED_INDEX);
-                mMvnoType = cursor.getString(MVNO_TYPE_INDEX);
-                mMvnoMatchData = cursor.getString(MVNO_MATCH_DATA_INDEX);
-
-                final ApnPreference pref = new ApnPreference(getPrefContext());
-
-                pref.setKey(key);
-                pref.setTitle(name);
-                pref.setPersistent(false);
-                pref.setOnPreferenceChangeListener(this);
-                pref.setSubId(subId);
-                if (mHidePresetApnDetails && edited == Telephony.Carriers.UNEDITED) {
-                    pref.setHideDetails();
-                } else {
-                    pref.setSummary(apn);
-                }
+        int order = 0;
+        for (ApnLoader.ApnEntry entry : apnEntries) {
+            updateApnPreference(apnPrefList, entry, subId, order++, previousSelectedKey);
+        }
+        for (ApnLoader.ApnEntry entry : mmsApnEntries) {
+            updateApnPreference(apnPrefList, entry, subId, order++, previousSelectedKey);
+        }
+    }
 
-                final boolean selectable =
-                        ((type == null) || type.contains(ApnSetting.TYPE_DEFAULT_STRING));
-                pref.setSelectable(selectable);
-                if (selectable) {
-                    if ((mSelectedKey != null) && mSelectedKey.equals(key)) {
-                        pref.setChecked();
-                    }
-                    apnList.add(pref);
-                } else {
-                    mmsApnList.add(pref);
-                }
-                cursor.moveToNext();
+    private void updateApnPreference(PreferenceGroup apnPrefList, ApnLoader.ApnEntry entry,
+            int subId, int order, String previousSelectedKey) {
+        ApnPreference pref = apnPrefList.findPreference(entry.mKey);
+        if (pref == null) {
+            pref = new ApnPreference(getPrefContext());
+            pref.setKey(entry.mKey);
+            pref.setTitle(entry.mName);
+            pref.setPersistent(false);
+            pref.setOnPreferenceChangeListener(this);
+            pref.setSubId(subId);
+            if (mHidePresetApnDetails && entry.mEdited == Telephony.Carriers.UNEDITED) {
+                pref.setHideDetails();
+            } else {
+                pref.setSummary(entry.mApn);
             }
-            cursor.close();
-
-            for (Preference preference : apnList) {
-                apnPrefList.addPreference(preference);
+            pref.setSelectable(entry.isSelectable());
+            pref.setOrder(order);
+            if (entry.isSelectable() && entry.mKey.equals(mSelectedKey)) {
+                pref.setChecked();
             }
-            for (Preference preference : mmsApnList) {
-                apnPrefList.addPreference(preference);
+            apnPrefList.addPreference(pref);
+            return;
+        }
+        pref.setOrder(order);
+        if (entry.isSelectable() && !Objects.equals(mSelectedKey, previousSelectedKey)
+                && (entry.mKey.equals(mSelectedKey) || entry.mKey.equals(previousSelectedKey))) {
+            // The preferred APN is changed by others, updates the radio buttons.
+            if (entry.mKey.equals(mSelectedKey)) {
+                pref.setChecked();
             }
+            pref.refreshChecked();
         }
     }
 
@@ -453,19 +455,6 @@ public class ApnSettings extends RestrictedSettingsFragment
         resolver.update(getUriForCurrSubId(PREFERAPN_URI), values, null, null);
     }
 
-    private String getSelectedApnKey() {
-        String key = null;
-
-        final Cursor cursor = getContentResolver().query(getUriForCurrSubId(PREFERAPN_URI),
-                new String[] {"_id"}, null, null, Telephony.Carriers.DEFAULT_SORT_ORDER);
-        if (cursor.getCount() > 0) {
-            cursor.moveToFirst();
-            key = cursor.getString(ID_INDEX);
-        }
-        cursor.close();
-        return key;
-    }
-
     private boolean restoreDefaultApn() {
         // Callback of data connection change could be some noise during the stage of restore.
         mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
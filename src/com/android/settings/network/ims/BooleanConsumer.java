@@ -18,6 +18,7 @@ package com.android.settings.network.ims;
 
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -38,9 +39,12 @@ class BooleanConsumer extends Semaphore implements Consumer<Boolean> {
      * @param timeout callback waiting time in milliseconds
      * @return boolean value reported
      * @throws InterruptedException when thread get interrupted
+     * @throws TimeoutException when no value is reported within the timeout
      */
-    boolean get(long timeout) throws InterruptedException {
-        tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    boolean get(long timeout) throws InterruptedException, TimeoutException {
+        if (!tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("no value reported in " + timeout + "ms");
+        }
         return mValue.get();
     }
 
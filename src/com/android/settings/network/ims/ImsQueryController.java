@@ -16,6 +16,7 @@
 
 package com.android.settings.network.ims;
 
+import android.content.Context;
 import android.telephony.AccessNetworkConstants;
 import android.telephony.SubscriptionManager;
 import android.telephony.ims.ImsException;
@@ -26,16 +27,18 @@ import android.telephony.ims.stub.ImsRegistrationImplBase;
 
 import androidx.annotation.VisibleForTesting;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Controller class for querying IMS status
+ *
+ * <p>Queries except the user settings are shared through {@link ImsQueryService}.
  */
 abstract class ImsQueryController {
 
     private static final long TIMEOUT_MILLIS = 2000;
 
+    private final Context mContext;
     private volatile int mCapability;
     private volatile int mTech;
     private volatile int mTransportType;
@@ -43,14 +46,16 @@ abstract class ImsQueryController {
     /**
      * Constructor for query IMS status
      *
+     * @param context {@link Context}
      * @param capability {@link MmTelFeature.MmTelCapabilities#MmTelCapability}
      * @param tech {@link ImsRegistrationImplBase#ImsRegistrationTech}
      * @param transportType {@link AccessNetworkConstants#TransportType}
      */
-    ImsQueryController(
+    ImsQueryController(Context context,
             @MmTelFeature.MmTelCapabilities.MmTelCapability int capability,
             @ImsRegistrationImplBase.ImsRegistrationTech int tech,
             @AccessNetworkConstants.TransportType int transportType) {
+        mContext = context;
         mCapability = capability;
         mTech = tech;
         mTransportType = transportType;
@@ -60,7 +65,14 @@ abstract class ImsQueryController {
 
     @VisibleForTesting
     boolean isTtyOnVolteEnabled(int subId) {
-        return (new ImsQueryTtyOnVolteStat(subId)).query();
+        try {
+            return getQueryService().query(subId, ImsQueryService.QUERY_TTY_ON_VOLTE,
+                    /* capability= */ 0, /* tech= */ 0,
+                    () -> (new ImsQueryTtyOnVolteStat(subId)).query());
+        } catch (InterruptedException | ImsException | TimeoutException exception) {
+            // Not thrown by ImsQueryTtyOnVolteStat.
+            return false;
+        }
     }
 
     @VisibleForTesting
@@ -70,15 +82,23 @@ abstract class ImsQueryController {
             return false;
         }
 
-        final ImsMmTelManager imsMmTelManager = ImsMmTelManager.createForSubscriptionId(subId);
-        // TODO: have a shared thread pool instead of create ExecutorService
-        //       everytime to improve performance.
-        final ExecutorService executor = Executors.newSingleThreadExecutor();
-        final BooleanConsumer booleanResult = new BooleanConsumer();
-        imsMmTelManager.isSupported(mCapability, mTransportType, executor, booleanResult);
-        // get() will be blocked until end of execution(isSupported()) within thread(executor)
-        // or timeout after TIMEOUT_MILLIS milliseconds
-        return booleanResult.get(TIMEOUT_MILLIS);
+        final ImsQueryService queryService = getQueryService();
+        try {
+            return queryService.query(subId, ImsQueryService.QUERY_SUPPORTED,
+                    mCapability, mTransportType, () -> {
+                        final ImsMmTelManager imsMmTelManager =
+                                ImsMmTelManager.createForSubscriptionId(subId);
+                        final BooleanConsumer booleanResult = new BooleanConsumer();
+                        imsMmTelManager.isSupported(mCapability, mTransportType,
+                                queryService.getExecutor(), booleanResult);
+                        // get() will be blocked until end of execution(isSupported()) within
+                        // the shared executor or timeout after TIMEOUT_MILLIS milliseconds
+                        return booleanResult.get(TIMEOUT_MILLIS);
+                    });
+        } catch (TimeoutException exception) {
+            // Not cached, queries again next time.
+            return false;
+        }
     }
 
     @VisibleForTesting
@@ -86,7 +106,14 @@ abstract class ImsQueryController {
         if (!SubscriptionManager.isValidSubscriptionId(subId)) {
             return false;
         }
-        return (new ImsQueryProvisioningStat(subId, mCapability, mTech)).query();
+        try {
+            return getQueryService().query(subId, ImsQueryService.QUERY_PROVISIONED,
+                    mCapability, mTech,
+                    () -> (new ImsQueryProvisioningStat(subId, mCapability, mTech)).query());
+        } catch (InterruptedException | ImsException | TimeoutException exception) {
+            // Not thrown by ImsQueryProvisioningStat.
+            return false;
+        }
     }
 
     @VisibleForTesting
@@ -96,12 +123,23 @@ abstract class ImsQueryController {
             return false;
         }
 
-        final ImsMmTelManager imsMmTelManager = ImsMmTelManager.createForSubscriptionId(subId);
-        // TODO: have a shared thread pool instead of create ExecutorService
-        //       everytime to improve performance.
-        final ExecutorService executor = Executors.newSingleThreadExecutor();
-        final IntegerConsumer intResult = new IntegerConsumer();
-        imsMmTelManager.getFeatureState(executor, intResult);
-        return (intResult.get(TIMEOUT_MILLIS) == ImsFeature.STATE_READY);
+        final ImsQueryService queryService = getQueryService();
+        try {
+            return queryService.query(subId, ImsQueryService.QUERY_FEATURE_STATE,
+                    /* capability= */ 0, /* tech= */ 0, () -> {
+                        final ImsMmTelManager imsMmTelManager =
+                                ImsMmTelManager.createForSubscriptionId(subId);
+                        final IntegerConsumer intResult = new IntegerConsumer();
+                        imsMmTelManager.getFeatureState(queryService.getExecutor(), intResult);
+                        return (intResult.get(TIMEOUT_MILLIS) == ImsFeature.STATE_READY);
+                    });
+        } catch (TimeoutException exception) {
+            // Not cached, queries again next time.
+            return false;
+        }
+    }
+
+    private ImsQueryService getQueryService() {
+        return ImsQueryService.getInstance(mContext);
     }
 }
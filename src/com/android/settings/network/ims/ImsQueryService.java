@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.ims;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.telephony.AccessNetworkConstants;
+import android.telephony.SubscriptionManager;
+import android.telephony.ims.ImsException;
+import android.telephony.ims.ImsMmTelManager;
+import android.telephony.ims.ImsReasonInfo;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the IMS status queries of {@link ImsQueryController}.
+ *
+ * <p>Identical queries of a subscription share one in-flight query, and the result is cached
+ * briefly until the IMS registration of the subscription changes. Failed or timed out queries are
+ * not cached. The results reported by {@link ImsMmTelManager} callbacks are delivered on a shared
+ * bounded thread pool.
+ */
+class ImsQueryService {
+    private static final String LOG_TAG = "ImsQueryService";
+
+    @VisibleForTesting
+    static final long CACHE_TIMEOUT_MILLIS = 2000;
+    private static final int THREAD_POOL_SIZE = 2;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // Types of query.
+    static final int QUERY_TTY_ON_VOLTE = 0;
+    static final int QUERY_SUPPORTED = 1;
+    static final int QUERY_PROVISIONED = 2;
+    static final int QUERY_FEATURE_STATE = 3;
+
+    private static ImsQueryService sInstance;
+
+    /** Loads the result of a query. */
+    interface Loader<T> {
+        /**
+         * Loads the result of a query.
+         *
+         * @throws TimeoutException when the result is not reported in time
+         */
+        T load() throws InterruptedException, ImsException, TimeoutException;
+    }
+
+    private final Context mContext;
+    private final Object mLock = new Object();
+    private final ExecutorService mExecutor;
+    // Guarded by mLock.
+    private final ArrayMap<QueryKey, QueryEntry<?>> mQueries = new ArrayMap<>();
+    // Guarded by mLock.
+    private final SparseArray<ImsMmTelManager.RegistrationCallback> mRegistrationCallbacks =
+            new SparseArray<>();
+    // Guarded by mLock.
+    private boolean mIsSubscriptionsListenerRegistered;
+
+    /** Returns the process-wide {@link ImsQueryService}. */
+    static synchronized ImsQueryService getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImsQueryService(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    ImsQueryService(Context context) {
+        mContext = context;
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THREAD_POOL_SIZE, THREAD_POOL_SIZE,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable,
+                        LOG_TAG + "-" + threadCount.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+    }
+
+    /** Returns the executor to receive the results of {@link ImsMmTelManager} callbacks. */
+    ExecutorService getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Returns the result of the query, which is loaded by {@code loader} on the calling thread
+     * unless an identical query is in flight or cached.
+     *
+     * @param subId subscription id
+     * @param type type of query, e.g. {@link #QUERY_SUPPORTED}
+     * @param capability the capability being queried, or 0 if not applicable
+     * @param tech the registration tech or transport type being queried, or 0 if not applicable
+     * @param loader loads the result of the query
+     * @throws TimeoutException when the result is not reported in time
+     */
+    <T> T query(int subId, int type, int capability, int tech, @NonNull Loader<T> loader)
+            throws InterruptedException, ImsException, TimeoutException {
+        // Retries on every query until the callback is registered.
+        registerCallbackIfNeeded(subId);
+        final QueryKey key = new QueryKey(subId, type, capability, tech);
+        final long now = SystemClock.elapsedRealtime();
+        final QueryEntry<T> entry;
+        boolean isNewQuery = false;
+        synchronized (mLock) {
+            @SuppressWarnings("unchecked")
+            QueryEntry<T> existingEntry = (QueryEntry<T>) mQueries.get(key);
+            if (existingEntry == null || existingEntry.isExpired(now)) {
+                existingEntry = new QueryEntry<>(loader);
+                mQueries.put(key, existingEntry);
+                isNewQuery = true;
+            }
+            entry = existingEntry;
+        }
+        if (isNewQuery) {
+            entry.mTask.run();
+            entry.mCompletedTime = SystemClock.elapsedRealtime();
+        }
+        try {
+            return entry.mTask.get();
+        } catch (ExecutionException e) {
+            // Failed queries are not cached.
+            synchronized (mLock) {
+                if (mQueries.get(key) == entry) {
+                    mQueries.remove(key);
+                }
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof ImsException) {
+                throw (ImsException) cause;
+            } else if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Drops the cached results of the subscription. */
+    void invalidate(int subId) {
+        synchronized (mLock) {
+            // Keeps the queries in flight, which are shared until they are completed.
+            for (int i = mQueries.size() - 1; i >= 0; i--) {
+                if (mQueries.keyAt(i).mSubId == subId && mQueries.valueAt(i).mTask.isDone()) {
+                    mQueries.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /** Unregisters the callbacks and drops the cached results of the removed subscriptions. */
+    @VisibleForTesting
+    void onSubscriptionsChanged() {
+        final SparseArray<ImsMmTelManager.RegistrationCallback> callbacks;
+        synchronized (mLock) {
+            callbacks = mRegistrationCallbacks.clone();
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            final int subId = callbacks.keyAt(i);
+            if (isActiveSubscriptionId(subId)) {
+                continue;
+            }
+            final ImsMmTelManager.RegistrationCallback callback = callbacks.valueAt(i);
+            synchronized (mLock) {
+                if (mRegistrationCallbacks.get(subId) != callback) {
+                    continue;
+                }
+                mRegistrationCallbacks.remove(subId);
+            }
+            invalidate(subId);
+            try {
+                unregisterImsRegistrationCallback(subId, callback);
+            } catch (IllegalArgumentException exception) {
+                Log.w(LOG_TAG, "fail to unregister IMS registration callback. subId=" + subId,
+                        exception);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    boolean isActiveSubscriptionId(int subId) {
+        return mContext.getSystemService(SubscriptionManager.class)
+                .isActiveSubscriptionId(subId);
+    }
+
+    @VisibleForTesting
+    void registerSubscriptionsChangedListener() {
+        mContext.getSystemService(SubscriptionManager.class).addOnSubscriptionsChangedListener(
+                mExecutor, new SubscriptionManager.OnSubscriptionsChangedListener() {
+                    @Override
+                    public void onSubscriptionsChanged() {
+                        ImsQueryService.this.onSubscriptionsChanged();
+                    }
+                });
+    }
+
+    @VisibleForTesting
+    void registerImsRegistrationCallback(int subId,
+            ImsMmTelManager.RegistrationCallback callback) throws ImsException {
+        ImsMmTelManager.createForSubscriptionId(subId)
+                .registerImsRegistrationCallback(mExecutor, callback);
+    }
+
+    @VisibleForTesting
+    void unregisterImsRegistrationCallback(int subId,
+            ImsMmTelManager.RegistrationCallback callback) {
+        ImsMmTelManager.createForSubscriptionId(subId).unregisterImsRegistrationCallback(callback);
+    }
+
+    private void registerCallbackIfNeeded(int subId) {
+        final ImsMmTelManager.RegistrationCallback callback;
+        final boolean registerSubscriptionsListener;
+        synchronized (mLock) {
+            if (mRegistrationCallbacks.contains(subId)) {
+                return;
+            }
+            callback = new InvalidateCallback(subId);
+            // Claims the subscription, so concurrent queries don't register again.
+            mRegistrationCallbacks.put(subId, callback);
+            registerSubscriptionsListener = !mIsSubscriptionsListenerRegistered;
+            mIsSubscriptionsListenerRegistered = true;
+        }
+        if (registerSubscriptionsListener) {
+            registerSubscriptionsChangedListener();
+        }
+        try {
+            registerImsRegistrationCallback(subId, callback);
+        } catch (ImsException | IllegalArgumentException exception) {
+            Log.w(LOG_TAG, "fail to register IMS registration callback. subId=" + subId,
+                    exception);
+            // The cached results are still dropped after the timeout.
+            synchronized (mLock) {
+                if (mRegistrationCallbacks.get(subId) == callback) {
+                    mRegistrationCallbacks.remove(subId);
+                }
+            }
+        }
+    }
+
+    private final class InvalidateCallback extends ImsMmTelManager.RegistrationCallback {
+        private final int mSubId;
+
+        InvalidateCallback(int subId) {
+            mSubId = subId;
+        }
+
+        @Override
+        public void onRegistered(@AccessNetworkConstants.TransportType int imsTransportType) {
+            invalidate(mSubId);
+        }
+
+        @Override
+        public void onRegistering(@AccessNetworkConstants.TransportType int imsTransportType) {
+            invalidate(mSubId);
+        }
+
+        @Override
+        public void onUnregistered(ImsReasonInfo info) {
+            invalidate(mSubId);
+        }
+
+        @Override
+        public void onTechnologyChangeFailed(
+                @AccessNetworkConstants.TransportType int imsTransportType,
+                ImsReasonInfo info) {
+            invalidate(mSubId);
+        }
+    }
+
+    private static final class QueryEntry<T> {
+        final FutureTask<T> mTask;
+        // Zero while the query is in flight.
+        volatile long mCompletedTime;
+
+        QueryEntry(Loader<T> loader) {
+            mTask = new FutureTask<>(loader::load);
+        }
+
+        boolean isExpired(long now) {
+            final long completedTime = mCompletedTime;
+            return completedTime != 0 && now - completedTime > CACHE_TIMEOUT_MILLIS;
+        }
+    }
+
+    private static final class QueryKey {
+        final int mSubId;
+        final int mType;
+        final int mCapability;
+        final int mTech;
+
+        QueryKey(int subId, int type, int capability, int tech) {
+            mSubId = subId;
+            mType = type;
+            mCapability = capability;
+            mTech = tech;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            final QueryKey other = (QueryKey) o;
+            return mSubId == other.mSubId && mType == other.mType
+                    && mCapability == other.mCapability && mTech == other.mTech;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSubId, mType, mCapability, mTech);
+        }
+    }
+}
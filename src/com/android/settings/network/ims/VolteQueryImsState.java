@@ -47,7 +47,7 @@ public class VolteQueryImsState extends ImsQueryController {
      * @param subId subscription's id
      */
     public VolteQueryImsState(Context context, int subId) {
-        super(MmTelFeature.MmTelCapabilities.CAPABILITY_TYPE_VOICE,
+        super(context, MmTelFeature.MmTelCapabilities.CAPABILITY_TYPE_VOICE,
                 ImsRegistrationImplBase.REGISTRATION_TECH_LTE,
                 AccessNetworkConstants.TRANSPORT_TYPE_WWAN);
         mContext = context;
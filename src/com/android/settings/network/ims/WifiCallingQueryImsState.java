@@ -44,7 +44,7 @@ public class WifiCallingQueryImsState extends ImsQueryController  {
      * @param subId subscription's id
      */
     public WifiCallingQueryImsState(Context context, int subId) {
-        super(MmTelFeature.MmTelCapabilities.CAPABILITY_TYPE_VOICE,
+        super(context, MmTelFeature.MmTelCapabilities.CAPABILITY_TYPE_VOICE,
                 ImsRegistrationImplBase.REGISTRATION_TECH_IWLAN,
                 AccessNetworkConstants.TRANSPORT_TYPE_WLAN);
         mContext = context;
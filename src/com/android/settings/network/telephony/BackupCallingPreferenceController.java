@@ -173,9 +173,7 @@ public class BackupCallingPreferenceController extends TelephonyTogglePreference
     }
 
     private List<SubscriptionInfo> getActiveSubscriptionList() {
-        SubscriptionManager subscriptionManager =
-                mContext.getSystemService(SubscriptionManager.class);
-        return SubscriptionUtil.getActiveSubscriptions(subscriptionManager);
+        return SubscriptionUtil.getActiveSubscriptions(mContext);
     }
 
     private SubscriptionInfo getSubscriptionInfoFromList(
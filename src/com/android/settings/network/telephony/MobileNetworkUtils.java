@@ -37,6 +37,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.content.res.ColorStateList;
 import android.database.Cursor;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
@@ -632,10 +633,20 @@ public class MobileNetworkUtils {
 
     public static Drawable getSignalStrengthIcon(Context context, int level, int numLevels,
             int iconType, boolean cutOut, boolean carrierNetworkChanged) {
+        if (carrierNetworkChanged) {
+            // The carrier change state is animated, so it's not pre-rendered.
+            return createSignalStrengthIcon(context,
+                    SignalDrawable.getCarrierChangeState(numLevels), iconType,
+                    Utils.getColorAttr(context, android.R.attr.colorControlNormal));
+        }
+        return SignalStrengthIconCache.getIcon(context,
+                SignalDrawable.getState(level, numLevels, cutOut), iconType);
+    }
+
+    static Drawable createSignalStrengthIcon(Context context, int state, int iconType,
+            ColorStateList tint) {
         final SignalDrawable signalDrawable = new SignalDrawable(context);
-        signalDrawable.setLevel(
-                carrierNetworkChanged ? SignalDrawable.getCarrierChangeState(numLevels)
-                        : SignalDrawable.getState(level, numLevels, cutOut));
+        signalDrawable.setLevel(state);
 
         // Make the network type drawable
         final Drawable networkDrawable =
@@ -654,7 +665,7 @@ public class MobileNetworkUtils {
         // Set the signal strength icon at the bottom right
         icons.setLayerGravity(1 /* index of SignalDrawable */, Gravity.BOTTOM | Gravity.RIGHT);
         icons.setLayerSize(1 /* index of SignalDrawable */, iconSize, iconSize);
-        icons.setTintList(Utils.getColorAttr(context, android.R.attr.colorControlNormal));
+        icons.setTintList(tint);
         return icons;
     }
 
@@ -136,6 +136,10 @@ public class NetworkOperatorPreference extends Preference {
         final CellSignalStrength signalStrength = getCellSignalStrength(mCellInfo);
         final int level = signalStrength != null ? signalStrength.getLevel() : LEVEL_NONE;
         if (DBG) Log.d(TAG, "refresh level: " + String.valueOf(level));
+        if (level == mLevel) {
+            // Avoid rebinding the view when the signal level is unchanged
+            return;
+        }
         mLevel = level;
         updateIcon(mLevel);
     }
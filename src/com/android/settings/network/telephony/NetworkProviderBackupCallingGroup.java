@@ -281,9 +281,7 @@ public class NetworkProviderBackupCallingGroup extends
 
     @Override
     public void onSubscriptionsChanged() {
-        SubscriptionManager subscriptionManager =
-                mContext.getSystemService(SubscriptionManager.class);
-        mSubInfoListForBackupCall = SubscriptionUtil.getActiveSubscriptions(subscriptionManager);
+        mSubInfoListForBackupCall = SubscriptionUtil.getActiveSubscriptions(mContext);
         update();
     }
 }
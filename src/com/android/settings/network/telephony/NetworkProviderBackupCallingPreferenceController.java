@@ -18,7 +18,6 @@ package com.android.settings.network.telephony;
 
 import android.content.Context;
 import android.telephony.SubscriptionInfo;
-import android.telephony.SubscriptionManager;
 
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceScreen;
@@ -69,9 +68,7 @@ public class NetworkProviderBackupCallingPreferenceController extends
     }
 
     private List<SubscriptionInfo> getActiveSubscriptionList() {
-        SubscriptionManager subscriptionManager =
-                mContext.getSystemService(SubscriptionManager.class);
-        return SubscriptionUtil.getActiveSubscriptions(subscriptionManager);
+        return SubscriptionUtil.getActiveSubscriptions(mContext);
     }
 
     @Override
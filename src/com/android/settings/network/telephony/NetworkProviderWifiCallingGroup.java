@@ -92,7 +92,7 @@ public class NetworkProviderWifiCallingGroup extends
 
     private void setSubscriptionInfoList(Context context) {
         mSubInfoListForWfc = new ArrayList<>(
-                SubscriptionUtil.getActiveSubscriptions(mSubscriptionManager));
+                SubscriptionUtil.getActiveSubscriptions(context));
         mSubInfoListForWfc.removeIf(info -> {
             final int subId = info.getSubscriptionId();
             setTelephonyManagerForSubscriptionId(context, subId);
@@ -34,6 +34,7 @@ import android.telephony.ServiceState;
 import android.telephony.SignalStrength;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.View;
 
@@ -51,8 +52,9 @@ import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -79,6 +81,8 @@ public class NetworkSelectSettings extends DashboardFragment {
     private Preference mStatusMessagePreference;
     @VisibleForTesting
     List<CellInfo> mCellInfoList;
+    // The network operators of the current scan by key, in the order of being found.
+    private final Map<String, CellInfo> mScannedCellInfos = new LinkedHashMap<>();
     private int mSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
     private TelephonyManager mTelephonyManager;
     private List<String> mForbiddenPlmns;
@@ -363,31 +367,57 @@ public class NetworkSelectSettings extends DashboardFragment {
             return new ArrayList<>(cellInfoListInput);
         }
         ArrayList<CellInfo> aggregatedList = new ArrayList<>();
+        // Index of the cell within aggregatedList by the PLMN and RAT of the cell.
+        final Map<String, Integer> indexes = new ArrayMap<>();
         for (CellInfo cellInfo : cellInfoListInput) {
-            String plmn = CellInfoUtil.getNetworkTitle(cellInfo.getCellIdentity(),
-                    CellInfoUtil.getCellIdentityMccMnc(cellInfo.getCellIdentity()));
-            Class className = cellInfo.getClass();
-
-            Optional<CellInfo> itemInTheList = aggregatedList.stream().filter(
-                    item -> {
-                        String itemPlmn = CellInfoUtil.getNetworkTitle(item.getCellIdentity(),
-                                CellInfoUtil.getCellIdentityMccMnc(item.getCellIdentity()));
-                        return itemPlmn.equals(plmn) && item.getClass().equals(className);
-                    })
-                    .findFirst();
-            if (itemInTheList.isPresent()) {
-                if (cellInfo.isRegistered() && !itemInTheList.get().isRegistered()) {
+            final String key = getOperatorKey(cellInfo.getCellIdentity());
+            final Integer index = indexes.get(key);
+            if (index != null) {
+                if (cellInfo.isRegistered() && !aggregatedList.get(index).isRegistered()) {
                     // Adding the registered cellinfo item into list. If there are two registered
                     // cellinfo items, then select first one from source list.
-                    aggregatedList.set(aggregatedList.indexOf(itemInTheList.get()), cellInfo);
+                    aggregatedList.set(index, cellInfo);
                 }
                 continue;
             }
+            indexes.put(key, aggregatedList.size());
             aggregatedList.add(cellInfo);
         }
         return aggregatedList;
     }
 
+    /**
+     * Merges the partial results of the incremental scan into the results of the current scan, so
+     * that a network operator is kept until the scan is restarted.
+     */
+    private List<CellInfo> mergeScanResults(List<CellInfo> cellInfoList) {
+        if (!mIsAggregationEnabled) {
+            return cellInfoList;
+        }
+        for (CellInfo cellInfo : cellInfoList) {
+            final String key = getOperatorKey(cellInfo.getCellIdentity());
+            final CellInfo scannedCellInfo = mScannedCellInfos.get(key);
+            // Keeps the registered cell, otherwise updates the signal of the network operator.
+            if (scannedCellInfo == null || !scannedCellInfo.isRegistered()
+                    || cellInfo.isRegistered()) {
+                mScannedCellInfos.put(key, cellInfo);
+            }
+        }
+        return new ArrayList<>(mScannedCellInfos.values());
+    }
+
+    /**
+     * Returns the key of the network operator, which is the PLMN and the RAT of the cell.
+     */
+    @VisibleForTesting
+    static String getOperatorKey(CellIdentity cellId) {
+        if (cellId == null) {
+            return "";
+        }
+        return CellInfoUtil.getNetworkTitle(cellId, CellInfoUtil.getCellIdentityMccMnc(cellId))
+                + "_" + cellId.getClass().getSimpleName();
+    }
+
     private final NetworkScanHelper.NetworkScanCallback mCallback =
             new NetworkScanHelper.NetworkScanCallback() {
                 public void onResults(List<CellInfo> results) {
@@ -420,7 +450,7 @@ public class NetworkSelectSettings extends DashboardFragment {
             stopNetworkQuery();
         }
 
-        mCellInfoList = doAggregation(results);
+        mCellInfoList = mergeScanResults(doAggregation(results));
         Log.d(TAG, "CellInfoList: " + CellInfoUtil.cellInfoListToString(mCellInfoList));
         if (mCellInfoList != null && mCellInfoList.size() != 0) {
             final NetworkOperatorPreference connectedPref =
@@ -456,40 +486,43 @@ public class NetworkSelectSettings extends DashboardFragment {
      * @return preference which shows connected
      */
     private NetworkOperatorPreference updateAllPreferenceCategory() {
-        int numberOfPreferences = mPreferenceCategory.getPreferenceCount();
-
-        // remove unused preferences
-        while (numberOfPreferences > mCellInfoList.size()) {
-            numberOfPreferences--;
-            mPreferenceCategory.removePreference(
-                    mPreferenceCategory.getPreference(numberOfPreferences));
+        // Index the preferences of network operators by key, and remove the others.
+        final Map<String, NetworkOperatorPreference> preferences = new ArrayMap<>();
+        for (int index = mPreferenceCategory.getPreferenceCount() - 1; index >= 0; index--) {
+            final Preference rawPref = mPreferenceCategory.getPreference(index);
+            if (rawPref instanceof NetworkOperatorPreference && rawPref.getKey() != null) {
+                preferences.put(rawPref.getKey(), (NetworkOperatorPreference) rawPref);
+            } else {
+                mPreferenceCategory.removePreference(rawPref);
+            }
         }
 
-        // update the content of preference
+        // Update the preferences in place, only add the preferences of new network operators.
         NetworkOperatorPreference connectedPref = null;
+        final Map<String, Integer> keyCounts = new ArrayMap<>();
         for (int index = 0; index < mCellInfoList.size(); index++) {
             final CellInfo cellInfo = mCellInfoList.get(index);
-
-            NetworkOperatorPreference pref = null;
-            if (index < numberOfPreferences) {
-                final Preference rawPref = mPreferenceCategory.getPreference(index);
-                if (rawPref instanceof NetworkOperatorPreference) {
-                    // replace existing preference
-                    pref = (NetworkOperatorPreference) rawPref;
-                    pref.updateCell(cellInfo);
-                } else {
-                    mPreferenceCategory.removePreference(rawPref);
-                }
+            String key = getOperatorKey(cellInfo.getCellIdentity());
+            // Without aggregation, the cells of the same network operator are listed in order.
+            final int keyCount = keyCounts.getOrDefault(key, 0);
+            keyCounts.put(key, keyCount + 1);
+            if (keyCount > 0) {
+                key += "_" + keyCount;
             }
+
+            NetworkOperatorPreference pref = preferences.remove(key);
             if (pref == null) {
                 // add new preference
                 pref = createNetworkOperatorPreference(cellInfo);
+                pref.setKey(key);
                 pref.setOrder(index);
                 mPreferenceCategory.addPreference(pref);
+            } else {
+                pref.setOrder(index);
+                pref.updateCell(cellInfo);
             }
-            pref.setKey(pref.getOperatorName());
 
-            if (mCellInfoList.get(index).isRegistered()) {
+            if (cellInfo.isRegistered()) {
                 pref.setSummary(R.string.network_connected);
                 connectedPref = pref;
             } else {
@@ -497,13 +530,17 @@ public class NetworkSelectSettings extends DashboardFragment {
             }
         }
 
-        // update selected preference instance by index
-        for (int index = 0; index < mCellInfoList.size(); index++) {
-            final CellInfo cellInfo = mCellInfoList.get(index);
+        // remove the preferences of network operators which disappear
+        for (NetworkOperatorPreference pref : preferences.values()) {
+            mPreferenceCategory.removePreference(pref);
+        }
 
-            if ((mSelectedPreference != null) && mSelectedPreference.isSameCell(cellInfo)) {
-                mSelectedPreference = (NetworkOperatorPreference)
-                        (mPreferenceCategory.getPreference(index));
+        // update selected preference instance by key
+        if (mSelectedPreference != null && mSelectedPreference.getKey() != null) {
+            final NetworkOperatorPreference pref =
+                    mPreferenceCategory.findPreference(mSelectedPreference.getKey());
+            if (pref != null) {
+                mSelectedPreference = pref;
             }
         }
 
@@ -557,6 +594,8 @@ public class NetworkSelectSettings extends DashboardFragment {
                 // would be zero
                 // (it would be quite confusing why the connected network has no signal)
                 pref.setIcon(SignalStrength.NUM_SIGNAL_STRENGTH_BINS - 1);
+                // Keyed as the network operator in the scan results, which updates it in place.
+                pref.setKey(getOperatorKey(cellIdentity));
                 mPreferenceCategory.addPreference(pref);
                 break;
             }
@@ -603,6 +642,7 @@ public class NetworkSelectSettings extends DashboardFragment {
     private void startNetworkQuery() {
         setProgressBarVisible(true);
         if (mNetworkScanHelper != null) {
+            mScannedCellInfos.clear();
             mRequestIdManualNetworkScan = getNewRequestId();
             mWaitingForNumberOfScanResults = MIN_NUMBER_OF_SCAN_REQUIRED;
             mNetworkScanHelper.startNetworkScan(
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.telephony;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.R;
+import com.android.settings.Utils;
+
+/**
+ * Process-wide cache of pre-rendered signal strength icons.
+ *
+ * An icon is rendered once per signal state, network type icon and configuration. It is rendered
+ * in opaque white and then tinted by each drawable, so the theme only affects the tint. Every
+ * signal change then creates a {@link BitmapDrawable} sharing the pixels, instead of building a
+ * new tree of drawables.
+ */
+final class SignalStrengthIconCache {
+
+    @VisibleForTesting
+    static final int MAX_CACHE_BYTES = 512 * 1024;
+
+    private static final ColorStateList RENDER_TINT = ColorStateList.valueOf(Color.WHITE);
+
+    private static final LruCache<String, Bitmap> sIcons =
+            new LruCache<String, Bitmap>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+            };
+
+    private SignalStrengthIconCache() {
+    }
+
+    /**
+     * Returns the icon of the signal {@code state} packed by
+     * {@link com.android.settingslib.graph.SignalDrawable#getState}, overlaid with the network
+     * type icon {@code iconType}.
+     */
+    @NonNull
+    static Drawable getIcon(@NonNull Context context, int state, int iconType) {
+        final Resources res = context.getResources();
+        final Configuration config = res.getConfiguration();
+        final String key = state + "_" + iconType + "_" + config.densityDpi + "_" + config.uiMode
+                + "_" + config.getLayoutDirection();
+        Bitmap bitmap = sIcons.get(key);
+        if (bitmap == null) {
+            final Drawable icon = MobileNetworkUtils.createSignalStrengthIcon(
+                    context, state, iconType, RENDER_TINT);
+            // No view sets the layout direction of a rendered icon, the layers inherit it from
+            // here so that the SignalDrawable is mirrored in RTL.
+            icon.setLayoutDirection(config.getLayoutDirection());
+            bitmap = render(icon, res);
+            sIcons.put(key, bitmap);
+        }
+        final BitmapDrawable icon = new BitmapDrawable(res, bitmap);
+        icon.setTintList(Utils.getColorAttr(context, android.R.attr.colorControlNormal));
+        return icon;
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sIcons.evictAll();
+    }
+
+    private static Bitmap render(Drawable icon, Resources res) {
+        final int iconSize = res.getDimensionPixelSize(R.dimen.signal_strength_icon_size);
+        final int width = Math.max(icon.getIntrinsicWidth(), iconSize);
+        final int height = Math.max(icon.getIntrinsicHeight(), iconSize);
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.setDensity(res.getDisplayMetrics().densityDpi);
+        icon.setBounds(0, 0, width, height);
+        icon.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+}
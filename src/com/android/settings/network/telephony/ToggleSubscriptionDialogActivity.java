@@ -109,7 +109,7 @@ public class ToggleSubscriptionDialogActivity extends SubscriptionActionDialogAc
             return;
         }
 
-        mActiveSubInfos = SubscriptionUtil.getActiveSubscriptions(mSubscriptionManager);
+        mActiveSubInfos = SubscriptionUtil.getActiveSubscriptions(this);
         mSubInfo = SubscriptionUtil.getSubById(mSubscriptionManager, subId);
         mIsEsimOperation = mSubInfo != null && mSubInfo.isEmbedded();
         mSwitchToEuiccSubscriptionSidecar =
@@ -557,8 +557,7 @@ public class ToggleSubscriptionDialogActivity extends SubscriptionActionDialogAc
             Log.d(TAG, "Hardware does not support DSDS.");
             return false;
         }
-        boolean isActiveSim = SubscriptionUtil.getActiveSubscriptions(
-                mSubscriptionManager).size() > 0;
+        boolean isActiveSim = SubscriptionUtil.getActiveSubscriptions(this).size() > 0;
         if (isMultipleEnabledProfilesSupported() && isActiveSim) {
             Log.d(TAG,
                     "Device supports MEP and eSIM operation and eSIM profile is enabled."
@@ -571,7 +570,7 @@ public class ToggleSubscriptionDialogActivity extends SubscriptionActionDialogAc
             return true;
         }
         boolean isEsimProfileEnabled =
-                SubscriptionUtil.getActiveSubscriptions(mSubscriptionManager).stream()
+                SubscriptionUtil.getActiveSubscriptions(this).stream()
                         .anyMatch(SubscriptionInfo::isEmbedded);
         if (!mIsEsimOperation && isEsimProfileEnabled) {
             Log.d(TAG, "Removable SIM operation and eSIM profile is enabled. DSDS condition"
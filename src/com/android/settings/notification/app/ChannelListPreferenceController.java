@@ -24,13 +24,15 @@ import android.app.NotificationChannelGroup;
 import android.app.settings.SettingsEnums;
 import android.content.Context;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceGroup;
@@ -43,10 +45,14 @@ import com.android.settings.core.SubSettingLauncher;
 import com.android.settings.notification.NotificationBackend;
 import com.android.settingslib.PrimarySwitchPreference;
 import com.android.settingslib.RestrictedSwitchPreference;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class ChannelListPreferenceController extends NotificationPreferenceController {
 
@@ -55,8 +61,17 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
     private static final String KEY_ZERO_CATEGORIES = "zeroCategories";
     public static final String ARG_FROM_SETTINGS = "fromSettings";
 
-    private List<NotificationChannelGroup> mChannelGroupList;
+    private static final String STRUCTURE_GROUP_PREFIX = "group:";
+
     private PreferenceCategory mPreference;
+    // Render state of the bound channel rows by channel id, see getChannelState().
+    private final Map<String, ChannelState> mBoundChannelStates = new ArrayMap<>();
+    // Group and channel keys in display order, as last applied to the preference list.
+    @Nullable
+    private List<String> mBoundStructure;
+    // Latest channel objects by id, used by the channel rows that were not rebound.
+    private final Map<String, NotificationChannel> mChannelsById = new ArrayMap<>();
+    private int mLoadGeneration;
 
     public ChannelListPreferenceController(Context context, NotificationBackend backend) {
         super(context, backend);
@@ -92,23 +107,84 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
     @Override
     public void updateState(Preference preference) {
         mPreference = (PreferenceCategory) preference;
-        // Load channel settings
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... unused) {
-                mChannelGroupList = mBackend.getGroups(mAppRow.pkg, mAppRow.uid).getList();
-                Collections.sort(mChannelGroupList, CHANNEL_GROUP_COMPARATOR);
-                return null;
+        final int generation = ++mLoadGeneration;
+        final Map<String, ChannelState> boundStates = new ArrayMap<>(mBoundChannelStates);
+        final List<String> boundStructure = mBoundStructure;
+        // Load channel settings and diff them against the current rows in background.
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final ChannelListDiff diff = computeDiff(
+                    mBackend.getGroups(mAppRow.pkg, mAppRow.uid).getList(),
+                    boundStates, boundStructure);
+            ThreadUtils.postOnMainThread(() -> {
+                if (mContext == null || generation != mLoadGeneration) {
+                    return;
+                }
+                applyDiff(mPreference, diff);
+            });
+        });
+    }
+
+    /**
+     * Sorts {@code channelGroups} and computes which channel rows need to be rebound compared to
+     * the previously bound state. Safe to call off the main thread.
+     */
+    @VisibleForTesting
+    ChannelListDiff computeDiff(@NonNull List<NotificationChannelGroup> channelGroups,
+            @NonNull Map<String, ChannelState> boundStates, @Nullable List<String> boundStructure) {
+        Collections.sort(channelGroups, CHANNEL_GROUP_COMPARATOR);
+        final List<String> structure = new ArrayList<>();
+        final Map<String, ChannelState> states = new ArrayMap<>();
+        final Set<String> changedChannels = new ArraySet<>();
+        for (NotificationChannelGroup group : channelGroups) {
+            structure.add(STRUCTURE_GROUP_PREFIX + group.getId());
+            for (NotificationChannel channel : getDisplayedChannels(group)) {
+                final String key = channel.getId();
+                final ChannelState state = getChannelState(channel, group.isBlocked());
+                structure.add(key);
+                states.put(key, state);
+                if (!state.equals(boundStates.get(key))) {
+                    changedChannels.add(key);
+                }
             }
+        }
+        return new ChannelListDiff(channelGroups, structure, states, changedChannels,
+                !structure.equals(boundStructure));
+    }
 
-            @Override
-            protected void onPostExecute(Void unused) {
-                if (mContext == null) {
-                    return;
+    /**
+     * Applies {@code diff} to {@code groupPrefsList}. If no group or channel was added, removed or
+     * moved, only the rows of the changed channels are rebound.
+     */
+    @VisibleForTesting
+    void applyDiff(@NonNull PreferenceCategory groupPrefsList, @NonNull ChannelListDiff diff) {
+        mChannelsById.clear();
+        if (diff.mStructureChanged || diff.mGroups.isEmpty()) {
+            updateFullList(groupPrefsList, diff.mGroups, diff.mChangedChannels);
+        } else {
+            for (int i = 0; i < diff.mGroups.size(); i++) {
+                final NotificationChannelGroup group = diff.mGroups.get(i);
+                final PreferenceGroup groupPrefGroup =
+                        (PreferenceGroup) groupPrefsList.getPreference(i);
+                updateGroupHeader(group, groupPrefGroup);
+                final int offset = group.getId() == null ? 0 : 1;
+                final List<NotificationChannel> channels = getDisplayedChannels(group);
+                for (int j = 0; j < channels.size(); j++) {
+                    final NotificationChannel channel = channels.get(j);
+                    mChannelsById.put(channel.getId(), channel);
+                    if (!diff.mChangedChannels.contains(channel.getId())) {
+                        continue;
+                    }
+                    final PrimarySwitchPreference channelPref =
+                            findChannelPrefForKey(groupPrefGroup, channel.getId(), j + offset);
+                    if (channelPref != null) {
+                        updateSingleChannelPrefs(channelPref, channel, group.isBlocked());
+                    }
                 }
-                updateFullList(mPreference, mChannelGroupList);
             }
-        }.execute();
+        }
+        mBoundStructure = diff.mStructure;
+        mBoundChannelStates.clear();
+        mBoundChannelStates.putAll(diff.mStates);
     }
 
     /**
@@ -118,6 +194,16 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
      */
     void updateFullList(@NonNull PreferenceCategory groupPrefsList,
                 @NonNull List<NotificationChannelGroup> channelGroups) {
+        updateFullList(groupPrefsList, channelGroups, null /* channelsToRebind */);
+    }
+
+    /**
+     * Same as {@link #updateFullList(PreferenceCategory, List)}, but existing channel rows are
+     * only rebound if their channel is in {@code channelsToRebind}, or {@code null} to rebind all.
+     */
+    private void updateFullList(@NonNull PreferenceCategory groupPrefsList,
+            @NonNull List<NotificationChannelGroup> channelGroups,
+            @Nullable Set<String> channelsToRebind) {
         if (channelGroups.isEmpty()) {
             if (groupPrefsList.getPreferenceCount() == 1
                     && KEY_ZERO_CATEGORIES.equals(groupPrefsList.getPreference(0).getKey())) {
@@ -140,7 +226,7 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
                 groupCategory.addPreference(empty);
             }
         } else {
-            updateGroupList(groupPrefsList, channelGroups);
+            updateGroupList(groupPrefsList, channelGroups, channelsToRebind);
         }
     }
 
@@ -176,7 +262,8 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
     }
 
     private void updateGroupList(@NonNull PreferenceCategory groupPrefsList,
-            @NonNull List<NotificationChannelGroup> channelGroups) {
+            @NonNull List<NotificationChannelGroup> channelGroups,
+            @Nullable Set<String> channelsToRebind) {
         // Update the list, but optimize for the most common case where the list hasn't changed.
         int numFinalGroups = channelGroups.size();
         int initialPrefCount = groupPrefsList.getPreferenceCount();
@@ -186,7 +273,7 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
             PreferenceCategory groupCategory =
                     findOrCreateGroupCategoryForKey(groupPrefsList, group.getId(), i);
             finalOrderedGroups.add(groupCategory);
-            updateGroupPreferences(group, groupCategory);
+            updateGroupPreferences(group, groupCategory, channelsToRebind);
         }
         int postAddPrefCount = groupPrefsList.getPreferenceCount();
         // If any groups were inserted (into a non-empty list) or need to be removed, we need to
@@ -205,11 +292,10 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
 
     /**
      * Looks for the channel preference for the given channel's key at the expected index, if that
-     * doesn't match, it checks all rows, and if it can't find that channel anywhere, it creates
-     * the preference.
+     * doesn't match, it checks all rows. Returns {@code null} if it can't find that channel.
      */
-    @NonNull
-    private PrimarySwitchPreference findOrCreateChannelPrefForKey(
+    @Nullable
+    private PrimarySwitchPreference findChannelPrefForKey(
             @NonNull PreferenceGroup groupPrefGroup, @NonNull String key, int expectedIndex) {
         int preferenceCount = groupPrefGroup.getPreferenceCount();
         if (expectedIndex < preferenceCount) {
@@ -225,15 +311,23 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
                 return (PrimarySwitchPreference) preference;
             }
         }
-        PrimarySwitchPreference channelPref = new PrimarySwitchPreference(mContext);
-        channelPref.setOrder(expectedIndex);
-        channelPref.setKey(key);
-        groupPrefGroup.addPreference(channelPref);
-        return channelPref;
+        return null;
     }
 
-    private void updateGroupPreferences(@NonNull NotificationChannelGroup group,
+    private void updateGroupHeader(@NonNull NotificationChannelGroup group,
             @NonNull PreferenceGroup groupPrefGroup) {
+        if (group.getId() == null) {
+            // For the 'null' group, set the "Other" title.
+            groupPrefGroup.setTitle(R.string.notification_channels_other);
+        } else {
+            // For an app-defined group, set their name and update the row to toggle 'isBlocked'.
+            groupPrefGroup.setTitle(group.getName());
+            addOrUpdateGroupToggle(groupPrefGroup, group);
+        }
+    }
+
+    private void updateGroupPreferences(@NonNull NotificationChannelGroup group,
+            @NonNull PreferenceGroup groupPrefGroup, @Nullable Set<String> channelsToRebind) {
         int initialPrefCount = groupPrefGroup.getPreferenceCount();
         List<Preference> finalOrderedPrefs = new ArrayList<>();
         Preference appDefinedGroupToggle;
@@ -251,18 +345,21 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
         boolean initiallyEmpty = groupPrefGroup.getPreferenceCount() == finalOrderedPrefs.size();
 
         // For each channel, add or update the preference object.
-        final List<NotificationChannel> channels =
-                group.isBlocked() ? Collections.emptyList() : group.getChannels();
-        Collections.sort(channels, CHANNEL_COMPARATOR);
-        for (NotificationChannel channel : channels) {
-            if (!TextUtils.isEmpty(channel.getConversationId()) && !channel.isDemoted()) {
-                // conversations get their own section
-                continue;
+        for (NotificationChannel channel : getDisplayedChannels(group)) {
+            mChannelsById.put(channel.getId(), channel);
+            // Get or create the row, and populate its current state if needed.
+            final int expectedIndex = finalOrderedPrefs.size();
+            PrimarySwitchPreference channelPref =
+                    findChannelPrefForKey(groupPrefGroup, channel.getId(), expectedIndex);
+            if (channelPref == null) {
+                channelPref = new PrimarySwitchPreference(mContext);
+                channelPref.setOrder(expectedIndex);
+                channelPref.setKey(channel.getId());
+                groupPrefGroup.addPreference(channelPref);
+                updateSingleChannelPrefs(channelPref, channel, group.isBlocked());
+            } else if (channelsToRebind == null || channelsToRebind.contains(channel.getId())) {
+                updateSingleChannelPrefs(channelPref, channel, group.isBlocked());
             }
-            // Get or create the row, and populate its current state.
-            PrimarySwitchPreference channelPref = findOrCreateChannelPrefForKey(groupPrefGroup,
-                    channel.getId(), /* expectedIndex */ finalOrderedPrefs.size());
-            updateSingleChannelPrefs(channelPref, channel, group.isBlocked());
             finalOrderedPrefs.add(channelPref);
         }
         int postAddPrefCount = groupPrefGroup.getPreferenceCount();
@@ -327,7 +424,8 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
     }
 
     /** Update the properties of the channel preference with the values from the channel object. */
-    private void updateSingleChannelPrefs(@NonNull final PrimarySwitchPreference channelPref,
+    @VisibleForTesting
+    void updateSingleChannelPrefs(@NonNull final PrimarySwitchPreference channelPref,
             @NonNull final NotificationChannel channel,
             final boolean groupBlocked) {
         channelPref.setSwitchEnabled(mAdmin == null
@@ -358,18 +456,21 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
 
         channelPref.setOnPreferenceChangeListener(
                 (preference, o) -> {
+                    // The row may outlive this channel object if it wasn't rebound since.
+                    final NotificationChannel current =
+                            mChannelsById.getOrDefault(channel.getId(), channel);
                     boolean value = (Boolean) o;
                     int importance = value
-                            ? Math.max(channel.getOriginalImportance(), IMPORTANCE_LOW)
+                            ? Math.max(current.getOriginalImportance(), IMPORTANCE_LOW)
                             : IMPORTANCE_NONE;
-                    channel.setImportance(importance);
-                    channel.lockFields(NotificationChannel.USER_LOCKED_IMPORTANCE);
+                    current.setImportance(importance);
+                    current.lockFields(NotificationChannel.USER_LOCKED_IMPORTANCE);
                     PrimarySwitchPreference channelPref1 = (PrimarySwitchPreference) preference;
                     channelPref1.setIcon(R.drawable.empty_icon);
-                    if (channel.getImportance() > IMPORTANCE_LOW) {
+                    if (current.getImportance() > IMPORTANCE_LOW) {
                         channelPref1.setIcon(getAlertingIcon());
                     }
-                    mBackend.updateChannel(mAppRow.pkg, mAppRow.uid, channel);
+                    mBackend.updateChannel(mAppRow.pkg, mAppRow.uid, current);
 
                     return true;
                 });
@@ -387,7 +488,109 @@ public class ChannelListPreferenceController extends NotificationPreferenceContr
         }
         PreferenceGroup groupPrefGroup = mPreference.findPreference(group.getId());
         if (groupPrefGroup != null) {
-            updateGroupPreferences(group, groupPrefGroup);
+            updateGroupPreferences(group, groupPrefGroup, null /* channelsToRebind */);
+        }
+        // The rows of this group changed outside of a diff, so the next load must not skip them.
+        mBoundStructure = null;
+        for (NotificationChannel channel : group.getChannels()) {
+            mBoundChannelStates.remove(channel.getId());
+        }
+    }
+
+    /** Returns the sorted channels of {@code group} that get a row in this list. */
+    private List<NotificationChannel> getDisplayedChannels(
+            @NonNull NotificationChannelGroup group) {
+        if (group.isBlocked()) {
+            return Collections.emptyList();
+        }
+        final List<NotificationChannel> channels = group.getChannels();
+        Collections.sort(channels, CHANNEL_COMPARATOR);
+        final List<NotificationChannel> displayedChannels = new ArrayList<>(channels.size());
+        for (NotificationChannel channel : channels) {
+            if (!TextUtils.isEmpty(channel.getConversationId()) && !channel.isDemoted()) {
+                // conversations get their own section
+                continue;
+            }
+            displayedChannels.add(channel);
+        }
+        return displayedChannels;
+    }
+
+    /** Returns the inputs of the row of {@code channel}, to tell when it must be rebound. */
+    private ChannelState getChannelState(@NonNull NotificationChannel channel,
+            boolean groupBlocked) {
+        final NotificationBackend.NotificationsSentState sentState =
+                mAppRow.sentByChannel == null ? null : mAppRow.sentByChannel.get(channel.getId());
+        return new ChannelState(String.valueOf(channel.getName()), channel.getImportance(),
+                groupBlocked, mAdmin == null, isChannelBlockable(channel),
+                isChannelConfigurable(channel),
+                sentState == null ? -1 : sentState.avgSentDaily,
+                sentState == null ? -1 : sentState.avgSentWeekly);
+    }
+
+    /** Everything the row of a channel is rendered from. */
+    @VisibleForTesting
+    static final class ChannelState {
+        private final String mName;
+        private final int mImportance;
+        private final boolean mGroupBlocked;
+        private final boolean mNoAdmin;
+        private final boolean mBlockable;
+        private final boolean mConfigurable;
+        private final int mAvgSentDaily;
+        private final int mAvgSentWeekly;
+
+        ChannelState(String name, int importance, boolean groupBlocked, boolean noAdmin,
+                boolean blockable, boolean configurable, int avgSentDaily, int avgSentWeekly) {
+            mName = name;
+            mImportance = importance;
+            mGroupBlocked = groupBlocked;
+            mNoAdmin = noAdmin;
+            mBlockable = blockable;
+            mConfigurable = configurable;
+            mAvgSentDaily = avgSentDaily;
+            mAvgSentWeekly = avgSentWeekly;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChannelState)) return false;
+            final ChannelState that = (ChannelState) o;
+            return mImportance == that.mImportance
+                    && mGroupBlocked == that.mGroupBlocked
+                    && mNoAdmin == that.mNoAdmin
+                    && mBlockable == that.mBlockable
+                    && mConfigurable == that.mConfigurable
+                    && mAvgSentDaily == that.mAvgSentDaily
+                    && mAvgSentWeekly == that.mAvgSentWeekly
+                    && Objects.equals(mName, that.mName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mName, mImportance, mGroupBlocked, mNoAdmin, mBlockable,
+                    mConfigurable, mAvgSentDaily, mAvgSentWeekly);
+        }
+    }
+
+    /** Groups and channels to show, and the channel rows that need to be rebound. */
+    @VisibleForTesting
+    static class ChannelListDiff {
+        final List<NotificationChannelGroup> mGroups;
+        final List<String> mStructure;
+        final Map<String, ChannelState> mStates;
+        final Set<String> mChangedChannels;
+        final boolean mStructureChanged;
+
+        ChannelListDiff(List<NotificationChannelGroup> groups, List<String> structure,
+                Map<String, ChannelState> states, Set<String> changedChannels,
+                boolean structureChanged) {
+            mGroups = groups;
+            mStructure = structure;
+            mStates = states;
+            mChangedChannels = changedChannels;
+            mStructureChanged = structureChanged;
         }
     }
 }
@@ -21,20 +21,64 @@ import android.app.NotificationHistory.HistoricalNotification;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.os.LocaleList;
 import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.LruCache;
+import android.util.Pair;
 import android.util.Slog;
+import android.util.SparseArray;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.applications.PackageInventory;
 import com.android.settings.notification.NotificationBackend;
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 public class HistoryLoader {
     private static final String TAG = "HistoryLoader";
+    @VisibleForTesting
+    static final int PAGE_SIZE = 8;
+    private static final int MAX_CACHED_APP_INFO = 64;
+
+    /** Label and badged icon by (uid, package), shared by all history pages in the process. */
+    private static final LruCache<Pair<Integer, String>, AppInfo> sAppInfoCache =
+            new LruCache<>(MAX_CACHED_APP_INFO);
+    // Locales of the cached labels, and inventory telling which packages changed. Guarded by
+    // sAppInfoCache.
+    private static LocaleList sAppInfoLocales;
+    private static PackageInventory sPackageInventory;
+
+    private static final PackageInventory.OnPackagesChangedListener sPackagesChangedListener =
+            new PackageInventory.OnPackagesChangedListener() {
+                @Override
+                public void onPackagesChanged(@NonNull String[] packageNames) {
+                    for (Pair<Integer, String> key : sAppInfoCache.snapshot().keySet()) {
+                        for (String packageName : packageNames) {
+                            if (packageName.equals(key.second)) {
+                                sAppInfoCache.remove(key);
+                                break;
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void onUserRemoved(int userId) {
+                    for (Pair<Integer, String> key : sAppInfoCache.snapshot().keySet()) {
+                        if (UserHandle.getUserId(key.first) == userId) {
+                            sAppInfoCache.remove(key);
+                        }
+                    }
+                }
+            };
+
     private final Context mContext;
     private final NotificationBackend mBackend;
     private final PackageManager mPm;
@@ -45,55 +89,167 @@ public class HistoryLoader {
         mPm = pm;
     }
 
+    /**
+     * Loads the notification history grouped by package, and delivers it to {@code listener} in
+     * pages, starting with the packages that posted most recently. Labels and icons are not
+     * resolved, use {@link #loadAppInfo} when the package is shown.
+     */
     public void load(OnHistoryLoaderListener listener) {
         ThreadUtils.postOnBackgroundThread(() -> {
             try {
-                Map<String, NotificationHistoryPackage> historicalNotifications = new HashMap<>();
-                NotificationHistory history =
+                final NotificationHistory history =
                         mBackend.getNotificationHistory(mContext.getPackageName(),
                                 mContext.getAttributionTag());
-                while (history.hasNextNotification()) {
-                    HistoricalNotification hn = history.getNextNotification();
-
-                    String key = hn.getPackage() + "|" + hn.getUid();
-                    NotificationHistoryPackage hnsForPackage = historicalNotifications.getOrDefault(
-                            key,
-                            new NotificationHistoryPackage(hn.getPackage(), hn.getUid()));
-                    hnsForPackage.notifications.add(hn);
-                    historicalNotifications.put(key, hnsForPackage);
-                }
-                List<NotificationHistoryPackage> packages =
-                        new ArrayList<>(historicalNotifications.values());
-                Collections.sort(packages,
+                final List<NotificationHistoryPackage> packages = groupByPackage(history);
+                packages.sort(
                         (o1, o2) -> -1 * Long.compare(o1.getMostRecent(), o2.getMostRecent()));
-                for (NotificationHistoryPackage nhp : packages) {
-                    ApplicationInfo info;
-                    try {
-                        info = mPm.getApplicationInfoAsUser(
-                                nhp.pkgName,
-                                PackageManager.MATCH_UNINSTALLED_PACKAGES
-                                        | PackageManager.MATCH_DISABLED_COMPONENTS
-                                        | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
-                                        | PackageManager.MATCH_DIRECT_BOOT_AWARE,
-                                UserHandle.getUserId(nhp.uid));
-                        if (info != null) {
-                            nhp.label = String.valueOf(mPm.getApplicationLabel(info));
-                            nhp.icon = mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
-                                    UserHandle.of(UserHandle.getUserId(nhp.uid)));
-                        }
-                    } catch (PackageManager.NameNotFoundException e) {
-                        // app is gone, just show package name and generic icon
-                        nhp.icon = mPm.getDefaultActivityIcon();
-                    }
+
+                final int size = packages.size();
+                if (size == 0) {
+                    ThreadUtils.postOnMainThread(
+                            () -> listener.onHistoryLoaded(new ArrayList<>(), true /* isLast */));
+                    return;
+                }
+                for (int start = 0; start < size; start += PAGE_SIZE) {
+                    final int end = Math.min(start + PAGE_SIZE, size);
+                    final List<NotificationHistoryPackage> page =
+                            new ArrayList<>(packages.subList(start, end));
+                    final boolean isLast = end == size;
+                    ThreadUtils.postOnMainThread(() -> listener.onHistoryLoaded(page, isLast));
                 }
-                ThreadUtils.postOnMainThread(() -> listener.onHistoryLoaded(packages));
             } catch (Exception e) {
                 Slog.e(TAG, "Error loading history", e);
             }
         });
     }
 
+    /**
+     * Fills in the label and icon of {@code nhp} and invokes {@code callback} on the main thread.
+     * The callback is invoked synchronously if the app info is cached already.
+     */
+    public void loadAppInfo(NotificationHistoryPackage nhp,
+            Consumer<NotificationHistoryPackage> callback) {
+        final PackageInventory inventory = validateAppInfoCache();
+        final Pair<Integer, String> key = Pair.create(nhp.uid, nhp.pkgName);
+        final AppInfo cached = sAppInfoCache.get(key);
+        if (cached != null) {
+            cached.applyTo(nhp);
+            callback.accept(nhp);
+            return;
+        }
+        final int generation = inventory.getGeneration();
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final AppInfo appInfo = resolveAppInfo(nhp.pkgName, nhp.uid);
+            // Skip the cache if a package changed while resolving.
+            if (generation == inventory.getGeneration()) {
+                sAppInfoCache.put(key, appInfo);
+            }
+            ThreadUtils.postOnMainThread(() -> {
+                appInfo.applyTo(nhp);
+                callback.accept(nhp);
+            });
+        });
+    }
+
+    /**
+     * Drops the cached app info resolved for other locales, and starts listening to the package
+     * changes of this process if not yet done.
+     */
+    private PackageInventory validateAppInfoCache() {
+        final LocaleList locales = mContext.getResources().getConfiguration().getLocales();
+        final PackageInventory inventory = PackageInventory.getInstance(mContext);
+        synchronized (sAppInfoCache) {
+            if (!locales.equals(sAppInfoLocales)) {
+                sAppInfoCache.evictAll();
+                sAppInfoLocales = locales;
+            }
+            if (inventory != sPackageInventory) {
+                if (sPackageInventory != null) {
+                    sPackageInventory.removeOnPackagesChangedListener(sPackagesChangedListener);
+                }
+                sAppInfoCache.evictAll();
+                inventory.addOnPackagesChangedListener(sPackagesChangedListener);
+                sPackageInventory = inventory;
+            }
+        }
+        return inventory;
+    }
+
+    @VisibleForTesting
+    static void clearAppInfoCache() {
+        sAppInfoCache.evictAll();
+    }
+
+    @VisibleForTesting
+    static List<NotificationHistoryPackage> groupByPackage(NotificationHistory history) {
+        final List<NotificationHistoryPackage> packages = new ArrayList<>();
+        final SparseArray<ArrayMap<String, NotificationHistoryPackage>> packagesByUid =
+                new SparseArray<>();
+        while (history.hasNextNotification()) {
+            final HistoricalNotification hn = history.getNextNotification();
+            ArrayMap<String, NotificationHistoryPackage> packagesForUid =
+                    packagesByUid.get(hn.getUid());
+            if (packagesForUid == null) {
+                packagesForUid = new ArrayMap<>();
+                packagesByUid.put(hn.getUid(), packagesForUid);
+            }
+            NotificationHistoryPackage hnsForPackage = packagesForUid.get(hn.getPackage());
+            if (hnsForPackage == null) {
+                hnsForPackage = new NotificationHistoryPackage(
+                        hn.getPackage().intern(), hn.getUid());
+                packagesForUid.put(hnsForPackage.pkgName, hnsForPackage);
+                packages.add(hnsForPackage);
+            }
+            hnsForPackage.notifications.add(hn);
+        }
+        return packages;
+    }
+
+    private AppInfo resolveAppInfo(String pkgName, int uid) {
+        try {
+            final ApplicationInfo info = mPm.getApplicationInfoAsUser(
+                    pkgName,
+                    PackageManager.MATCH_UNINSTALLED_PACKAGES
+                            | PackageManager.MATCH_DISABLED_COMPONENTS
+                            | PackageManager.MATCH_DIRECT_BOOT_UNAWARE
+                            | PackageManager.MATCH_DIRECT_BOOT_AWARE,
+                    UserHandle.getUserId(uid));
+            if (info != null) {
+                return new AppInfo(String.valueOf(mPm.getApplicationLabel(info)),
+                        mPm.getUserBadgedIcon(mPm.getApplicationIcon(info),
+                                UserHandle.of(UserHandle.getUserId(uid))));
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            // app is gone, just show package name and generic icon
+            return new AppInfo(null, mPm.getDefaultActivityIcon());
+        }
+        return new AppInfo(null, null);
+    }
+
+    private static class AppInfo {
+        final CharSequence mLabel;
+        final Drawable mIcon;
+
+        AppInfo(CharSequence label, Drawable icon) {
+            mLabel = label;
+            mIcon = icon;
+        }
+
+        void applyTo(NotificationHistoryPackage nhp) {
+            nhp.label = mLabel;
+            // Drawables are stateful, hand out a copy sharing the same bitmap.
+            nhp.icon = mIcon == null || mIcon.getConstantState() == null
+                    ? mIcon : mIcon.getConstantState().newDrawable();
+        }
+    }
+
     interface OnHistoryLoaderListener {
-        void onHistoryLoaded(List<NotificationHistoryPackage> notificationsByPackage);
+        /**
+         * Called on the main thread for each page of packages, most recent packages first.
+         *
+         * @param isLast whether this is the last page of the history
+         */
+        void onHistoryLoaded(List<NotificationHistoryPackage> notificationsByPackage,
+                boolean isLast);
     }
 }
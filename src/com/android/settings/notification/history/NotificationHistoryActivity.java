@@ -68,6 +68,7 @@ import com.android.settingslib.widget.OnMainSwitchChangeListener;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -156,10 +157,14 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
         }
     }
 
-    private HistoryLoader.OnHistoryLoaderListener mOnHistoryLoaderListener = notifications -> {
+    private void onHistoryPageLoaded(List<NotificationHistoryPackage> notifications,
+            boolean isLast) {
+        final int packagesShown = mTodayView.getChildCount();
         findViewById(R.id.today_list).setVisibility(
-                notifications.isEmpty() ? View.GONE : View.VISIBLE);
-        mCountdownLatch.countDown();
+                notifications.isEmpty() && packagesShown == 0 ? View.GONE : View.VISIBLE);
+        if (isLast) {
+            mCountdownLatch.countDown();
+        }
         View recyclerView = mTodayView.findViewById(R.id.apps);
         recyclerView.setClipToOutline(true);
         mTodayView.setOutlineProvider(mOutlineProvider);
@@ -184,7 +189,7 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
             header.setStateDescription(container.getVisibility() == View.VISIBLE
                     ? getString(R.string.condition_expand_hide)
                     : getString(R.string.condition_expand_show));
-            int finalI = i;
+            int finalI = packagesShown + i;
             header.setOnClickListener(v -> {
                 container.setVisibility(container.getVisibility() == View.VISIBLE
                         ? View.GONE : View.VISIBLE);
@@ -200,11 +205,9 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
             });
 
             TextView label = viewForPackage.findViewById(R.id.label);
-            label.setText(nhp.label != null ? nhp.label : nhp.pkgName);
-            label.setContentDescription(mUm.getBadgedLabelForUser(label.getText(),
-                    UserHandle.getUserHandleForUid(nhp.uid)));
             ImageView icon = viewForPackage.findViewById(R.id.icon);
-            icon.setImageDrawable(nhp.icon);
+            bindAppInfo(nhp, label, icon);
+            mHistoryLoader.loadAppInfo(nhp, loaded -> bindAppInfo(loaded, label, icon));
 
             TextView count = viewForPackage.findViewById(R.id.count);
             count.setText(StringUtil.getIcuPluralsString(this, nhp.notifications.size(),
@@ -225,7 +228,14 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
 
             mTodayView.addView(viewForPackage);
         }
-    };
+    }
+
+    private void bindAppInfo(NotificationHistoryPackage nhp, TextView label, ImageView icon) {
+        label.setText(nhp.label != null ? nhp.label : nhp.pkgName);
+        label.setContentDescription(mUm.getBadgedLabelForUser(label.getText(),
+                UserHandle.getUserHandleForUid(nhp.uid)));
+        icon.setImageDrawable(nhp.icon);
+    }
 
     private void configureNotificationList(View recyclerView) {
         recyclerView.setClipToOutline(true);
@@ -268,7 +278,13 @@ public class NotificationHistoryActivity extends CollapsingToolbarBaseActivity {
 
         mTodayView.removeAllViews();
         mHistoryLoader = new HistoryLoader(this, new NotificationBackend(), mPm);
-        mHistoryLoader.load(mOnHistoryLoaderListener);
+        final HistoryLoader historyLoader = mHistoryLoader;
+        mHistoryLoader.load((notifications, isLast) -> {
+            // Drop pages of a previous load that are still being delivered.
+            if (historyLoader == mHistoryLoader) {
+                onHistoryPageLoaded(notifications, isLast);
+            }
+        });
 
         mNm = INotificationManager.Stub.asInterface(
                 ServiceManager.getService(Context.NOTIFICATION_SERVICE));
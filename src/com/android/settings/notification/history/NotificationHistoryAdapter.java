@@ -27,6 +27,7 @@ import android.os.Bundle;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.provider.Settings;
+import android.text.TextUtils;
 import android.util.Slog;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -34,6 +35,7 @@ import android.view.ViewGroup;
 import android.view.accessibility.AccessibilityNodeInfo;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.internal.logging.UiEventLogger;
@@ -129,10 +131,42 @@ public class NotificationHistoryAdapter extends
         return mValues.size();
     }
 
+    /**
+     * Updates the list with {@code notifications}, which must be sorted by posted time, most
+     * recent first.
+     */
     public void onRebuildComplete(List<HistoricalNotification> notifications) {
+        final List<HistoricalNotification> oldValues = mValues;
+        final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldValues.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return notifications.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                final HistoricalNotification oldItem = oldValues.get(oldItemPosition);
+                final HistoricalNotification newItem = notifications.get(newItemPosition);
+                return oldItem.getUid() == newItem.getUid()
+                        && oldItem.getPostedTimeMs() == newItem.getPostedTimeMs()
+                        && TextUtils.equals(oldItem.getPackage(), newItem.getPackage());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                final HistoricalNotification oldItem = oldValues.get(oldItemPosition);
+                final HistoricalNotification newItem = notifications.get(newItemPosition);
+                return TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                        && TextUtils.equals(oldItem.getText(), newItem.getText());
+            }
+        }, false /* detectMoves */);
         mValues = notifications;
-        mValues.sort((o1, o2) -> Long.compare(o2.getPostedTimeMs(), o1.getPostedTimeMs()));
-        notifyDataSetChanged();
+        diffResult.dispatchUpdatesTo(this);
     }
 
     @Override
@@ -28,7 +28,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.telephony.CarrierConfigManager;
 import android.telephony.SubscriptionInfo;
-import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.Log;
@@ -217,9 +216,7 @@ public class SimActivationNotifier {
 
     @Nullable
     private SubscriptionInfo getActiveRemovableSub() {
-        SubscriptionManager subscriptionManager =
-                mContext.getSystemService(SubscriptionManager.class);
-        return SubscriptionUtil.getActiveSubscriptions(subscriptionManager).stream()
+        return SubscriptionUtil.getActiveSubscriptions(mContext).stream()
                 .filter(sub -> !sub.isEmbedded())
                 .findFirst()
                 .orElse(null);
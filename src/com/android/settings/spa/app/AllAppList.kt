@@ -32,7 +32,6 @@ import com.android.settingslib.spa.framework.common.createSettingsPage
 import com.android.settingslib.spa.framework.compose.navigator
 import com.android.settingslib.spa.framework.compose.rememberContext
 import com.android.settingslib.spa.framework.util.filterItem
-import com.android.settingslib.spa.framework.util.mapItem
 import com.android.settingslib.spa.widget.preference.Preference
 import com.android.settingslib.spa.widget.preference.PreferenceModel
 import com.android.settingslib.spa.widget.ui.SpinnerOption
@@ -44,8 +43,9 @@ import com.android.settingslib.spaprivileged.template.app.AppListInput
 import com.android.settingslib.spaprivileged.template.app.AppListItem
 import com.android.settingslib.spaprivileged.template.app.AppListItemModel
 import com.android.settingslib.spaprivileged.template.app.AppListPage
-import com.android.settingslib.spaprivileged.template.app.getStorageSize
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flowOn
 
 object AllAppListPageProvider : SettingsPageProvider {
     override val name = "AllAppList"
@@ -89,7 +89,7 @@ data class AppRecordWithSize(
 class AllAppListModel(
     private val context: Context,
     private val getStorageSummary: @Composable ApplicationInfo.() -> State<String> = {
-        getStorageSize()
+        getCachedStorageSize()
     },
 ) : AppListModel<AppRecordWithSize> {
 
@@ -109,7 +109,7 @@ class AllAppListModel(
     }
 
     override fun transform(userIdFlow: Flow<Int>, appListFlow: Flow<List<ApplicationInfo>>) =
-        appListFlow.mapItem(::AppRecordWithSize)
+        appListFlow.mapAppRecords(::AppRecordWithSize)
 
     override fun filter(
         userIdFlow: Flow<Int>,
@@ -122,7 +122,7 @@ class AllAppListModel(
             SpinnerItem.Instant -> isInstant
             else -> ({ true })
         }
-    )
+    ).flowOn(Dispatchers.Default)
 
     private val isDisabled: (AppRecordWithSize) -> Boolean =
         { !it.app.enabled && !it.app.isInstantApp }
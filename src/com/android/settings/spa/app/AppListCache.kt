@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.spa.app
+
+import android.app.usage.StorageStatsManager
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.text.format.Formatter
+import android.util.Log
+import androidx.annotation.VisibleForTesting
+import androidx.annotation.WorkerThread
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.State
+import androidx.compose.runtime.remember
+import androidx.compose.ui.platform.LocalContext
+import androidx.compose.ui.res.stringResource
+import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import com.android.settings.R
+import com.android.settings.applications.PackageInventory
+import com.android.settingslib.spaprivileged.model.app.AppRecord
+import com.android.settingslib.spaprivileged.model.app.userHandle
+import com.android.settingslib.spaprivileged.model.app.userId
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+
+/**
+ * Process-wide memo of the storage size of the apps shown by the app list pages, so that going
+ * back to a page shows the last known size right away instead of a placeholder.
+ *
+ * Only the storage size is memoized here. The app list, the labels and the icons are loaded by
+ * the settingslib AppListPage of each page, and are not shared across pages.
+ *
+ * The size is always computed again and the memo refreshed, since it can change without a package
+ * change, e.g. when an app stores more data. The entries of a package are dropped when it changes,
+ * as reported by [PackageInventory].
+ */
+object AppListCache {
+    private const val TAG = "AppListCache"
+
+    private data class Key(val userId: Int, val packageName: String)
+
+    private val storageSizes = ConcurrentHashMap<Key, Long>()
+    private var inventory: PackageInventory? = null
+
+    private val listener = object : PackageInventory.OnPackagesChangedListener {
+        override fun onPackagesChanged(packageNames: Array<String>) {
+            val changed = packageNames.toSet()
+            storageSizes.keys.removeIf { it.packageName in changed }
+        }
+
+        override fun onUserRemoved(userId: Int) {
+            storageSizes.keys.removeIf { it.userId == userId }
+        }
+    }
+
+    /** Returns the storage size of [app] if already computed, otherwise null. */
+    fun getCachedStorageSizeBytes(context: Context, app: ApplicationInfo): Long? {
+        ensureListening(context)
+        return storageSizes[app.key]
+    }
+
+    /** Computes the storage size of [app] and refreshes the memo, or null if unavailable. */
+    @WorkerThread
+    fun refreshStorageSizeBytes(context: Context, app: ApplicationInfo): Long? {
+        val generation = ensureListening(context).generation
+        val sizeBytes = app.calculateStorageSizeBytes(context) ?: return null
+        // Skip the cache if a package changed while computing.
+        if (generation == ensureListening(context).generation) {
+            storageSizes[app.key] = sizeBytes
+        }
+        return sizeBytes
+    }
+
+    @VisibleForTesting
+    fun clear() {
+        storageSizes.clear()
+    }
+
+    @Synchronized
+    private fun ensureListening(context: Context): PackageInventory {
+        val current = PackageInventory.getInstance(context)
+        if (current !== inventory) {
+            inventory?.removeOnPackagesChangedListener(listener)
+            storageSizes.clear()
+            current.addOnPackagesChangedListener(listener)
+            inventory = current
+        }
+        return current
+    }
+
+    private val ApplicationInfo.key get() = Key(userId, packageName)
+
+    private fun ApplicationInfo.calculateStorageSizeBytes(context: Context): Long? {
+        val storageStatsManager = context.getSystemService(StorageStatsManager::class.java)!!
+        return try {
+            val stats =
+                storageStatsManager.queryStatsForPackage(storageUuid, packageName, userHandle)
+            stats.codeBytes + stats.dataBytes
+        } catch (e: Exception) {
+            Log.w(TAG, "Failed to query stats: $e")
+            null
+        }
+    }
+}
+
+/**
+ * Gets the storage size of the app, starting from the size memoized by [AppListCache] if any
+ * while it is computed again.
+ */
+@Composable
+fun ApplicationInfo.getCachedStorageSize(): State<String> {
+    val context = LocalContext.current
+    val app = this
+    val placeholder = stringResource(R.string.summary_placeholder)
+    val initialValue = remember(app) {
+        AppListCache.getCachedStorageSizeBytes(context, app)
+            ?.let { Formatter.formatFileSize(context, it) } ?: placeholder
+    }
+    return remember(app) {
+        flow {
+            val sizeBytes = AppListCache.refreshStorageSizeBytes(context, app)
+            emit(if (sizeBytes != null) Formatter.formatFileSize(context, sizeBytes) else "")
+        }.flowOn(Dispatchers.IO)
+    }.collectAsStateWithLifecycle(initialValue = initialValue)
+}
+
+/**
+ * Maps each app of the list to a record on [Dispatchers.Default].
+ *
+ * The record of an app which is the same instance as in the previous list is reused, so that
+ * unchanged items keep their state across emissions.
+ */
+fun <T : AppRecord> Flow<List<ApplicationInfo>>.mapAppRecords(
+    transform: (ApplicationInfo) -> T,
+): Flow<List<T>> = flow {
+    var previousRecords = emptyMap<ApplicationInfo, T>()
+    collect { appList ->
+        val records = appList.map { app -> previousRecords[app] ?: transform(app) }
+        previousRecords = appList.zip(records).toMap()
+        emit(records)
+    }
+}.flowOn(Dispatchers.Default)
@@ -34,8 +34,10 @@ import com.android.settingslib.spaprivileged.model.app.PackageManagers
 import com.android.settingslib.spaprivileged.model.app.userHandle
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListModel
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListProvider
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 
 object AlarmsAndRemindersAppListProvider : TogglePermissionAppListProvider {
@@ -65,7 +67,7 @@ class AlarmsAndRemindersAppListModel(
             appList.map { app ->
                 createRecord(app = app, hasRequestPermission = app.packageName in packageNames)
             }
-        }
+        }.flowOn(Dispatchers.Default)
 
     override fun transformItem(app: ApplicationInfo) = with(packageManagers) {
         createRecord(app = app, hasRequestPermission = app.hasRequestPermission(PERMISSION))
@@ -76,7 +78,7 @@ class AlarmsAndRemindersAppListModel(
         recordListFlow: Flow<List<AlarmsAndRemindersAppRecord>>,
     ) = recordListFlow.map { recordList ->
         recordList.filter { it.isChangeable }
-    }
+    }.flowOn(Dispatchers.Default)
 
     @Composable
     override fun isAllowed(record: AlarmsAndRemindersAppRecord) =
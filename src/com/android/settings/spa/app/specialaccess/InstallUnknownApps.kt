@@ -31,8 +31,10 @@ import com.android.settingslib.spaprivileged.model.app.AppRecord
 import com.android.settingslib.spaprivileged.model.app.userId
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListModel
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListProvider
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 
 object InstallUnknownAppsListProvider : TogglePermissionAppListProvider {
@@ -75,7 +77,7 @@ class InstallUnknownAppsListModel(private val context: Context) :
             potentialPackageNames,
             recordList ->
             recordList.filter { record -> isChangeable(record, potentialPackageNames) }
-        }
+        }.flowOn(Dispatchers.Default)
 
     @Composable
     override fun isAllowed(record: InstallUnknownAppsRecord) =
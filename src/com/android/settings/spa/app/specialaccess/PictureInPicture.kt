@@ -33,8 +33,10 @@ import com.android.settingslib.spaprivileged.model.app.installed
 import com.android.settingslib.spaprivileged.model.app.userId
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListModel
 import com.android.settingslib.spaprivileged.template.app.TogglePermissionAppListProvider
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 
 object PictureInPictureListProvider : TogglePermissionAppListProvider {
@@ -65,7 +67,7 @@ class PictureInPictureListModel(private val context: Context) :
                         isSupport = app.packageName in pictureInPicturePackages,
                     )
                 }
-            }
+            }.flowOn(Dispatchers.Default)
 
     override fun transformItem(app: ApplicationInfo) = createPictureInPictureRecord(
         app = app,
@@ -87,6 +89,7 @@ class PictureInPictureListModel(private val context: Context) :
 
     override fun filter(userIdFlow: Flow<Int>, recordListFlow: Flow<List<PictureInPictureRecord>>) =
         recordListFlow.map { recordList -> recordList.filter { it.isSupport } }
+            .flowOn(Dispatchers.Default)
 
     @Composable
     override fun isAllowed(record: PictureInPictureRecord) =
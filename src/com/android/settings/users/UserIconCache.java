@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.users;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.LruCache;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.internal.util.UserIcons;
+import com.android.settingslib.drawable.CircleFramedDrawable;
+
+/**
+ * Process-wide cache of encircled user avatars.
+ *
+ * Avatars are decoded, scaled and framed once per user and size, then shared by every screen
+ * showing them. The cache is bounded by the byte size of the bitmaps. Entries are keyed by the
+ * version of the user icon, which is bumped when the user info changes, so that a load racing
+ * with a change never serves the old icon.
+ */
+public final class UserIconCache {
+
+    @VisibleForTesting
+    static final int MAX_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sIcons =
+            new LruCache<String, Bitmap>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+            };
+    // Version of the icon of each user, missing entries are version 0.
+    private static final SparseIntArray sIconVersions = new SparseIntArray();
+    private static boolean sReceiverRegistered;
+
+    private UserIconCache() {
+    }
+
+    /**
+     * Returns the cached avatar of {@code userId} framed in a circle of {@code sizePx}, or
+     * {@code null} if it must be loaded with {@link #loadIcon}.
+     */
+    @Nullable
+    public static Drawable getCachedIcon(@NonNull Context context, int userId, int sizePx) {
+        ensureReceiverRegistered(context);
+        final Bitmap bitmap = sIcons.get(getKey(userId, getIconVersion(userId), sizePx));
+        return bitmap == null ? null : new BitmapDrawable(context.getResources(), bitmap);
+    }
+
+    /**
+     * Returns the avatar of {@code userId} framed in a circle of {@code sizePx}, loading and
+     * caching it if needed. The default avatar is used if the user has no icon.
+     */
+    @WorkerThread
+    @NonNull
+    public static Drawable loadIcon(@NonNull Context context, int userId, int sizePx) {
+        ensureReceiverRegistered(context);
+        final int version = getIconVersion(userId);
+        final String key = getKey(userId, version, sizePx);
+        final Resources res = context.getResources();
+        Bitmap bitmap = sIcons.get(key);
+        if (bitmap == null) {
+            Bitmap icon = context.getSystemService(UserManager.class).getUserIcon(userId);
+            if (icon == null) {
+                icon = UserIcons.convertToBitmapAtUserIconSize(res,
+                        UserIcons.getDefaultUserIcon(res, userId, false));
+            }
+            bitmap = encircle(icon, sizePx);
+            // Skip the cache if the icon changed while being loaded.
+            if (version == getIconVersion(userId)) {
+                sIcons.put(key, bitmap);
+            }
+        }
+        return new BitmapDrawable(res, bitmap);
+    }
+
+    /** Drops the cached avatars of {@code userId}, called when its user info changes. */
+    public static void invalidate(int userId) {
+        synchronized (sIconVersions) {
+            sIconVersions.put(userId, sIconVersions.get(userId) + 1);
+        }
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        synchronized (sIconVersions) {
+            sIconVersions.clear();
+        }
+        sIcons.evictAll();
+    }
+
+    private static int getIconVersion(int userId) {
+        synchronized (sIconVersions) {
+            return sIconVersions.get(userId);
+        }
+    }
+
+    private static String getKey(int userId, int version, int sizePx) {
+        return userId + "/" + version + "/" + sizePx;
+    }
+
+    private static Bitmap encircle(Bitmap icon, int sizePx) {
+        final CircleFramedDrawable drawable = new CircleFramedDrawable(icon, sizePx);
+        final Bitmap bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, sizePx, sizePx);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private static void ensureReceiverRegistered(Context context) {
+        synchronized (sIconVersions) {
+            if (sReceiverRegistered) {
+                return;
+            }
+            sReceiverRegistered = true;
+        }
+        // Avatars can be changed outside of Settings, e.g. from the user switcher.
+        context.getApplicationContext().registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final int userId = intent.getIntExtra(Intent.EXTRA_USER_HANDLE,
+                        UserHandle.USER_NULL);
+                if (userId != UserHandle.USER_NULL) {
+                    invalidate(userId);
+                }
+            }
+        }, UserHandle.ALL, new IntentFilter(Intent.ACTION_USER_INFO_CHANGED), null, null);
+    }
+}
@@ -201,8 +201,6 @@ public class UserSettings extends SettingsPreferenceFragment
     RestrictedPreference mAddUser;
     @VisibleForTesting
     RestrictedPreference mAddSupervisedUser;
-    @VisibleForTesting
-    SparseArray<Bitmap> mUserIcons = new SparseArray<>();
     private int mRemovingUserId = -1;
     private boolean mAddingUser;
     private boolean mGuestUserAutoCreated;
@@ -265,7 +263,7 @@ public class UserSettings extends SettingsPreferenceFragment
             } else if (intent.getAction().equals(Intent.ACTION_USER_INFO_CHANGED)) {
                 int userHandle = intent.getIntExtra(Intent.EXTRA_USER_HANDLE, -1);
                 if (userHandle != -1) {
-                    mUserIcons.remove(userHandle);
+                    UserIconCache.invalidate(userHandle);
                 }
             }
             mHandler.sendEmptyMessage(MESSAGE_UPDATE_LIST);
@@ -517,6 +515,8 @@ public class UserSettings extends SettingsPreferenceFragment
             return;
         }
 
+        final Context context = getActivity();
+        final int iconSize = getUserIconSize();
         new AsyncTask<Void, Void, String>() {
             @Override
             protected void onPostExecute(String result) {
@@ -528,8 +528,9 @@ public class UserSettings extends SettingsPreferenceFragment
                 UserInfo user = mUserManager.getUserInfo(UserHandle.myUserId());
                 if (user.iconPath == null || user.iconPath.equals("")) {
                     // Assign profile photo.
-                    copyMeProfilePhoto(getActivity(), user);
+                    copyMeProfilePhoto(context, user);
                 }
+                UserIconCache.loadIcon(context, user.id, iconSize);
                 return user.name;
             }
         }.execute();
@@ -540,11 +541,10 @@ public class UserSettings extends SettingsPreferenceFragment
             return;
         }
         mMePreference.setTitle(getString(R.string.user_you, profileName));
-        int myUserId = UserHandle.myUserId();
-        Bitmap b = mUserManager.getUserIcon(myUserId);
-        if (b != null) {
-            mMePreference.setIcon(encircleUserIcon(b));
-            mUserIcons.put(myUserId, b);
+        Drawable icon = UserIconCache.getCachedIcon(getActivity(), UserHandle.myUserId(),
+                getUserIconSize());
+        if (icon != null) {
+            mMePreference.setIcon(icon);
         }
     }
 
@@ -1250,12 +1250,14 @@ public class UserSettings extends SettingsPreferenceFragment
                 pref.setSummary(R.string.user_summary_restricted_profile);
             }
             if (user.iconPath != null) {
-                if (mUserIcons.get(user.id) == null) {
+                Drawable icon = UserIconCache.getCachedIcon(getContext(), user.id,
+                        getUserIconSize());
+                if (icon == null) {
                     // Icon not loaded yet, print a placeholder
                     missingIcons.add(user.id);
                     pref.setIcon(getEncircledDefaultIcon());
                 } else {
-                    setPhotoId(pref, user);
+                    pref.setIcon(icon);
                 }
             } else {
                 // Icon not available yet, print a placeholder
@@ -1530,6 +1532,8 @@ public class UserSettings extends SettingsPreferenceFragment
     }
 
     private void loadIconsAsync(List<Integer> missingIcons) {
+        final Context context = getContext();
+        final int iconSize = getUserIconSize();
         new AsyncTask<List<Integer>, Void, Void>() {
             @Override
             protected void onPostExecute(Void result) {
@@ -1539,11 +1543,7 @@ public class UserSettings extends SettingsPreferenceFragment
             @Override
             protected Void doInBackground(List<Integer>... values) {
                 for (int userId : values[0]) {
-                    Bitmap bitmap = mUserManager.getUserIcon(userId);
-                    if (bitmap == null) {
-                        bitmap = getDefaultUserIconAsBitmap(getContext().getResources(), userId);
-                    }
-                    mUserIcons.append(userId, bitmap);
+                    UserIconCache.loadIcon(context, userId, iconSize);
                 }
                 return null;
             }
@@ -1558,13 +1558,6 @@ public class UserSettings extends SettingsPreferenceFragment
         return mDefaultIconDrawable;
     }
 
-    private void setPhotoId(Preference pref, UserInfo user) {
-        Bitmap bitmap = mUserIcons.get(user.id);
-        if (bitmap != null) {
-            pref.setIcon(encircleUserIcon(bitmap));
-        }
-    }
-
     @Override
     public boolean onPreferenceClick(Preference pref) {
         mMetricsFeatureProvider.logSettingsTileClick(pref.getKey(), getMetricsCategory());
@@ -1616,10 +1609,12 @@ public class UserSettings extends SettingsPreferenceFragment
     }
 
     private Drawable encircleUserIcon(Bitmap icon) {
-        return new CircleFramedDrawable(
-                icon,
-                getActivity().getResources().getDimensionPixelSize(
-                        R.dimen.multiple_users_user_icon_size));
+        return new CircleFramedDrawable(icon, getUserIconSize());
+    }
+
+    private int getUserIconSize() {
+        return getActivity().getResources().getDimensionPixelSize(
+                R.dimen.multiple_users_user_icon_size);
     }
 
     @Override
@@ -1674,6 +1669,7 @@ public class UserSettings extends SettingsPreferenceFragment
         UserManager um = (UserManager) context.getSystemService(Context.USER_SERVICE);
         Bitmap bitmap = getDefaultUserIconAsBitmap(context.getResources(), userId);
         um.setUserIcon(userId, bitmap);
+        UserIconCache.invalidate(userId);
 
         return true;
     }
@@ -1699,6 +1695,7 @@ public class UserSettings extends SettingsPreferenceFragment
         Bitmap icon = UserIcons.convertToBitmapAtUserIconSize(context.getResources(), drawable);
 
         um.setUserIcon(userId, icon);
+        UserIconCache.invalidate(userId);
         try {
             avatarDataStream.close();
         } catch (IOException ioe) {
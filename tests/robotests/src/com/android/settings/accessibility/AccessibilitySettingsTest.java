@@ -361,6 +361,88 @@ public class AccessibilitySettingsTest {
         assertThat(pref).isNull();
     }
 
+    @Test
+    @Config(shadows = {ShadowFragment.class, ShadowUserManager.class})
+    public void onContentChanged_serviceUnchanged_keepsPreference() {
+        mShadowAccessibilityManager.setInstalledAccessibilityServiceList(
+                singletonList(mServiceInfo));
+        setupFragment();
+        final RestrictedPreference preference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+
+        mFragment.onContentChanged();
+
+        assertThat(preference).isNotNull();
+        assertThat((Object) mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString())).isSameInstanceAs(preference);
+    }
+
+    @Test
+    @Config(shadows = {ShadowFragment.class, ShadowUserManager.class})
+    public void onContentChanged_serviceEnabled_rebuildsPreference() {
+        mShadowAccessibilityManager.setInstalledAccessibilityServiceList(
+                singletonList(mServiceInfo));
+        setupFragment();
+        final RestrictedPreference preference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+
+        Settings.Secure.putString(mContext.getContentResolver(),
+                Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES, COMPONENT_NAME.flattenToString());
+        mFragment.onContentChanged();
+
+        final RestrictedPreference newPreference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+        assertThat(newPreference).isNotNull();
+        assertThat(newPreference).isNotSameInstanceAs(preference);
+        assertThat(mFragment.mServicePreferenceToPreferenceCategoryMap).doesNotContainKey(
+                preference);
+    }
+
+    @Test
+    @Config(shadows = {ShadowFragment.class, ShadowUserManager.class})
+    public void onResume_restrictedSettingsAllowed_rebuildsPreference() {
+        when(mAppOpsManager.checkOpNoThrow(eq(AppOpsManager.OP_ACCESS_RESTRICTED_SETTINGS),
+                anyInt(), anyString())).thenReturn(AppOpsManager.MODE_ERRORED);
+        mShadowAccessibilityManager.setInstalledAccessibilityServiceList(
+                singletonList(mServiceInfo));
+        setupFragment();
+        final RestrictedPreference preference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+
+        when(mAppOpsManager.checkOpNoThrow(eq(AppOpsManager.OP_ACCESS_RESTRICTED_SETTINGS),
+                anyInt(), anyString())).thenReturn(AppOpsManager.MODE_ALLOWED);
+        mFragment.onResume();
+
+        final RestrictedPreference newPreference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+        assertThat(newPreference).isNotNull();
+        assertThat(newPreference).isNotSameInstanceAs(preference);
+    }
+
+    @Test
+    @Config(shadows = {ShadowFragment.class, ShadowUserManager.class})
+    public void onSettingsChanged_serviceEnabled_onlyRebuildsShownServices() {
+        mShadowAccessibilityManager.setInstalledAccessibilityServiceList(
+                singletonList(mServiceInfo));
+        setupFragment();
+        final RestrictedPreference preference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+        final ComponentName newComponentName = new ComponentName(PACKAGE_NAME, "NewService");
+        mShadowAccessibilityManager.setInstalledAccessibilityServiceList(List.of(mServiceInfo,
+                getMockAccessibilityServiceInfo(newComponentName)));
+
+        Settings.Secure.putString(mContext.getContentResolver(),
+                Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES, COMPONENT_NAME.flattenToString());
+        mFragment.onSettingsChanged();
+
+        final RestrictedPreference newPreference = mFragment.getPreferenceScreen().findPreference(
+                COMPONENT_NAME.flattenToString());
+        assertThat(newPreference).isNotNull();
+        assertThat(newPreference).isNotSameInstanceAs(preference);
+        assertThat((Object) mFragment.getPreferenceScreen().findPreference(
+                newComponentName.flattenToString())).isNull();
+    }
+
     private AccessibilityServiceInfo getMockAccessibilityServiceInfo(String packageName,
             String className) {
         return getMockAccessibilityServiceInfo(new ComponentName(packageName, className));
@@ -42,6 +42,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowApplication;
 
 import java.util.Arrays;
@@ -210,8 +211,8 @@ public final class AppWithAdminGrantedPermissionsListerTest {
             AppWithAdminGrantedPermissionsLister {
 
         private AppWithAdminGrantedPermissionsListerTestable(String[] permissions) {
-            super(permissions, mPackageManager, mPackageManagerService,
-                    mDevicePolicyManager, mUserManager);
+            super(RuntimeEnvironment.application, permissions, mPackageManager,
+                    mPackageManagerService, mDevicePolicyManager, mUserManager);
         }
 
         @Override
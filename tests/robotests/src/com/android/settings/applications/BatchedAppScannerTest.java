@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settings.testutils.ApplicationTestUtils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchedAppScannerTest {
+    private static final int MAIN_USER_ID = 0;
+    private static final int MANAGED_PROFILE_ID = 10;
+
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private UserManager mUserManager;
+
+    private BatchedAppScanner mScanner;
+    private int mAppCount = -1;
+    private List<UserAppInfo> mAppList;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        final Context context = RuntimeEnvironment.application;
+        when(mUserManager.getProfiles(UserHandle.myUserId())).thenReturn(Arrays.asList(
+                new UserInfo(MAIN_USER_ID, "main", UserInfo.FLAG_ADMIN),
+                new UserInfo(MANAGED_PROFILE_ID, "managed profile", 0)));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID)))
+                .thenReturn(Arrays.asList(
+                        ApplicationTestUtils.buildInfo(1, "app1", 0 /* flags */,
+                                Build.VERSION_CODES.M),
+                        ApplicationTestUtils.buildInfo(2, "app2", 0 /* flags */,
+                                Build.VERSION_CODES.M)));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID)))
+                .thenReturn(Arrays.asList(
+                        ApplicationTestUtils.buildInfo(1000001, "app1", 0 /* flags */,
+                                Build.VERSION_CODES.M)));
+        mScanner = new BatchedAppScanner(context, mPackageManager, mUserManager);
+    }
+
+    @Test
+    public void scan_multipleRequests_queryEachProfileOnce() {
+        final BatchedAppScanner.Request countRequest = new BatchedAppScanner.Request(
+                info -> info.packageName.equals("app1"), num -> mAppCount = num,
+                null /* listCallback */);
+        final BatchedAppScanner.Request listRequest = new BatchedAppScanner.Request(
+                info -> info.packageName.equals("app2"), null /* countCallback */,
+                list -> mAppList = list);
+
+        mScanner.scan(Arrays.asList(countRequest, listRequest));
+        countRequest.deliver();
+        listRequest.deliver();
+
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID));
+        assertThat(mAppCount).isEqualTo(2);
+        assertThat(mAppList).hasSize(1);
+        assertThat(mAppList.get(0).appInfo.packageName).isEqualTo("app2");
+        assertThat(mAppList.get(0).userInfo.id).isEqualTo(MAIN_USER_ID);
+    }
+
+    @Test
+    @Config(shadows = {BatchedAppScannerTest.ShadowDeferredThreadUtils.class})
+    public void countAndList_sameMainThreadPass_queryEachProfileOnce() {
+        mScanner.count(info -> info.packageName.equals("app1"), num -> mAppCount = num);
+        mScanner.list(info -> info.packageName.equals("app2"), list -> mAppList = list);
+
+        // The scan waits for the other requests of this main thread pass.
+        verify(mPackageManager, never()).getInstalledApplicationsAsUser(anyInt(), anyInt());
+        assertThat(mAppCount).isEqualTo(-1);
+
+        ShadowLooper.idleMainLooper();
+
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID));
+        assertThat(mAppCount).isEqualTo(2);
+        assertThat(mAppList).hasSize(1);
+        assertThat(mAppList.get(0).appInfo.packageName).isEqualTo("app2");
+    }
+
+    @Test
+    public void countNow_deliverOnCallingThread() {
+        mScanner.countNow(info -> true, num -> mAppCount = num);
+
+        assertThat(mAppCount).isEqualTo(3);
+    }
+
+    /** Posts to the main looper instead of running immediately, unlike ShadowThreadUtils. */
+    @Implements(ThreadUtils.class)
+    public static class ShadowDeferredThreadUtils {
+        @Implementation
+        protected static void postOnBackgroundThread(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Implementation
+        protected static void postOnMainThread(Runnable runnable) {
+            new Handler(Looper.getMainLooper()).post(runnable);
+        }
+    }
+}
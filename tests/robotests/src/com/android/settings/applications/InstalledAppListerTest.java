@@ -43,6 +43,7 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowApplication;
 
 import java.util.Arrays;
@@ -189,7 +190,7 @@ public final class InstalledAppListerTest {
 
     private class InstalledAppListerTestable extends InstalledAppLister {
         private InstalledAppListerTestable() {
-            super(mPackageManager, mUserManager);
+            super(RuntimeEnvironment.application, mPackageManager, mUserManager);
         }
 
         @Override
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RunWith(RobolectricTestRunner.class)
+public class PackageInventoryTest {
+    private static final int USER_ID = 0;
+    private static final int OTHER_USER_ID = 10;
+    private static final int FLAGS = PackageManager.MATCH_DISABLED_COMPONENTS;
+    private static final String APP = "com.example.app";
+    private static final String GAME = "com.example.game";
+    private static final String SYSTEM_APP = "com.example.system";
+
+    @Mock
+    private PackageManager mPackageManager;
+
+    private PackageInventory mInventory;
+    private final List<Runnable> mPendingUpdates = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        final Context context = spy(ApplicationProvider.getApplicationContext());
+        doReturn(mPackageManager).when(context).getPackageManager();
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), anyInt())).thenReturn(
+                Arrays.asList(createApp(APP, 0), createApp(GAME, 0),
+                        createApp(SYSTEM_APP, ApplicationInfo.FLAG_SYSTEM)));
+        mInventory = new PackageInventory(context);
+        mInventory.mUpdateExecutor = mPendingUpdates::add;
+    }
+
+    @After
+    public void tearDown() {
+        PackageInventory.resetForTesting();
+    }
+
+    @Test
+    public void getSnapshot_sameUserAndFlags_queryOnce() {
+        final PackageInventory.Snapshot snapshot = mInventory.getSnapshot(USER_ID, FLAGS);
+
+        assertThat(mInventory.getSnapshot(USER_ID, FLAGS)).isSameInstanceAs(snapshot);
+        assertThat(mInventory.getCachedSnapshot(USER_ID, FLAGS)).isSameInstanceAs(snapshot);
+        verify(mPackageManager).getInstalledApplicationsAsUser(FLAGS, USER_ID);
+    }
+
+    @Test
+    public void getSnapshot_differentFlags_queryAgain() {
+        mInventory.getSnapshot(USER_ID, FLAGS);
+        mInventory.getSnapshot(USER_ID, 0);
+
+        verify(mPackageManager, times(2)).getInstalledApplicationsAsUser(anyInt(), eq(USER_ID));
+        assertThat(mInventory.getCachedSnapshot(OTHER_USER_ID, FLAGS)).isNull();
+    }
+
+    @Test
+    public void getSnapshot_packageChangedWhileLoading_notCached() {
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), anyInt())).thenAnswer(
+                invocation -> {
+                    mInventory.onUserRemoved(OTHER_USER_ID);
+                    return Arrays.asList(createApp(APP, 0));
+                });
+
+        mInventory.getSnapshot(USER_ID, FLAGS);
+
+        assertThat(mInventory.getCachedSnapshot(USER_ID, FLAGS)).isNull();
+    }
+
+    @Test
+    public void updatePackages_refreshOnlyChangedPackages() throws Exception {
+        mInventory.getSnapshot(USER_ID, FLAGS);
+        final String newApp = "com.example.new";
+        when(mPackageManager.getApplicationInfoAsUser(newApp, FLAGS, USER_ID))
+                .thenReturn(createApp(newApp, 0));
+        when(mPackageManager.getApplicationInfoAsUser(APP, FLAGS, USER_ID))
+                .thenThrow(new PackageManager.NameNotFoundException());
+
+        mInventory.onPackagesChanged(new String[] {newApp, APP});
+        runPendingUpdates();
+
+        final PackageInventory.Snapshot snapshot = mInventory.getCachedSnapshot(USER_ID, FLAGS);
+        assertThat(snapshot.getApplication(APP)).isNull();
+        assertThat(snapshot.getApplication(newApp)).isNotNull();
+        assertThat(snapshot.getApplications()).hasSize(3);
+        verify(mPackageManager).getInstalledApplicationsAsUser(FLAGS, USER_ID);
+    }
+
+    @Test
+    public void onPackagesChanged_updatePending_notServeStaleSnapshot() throws Exception {
+        mInventory.getSnapshot(USER_ID, FLAGS);
+        final String newApp = "com.example.new";
+        when(mPackageManager.getApplicationInfoAsUser(newApp, FLAGS, USER_ID))
+                .thenReturn(createApp(newApp, 0));
+
+        mInventory.onPackagesChanged(new String[] {newApp});
+
+        assertThat(mInventory.getCachedSnapshot(USER_ID, FLAGS)).isNull();
+        assertThat(mInventory.getSnapshot(USER_ID, FLAGS).getApplication(newApp)).isNotNull();
+        verify(mPackageManager).getInstalledApplicationsAsUser(FLAGS, USER_ID);
+        runPendingUpdates();
+        assertThat(mInventory.getCachedSnapshot(USER_ID, FLAGS).getApplication(newApp))
+                .isNotNull();
+    }
+
+    @Test
+    public void onPackagesChanged_consecutiveChanges_applyAllChanges() throws Exception {
+        mInventory.getSnapshot(USER_ID, FLAGS);
+        final String newApp = "com.example.new";
+        when(mPackageManager.getApplicationInfoAsUser(newApp, FLAGS, USER_ID))
+                .thenReturn(createApp(newApp, 0));
+        when(mPackageManager.getApplicationInfoAsUser(APP, FLAGS, USER_ID))
+                .thenThrow(new PackageManager.NameNotFoundException());
+
+        mInventory.onPackagesChanged(new String[] {newApp});
+        mInventory.onPackagesChanged(new String[] {APP});
+        runPendingUpdates();
+
+        final PackageInventory.Snapshot snapshot = mInventory.getCachedSnapshot(USER_ID, FLAGS);
+        assertThat(snapshot.getApplication(newApp)).isNotNull();
+        assertThat(snapshot.getApplication(APP)).isNull();
+        verify(mPackageManager).getInstalledApplicationsAsUser(FLAGS, USER_ID);
+    }
+
+    @Test
+    public void onUserRemoved_dropSnapshotsOfUser() {
+        mInventory.getSnapshot(USER_ID, FLAGS);
+        mInventory.getSnapshot(OTHER_USER_ID, FLAGS);
+
+        mInventory.onUserRemoved(OTHER_USER_ID);
+
+        assertThat(mInventory.getCachedSnapshot(USER_ID, FLAGS)).isNotNull();
+        assertThat(mInventory.getCachedSnapshot(OTHER_USER_ID, FLAGS)).isNull();
+    }
+
+    @Test
+    public void snapshot_filteredViews() {
+        final PackageInventory.Snapshot snapshot = mInventory.getSnapshot(USER_ID, FLAGS);
+
+        assertThat(getPackageNames(snapshot.getSystemApplications()))
+                .containsExactly(SYSTEM_APP);
+        assertThat(getPackageNames(snapshot.getGames())).containsExactly(GAME);
+        assertThat(snapshot.getGames()).isSameInstanceAs(snapshot.getGames());
+    }
+
+    @Test
+    public void snapshot_launchableApplications_queryOnce() {
+        when(mPackageManager.queryIntentActivitiesAsUser(any(Intent.class), anyInt(),
+                eq(USER_ID))).thenReturn(Arrays.asList(createLauncherActivity(APP)));
+        final PackageInventory.Snapshot snapshot = mInventory.getSnapshot(USER_ID, FLAGS);
+
+        assertThat(getPackageNames(snapshot.getLaunchableApplications())).containsExactly(APP);
+        assertThat(snapshot.getLaunchableApplications())
+                .isSameInstanceAs(snapshot.getLaunchableApplications());
+        verify(mPackageManager).queryIntentActivitiesAsUser(any(Intent.class), anyInt(),
+                eq(USER_ID));
+    }
+
+    @Test
+    public void snapshot_pictureInPictureApplications() {
+        when(mPackageManager.getInstalledPackagesAsUser(anyInt(), eq(USER_ID))).thenReturn(
+                Arrays.asList(createPackage(APP, true), createPackage(GAME, false)));
+        final PackageInventory.Snapshot snapshot = mInventory.getSnapshot(USER_ID, FLAGS);
+
+        assertThat(getPackageNames(snapshot.getPictureInPictureApplications()))
+                .containsExactly(APP);
+        verify(mPackageManager).getInstalledPackagesAsUser(
+                FLAGS | PackageManager.GET_ACTIVITIES, USER_ID);
+    }
+
+    @Test
+    public void updatePackages_loadedViews_queryOnlyChangedPackages() throws Exception {
+        when(mPackageManager.getInstalledPackagesAsUser(anyInt(), eq(USER_ID))).thenReturn(
+                Arrays.asList(createPackage(APP, true), createPackage(GAME, false)));
+        when(mPackageManager.queryIntentActivitiesAsUser(any(Intent.class), anyInt(),
+                eq(USER_ID))).thenReturn(Arrays.asList(createLauncherActivity(APP)));
+        final PackageInventory.Snapshot snapshot = mInventory.getSnapshot(USER_ID, FLAGS);
+        snapshot.getPictureInPictureApplications();
+        snapshot.getLaunchableApplications();
+        when(mPackageManager.getApplicationInfoAsUser(GAME, FLAGS, USER_ID))
+                .thenReturn(createApp(GAME, 0));
+        when(mPackageManager.getPackageInfoAsUser(GAME, FLAGS | PackageManager.GET_ACTIVITIES,
+                USER_ID)).thenReturn(createPackage(GAME, true));
+        when(mPackageManager.queryIntentActivitiesAsUser(any(Intent.class), anyInt(),
+                eq(USER_ID))).thenReturn(Arrays.asList(createLauncherActivity(GAME)));
+
+        mInventory.onPackagesChanged(new String[] {GAME});
+        runPendingUpdates();
+
+        final PackageInventory.Snapshot updated = mInventory.getCachedSnapshot(USER_ID, FLAGS);
+        assertThat(getPackageNames(updated.getPictureInPictureApplications()))
+                .containsExactly(APP, GAME);
+        assertThat(getPackageNames(updated.getLaunchableApplications()))
+                .containsExactly(APP, GAME);
+        verify(mPackageManager).getInstalledPackagesAsUser(anyInt(), eq(USER_ID));
+    }
+
+    @Test
+    public void getInstalledApplicationsAsUser_suppliedPackageManager_queryDirectly() {
+        final Context context = ApplicationProvider.getApplicationContext();
+
+        PackageInventory.getInstalledApplicationsAsUser(context, mPackageManager, FLAGS, USER_ID);
+        PackageInventory.getInstalledApplicationsAsUser(context, mPackageManager, FLAGS, USER_ID);
+
+        verify(mPackageManager, times(2)).getInstalledApplicationsAsUser(FLAGS, USER_ID);
+    }
+
+    private void runPendingUpdates() {
+        for (Runnable update : new ArrayList<>(mPendingUpdates)) {
+            update.run();
+        }
+        mPendingUpdates.clear();
+    }
+
+    private static ApplicationInfo createApp(String packageName, int flags) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.flags = flags;
+        if (GAME.equals(packageName)) {
+            info.category = ApplicationInfo.CATEGORY_GAME;
+        }
+        return info;
+    }
+
+    private static PackageInfo createPackage(String packageName, boolean supportsPip) {
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        final ActivityInfo activityInfo = new ActivityInfo();
+        if (supportsPip) {
+            activityInfo.flags |= ActivityInfo.FLAG_SUPPORTS_PICTURE_IN_PICTURE;
+        }
+        packageInfo.activities = new ActivityInfo[] {activityInfo};
+        packageInfo.applicationInfo = createApp(packageName, 0);
+        return packageInfo;
+    }
+
+    private static ResolveInfo createLauncherActivity(String packageName) {
+        final ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.activityInfo = new ActivityInfo();
+        resolveInfo.activityInfo.packageName = packageName;
+        return resolveInfo;
+    }
+
+    private static List<String> getPackageNames(List<ApplicationInfo> applications) {
+        return applications.stream().map(info -> info.packageName)
+                .collect(Collectors.toList());
+    }
+}
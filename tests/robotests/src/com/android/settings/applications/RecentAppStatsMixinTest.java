@@ -24,7 +24,9 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.usage.UsageStats;
@@ -486,4 +488,46 @@ public class RecentAppStatsMixinTest {
         assertThat(mRecentAppStatsMixin.mRecentApps.get(3).mUsageStats.mPackageName).isEqualTo(
                 "personal.pkg.class2");
     }
+
+    @Test
+    public void loadTrackedRecentApps_persistedApps_returnWithoutQuery() {
+        final long now = System.currentTimeMillis();
+        mContext.getSharedPreferences(RecentAppsTracker.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(RecentAppsTracker.KEY_WATERMARK_PREFIX + NORMAL_USER.getIdentifier(),
+                        now - 10_000)
+                .putString(RecentAppsTracker.KEY_APPS_PREFIX + NORMAL_USER.getIdentifier(),
+                        "pkg.old:" + (now - 20_000) + ",pkg.new:" + (now - 15_000))
+                .commit();
+
+        final List<RecentAppStatsMixin.UsageStatsWrapper> recentApps =
+                mRecentAppStatsMixin.loadTrackedRecentApps(3);
+
+        assertThat(recentApps).hasSize(2);
+        assertThat(recentApps.get(0).mUsageStats.mPackageName).isEqualTo("pkg.new");
+        assertThat(recentApps.get(1).mUsageStats.mPackageName).isEqualTo("pkg.old");
+        verify(mUsageStatsManager, never()).queryUsageStats(anyInt(), anyLong(), anyLong());
+        verify(mUsageStatsManager, never()).queryEvents(anyLong(), anyLong());
+    }
+
+    @Test
+    public void mergeByLastTimeUsed_keepLatestAcrossProfiles() {
+        final List<RecentAppStatsMixin.UsageStatsWrapper> personal = Arrays.asList(
+                createWrapper("personal1", 50L, 0), createWrapper("personal2", 10L, 0));
+        final List<RecentAppStatsMixin.UsageStatsWrapper> work = Arrays.asList(
+                createWrapper("work1", 40L, 10), createWrapper("work2", 30L, 10));
+
+        final List<RecentAppStatsMixin.UsageStatsWrapper> recentApps =
+                RecentAppStatsMixin.mergeByLastTimeUsed(Arrays.asList(personal, work), 3);
+
+        assertThat(recentApps).containsExactly(personal.get(0), work.get(0), work.get(1))
+                .inOrder();
+    }
+
+    private static RecentAppStatsMixin.UsageStatsWrapper createWrapper(String packageName,
+            long lastTimeUsed, int userId) {
+        final UsageStats stats = new UsageStats();
+        stats.mPackageName = packageName;
+        stats.mLastTimeUsed = lastTimeUsed;
+        return new RecentAppStatsMixin.UsageStatsWrapper(stats, userId);
+    }
 }
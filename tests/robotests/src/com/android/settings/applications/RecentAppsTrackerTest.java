@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.ArrayMap;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class RecentAppsTrackerTest {
+    private static final int USER_ID = 0;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private Context mContext;
+    private UsageStatsManager mUsageStatsManager;
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mUsageStatsManager = mContext.getSystemService(UsageStatsManager.class);
+        mNow = System.currentTimeMillis();
+    }
+
+    @Test
+    public void getRecentApps_persistedApps_mergeEventsSinceWatermark() {
+        persist(mNow - 10_000, "app.old:" + (mNow - 20_000) + ",app.stale:" + (mNow - 30_000));
+        shadowOf(mUsageStatsManager).addEvent("app.new", mNow - 5_000,
+                UsageEvents.Event.ACTIVITY_RESUMED);
+        shadowOf(mUsageStatsManager).addEvent("app.stale", mNow - 1_000,
+                UsageEvents.Event.ACTIVITY_PAUSED);
+
+        final List<UsageStats> recentApps = getRecentApps();
+
+        assertThat(recentApps).hasSize(3);
+        assertThat(recentApps.get(0).getPackageName()).isEqualTo("app.stale");
+        assertThat(recentApps.get(0).getLastTimeUsed()).isEqualTo(mNow - 1_000);
+        assertThat(recentApps.get(1).getPackageName()).isEqualTo("app.new");
+        assertThat(recentApps.get(2).getPackageName()).isEqualTo("app.old");
+    }
+
+    @Test
+    public void getRecentApps_persistedAppsOlderThanBeginTime_dropped() {
+        persist(mNow - 10_000, "app.old:" + (mNow - 2 * DAY_MILLIS) + ",app:" + (mNow - 20_000));
+
+        final List<UsageStats> recentApps = getRecentApps();
+
+        assertThat(recentApps).hasSize(1);
+        assertThat(recentApps.get(0).getPackageName()).isEqualTo("app");
+    }
+
+    @Test
+    public void getRecentApps_notDisplayable_skipped() {
+        persist(mNow - 10_000, "");
+        shadowOf(mUsageStatsManager).addEvent("app.hidden", mNow - 5_000,
+                UsageEvents.Event.ACTIVITY_RESUMED);
+
+        final List<UsageStats> recentApps = RecentAppsTracker.getInstance(mContext).getRecentApps(
+                mUsageStatsManager, USER_ID, mNow - DAY_MILLIS, mNow,
+                (packageName, userId) -> !packageName.equals("app.hidden"));
+
+        assertThat(recentApps).isEmpty();
+    }
+
+    @Test
+    public void getRecentApps_persistWatermark() {
+        persist(mNow - 10_000, "");
+
+        getRecentApps();
+
+        assertThat(getPrefs().getLong(RecentAppsTracker.KEY_WATERMARK_PREFIX + USER_ID, 0L))
+                .isEqualTo(mNow);
+    }
+
+    @Test
+    public void getRecentApps_packagesChangedWhileFiltering_notBlocked() throws Exception {
+        persist(mNow - 10_000, "");
+        shadowOf(mUsageStatsManager).addEvent("app", mNow - 5_000,
+                UsageEvents.Event.ACTIVITY_RESUMED);
+        final RecentAppsTracker tracker = RecentAppsTracker.getInstance(mContext);
+        final Thread packagesChanged = new Thread(
+                () -> tracker.onPackagesChanged(new String[] {"other.app"}));
+
+        tracker.getRecentApps(mUsageStatsManager, USER_ID, mNow - DAY_MILLIS, mNow,
+                (packageName, userId) -> {
+                    packagesChanged.start();
+                    try {
+                        packagesChanged.join(5_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                });
+
+        assertThat(packagesChanged.isAlive()).isFalse();
+    }
+
+    @Test
+    public void getTrackedRecentApps_persistedApps_returnWithoutQuery() {
+        persist(mNow - 10_000, "app.old:" + (mNow - 2 * DAY_MILLIS) + ",app:" + (mNow - 20_000)
+                + ",app.new:" + (mNow - 15_000));
+        shadowOf(mUsageStatsManager).addEvent("app.newer", mNow - 5_000,
+                UsageEvents.Event.ACTIVITY_RESUMED);
+
+        final List<UsageStats> recentApps = RecentAppsTracker.getInstance(mContext)
+                .getTrackedRecentApps(USER_ID, mNow - DAY_MILLIS);
+
+        assertThat(recentApps).hasSize(2);
+        assertThat(recentApps.get(0).getPackageName()).isEqualTo("app.new");
+        assertThat(recentApps.get(1).getPackageName()).isEqualTo("app");
+    }
+
+    @Test
+    public void trimToSize_keepMostRecent() {
+        final ArrayMap<String, Long> lastTimeUsed = new ArrayMap<>();
+        lastTimeUsed.put("a", 3L);
+        lastTimeUsed.put("b", 1L);
+        lastTimeUsed.put("c", 4L);
+        lastTimeUsed.put("d", 2L);
+
+        RecentAppsTracker.trimToSize(lastTimeUsed, 2);
+
+        assertThat(lastTimeUsed.keySet()).containsExactly("a", "c");
+    }
+
+    private List<UsageStats> getRecentApps() {
+        return RecentAppsTracker.getInstance(mContext).getRecentApps(mUsageStatsManager, USER_ID,
+                mNow - DAY_MILLIS, mNow, (packageName, userId) -> true);
+    }
+
+    private void persist(long watermark, String apps) {
+        getPrefs().edit()
+                .putLong(RecentAppsTracker.KEY_WATERMARK_PREFIX + USER_ID, watermark)
+                .putString(RecentAppsTracker.KEY_APPS_PREFIX + USER_ID, apps)
+                .commit();
+    }
+
+    private SharedPreferences getPrefs() {
+        return mContext.getSharedPreferences(RecentAppsTracker.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
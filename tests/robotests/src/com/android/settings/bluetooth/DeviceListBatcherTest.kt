@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.bluetooth
+
+import com.android.settingslib.bluetooth.CachedBluetoothDevice
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.robolectric.RobolectricTestRunner
+import org.mockito.Mockito.`when` as whenever
+
+@RunWith(RobolectricTestRunner::class)
+class DeviceListBatcherTest {
+    private val dispatcher = StandardTestDispatcher()
+    private val testScope = TestScope(dispatcher)
+    private val committedBatches = ArrayList<List<CachedBluetoothDevice>>()
+    private val committedDevices = HashSet<CachedBluetoothDevice>()
+    private val preparedBatches = ArrayList<List<CachedBluetoothDevice>>()
+
+    @Test
+    fun add_sameDeviceInOneInterval_committedOnce() = testScope.runTest {
+        val device = createDevice(0)
+        val batcher = createBatcher()
+
+        repeat(10) { batcher.add(device) }
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches).containsExactly(listOf(device))
+    }
+
+    @Test
+    fun add_beforeInterval_notCommittedYet() = testScope.runTest {
+        val batcher = createBatcher()
+
+        batcher.add(createDevice(0))
+        advanceTimeBy(INTERVAL_MILLIS - 1)
+
+        assertThat(committedBatches).isEmpty()
+    }
+
+    @Test
+    fun add_inConsecutiveIntervals_committedInTwoBatches() = testScope.runTest {
+        val device0 = createDevice(0)
+        val device1 = createDevice(1)
+        val device2 = createDevice(2)
+        val batcher = createBatcher()
+
+        batcher.add(device0)
+        batcher.add(device1)
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+        batcher.add(device2)
+        batcher.add(device0)
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches)
+            .containsExactly(listOf(device0, device1), listOf(device2))
+            .inOrder()
+    }
+
+    @Test
+    fun add_alreadyCommitted_notPrepared() = testScope.runTest {
+        val device = createDevice(0)
+        val batcher = createBatcher()
+
+        batcher.add(device)
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+        batcher.add(device)
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(preparedBatches).containsExactly(listOf(device))
+        assertThat(committedBatches).containsExactly(listOf(device))
+    }
+
+    @Test
+    fun add_filteredOut_notCommitted() = testScope.runTest {
+        val batcher = DeviceListBatcher<CachedBluetoothDevice>(
+            this,
+            select = { it },
+            prepare = { emptyList() },
+            commit = { committedBatches.add(it) },
+            intervalMillis = INTERVAL_MILLIS,
+            backgroundDispatcher = dispatcher,
+            mainDispatcher = dispatcher,
+        )
+
+        batcher.add(createDevice(0))
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches).isEmpty()
+    }
+
+    @Test
+    fun clear_pendingDevices_notCommitted() = testScope.runTest {
+        val batcher = createBatcher()
+
+        batcher.add(createDevice(0))
+        batcher.clear()
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches).isEmpty()
+    }
+
+    @Test
+    fun clear_thenAdd_onlyNewDeviceCommitted() = testScope.runTest {
+        val device0 = createDevice(0)
+        val device1 = createDevice(1)
+        val batcher = createBatcher()
+
+        batcher.add(device0)
+        batcher.clear()
+        batcher.add(device1)
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches).containsExactly(listOf(device1))
+    }
+
+    @Test
+    fun cancel_laterDevices_notCommitted() = testScope.runTest {
+        val batcher = createBatcher()
+
+        batcher.add(createDevice(0))
+        batcher.cancel()
+        batcher.add(createDevice(1))
+        advanceTimeBy(INTERVAL_MILLIS + 1)
+
+        assertThat(committedBatches).isEmpty()
+    }
+
+    /**
+     * Replays a crowded scan, where every advertiser is reported several times, and checks that
+     * the list is only touched once per burst with each device committed once.
+     */
+    @Test
+    fun add_syntheticScanStream_oneBatchPerBurst() = testScope.runTest {
+        val devices = List(DEVICE_COUNT) { createDevice(it) }
+        val batcher = createBatcher()
+
+        repeat(BURST_COUNT) { burst ->
+            for (report in 0 until REPORTS_PER_BURST) {
+                batcher.add(devices[burst * DEVICES_PER_BURST + report % DEVICES_PER_BURST])
+            }
+            advanceTimeBy(INTERVAL_MILLIS + 1)
+        }
+        runCurrent()
+
+        assertThat(committedBatches).hasSize(BURST_COUNT)
+        committedBatches.forEachIndexed { burst, batch ->
+            assertThat(batch).containsExactlyElementsIn(
+                devices.subList(burst * DEVICES_PER_BURST, (burst + 1) * DEVICES_PER_BURST)
+            ).inOrder()
+        }
+        assertThat(preparedBatches.sumOf { it.size }).isEqualTo(DEVICE_COUNT)
+    }
+
+    private fun TestScope.createBatcher(): DeviceListBatcher<CachedBluetoothDevice> =
+        DeviceListBatcher(
+            this,
+            select = { devices -> devices.filter { !committedDevices.contains(it) } },
+            prepare = { devices -> devices.also { preparedBatches.add(it) } },
+            commit = { batch ->
+                committedDevices.addAll(batch)
+                committedBatches.add(batch)
+            },
+            intervalMillis = INTERVAL_MILLIS,
+            backgroundDispatcher = dispatcher,
+            mainDispatcher = dispatcher,
+        )
+
+    private fun createDevice(index: Int): CachedBluetoothDevice =
+        mock(CachedBluetoothDevice::class.java).also {
+            whenever(it.address).thenReturn(String.format("00:11:22:33:%02X:%02X",
+                index / 256, index % 256))
+        }
+
+    private companion object {
+        const val INTERVAL_MILLIS = DeviceListBatcher.BATCH_INTERVAL_MILLIS
+        const val DEVICES_PER_BURST = 10
+        const val BURST_COUNT = 50
+        const val DEVICE_COUNT = DEVICES_PER_BURST * BURST_COUNT
+        const val REPORTS_PER_BURST = 50
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.preference.Preference;
+
+import com.android.settings.core.BasePreferenceController;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class AsyncSummaryLoaderTest {
+    private static final String NAMESPACE = "TestPage";
+    private static final String KEY = "test_key";
+    private static final String SUMMARY = "test_summary";
+
+    private Context mContext;
+    private AsyncSummaryLoader mLoader;
+    private Preference mPreference;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.getSharedPreferences(AsyncSummaryLoader.SHARED_PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        mLoader = new AsyncSummaryLoader(mContext, NAMESPACE);
+        mPreference = new Preference(mContext);
+        mPreference.setKey(KEY);
+    }
+
+    @Test
+    public void applyPendingSummaries_updatePreferenceAndCache() {
+        mLoader.loadSummary(new TestPreferenceController(mContext, KEY), mPreference);
+
+        mLoader.onSummaryLoaded(KEY, SUMMARY);
+        mLoader.applyPendingSummaries();
+
+        assertThat(mPreference.getSummary().toString()).isEqualTo(SUMMARY);
+        assertThat(mContext.getSharedPreferences(AsyncSummaryLoader.SHARED_PREFS_NAME,
+                Context.MODE_PRIVATE).getString(NAMESPACE + "/" + KEY, null)).isEqualTo(SUMMARY);
+    }
+
+    @Test
+    public void loadSummary_hasCachedSummary_showCachedSummaryImmediately() {
+        mLoader.loadSummary(new TestPreferenceController(mContext, KEY), mPreference);
+        mLoader.onSummaryLoaded(KEY, SUMMARY);
+        mLoader.applyPendingSummaries();
+
+        final Preference newPreference = new Preference(mContext);
+        new AsyncSummaryLoader(mContext, NAMESPACE)
+                .loadSummary(new TestPreferenceController(mContext, KEY), newPreference);
+
+        assertThat(newPreference.getSummary().toString()).isEqualTo(SUMMARY);
+    }
+
+    @Test
+    public void onSummaryLoaded_released_doNotUpdatePreference() {
+        mLoader.loadSummary(new TestPreferenceController(mContext, KEY), mPreference);
+
+        mLoader.release();
+        mLoader.onSummaryLoaded(KEY, SUMMARY);
+        mLoader.applyPendingSummaries();
+
+        assertThat(mPreference.getSummary()).isNull();
+    }
+
+    @Test
+    public void onSummaryLoaded_nullSummary_keepCurrentSummary() {
+        mPreference.setSummary(SUMMARY);
+        mLoader.loadSummary(new TestPreferenceController(mContext, KEY), mPreference);
+
+        mLoader.onSummaryLoaded(KEY, null);
+        mLoader.applyPendingSummaries();
+
+        assertThat(mPreference.getSummary().toString()).isEqualTo(SUMMARY);
+    }
+
+    static class TestPreferenceController extends BasePreferenceController
+            implements BasePreferenceController.AsyncSummary {
+        TestPreferenceController(Context context, String preferenceKey) {
+            super(context, preferenceKey);
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            return AVAILABLE;
+        }
+
+        @Override
+        public CharSequence getSummaryInBackground() {
+            return null;
+        }
+    }
+}
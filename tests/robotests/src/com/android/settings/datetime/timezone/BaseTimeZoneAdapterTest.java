@@ -52,6 +52,29 @@ public class BaseTimeZoneAdapterTest {
         assertSearch(adapter, "kon", HK);
         assertSearch(adapter, "brit", UK);
         assertSearch(adapter, "sec", secretCountry);
+        assertSearch(adapter, "united k", UK);
+        assertSearch(adapter, "States", US);
+        assertSearch(adapter, "zzz");
+    }
+
+    @Test
+    public void testFilter_typing_narrowPreviousMatches() throws InterruptedException {
+        TestItem US = new TestItem("United States");
+        TestItem HK = new TestItem("Hong Kong");
+        TestItem UK = new TestItem("United Kingdom", new String[] { "United Kingdom",
+                "Great Britain"});
+        List<TestItem> items = new ArrayList<>();
+        items.add(US);
+        items.add(HK);
+        items.add(UK);
+
+        TestTimeZoneAdapter adapter = new TestTimeZoneAdapter(items);
+        assertSearch(adapter, "u", US, UK);
+        assertSearch(adapter, "un", US, UK);
+        assertSearch(adapter, "united k", UK);
+        assertSearch(adapter, "united kz");
+        assertSearch(adapter, "k", HK, UK);
+        assertSearch(adapter, "ko", HK);
     }
 
     private void assertSearch(TestTimeZoneAdapter adapter , String searchText, TestItem... items)
@@ -35,6 +35,7 @@ import org.robolectric.RobolectricTestRunner;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Locale;
 
 @RunWith(RobolectricTestRunner.class)
 public class TimeZoneDataTest {
@@ -111,4 +112,19 @@ public class TimeZoneDataTest {
         assertThat(timeZoneData.lookupCountryCodesForZoneId("America/Godthab"))
                 .containsExactly("GL");
     }
+
+    @Test
+    public void testGetSearchIndex_builtOncePerListAndLocale() {
+        TimeZoneData timeZoneData = new TimeZoneData(mCountryZonesFinder);
+        Object index = new Object();
+
+        assertThat(timeZoneData.getSearchIndex("regions", Locale.US, () -> index))
+                .isSameInstanceAs(index);
+        assertThat(timeZoneData.getSearchIndex("regions", Locale.US, Object::new))
+                .isSameInstanceAs(index);
+        assertThat(timeZoneData.getSearchIndex("regions", Locale.FRANCE, Object::new))
+                .isNotSameInstanceAs(index);
+        assertThat(timeZoneData.getSearchIndex("zones", Locale.US, Object::new))
+                .isNotSameInstanceAs(index);
+    }
 }
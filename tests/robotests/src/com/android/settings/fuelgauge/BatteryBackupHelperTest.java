@@ -29,6 +29,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
@@ -48,9 +49,11 @@ import android.content.pm.ParceledListSlice;
 import android.content.pm.UserInfo;
 import android.os.Build;
 import android.os.IDeviceIdleController;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 
 import com.android.settings.TestUtils;
@@ -73,11 +76,16 @@ import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.Resetter;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(RobolectricTestRunner.class)
@@ -195,6 +203,105 @@ public final class BatteryBackupHelperTest {
         verifyBackupData(expectedResult);
         verifyDumpHistoryData("com.android.testing.1\taction:BACKUP\tevent:mode: 2");
         verifyDumpHistoryData("com.android.testing.2\taction:BACKUP\tevent:mode: 1");
+        verifyLegacyBackupData(expectedResult);
+    }
+
+    @Test
+    public void backupOptimizationMode_unchangedModes_notBackupOptimizationMode()
+            throws Exception {
+        final List<String> allowlistedApps = Arrays.asList(PACKAGE_NAME1);
+        createTestingData(PACKAGE_NAME1, UID1, PACKAGE_NAME2, PACKAGE_NAME3);
+        final Map<String, Integer> oldModes =
+                Map.of(PACKAGE_NAME1, MODE_UNRESTRICTED, PACKAGE_NAME2, MODE_RESTRICTED);
+
+        mBatteryBackupHelper.backupOptimizationMode(
+                mBackupDataOutput, allowlistedApps, oldModes, /* newState= */ null);
+
+        verify(mBackupDataOutput, never()).writeEntityHeader(anyString(), anyInt());
+    }
+
+    @Test
+    public void backupOptimizationMode_changedModes_backupChangedPackagesOnly()
+            throws Exception {
+        final List<String> allowlistedApps = Arrays.asList(PACKAGE_NAME1);
+        createTestingData(PACKAGE_NAME1, UID1, PACKAGE_NAME2, PACKAGE_NAME3);
+        final Map<String, Integer> oldModes = Map.of(
+                PACKAGE_NAME1, MODE_UNRESTRICTED,
+                PACKAGE_NAME2, MODE_UNRESTRICTED,
+                PACKAGE_NAME3, MODE_RESTRICTED);
+
+        mBatteryBackupHelper.backupOptimizationMode(
+                mBackupDataOutput, allowlistedApps, oldModes, /* newState= */ null);
+
+        verifyBackupData(PACKAGE_NAME2 + ":1,");
+        verify(mBackupDataOutput, never()).writeEntityHeader(
+                eq(BatteryBackupHelper.KEY_OPTIMIZATION_MODE_PREFIX + PACKAGE_NAME1), anyInt());
+        // "com.android.testing.3" is reset as optimized mode.
+        verify(mBackupDataOutput).writeEntityHeader(
+                BatteryBackupHelper.KEY_OPTIMIZATION_MODE_PREFIX + PACKAGE_NAME3, -1);
+        // Keeps the full list for the builds which only restore the legacy data.
+        verifyLegacyBackupData(PACKAGE_NAME1 + ":2," + PACKAGE_NAME2 + ":1,");
+    }
+
+    @Test
+    public void performBackup_writeNewState_readAsOldState() throws Exception {
+        doReturn(new String[] {PACKAGE_NAME1}).when(mDeviceController).getFullPowerWhitelist();
+        createTestingData(PACKAGE_NAME1, UID1, PACKAGE_NAME2, PACKAGE_NAME3);
+        final File stateFile = new File(mContext.getCacheDir(), "battery_backup_state");
+        stateFile.delete();
+
+        try (ParcelFileDescriptor newState = ParcelFileDescriptor.open(stateFile,
+                ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_READ_WRITE)) {
+            mBatteryBackupHelper.performBackup(null, mBackupDataOutput, newState);
+        }
+
+        try (ParcelFileDescriptor oldState =
+                ParcelFileDescriptor.open(stateFile, ParcelFileDescriptor.MODE_READ_ONLY)) {
+            final ArrayMap<String, Integer> oldModes =
+                    BatteryBackupHelper.readBackupState(oldState);
+            assertThat(oldModes).containsExactly(
+                    PACKAGE_NAME1, MODE_UNRESTRICTED, PACKAGE_NAME2, MODE_RESTRICTED);
+        }
+    }
+
+    @Test
+    public void readBackupState_followedByOtherState_notReadOtherState() throws Exception {
+        doReturn(new String[] {PACKAGE_NAME1}).when(mDeviceController).getFullPowerWhitelist();
+        createTestingData(PACKAGE_NAME1, UID1, PACKAGE_NAME2, PACKAGE_NAME3);
+        final File stateFile = new File(mContext.getCacheDir(), "battery_backup_state");
+        stateFile.delete();
+        try (ParcelFileDescriptor newState = ParcelFileDescriptor.open(stateFile,
+                ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_READ_WRITE)) {
+            mBatteryBackupHelper.performBackup(null, mBackupDataOutput, newState);
+        }
+        // The state of the next helper sharing the same file descriptor.
+        final int otherState = 0x12345678;
+        try (DataOutputStream output =
+                new DataOutputStream(new FileOutputStream(stateFile, /* append= */ true))) {
+            output.writeInt(otherState);
+        }
+
+        try (ParcelFileDescriptor oldState =
+                ParcelFileDescriptor.open(stateFile, ParcelFileDescriptor.MODE_READ_ONLY)) {
+            assertThat(BatteryBackupHelper.readBackupState(oldState)).containsExactly(
+                    PACKAGE_NAME1, MODE_UNRESTRICTED, PACKAGE_NAME2, MODE_RESTRICTED);
+            final DataInputStream input =
+                    new DataInputStream(new FileInputStream(oldState.getFileDescriptor()));
+            assertThat(input.readInt()).isEqualTo(otherState);
+        }
+    }
+
+    @Test
+    public void readBackupState_emptyState_returnNull() throws Exception {
+        final File stateFile = new File(mContext.getCacheDir(), "battery_backup_state");
+        stateFile.delete();
+        stateFile.createNewFile();
+
+        try (ParcelFileDescriptor oldState =
+                ParcelFileDescriptor.open(stateFile, ParcelFileDescriptor.MODE_READ_ONLY)) {
+            assertThat(BatteryBackupHelper.readBackupState(oldState)).isNull();
+        }
+        assertThat(BatteryBackupHelper.readBackupState(null)).isNull();
     }
 
     @Test
@@ -273,6 +380,68 @@ public final class BatteryBackupHelperTest {
         assertThat(captor.getValue().length).isEqualTo(dataSize);
     }
 
+    @Test
+    public void restoreEntity_packageMode_restoreAfterAllEntities() throws Exception {
+        doReturn(true).when(mPowerUsageFeatureProvider)
+                .isValidToRestoreOptimizationMode(any());
+        final byte[] modeBytes = String.valueOf(MODE_RESTRICTED).getBytes();
+        mockBackupData(modeBytes.length,
+                BatteryBackupHelper.KEY_OPTIMIZATION_MODE_PREFIX + PACKAGE_NAME1);
+        doAnswer(invocation -> {
+            System.arraycopy(modeBytes, 0, invocation.getArgument(0), 0, modeBytes.length);
+            return modeBytes.length;
+        }).when(mBackupDataInputStream).read(any(), anyInt(), anyInt());
+
+        mBatteryBackupHelper.restoreEntity(mBackupDataInputStream);
+        verifyNoInteractions(mBatteryOptimizeUtils);
+
+        mBatteryBackupHelper.writeNewStateDescription(/* newState= */ null);
+        verify(mBatteryOptimizeUtils).setAppUsageState(MODE_RESTRICTED, Action.RESTORE);
+    }
+
+    @Test
+    public void restoreEntity_legacyList_restoreAfterAllEntities() throws Exception {
+        doReturn(true).when(mPowerUsageFeatureProvider)
+                .isValidToRestoreOptimizationMode(any());
+        final byte[] listBytes = (PACKAGE_NAME1 + DELIMITER_MODE + MODE_RESTRICTED).getBytes();
+        mockBackupData(listBytes.length, BatteryBackupHelper.KEY_OPTIMIZATION_LIST);
+        doAnswer(invocation -> {
+            System.arraycopy(listBytes, 0, invocation.getArgument(0), 0, listBytes.length);
+            return listBytes.length;
+        }).when(mBackupDataInputStream).read(any(), anyInt(), anyInt());
+
+        mBatteryBackupHelper.restoreEntity(mBackupDataInputStream);
+        verifyNoInteractions(mBatteryOptimizeUtils);
+
+        mBatteryBackupHelper.writeNewStateDescription(/* newState= */ null);
+        verify(mBatteryOptimizeUtils).setAppUsageState(MODE_RESTRICTED, Action.RESTORE);
+    }
+
+    @Test
+    public void restoreEntity_legacyListWithPackageMode_ignoreLegacyList() throws Exception {
+        doReturn(true).when(mPowerUsageFeatureProvider)
+                .isValidToRestoreOptimizationMode(any());
+        final byte[] listBytes = (PACKAGE_NAME1 + DELIMITER_MODE + MODE_UNRESTRICTED).getBytes();
+        final byte[] modeBytes = String.valueOf(MODE_RESTRICTED).getBytes();
+        doAnswer(invocation -> {
+            System.arraycopy(listBytes, 0, invocation.getArgument(0), 0, listBytes.length);
+            return listBytes.length;
+        }).doAnswer(invocation -> {
+            System.arraycopy(modeBytes, 0, invocation.getArgument(0), 0, modeBytes.length);
+            return modeBytes.length;
+        }).when(mBackupDataInputStream).read(any(), anyInt(), anyInt());
+
+        mockBackupData(listBytes.length, BatteryBackupHelper.KEY_OPTIMIZATION_LIST);
+        mBatteryBackupHelper.restoreEntity(mBackupDataInputStream);
+        mockBackupData(modeBytes.length,
+                BatteryBackupHelper.KEY_OPTIMIZATION_MODE_PREFIX + PACKAGE_NAME1);
+        mBatteryBackupHelper.restoreEntity(mBackupDataInputStream);
+        mBatteryBackupHelper.writeNewStateDescription(/* newState= */ null);
+
+        verify(mBatteryOptimizeUtils).setAppUsageState(MODE_RESTRICTED, Action.RESTORE);
+        verify(mBatteryOptimizeUtils, never()).setAppUsageState(MODE_UNRESTRICTED, Action.RESTORE);
+    }
+
     @Test
     public void restoreEntity_verifyConfiguration() {
         final int invalidScheduledLevel = 5;
@@ -378,18 +547,22 @@ public final class BatteryBackupHelperTest {
     }
 
     private void verifyBackupData(String expectedResult) throws Exception {
-        final byte[] expectedBytes = expectedResult.getBytes();
-        final ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
-        final Set<String> expectedResultSet =
-                Set.of(expectedResult.split(BatteryBackupHelper.DELIMITER));
+        for (String packageMode : expectedResult.split(DELIMITER)) {
+            final String[] results = packageMode.split(DELIMITER_MODE);
+            final byte[] expectedBytes = results[1].getBytes();
+            verify(mBackupDataOutput).writeEntityHeader(
+                    BatteryBackupHelper.KEY_OPTIMIZATION_MODE_PREFIX + results[0],
+                    expectedBytes.length);
+            verify(mBackupDataOutput, atLeastOnce())
+                    .writeEntityData(expectedBytes, expectedBytes.length);
+        }
+    }
 
+    private void verifyLegacyBackupData(String expectedResult) throws Exception {
+        final byte[] expectedBytes = expectedResult.getBytes();
         verify(mBackupDataOutput).writeEntityHeader(
                 BatteryBackupHelper.KEY_OPTIMIZATION_LIST, expectedBytes.length);
-        verify(mBackupDataOutput).writeEntityData(captor.capture(), eq(expectedBytes.length));
-        final String actualResult = new String(captor.getValue());
-        final Set<String> actualResultSet =
-                Set.of(actualResult.split(BatteryBackupHelper.DELIMITER));
-        assertThat(actualResultSet).isEqualTo(expectedResultSet);
+        verify(mBackupDataOutput).writeEntityData(expectedBytes, expectedBytes.length);
     }
 
     private void createTestingData(String packageName1, int uid1, String packageName2,
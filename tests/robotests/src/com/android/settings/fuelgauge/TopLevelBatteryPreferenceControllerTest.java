@@ -163,4 +163,16 @@ public class TopLevelBatteryPreferenceControllerTest {
         assertThat(mController.getSummary())
                 .isEqualTo(mContext.getString(R.string.battery_missing_message));
     }
+
+    @Test
+    public void getSummaryInBackground_batteryInfoNotLoaded_returnsNull() {
+        assertThat(mController.getSummaryInBackground()).isNull();
+    }
+
+    @Test
+    public void getSummaryInBackground_batteryNotPresent_shouldShowWarningMessage() {
+        mController.mIsBatteryPresent = false;
+        assertThat(mController.getSummaryInBackground())
+                .isEqualTo(mContext.getString(R.string.battery_missing_message));
+    }
 }
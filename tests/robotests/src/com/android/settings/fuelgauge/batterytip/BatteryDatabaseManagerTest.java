@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatteryDatabaseManagerTest {
+    private static final int UID_NEW = 345;
+    private static final int UID_OLD = 543;
+    private static final int UID_HANDLED = 111;
+    private static final String PACKAGE_NAME_NEW = "com.android.app1";
+    private static final String PACKAGE_NAME_OLD = "com.android.app2";
+    private static final String PACKAGE_NAME_HANDLED = "com.android.app3";
+    private static final int TYPE = 1;
+    private static final long NOW = System.currentTimeMillis();
+    private static final long ONE_DAY_BEFORE = NOW - 24 * 60 * 60 * 1000;
+    private static final long TWO_DAYS_BEFORE = NOW - 2 * 24 * 60 * 60 * 1000;
+
+    private Context mContext;
+    private BatteryDatabaseManager mBatteryDatabaseManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mBatteryDatabaseManager = BatteryDatabaseManager.getInstance(mContext);
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void queryAllAnomalies_filterByTimeAndState() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE,
+                AnomalyDatabaseHelper.State.NEW, TWO_DAYS_BEFORE);
+        mBatteryDatabaseManager.insertAnomaly(UID_HANDLED, PACKAGE_NAME_HANDLED, TYPE,
+                AnomalyDatabaseHelper.State.HANDLED, NOW);
+
+        final List<AppInfo> newAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                ONE_DAY_BEFORE, AnomalyDatabaseHelper.State.NEW);
+
+        assertThat(newAppInfos).hasSize(1);
+        assertThat(newAppInfos.get(0).uid).isEqualTo(UID_NEW);
+        assertThat(newAppInfos.get(0).packageName).isEqualTo(PACKAGE_NAME_NEW);
+    }
+
+    @Test
+    public void updateAnomalies_updatesStateOfGivenPackages() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        final AppInfo appInfo = new AppInfo.Builder()
+                .setUid(UID_NEW)
+                .setPackageName(PACKAGE_NAME_NEW)
+                .build();
+
+        mBatteryDatabaseManager.updateAnomalies(List.of(appInfo),
+                AnomalyDatabaseHelper.State.HANDLED);
+
+        final List<AppInfo> newAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.NEW);
+        final List<AppInfo> handledAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.HANDLED);
+        assertThat(newAppInfos).hasSize(1);
+        assertThat(newAppInfos.get(0).uid).isEqualTo(UID_OLD);
+        assertThat(handledAppInfos).hasSize(1);
+        assertThat(handledAppInfos.get(0).uid).isEqualTo(UID_NEW);
+    }
+
+    @Test
+    public void updateAnomalies_sharedUid_onlyUpdatesGivenPackage() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_OLD, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW - 1);
+        final AppInfo appInfo = new AppInfo.Builder()
+                .setUid(UID_NEW)
+                .setPackageName(PACKAGE_NAME_NEW)
+                .build();
+
+        mBatteryDatabaseManager.updateAnomalies(List.of(appInfo),
+                AnomalyDatabaseHelper.State.HANDLED);
+
+        final List<AppInfo> newAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.NEW);
+        final List<AppInfo> handledAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.HANDLED);
+        assertThat(newAppInfos).hasSize(1);
+        assertThat(newAppInfos.get(0).packageName).isEqualTo(PACKAGE_NAME_OLD);
+        assertThat(handledAppInfos).hasSize(1);
+        assertThat(handledAppInfos.get(0).packageName).isEqualTo(PACKAGE_NAME_NEW);
+    }
+
+    @Test
+    public void updateAnomalies_calledTwice_reuseCompiledStatement() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        final SQLiteDatabase db =
+                AnomalyDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        final SQLiteStatement statement =
+                mBatteryDatabaseManager.getUpdateAnomalyStateStatement(db);
+
+        mBatteryDatabaseManager.updateAnomalies(List.of(
+                new AppInfo.Builder().setUid(UID_NEW).setPackageName(PACKAGE_NAME_NEW).build(),
+                new AppInfo.Builder().setUid(UID_OLD).setPackageName(PACKAGE_NAME_OLD).build()),
+                AnomalyDatabaseHelper.State.HANDLED);
+        mBatteryDatabaseManager.updateAnomalies(List.of(
+                new AppInfo.Builder().setUid(UID_OLD).setPackageName(PACKAGE_NAME_OLD).build()),
+                AnomalyDatabaseHelper.State.AUTO_HANDLED);
+
+        assertThat(mBatteryDatabaseManager.getUpdateAnomalyStateStatement(db))
+                .isSameInstanceAs(statement);
+        final List<AppInfo> handledAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.HANDLED);
+        final List<AppInfo> autoHandledAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                TWO_DAYS_BEFORE, AnomalyDatabaseHelper.State.AUTO_HANDLED);
+        assertThat(handledAppInfos).hasSize(1);
+        assertThat(handledAppInfos.get(0).packageName).isEqualTo(PACKAGE_NAME_NEW);
+        assertThat(autoHandledAppInfos).hasSize(1);
+        assertThat(autoHandledAppInfos.get(0).packageName).isEqualTo(PACKAGE_NAME_OLD);
+    }
+
+    @Test
+    public void getDatabase_writeAheadLoggingAndTimeStateIndex() {
+        final SQLiteDatabase db =
+                AnomalyDatabaseHelper.getInstance(mContext).getReadableDatabase();
+
+        assertThat(db.isWriteAheadLoggingEnabled()).isTrue();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?",
+                new String[]{AnomalyDatabaseHelper.Tables.TABLE_ANOMALY})) {
+            boolean found = false;
+            while (cursor.moveToNext()) {
+                found |= "anomaly_time_state_index".equals(cursor.getString(0));
+            }
+            assertThat(found).isTrue();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.os.BatteryUsageStats;
+
+import com.android.settings.fuelgauge.BatteryInfo;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.IncompatibleChargerTip;
+import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.SmartBatteryTip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryTipDetectorEngineTest {
+    private static final long TIMEOUT_MS = 1000;
+
+    private final AtomicInteger mBatteryInfoCount = new AtomicInteger();
+    private BatteryTipDetectorEngine.Inputs mInputs;
+
+    @Before
+    public void setUp() {
+        final Context context = RuntimeEnvironment.application;
+        mInputs = new BatteryTipDetectorEngine.Inputs(context, new BatteryTipPolicy(context),
+                mock(BatteryUsageStats.class), /* isPowerSaveMode= */ false);
+    }
+
+    @After
+    public void tearDown() {
+        BatteryTipDetectorEngine.clearCache();
+    }
+
+    @Test
+    public void detect_independentDetectors_runConcurrently() {
+        // Each detector waits for the other one to start, which only happens if they overlap.
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicInteger overlapCount = new AtomicInteger();
+        final BatteryTipDetectorEngine engine = new BatteryTipDetectorEngine(List.of(
+                createSpec("first", TIMEOUT_MS, () -> awaitOther(latch, overlapCount,
+                        new SmartBatteryTip(BatteryTip.StateType.NEW))),
+                createSpec("second", TIMEOUT_MS, () -> awaitOther(latch, overlapCount,
+                        new LowBatteryTip(BatteryTip.StateType.NEW,
+                                /* powerSaveModeOn= */ false)))));
+
+        final List<BatteryTip> tips = engine.detect(mInputs, this::createBatteryInfo);
+
+        assertThat(overlapCount.get()).isEqualTo(2);
+        assertThat(tips).hasSize(2);
+        // A timed out detector would be replaced by its invisible tip.
+        assertThat(tips.get(0).getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(tips.get(1).getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(dump()).contains("timeouts=0");
+        assertThat(dump()).doesNotContain("timeouts=1");
+        assertThat(mBatteryInfoCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void detect_detectorTimedOut_returnInvisibleTipAndCancelDetector() throws Exception {
+        // Only counted down once by the slow detector, so it waits until interrupted.
+        final CountDownLatch never = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final BatteryTipDetectorEngine engine = new BatteryTipDetectorEngine(List.of(
+                createSpec("slow", /* timeoutMs= */ 50, () -> {
+                    never.countDown();
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return new SmartBatteryTip(BatteryTip.StateType.NEW);
+                }),
+                createSpec("fast", TIMEOUT_MS,
+                        () -> new IncompatibleChargerTip(BatteryTip.StateType.NEW))));
+
+        final List<BatteryTip> tips = engine.detect(mInputs, this::createBatteryInfo);
+
+        assertThat(tips).hasSize(2);
+        assertThat(tips.get(0).getType()).isEqualTo(BatteryTip.TipType.INCOMPATIBLE_CHARGER);
+        assertThat(tips.get(0).getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(tips.get(1).getType()).isEqualTo(BatteryTip.TipType.SMART_BATTERY_MANAGER);
+        assertThat(tips.get(1).getState()).isEqualTo(BatteryTip.StateType.INVISIBLE);
+        assertThat(dump()).contains("slow: runs=");
+        assertThat(dump()).contains("timeouts=1");
+        assertThat(interrupted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void detect_slowBatteryInfo_notCountedInDetectorTimeout() {
+        final BatteryTipDetectorEngine engine = new BatteryTipDetectorEngine(List.of(
+                createSpec("low", /* timeoutMs= */ 50, () -> new LowBatteryTip(
+                        BatteryTip.StateType.NEW, /* powerSaveModeOn= */ false))));
+
+        final List<BatteryTip> tips = engine.detect(mInputs, () -> {
+            try {
+                Thread.sleep(/* millis= */ 200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return createBatteryInfo();
+        });
+
+        assertThat(tips).hasSize(1);
+        assertThat(tips.get(0).getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(dump()).doesNotContain("timeouts=1");
+    }
+
+    @Test
+    public void detect_sameMemoKey_detectorRunsOnce() {
+        final AtomicInteger detectCount = new AtomicInteger();
+        final BatteryTipDetectorEngine engine = new BatteryTipDetectorEngine(List.of(
+                new BatteryTipDetectorEngine.DetectorSpec("memoized",
+                        /* needsBatteryInfo= */ true, TIMEOUT_MS,
+                        (inputs, info) -> () -> {
+                            detectCount.incrementAndGet();
+                            return new SmartBatteryTip(BatteryTip.StateType.NEW);
+                        },
+                        (inputs, info) -> "window",
+                        inputs -> new SmartBatteryTip(BatteryTip.StateType.INVISIBLE))));
+
+        final BatteryTip first = engine.detect(mInputs, this::createBatteryInfo).get(0);
+        final BatteryTip second = engine.detect(mInputs, this::createBatteryInfo).get(0);
+
+        assertThat(detectCount.get()).isEqualTo(1);
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(second.getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(dump()).contains("memoized: runs=1 memoHits=1");
+    }
+
+    private BatteryTipDetectorEngine.DetectorSpec createSpec(String name, long timeoutMs,
+            Supplier<BatteryTip> tipSupplier) {
+        return new BatteryTipDetectorEngine.DetectorSpec(name, /* needsBatteryInfo= */ true,
+                timeoutMs, (inputs, info) -> tipSupplier::get, /* memoKey= */ null,
+                inputs -> new SmartBatteryTip(BatteryTip.StateType.INVISIBLE));
+    }
+
+    private BatteryInfo createBatteryInfo() {
+        mBatteryInfoCount.incrementAndGet();
+        return mock(BatteryInfo.class);
+    }
+
+    private static BatteryTip awaitOther(CountDownLatch latch, AtomicInteger overlapCount,
+            BatteryTip tip) {
+        latch.countDown();
+        try {
+            if (latch.await(TIMEOUT_MS / 2, TimeUnit.MILLISECONDS)) {
+                overlapCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return tip;
+    }
+
+    private static String dump() {
+        final StringWriter stringWriter = new StringWriter();
+        BatteryTipDetectorEngine.dump(new PrintWriter(stringWriter));
+        return stringWriter.toString();
+    }
+}
@@ -83,6 +83,7 @@ public class BatteryTipLoaderTest {
 
     @After
     public void tearDown() {
+        BatteryTipDetectorEngine.clearCache();
         ReflectionHelpers.setStaticField(AppLabelPredicate.class, "sInstance", null);
         ReflectionHelpers.setStaticField(AppRestrictionPredicate.class, "sInstance", null);
     }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.RemoteException;
+import android.util.ArrayMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppUsagePeriodBuilderTest {
+    private static final String PACKAGE_NAME = "com.android.settings";
+    private static final long HOUR = 3600000L;
+    // Three hourly slots from 10:00 to 13:00.
+    private static final List<Long> TIMESTAMPS =
+            List.of(10 * HOUR, 11 * HOUR, 12 * HOUR, 13 * HOUR);
+
+    private Context mContext;
+    private AppUsagePeriodBuilder mBuilder;
+    private List<BatteryLevelData.PeriodBatteryLevelData> mHourlyBatteryLevelsPerDay;
+
+    @Mock private IUsageStatsManager mUsageStatsManager;
+
+    @Before
+    public void setUp() throws RemoteException {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        doReturn(UsageStatsManager.USAGE_SOURCE_CURRENT_ACTIVITY)
+                .when(mUsageStatsManager).getUsageSource();
+        DataProcessor.sUsageStatsManager = mUsageStatsManager;
+        mBuilder = new AppUsagePeriodBuilder();
+        mHourlyBatteryLevelsPerDay = createHourlyBatteryLevelsPerDay(TIMESTAMPS);
+    }
+
+    @Test
+    public void build_multipleInstancesAndUsers_groupedByUserAndPackage() {
+        final String packageName1 = "com.android.settings1";
+        final String packageName2 = "com.android.settings2";
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                // Fake multiple instances in one package.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 1, /*userId=*/ 1,
+                        /*instanceId=*/ 2, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 2, /*userId=*/ 1,
+                        /*instanceId=*/ 2, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 3, /*userId=*/ 1,
+                        /*instanceId=*/ 2, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 4, /*userId=*/ 1,
+                        /*instanceId=*/ 2, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 2, /*userId=*/ 1,
+                        /*instanceId=*/ 3, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 4, /*userId=*/ 1,
+                        /*instanceId=*/ 3, packageName1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 2, /*userId=*/ 1,
+                        /*instanceId=*/ 5, packageName2),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 4, /*userId=*/ 1,
+                        /*instanceId=*/ 5, packageName2),
+                // Fake one instance in one package.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 1, /*userId=*/ 2,
+                        /*instanceId=*/ 4, packageName2),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 2, /*userId=*/ 2,
+                        /*instanceId=*/ 4, packageName2),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 3, /*userId=*/ 2,
+                        /*instanceId=*/ 4, packageName2),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 4, /*userId=*/ 2,
+                        /*instanceId=*/ 4, packageName2)));
+        events.sort(DataProcessor.APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
+
+        final Map<Long, Map<String, List<AppUsagePeriod>>> periodMap =
+                build(events, List.of(0L, 5L)).get(0).get(0);
+
+        assertThat(periodMap).hasSize(2);
+        final Map<String, List<AppUsagePeriod>> userMap1 = periodMap.get(1L);
+        assertThat(userMap1).hasSize(2);
+        List<AppUsagePeriod> periods = userMap1.get(packageName1);
+        assertThat(periods).hasSize(3);
+        assertPeriod(periods.get(0), 1, 2);
+        assertPeriod(periods.get(1), 2, 4);
+        assertPeriod(periods.get(2), 3, 4);
+        periods = userMap1.get(packageName2);
+        assertThat(periods).hasSize(1);
+        assertPeriod(periods.get(0), 2, 4);
+        final Map<String, List<AppUsagePeriod>> userMap2 = periodMap.get(2L);
+        assertThat(userMap2).hasSize(1);
+        periods = userMap2.get(packageName2);
+        assertThat(periods).hasSize(2);
+        assertPeriod(periods.get(0), 1, 2);
+        assertPeriod(periods.get(1), 3, 4);
+    }
+
+    @Test
+    public void build_emptyEventList_noPeriodInSlot() {
+        assertThat(build(new ArrayList<>(), List.of(0L, 1L)).get(0).get(0)).isNull();
+    }
+
+    @Test
+    public void build_onlyShutdownEvents_noPeriodInSlot() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.DEVICE_SHUTDOWN, 1, /*instanceId=*/ 0),
+                buildEvent(AppUsageEventType.DEVICE_SHUTDOWN, 2, /*instanceId=*/ 0)));
+
+        assertThat(build(events, List.of(0L, 3L)).get(0).get(0)).isNull();
+    }
+
+    @Test
+    public void build_oneInstance_periodsTrimmedAndCompleted() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                // Fake data earlier than time range.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 1, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 2, /*instanceId=*/ 1),
+                // Fake resume event earlier than time range.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 3, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 120000, /*instanceId=*/ 1),
+                // Fake normal data.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 150000, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 200000, /*instanceId=*/ 1),
+                // Fake two adjacent resume events.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 300000, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 400000, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 500000, /*instanceId=*/ 1),
+                // Fake no start event when stop event happens.
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 600000, /*instanceId=*/ 1),
+                // There exists start event when device shutdown event happens. Shutdown is
+                // later than default complete time.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 700000, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.DEVICE_SHUTDOWN, 800000, /*instanceId=*/ 0),
+                // There exists start event when device shutdown event happens. Shutdown is
+                // earlier than default complete time.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 900000, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.DEVICE_SHUTDOWN, 910000, /*instanceId=*/ 0),
+                // There exists start event when the period ends.
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 1000000, /*instanceId=*/ 1)));
+
+        final List<AppUsagePeriod> periods = build(events, List.of(100000L, 1100000L))
+                .get(0).get(0).get(0L).get(PACKAGE_NAME);
+
+        assertThat(periods).hasSize(7);
+        assertPeriod(periods.get(0), 100000, 120000);
+        assertPeriod(periods.get(1), 150000, 200000);
+        assertPeriod(periods.get(2), 300000, 500000);
+        assertPeriod(periods.get(3), 570000, 600000);
+        assertPeriod(periods.get(4), 700000, 730000);
+        assertPeriod(periods.get(5), 900000, 910000);
+        assertPeriod(periods.get(6), 1000000, 1100000);
+    }
+
+    @Test
+    public void build_periodAcrossSlots_splitAtSlotBoundaries() {
+        // Resumed long before the buffer of the first slot.
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 5 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 11 * HOUR + 600000L,
+                        /*instanceId=*/ 1)));
+
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                build(events);
+
+        assertPeriods(periodMap.get(0).get(0), 10 * HOUR, 11 * HOUR);
+        assertPeriods(periodMap.get(0).get(1), 11 * HOUR, 11 * HOUR + 600000L);
+        assertThat(periodMap.get(0).get(2)).isNull();
+    }
+
+    @Test
+    public void build_openPeriodAndShutdown_closedAsTheLegacyBuilder() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.DEVICE_SHUTDOWN, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 0),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 12 * HOUR + 1800000L,
+                        /*instanceId=*/ 2)));
+
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                build(events);
+
+        assertPeriods(periodMap.get(0).get(0), 10 * HOUR,
+                10 * HOUR + DataProcessor.DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL);
+        assertThat(periodMap.get(0).get(1)).isNull();
+        assertPeriods(periodMap.get(0).get(2), 12 * HOUR + 1800000L, 13 * HOUR);
+    }
+
+    @Test
+    public void build_eventsAppended_onlyProcessesNewEvents() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 11 * HOUR, /*instanceId=*/ 2)));
+        build(events);
+
+        events.add(buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 11 * HOUR + 600000L,
+                /*instanceId=*/ 2));
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                build(events);
+
+        assertThat(mBuilder.getLastNewEventCount()).isEqualTo(1);
+        assertPeriods(periodMap.get(0).get(0), 10 * HOUR, 10 * HOUR + 600000L);
+        assertPeriods(periodMap.get(0).get(1), 11 * HOUR, 11 * HOUR + 600000L);
+        assertThat(periodMap.get(0).get(2)).isNull();
+    }
+
+    @Test
+    public void build_processedEventsChanged_processesAllEvents() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 1)));
+        build(events);
+
+        events.add(0, buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR - 1,
+                /*instanceId=*/ 1));
+        build(events);
+
+        assertThat(mBuilder.getLastNewEventCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void build_oldEventsDropped_processesAllEvents() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 11 * HOUR, /*instanceId=*/ 2)));
+        build(events);
+
+        events.remove(0);
+        events.add(buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 11 * HOUR + 600000L,
+                /*instanceId=*/ 2));
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                build(events);
+
+        assertThat(mBuilder.getLastNewEventCount()).isEqualTo(3);
+        // Without its resume event, the first instance only has the default usage duration.
+        assertPeriods(periodMap.get(0).get(0), 10 * HOUR + 600000L
+                - DataProcessor.DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL,
+                10 * HOUR + 600000L);
+        assertPeriods(periodMap.get(0).get(1), 11 * HOUR, 11 * HOUR + 600000L);
+    }
+
+    @Test
+    public void build_emptyListThenEventsAppended_processesAllEvents() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 1)));
+        build(events);
+        build(new ArrayList<>());
+
+        events.add(buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 11 * HOUR, /*instanceId=*/ 2));
+        events.add(buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 11 * HOUR + 600000L,
+                /*instanceId=*/ 2));
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                build(events);
+
+        assertThat(mBuilder.getLastNewEventCount()).isEqualTo(4);
+        assertPeriods(periodMap.get(0).get(0), 10 * HOUR, 10 * HOUR + 600000L);
+        assertPeriods(periodMap.get(0).get(1), 11 * HOUR, 11 * HOUR + 600000L);
+    }
+
+    @Test
+    public void build_separateBuilders_doNotShareState() {
+        final List<AppUsageEvent> events = new ArrayList<>(List.of(
+                buildEvent(AppUsageEventType.ACTIVITY_RESUMED, 10 * HOUR, /*instanceId=*/ 1),
+                buildEvent(AppUsageEventType.ACTIVITY_STOPPED, 10 * HOUR + 600000L,
+                        /*instanceId=*/ 1)));
+        build(events);
+        final AppUsagePeriodBuilder otherBuilder = new AppUsagePeriodBuilder();
+
+        otherBuilder.build(mContext, mHourlyBatteryLevelsPerDay, events, new ArrayList<>());
+
+        assertThat(otherBuilder.getLastNewEventCount()).isEqualTo(2);
+    }
+
+    private Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> build(
+            List<AppUsageEvent> events) {
+        return mBuilder.build(mContext, mHourlyBatteryLevelsPerDay, events, new ArrayList<>());
+    }
+
+    private Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> build(
+            List<AppUsageEvent> events, List<Long> timestamps) {
+        return mBuilder.build(mContext, createHourlyBatteryLevelsPerDay(timestamps), events,
+                new ArrayList<>());
+    }
+
+    private static List<BatteryLevelData.PeriodBatteryLevelData> createHourlyBatteryLevelsPerDay(
+            List<Long> timestamps) {
+        final Map<Long, Integer> levels = new ArrayMap<>();
+        for (int i = 0; i < timestamps.size(); i++) {
+            levels.put(timestamps.get(i), 100 - i * 10);
+        }
+        return List.of(new BatteryLevelData.PeriodBatteryLevelData(levels, timestamps));
+    }
+
+    private static void assertPeriods(Map<Long, Map<String, List<AppUsagePeriod>>> hourlyMap,
+            long startTime, long endTime) {
+        final List<AppUsagePeriod> periods = hourlyMap.get(0L).get(PACKAGE_NAME);
+        assertThat(periods).hasSize(1);
+        assertPeriod(periods.get(0), startTime, endTime);
+    }
+
+    private static void assertPeriod(AppUsagePeriod period, long startTime, long endTime) {
+        assertThat(period.getStartTime()).isEqualTo(startTime);
+        assertThat(period.getEndTime()).isEqualTo(endTime);
+    }
+
+    private static AppUsageEvent buildEvent(
+            AppUsageEventType type, long timestamp, int instanceId) {
+        return buildEvent(type, timestamp, /*userId=*/ 0, instanceId, PACKAGE_NAME);
+    }
+
+    private static AppUsageEvent buildEvent(AppUsageEventType type, long timestamp, long userId,
+            int instanceId, String packageName) {
+        return AppUsageEvent.newBuilder()
+                .setType(type)
+                .setTimestamp(timestamp)
+                .setUserId(userId)
+                .setPackageName(packageName)
+                .setInstanceId(instanceId)
+                .build();
+    }
+}
@@ -120,8 +120,9 @@ public final class BatteryChartPreferenceControllerTest {
         mBatteryChartPreferenceController.mHourlyChartView = mHourlyChartView;
         BatteryDiffEntry.clearCache();
         // Adds fake testing data.
-        BatteryDiffEntry.sResourceCache.put(
-                "fakeBatteryDiffEntryKey",
+        BatteryResourceCache.putNameAndIcon(
+                new BatteryResourceCache.Key("fakeBatteryDiffEntryKey", /*uid=*/ 0,
+                        /*userId=*/ 0, /*packageName=*/ null),
                 new BatteryEntry.NameAndIcon("fakeName", /*icon=*/ null, /*iconId=*/ 1));
     }
 
@@ -129,20 +130,20 @@ public final class BatteryChartPreferenceControllerTest {
     public void onDestroy_activityIsChanging_clearBatteryEntryCache() {
         doReturn(true).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
     }
 
     @Test
     public void onDestroy_activityIsNotChanging_notClearBatteryEntryCache() {
         doReturn(false).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isNotEmpty();
+        assertThat(BatteryResourceCache.size()).isNotEqualTo(0);
     }
 
     @Test
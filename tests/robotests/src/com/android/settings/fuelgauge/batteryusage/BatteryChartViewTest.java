@@ -20,8 +20,13 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.spy;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.os.LocaleList;
+import android.os.SystemClock;
+import android.view.MotionEvent;
 import android.view.View;
+import android.widget.TextView;
 
 import com.android.settings.fuelgauge.PowerUsageFeatureProvider;
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -39,6 +44,9 @@ import java.util.Locale;
 
 @RunWith(RobolectricTestRunner.class)
 public final class BatteryChartViewTest {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 400;
+    private static final int DRAW_COUNT = 100;
 
     private Context mContext;
     private BatteryChartView mBatteryChartView;
@@ -90,4 +98,70 @@ public final class BatteryChartViewTest {
         mBatteryChartView.onClick(mMockView);
         assertThat(selectedIndex[0]).isEqualTo(BatteryChartViewModel.SELECTED_INDEX_ALL);
     }
+
+    @Test
+    public void draw_scrubbingBetweenSlots_reusesRenderModel() {
+        final BatteryChartViewModel viewModel = createViewModel();
+        final BatteryChartView chartView = createMeasuredChartView(viewModel);
+        final Canvas canvas = new Canvas(
+                Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+        for (int i = 0; i < DRAW_COUNT; i++) {
+            final float x = WIDTH * (i % 10) / 10f;
+            final MotionEvent event = MotionEvent.obtain(SystemClock.uptimeMillis(),
+                    SystemClock.uptimeMillis(), MotionEvent.ACTION_HOVER_MOVE, x, HEIGHT / 2f,
+                    /* metaState= */ 0);
+            chartView.onHoverEvent(event);
+            event.recycle();
+            viewModel.setSelectedIndex(i % (viewModel.size() - 1));
+            chartView.draw(canvas);
+        }
+
+        assertThat(chartView.mRenderModelUpdateCount).isEqualTo(1);
+    }
+
+    @Test
+    public void draw_sizeOrViewModelChanged_updatesRenderModel() {
+        final BatteryChartView chartView = createMeasuredChartView(createViewModel());
+        final Canvas canvas = new Canvas(
+                Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        chartView.draw(canvas);
+
+        chartView.layout(0, 0, WIDTH / 2, HEIGHT);
+        chartView.draw(canvas);
+        assertThat(chartView.mRenderModelUpdateCount).isEqualTo(2);
+
+        chartView.setViewModel(createViewModel());
+        chartView.draw(canvas);
+        assertThat(chartView.mRenderModelUpdateCount).isEqualTo(3);
+    }
+
+    private BatteryChartView createMeasuredChartView(BatteryChartViewModel viewModel) {
+        final BatteryChartView chartView = new BatteryChartView(mContext, /* attrs= */ null);
+        chartView.setCompanionTextView(new TextView(mContext));
+        chartView.setViewModel(viewModel);
+        chartView.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        chartView.layout(0, 0, WIDTH, HEIGHT);
+        return chartView;
+    }
+
+    private static BatteryChartViewModel createViewModel() {
+        return new BatteryChartViewModel(
+                List.of(100, 95, 90, 85, 80, 75, 70, 65, 60, 55, 50, 45, 40),
+                List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L),
+                BatteryChartViewModel.AxisLabelPosition.BETWEEN_TRAPEZOIDS,
+                new BatteryChartViewModel.LabelTextGenerator() {
+                    @Override
+                    public String generateText(List<Long> timestamps, int index) {
+                        return index + "h";
+                    }
+
+                    @Override
+                    public String generateFullText(List<Long> timestamps, int index) {
+                        return index + " hours";
+                    }
+                });
+    }
 }
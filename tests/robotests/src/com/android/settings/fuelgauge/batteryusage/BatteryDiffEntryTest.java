@@ -199,15 +199,15 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIconId()).isEqualTo(R.drawable.ic_settings_aod);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryResourceCache.get(mContext, entry.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(R.drawable.ic_settings_aod);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
-        assertThat(BatteryDiffEntry.sValidForRestriction.get(entry.getKey())).isFalse();
+        assertThat(BatteryResourceCache.get(mContext, entry.getCacheKey()).mValidForRestriction).isFalse();
     }
 
     @Test
@@ -225,15 +225,15 @@ public final class BatteryDiffEntryTest {
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIcon()).isNull();
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryResourceCache.get(mContext, entry.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(0);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
-        assertThat(BatteryDiffEntry.sValidForRestriction.get(entry.getKey())).isFalse();
+        assertThat(BatteryResourceCache.get(mContext, entry.getCacheKey()).mValidForRestriction).isFalse();
     }
 
     @Test
@@ -254,14 +254,14 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryResourceCache.get(mContext, entry.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
-        assertThat(BatteryDiffEntry.sValidForRestriction.get(entry.getKey())).isFalse();
+        assertThat(BatteryResourceCache.get(mContext, entry.getCacheKey()).mValidForRestriction).isFalse();
     }
 
     @Test
@@ -274,10 +274,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryResourceCache.get(mContext, entry.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
     }
 
@@ -299,7 +299,7 @@ public final class BatteryDiffEntryTest {
 
         entry.mIsLoaded = true;
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
     }
 
     @Test
@@ -314,7 +314,7 @@ public final class BatteryDiffEntryTest {
         entry.mIsLoaded = true;
         entry.mAppIcon = mMockDrawable;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
     }
 
     @Test
@@ -339,25 +339,24 @@ public final class BatteryDiffEntryTest {
 
         entry.mAppIcon = null;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryResourceCache.get(mContext, entry.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable);
     }
 
     @Test
     public void testClearCache_clearDataForResourcesAndFlags() {
-        BatteryDiffEntry.sResourceCache.put(
-                "fake application key",
-                new BatteryEntry.NameAndIcon("app label", null, /*iconId=*/ 0));
-        BatteryDiffEntry.sValidForRestriction.put(
-                "fake application key", Boolean.valueOf(false));
+        final BatteryResourceCache.Key key = new BatteryResourceCache.Key(
+                "fake application key", /*uid=*/ 1001, /*userId=*/ 0, "com.fake.package");
+        BatteryResourceCache.putNameAndIcon(
+                key, new BatteryEntry.NameAndIcon("app label", null, /*iconId=*/ 0));
+        BatteryResourceCache.putValidForRestriction(key, false);
 
         BatteryDiffEntry.clearCache();
 
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
-        assertThat(BatteryDiffEntry.sValidForRestriction).isEmpty();
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
     }
 
     @Test
@@ -377,7 +376,7 @@ public final class BatteryDiffEntryTest {
         assertThat(entry2.getAppIcon()).isEqualTo(mMockDrawable2);
         // Verifies the cache is updated into the new drawable.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry2.getKey());
+                BatteryResourceCache.get(mContext, entry2.getCacheKey()).mNameAndIcon;
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable2);
     }
 
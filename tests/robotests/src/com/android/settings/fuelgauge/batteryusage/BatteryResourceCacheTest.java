@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryResourceCacheTest {
+    private static final String PACKAGE_NAME = "com.android.testing.package";
+    private static final BatteryResourceCache.Key KEY =
+            new BatteryResourceCache.Key("1001", /*uid=*/ 1001, /*userId=*/ 0, PACKAGE_NAME);
+    private static final BatteryResourceCache.Key OTHER_KEY =
+            new BatteryResourceCache.Key("1002", /*uid=*/ 1002, /*userId=*/ 0, "com.other");
+
+    private Context mContext;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mDefaultLocale = Locale.getDefault();
+        BatteryResourceCache.resetForTesting();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void put_nameAndIconAndRestriction_mergedIntoOneEntry() {
+        final BatteryEntry.NameAndIcon nameAndIcon =
+                new BatteryEntry.NameAndIcon("label", /*icon=*/ null, /*iconId=*/ 1);
+
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+        BatteryResourceCache.putNameAndIcon(KEY, nameAndIcon);
+
+        final BatteryResourceCache.Resource resource = BatteryResourceCache.get(mContext, KEY);
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
+        assertThat(resource.mNameAndIcon).isSameInstanceAs(nameAndIcon);
+        assertThat(resource.mValidForRestriction).isTrue();
+    }
+
+    @Test
+    public void get_localeChanged_keepsOnlyRestriction() {
+        BatteryResourceCache.get(mContext, KEY);
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+        BatteryResourceCache.putNameAndIcon(KEY,
+                new BatteryEntry.NameAndIcon("label", /*icon=*/ null, /*iconId=*/ 1));
+        BatteryResourceCache.putNameAndIcon(OTHER_KEY,
+                new BatteryEntry.NameAndIcon("other", /*icon=*/ null, /*iconId=*/ 1));
+
+        Locale.setDefault(Locale.GERMANY.equals(mDefaultLocale) ? Locale.FRANCE : Locale.GERMANY);
+
+        final BatteryResourceCache.Resource resource = BatteryResourceCache.get(mContext, KEY);
+        assertThat(resource.mNameAndIcon).isNull();
+        assertThat(resource.mValidForRestriction).isTrue();
+        assertThat(BatteryResourceCache.get(mContext, OTHER_KEY)).isNull();
+    }
+
+    @Test
+    public void packageChangedBroadcast_dropsEntriesOfPackageOnly() {
+        BatteryResourceCache.get(mContext, KEY);
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+        BatteryResourceCache.putValidForRestriction(OTHER_KEY, true);
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", PACKAGE_NAME, /*fragment=*/ null)));
+        ShadowLooper.idleMainLooper();
+
+        assertThat(BatteryResourceCache.get(mContext, KEY)).isNull();
+        assertThat(BatteryResourceCache.get(mContext, OTHER_KEY)).isNotNull();
+    }
+
+    @Test
+    public void invalidatePackage_sharedUid_dropsEntriesOfUid() {
+        final BatteryResourceCache.Key sharedUidKey =
+                new BatteryResourceCache.Key("1001", /*uid=*/ 1001, /*userId=*/ 0, "com.shared");
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+        BatteryResourceCache.putValidForRestriction(sharedUidKey, true);
+
+        BatteryResourceCache.invalidatePackage(PACKAGE_NAME, /*uid=*/ 1001);
+
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void size_manyEntries_boundedByMaxEntries() {
+        for (int i = 0; i < BatteryResourceCache.MAX_ENTRIES * 2; i++) {
+            BatteryResourceCache.putValidForRestriction(new BatteryResourceCache.Key(
+                    Integer.toString(i), i, /*userId=*/ 0, /*packageName=*/ null), true);
+        }
+
+        assertThat(BatteryResourceCache.size()).isEqualTo(BatteryResourceCache.MAX_ENTRIES);
+    }
+
+    @Test
+    public void dump_writesHitRate() {
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+        BatteryResourceCache.get(mContext, KEY);
+        BatteryResourceCache.get(mContext, OTHER_KEY);
+        final StringWriter stringWriter = new StringWriter();
+
+        BatteryResourceCache.dump(new PrintWriter(stringWriter));
+
+        assertThat(stringWriter.toString()).contains("hits=1/2 (50.0%)");
+    }
+
+    @Test
+    public void invalidatePackage_invalidUid_keepsOtherEntriesOfUid() {
+        BatteryResourceCache.putValidForRestriction(KEY, true);
+
+        BatteryResourceCache.invalidatePackage("com.other", Process.INVALID_UID);
+
+        assertThat(BatteryResourceCache.size()).isEqualTo(1);
+    }
+}
@@ -120,8 +120,9 @@ public final class BatteryUsageBreakdownControllerTest {
                         Set.of(), Set.of(), /* isAccumulated= */ false);
         BatteryDiffEntry.clearCache();
         // Adds fake testing data.
-        BatteryDiffEntry.sResourceCache.put(
-                "fakeBatteryDiffEntryKey",
+        BatteryResourceCache.putNameAndIcon(
+                new BatteryResourceCache.Key("fakeBatteryDiffEntryKey", /*uid=*/ 0,
+                        /*userId=*/ 0, /*packageName=*/ null),
                 new BatteryEntry.NameAndIcon("fakeName", /*icon=*/ null, /*iconId=*/ 1));
         doReturn(mAnomalyAppItemPreference).when(mAppListPreferenceGroup).findPreference(PREF_KEY);
     }
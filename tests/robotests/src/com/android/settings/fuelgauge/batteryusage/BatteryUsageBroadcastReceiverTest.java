@@ -219,14 +219,16 @@ public final class BatteryUsageBroadcastReceiverTest {
     public void onReceive_clearCacheIntentInDebugMode_clearBatteryCacheData() {
         BatteryUsageBroadcastReceiver.sIsDebugMode = true;
         // Insert testing data first.
-        BatteryDiffEntry.sValidForRestriction.put(
-                /*packageName*/ "com.android.testing_package", Boolean.valueOf(true));
-        assertThat(BatteryDiffEntry.sValidForRestriction).isNotEmpty();
+        BatteryResourceCache.putValidForRestriction(
+                new BatteryResourceCache.Key("fakeBatteryDiffEntryKey", /*uid=*/ 0,
+                        /*userId=*/ 0, /*packageName=*/ "com.android.testing_package"),
+                /*validForRestriction=*/ true);
+        assertThat(BatteryResourceCache.size()).isNotEqualTo(0);
 
         mBatteryUsageBroadcastReceiver.onReceive(mContext,
                 new Intent(BatteryUsageBroadcastReceiver.ACTION_CLEAR_BATTERY_CACHE_DATA));
 
-        assertThat(BatteryDiffEntry.sValidForRestriction).isEmpty();
+        assertThat(BatteryResourceCache.size()).isEqualTo(0);
         assertSharedPreferences(
                 BatteryUsageBroadcastReceiver.ACTION_CLEAR_BATTERY_CACHE_DATA);
     }
@@ -235,14 +237,16 @@ public final class BatteryUsageBroadcastReceiverTest {
     public void onReceive_clearCacheIntentInNotDebugMode_notClearBatteryCacheData() {
         BatteryUsageBroadcastReceiver.sIsDebugMode = false;
         // Insert testing data first.
-        BatteryDiffEntry.sValidForRestriction.put(
-                /*packageName*/ "com.android.testing_package", Boolean.valueOf(true));
-        assertThat(BatteryDiffEntry.sValidForRestriction).isNotEmpty();
+        BatteryResourceCache.putValidForRestriction(
+                new BatteryResourceCache.Key("fakeBatteryDiffEntryKey", /*uid=*/ 0,
+                        /*userId=*/ 0, /*packageName=*/ "com.android.testing_package"),
+                /*validForRestriction=*/ true);
+        assertThat(BatteryResourceCache.size()).isNotEqualTo(0);
 
         mBatteryUsageBroadcastReceiver.onReceive(mContext,
                 new Intent(BatteryUsageBroadcastReceiver.ACTION_CLEAR_BATTERY_CACHE_DATA));
 
-        assertThat(BatteryDiffEntry.sValidForRestriction).isNotEmpty();
+        assertThat(BatteryResourceCache.size()).isNotEqualTo(0);
         assertSharedPreferences(
                 BatteryUsageBroadcastReceiver.ACTION_CLEAR_BATTERY_CACHE_DATA);
     }
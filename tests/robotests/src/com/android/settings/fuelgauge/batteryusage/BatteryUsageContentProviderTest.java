@@ -19,7 +19,9 @@ package com.android.settings.fuelgauge.batteryusage;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -31,9 +33,11 @@ import androidx.test.core.app.ApplicationProvider;
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
 import com.android.settings.testutils.BatteryTestUtils;
+import com.android.settings.testutils.BenchmarkRunner;
 import com.android.settings.testutils.FakeClock;
 
 import org.junit.Before;
@@ -44,7 +48,6 @@ import org.robolectric.RobolectricTestRunner;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /** Tests for {@link BatteryUsageContentProvider}. */
 @RunWith(RobolectricTestRunner.class)
@@ -442,6 +445,130 @@ public final class BatteryUsageContentProviderTest {
         assertThat(cursor2.getCount()).isEqualTo(0);
     }
 
+    @Test
+    public void bulkInsert_batteryStates_insertsAllRows() {
+        mProvider.onCreate();
+
+        final int size = mProvider.bulkInsert(
+                VALID_BATTERY_STATE_CONTENT_URI, createBatteryStateValues(/*count=*/ 3));
+
+        assertThat(size).isEqualTo(3);
+        final List<BatteryState> states =
+                BatteryStateDatabase.getInstance(mContext).batteryStateDao().getAllAfter(0);
+        assertThat(states).hasSize(3);
+    }
+
+    @Test
+    public void bulkInsert_batteryEventsAndSlots_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues[] eventValues = new ContentValues[2];
+        for (int i = 0; i < eventValues.length; i++) {
+            eventValues[i] = new ContentValues();
+            eventValues[i].put(BatteryEventEntity.KEY_TIMESTAMP, 10001L + i);
+            eventValues[i].put(BatteryEventEntity.KEY_BATTERY_EVENT_TYPE,
+                    BatteryEventType.POWER_CONNECTED.getNumber());
+            eventValues[i].put(BatteryEventEntity.KEY_BATTERY_LEVEL, 66);
+        }
+        final ContentValues slotValues = new ContentValues();
+        slotValues.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
+        slotValues.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING");
+
+        assertThat(mProvider.bulkInsert(DatabaseUtils.BATTERY_EVENT_URI, eventValues))
+                .isEqualTo(2);
+        assertThat(mProvider.bulkInsert(
+                DatabaseUtils.BATTERY_USAGE_SLOT_URI, new ContentValues[] {slotValues}))
+                .isEqualTo(1);
+
+        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(mContext);
+        assertThat(database.batteryEventDao().getAll()).hasSize(2);
+        assertThat(database.batteryUsageSlotDao().getAll()).hasSize(1);
+    }
+
+    @Test
+    public void bulkInsert_incorrectContentUri_throwsIllegalArgumentException() {
+        mProvider.onCreate();
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> mProvider.bulkInsert(
+                        new Uri.Builder()
+                                .scheme(ContentResolver.SCHEME_CONTENT)
+                                .authority(DatabaseUtils.AUTHORITY)
+                                .appendPath(DatabaseUtils.LAST_FULL_CHARGE_TIMESTAMP_PATH)
+                                .build(),
+                        new ContentValues[0]));
+    }
+
+    @Test
+    public void applyBatch_insertOperations_insertsAllRows() throws Exception {
+        mProvider.onCreate();
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues values : createBatteryStateValues(/*count=*/ 3)) {
+            operations.add(ContentProviderOperation.newInsert(VALID_BATTERY_STATE_CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+
+        assertThat(mProvider.applyBatch(operations)).hasLength(3);
+        assertThat(BatteryStateDatabase.getInstance(mContext).batteryStateDao().getAllAfter(0))
+                .hasSize(3);
+    }
+
+    @Test
+    public void applyBatch_failedOperation_rollsBackAllRows() {
+        mProvider.onCreate();
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues values : createBatteryStateValues(/*count=*/ 2)) {
+            operations.add(ContentProviderOperation.newInsert(VALID_BATTERY_STATE_CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        final ContentValues invalidValues = new ContentValues();
+        invalidValues.put(BatteryEventEntity.KEY_TIMESTAMP, "invalid");
+        operations.add(ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                .withValues(invalidValues)
+                .build());
+
+        assertThrows(RuntimeException.class, () -> mProvider.applyBatch(operations));
+
+        assertThat(BatteryStateDatabase.getInstance(mContext).batteryStateDao().getAllAfter(0))
+                .isEmpty();
+    }
+
+    @Test
+    public void insert_invalidValuesOutsideBatch_returnsNull() {
+        mProvider.onCreate();
+        final ContentValues invalidValues = new ContentValues();
+        invalidValues.put(BatteryEventEntity.KEY_TIMESTAMP, "invalid");
+
+        assertThat(mProvider.insert(DatabaseUtils.BATTERY_EVENT_URI, invalidValues)).isNull();
+    }
+
+    @Test
+    public void bulkInsert_hourlyJobPayload_benchmarkAgainstPerRowInserts() {
+        assumeTrue(BenchmarkRunner.isEnabled());
+        mProvider.onCreate();
+        final BatteryStateDao dao = BatteryStateDatabase.getInstance(mContext).batteryStateDao();
+        final ContentValues[] valuesArray = createBatteryStateValues(/*count=*/ 300);
+        final BenchmarkRunner runner = new BenchmarkRunner("batteryusage");
+
+        final int perRowSize = runner.measure("insertHourlyJob", "perRow", () -> {
+            dao.clearAll();
+            for (ContentValues values : valuesArray) {
+                mProvider.insert(VALID_BATTERY_STATE_CONTENT_URI, values);
+            }
+            return dao.getAllAfter(0).size();
+        });
+        final int bulkSize = runner.measure("insertHourlyJob", "bulk", () -> {
+            dao.clearAll();
+            mProvider.bulkInsert(VALID_BATTERY_STATE_CONTENT_URI, valuesArray);
+            return dao.getAllAfter(0).size();
+        });
+
+        assertThat(perRowSize).isEqualTo(valuesArray.length);
+        assertThat(bulkSize).isEqualTo(valuesArray.length);
+    }
+
     @Test
     public void delete_throwsUnsupportedOperationException() {
         assertThrows(
@@ -459,6 +586,23 @@ public final class BatteryUsageContentProviderTest {
                                 /*strings=*/ null));
     }
 
+    private static ContentValues[] createBatteryStateValues(int count) {
+        final String batteryInformation = ConvertUtils.convertBatteryInformationToString(
+                BatteryInformation.newBuilder().setAppLabel("Settings").build());
+        final ContentValues[] valuesArray = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            valuesArray[i] = new ContentValues();
+            valuesArray[i].put(BatteryHistEntry.KEY_UID, Long.valueOf(i));
+            valuesArray[i].put(BatteryHistEntry.KEY_USER_ID, Long.valueOf(0L));
+            valuesArray[i].put(BatteryHistEntry.KEY_PACKAGE_NAME, PACKAGE_NAME1 + i);
+            valuesArray[i].put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(2100021L));
+            valuesArray[i].put(BatteryHistEntry.KEY_CONSUMER_TYPE, Integer.valueOf(2));
+            valuesArray[i].put(BatteryHistEntry.KEY_IS_FULL_CHARGE_CYCLE_START, false);
+            valuesArray[i].put(BatteryHistEntry.KEY_BATTERY_INFORMATION, batteryInformation);
+        }
+        return valuesArray;
+    }
+
     private Cursor insertBatteryState(
             Duration currentTime,
             String queryTimestamp)
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assume.assumeTrue;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.MatrixCursor;
+import android.os.BatteryManager;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+
+import com.android.settings.testutils.BenchmarkRunner;
+import com.android.settings.testutils.FakeFeatureFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Benchmarks the battery usage pipeline on synthetic 1, 3 and 7 days histories.
+ *
+ * <p>Skipped unless benchmarks are enabled. Run it with
+ * {@code ROBOTEST_FILTER=BatteryUsagePipelineBenchmarkTest} and {@code -Dsettings.benchmark=true},
+ * see {@link BenchmarkRunner} for the iteration counts and the output file.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsagePipelineBenchmarkTest {
+    private static final int[] DAYS = {1, 3, 7};
+    private static final int APP_COUNT = 40;
+    private static final int SESSIONS_PER_APP_PER_DAY = 6;
+    private static final long SEED = 20231001L;
+    // 2023-10-01 10:30 UTC, not at a sharp hour like the real current time.
+    private static final long CURRENT_TIMESTAMP = 1696156200000L;
+    private static final String[] HISTORY_COLUMNS = {
+            BatteryHistEntry.KEY_UID,
+            BatteryHistEntry.KEY_USER_ID,
+            BatteryHistEntry.KEY_PACKAGE_NAME,
+            BatteryHistEntry.KEY_TIMESTAMP,
+            BatteryHistEntry.KEY_CONSUMER_TYPE,
+            BatteryHistEntry.KEY_BATTERY_INFORMATION};
+
+    private final BenchmarkRunner mRunner = new BenchmarkRunner("batteryusage");
+
+    private Context mContext;
+    private TimeZone mDefaultTimeZone;
+
+    @Mock private Intent mIntent;
+    @Mock private IUsageStatsManager mUsageStatsManager;
+
+    @Before
+    public void setUp() throws RemoteException {
+        assumeTrue(BenchmarkRunner.isEnabled());
+        MockitoAnnotations.initMocks(this);
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        mContext = spy(RuntimeEnvironment.application);
+        FakeFeatureFactory.setupForTest();
+        doReturn(mContext).when(mContext).getApplicationContext();
+        doReturn(mIntent).when(mContext).registerReceiver(
+                isA(BroadcastReceiver.class), isA(IntentFilter.class));
+        doReturn(100).when(mIntent).getIntExtra(eq(BatteryManager.EXTRA_SCALE), anyInt());
+        doReturn(66).when(mIntent).getIntExtra(eq(BatteryManager.EXTRA_LEVEL), anyInt());
+        doReturn(UsageStatsManager.USAGE_SOURCE_CURRENT_ACTIVITY)
+                .when(mUsageStatsManager).getUsageSource();
+        DataProcessor.sUsageStatsManager = mUsageStatsManager;
+        DataProcessor.sTestCurrentTimeMillis = CURRENT_TIMESTAMP;
+        DataProcessor.sTestSystemAppsPackageNames = Set.of();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        DataProcessor.sTestCurrentTimeMillis = 0;
+        DatabaseUtils.sFakeSupplier = null;
+        DataProcessor.clearAppUsagePeriodCache();
+    }
+
+    @Test
+    public void runPipeline_syntheticHistories_reportsEachStage() {
+        for (int days : DAYS) {
+            runPipeline(days);
+        }
+    }
+
+    private void runPipeline(int days) {
+        final String variant = days + "d";
+        final Random random = new Random(SEED + days);
+        final long startTimestamp = CURRENT_TIMESTAMP - days * DateUtils.DAY_IN_MILLIS;
+        final List<Object[]> historyRows = createHistoryRows(random, startTimestamp);
+        final List<AppUsageEvent> appUsageEvents =
+                createAppUsageEvents(random, startTimestamp, days);
+        final List<BatteryEvent> batteryEvents = createBatteryEvents(startTimestamp, days);
+
+        // Loading and decoding the rows of the battery state table.
+        DatabaseUtils.sFakeSupplier = () -> {
+            final MatrixCursor cursor = new MatrixCursor(HISTORY_COLUMNS, historyRows.size());
+            for (Object[] row : historyRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        };
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = mRunner.measure(
+                "database_load", variant,
+                () -> DatabaseUtils.getHistoryMapSinceQueryTimestamp(mContext, startTimestamp));
+
+        final Map<Long, Map<String, BatteryHistEntry>> processedHistoryMap = mRunner.measure(
+                "interpolation", variant,
+                () -> DataProcessor.getHistoryMapWithExpectedTimestamps(
+                        mContext, batteryHistoryMap));
+        final BatteryLevelData batteryLevelData =
+                DataProcessor.getLevelDataThroughProcessedHistoryMap(
+                        mContext, processedHistoryMap);
+        assertThat(batteryLevelData).isNotNull();
+        final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
+                batteryLevelData.getHourlyBatteryLevelsPerDay();
+
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                appUsagePeriodMap = mRunner.measure("app_usage_periods", variant, () -> {
+                    DataProcessor.clearAppUsagePeriodCache();
+                    return DataProcessor.generateAppUsagePeriodMap(mContext,
+                            hourlyBatteryLevelsPerDay, appUsageEvents, batteryEvents);
+                });
+        assertThat(appUsagePeriodMap).isNotNull();
+        // Only the periods are distributed again when no event is added.
+        mRunner.measure("app_usage_periods_cached", variant,
+                () -> DataProcessor.generateAppUsagePeriodMap(mContext,
+                        hourlyBatteryLevelsPerDay, appUsageEvents, batteryEvents));
+
+        final long screenOnTime = mRunner.measure("screen_on_time", variant,
+                () -> getTotalScreenOnTime(appUsagePeriodMap));
+        assertThat(screenOnTime).isGreaterThan(0L);
+
+        final Map<Long, BatteryDiffData> batteryDiffDataMap = mRunner.measure(
+                "hourly_diff", variant,
+                () -> DataProcessor.getBatteryDiffDataMap(mContext, hourlyBatteryLevelsPerDay,
+                        processedHistoryMap, appUsagePeriodMap, Set.of(), Set.of()));
+        assertThat(batteryDiffDataMap).isNotEmpty();
+
+        mRunner.measure("daily_accumulation", variant,
+                () -> DataProcessor.generateBatteryUsageMap(
+                        mContext, batteryDiffDataMap, batteryLevelData));
+    }
+
+    private static long getTotalScreenOnTime(
+            Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                    appUsagePeriodMap) {
+        long totalScreenOnTime = 0;
+        for (Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap
+                : appUsagePeriodMap.values()) {
+            for (Map<Long, Map<String, List<AppUsagePeriod>>> hourlyMap : dailyMap.values()) {
+                if (hourlyMap == null) {
+                    continue;
+                }
+                for (Map.Entry<Long, Map<String, List<AppUsagePeriod>>> userEntry
+                        : hourlyMap.entrySet()) {
+                    for (String packageName : userEntry.getValue().keySet()) {
+                        totalScreenOnTime += DataProcessor.getScreenOnTime(
+                                hourlyMap, userEntry.getKey(), packageName);
+                    }
+                }
+            }
+        }
+        return totalScreenOnTime;
+    }
+
+    /** Creates a record of every app about every hour, as the periodic job does. */
+    private static List<Object[]> createHistoryRows(Random random, long startTimestamp) {
+        final List<Object[]> rows = new ArrayList<>();
+        final double[] consumePower = new double[APP_COUNT];
+        final long[] foregroundTime = new long[APP_COUNT];
+        int batteryLevel = 100;
+        for (long timestamp = startTimestamp; timestamp <= CURRENT_TIMESTAMP;
+                timestamp += DateUtils.HOUR_IN_MILLIS
+                        + random.nextInt(10) * DateUtils.MINUTE_IN_MILLIS
+                        - 5 * DateUtils.MINUTE_IN_MILLIS) {
+            // Recharges to full when the battery is low.
+            batteryLevel = batteryLevel <= 15 ? 100 : batteryLevel - random.nextInt(5);
+            for (int app = 0; app < APP_COUNT; app++) {
+                consumePower[app] += random.nextDouble() * 5;
+                foregroundTime[app] += random.nextInt(10) * DateUtils.MINUTE_IN_MILLIS / 4;
+                final BatteryInformation batteryInformation = BatteryInformation.newBuilder()
+                        .setAppLabel(getPackageName(app))
+                        .setConsumePower(consumePower[app])
+                        .setForegroundUsageConsumePower(consumePower[app] * 0.6)
+                        .setBackgroundUsageConsumePower(consumePower[app] * 0.4)
+                        .setForegroundUsageTimeInMs(foregroundTime[app])
+                        .setBackgroundUsageTimeInMs(foregroundTime[app] / 2)
+                        .setDeviceBatteryState(DeviceBatteryState.newBuilder()
+                                .setBatteryLevel(batteryLevel)
+                                .build())
+                        .build();
+                rows.add(new Object[] {
+                        (long) getUid(app),
+                        /* userId= */ 0L,
+                        getPackageName(app),
+                        timestamp,
+                        ConvertUtils.CONSUMER_TYPE_UID_BATTERY,
+                        ConvertUtils.convertBatteryInformationToString(batteryInformation)});
+            }
+        }
+        return rows;
+    }
+
+    private static List<AppUsageEvent> createAppUsageEvents(
+            Random random, long startTimestamp, int days) {
+        final List<AppUsageEvent> events = new ArrayList<>();
+        int instanceId = 0;
+        for (int app = 0; app < APP_COUNT; app++) {
+            for (int session = 0; session < SESSIONS_PER_APP_PER_DAY * days; session++) {
+                final long resumedTimestamp = startTimestamp
+                        + (long) (random.nextDouble() * days * DateUtils.DAY_IN_MILLIS);
+                final long stoppedTimestamp = resumedTimestamp
+                        + (1 + random.nextInt(20)) * DateUtils.MINUTE_IN_MILLIS;
+                events.add(createAppUsageEvent(AppUsageEventType.ACTIVITY_RESUMED,
+                        resumedTimestamp, app, instanceId));
+                events.add(createAppUsageEvent(AppUsageEventType.ACTIVITY_STOPPED,
+                        stoppedTimestamp, app, instanceId));
+                instanceId++;
+            }
+        }
+        events.sort(Comparator.comparingLong(AppUsageEvent::getTimestamp));
+        return events;
+    }
+
+    /** Creates an overnight charge of every day. */
+    private static List<BatteryEvent> createBatteryEvents(long startTimestamp, int days) {
+        final List<BatteryEvent> events = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            final long dayTimestamp = startTimestamp + day * DateUtils.DAY_IN_MILLIS;
+            events.add(createBatteryEvent(BatteryEventType.POWER_CONNECTED,
+                    dayTimestamp + DateUtils.HOUR_IN_MILLIS));
+            events.add(createBatteryEvent(BatteryEventType.POWER_DISCONNECTED,
+                    dayTimestamp + 7 * DateUtils.HOUR_IN_MILLIS));
+        }
+        return events;
+    }
+
+    private static AppUsageEvent createAppUsageEvent(
+            AppUsageEventType type, long timestamp, int app, int instanceId) {
+        return AppUsageEvent.newBuilder()
+                .setType(type)
+                .setTimestamp(timestamp)
+                .setUid(getUid(app))
+                .setUserId(0)
+                .setPackageName(getPackageName(app))
+                .setInstanceId(instanceId)
+                .build();
+    }
+
+    private static BatteryEvent createBatteryEvent(BatteryEventType type, long timestamp) {
+        return BatteryEvent.newBuilder()
+                .setType(type)
+                .setTimestamp(timestamp)
+                .setBatteryLevel(50)
+                .build();
+    }
+
+    private static int getUid(int app) {
+        return 10000 + app;
+    }
+
+    private static String getPackageName(int app) {
+        return "com.android.benchmark.app" + app;
+    }
+}
@@ -98,6 +98,7 @@ public final class DataProcessorTest {
 
         DataProcessor.sTestSystemAppsPackageNames = Set.of();
         DataProcessor.sUsageStatsManager = mUsageStatsManager;
+        DataProcessor.clearAppUsagePeriodCache();
         doReturn(mIntent).when(mContext).registerReceiver(
                 isA(BroadcastReceiver.class), isA(IntentFilter.class));
         doReturn(100).when(mIntent).getIntExtra(eq(BatteryManager.EXTRA_SCALE), anyInt());
@@ -1481,148 +1482,6 @@ public final class DataProcessorTest {
                 /*screenOnTimeInMs=*/ 0);
     }
 
-    @Test
-    public void buildAppUsagePeriodList_returnExpectedResult() {
-        final List<AppUsageEvent> appUsageEvents = new ArrayList<>();
-        final String packageName1 = "com.android.settings1";
-        final String packageName2 = "com.android.settings2";
-        // Fake multiple instances in one package.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 1, /*userId=*/ 1,
-                /*instanceId=*/ 2, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 2, /*userId=*/ 1,
-                /*instanceId=*/ 2, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 3, /*userId=*/ 1,
-                /*instanceId=*/ 2, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 4, /*userId=*/ 1,
-                /*instanceId=*/ 2, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 2, /*userId=*/ 1,
-                /*instanceId=*/ 3, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 4, /*userId=*/ 1,
-                /*instanceId=*/ 3, packageName1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 2, /*userId=*/ 1,
-                /*instanceId=*/ 5, packageName2));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 4, /*userId=*/ 1,
-                /*instanceId=*/ 5, packageName2));
-        // Fake one instance in one package.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 1, /*userId=*/ 2,
-                /*instanceId=*/ 4, packageName2));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 2, /*userId=*/ 2,
-                /*instanceId=*/ 4, packageName2));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 3, /*userId=*/ 2,
-                /*instanceId=*/ 4, packageName2));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 4, /*userId=*/ 2,
-                /*instanceId=*/ 4, packageName2));
-
-        final Map<Long, Map<String, List<AppUsagePeriod>>> appUsagePeriodMap =
-                DataProcessor.buildAppUsagePeriodList(
-                        mContext, appUsageEvents, new ArrayList<>(), 0, 5);
-
-        assertThat(appUsagePeriodMap).hasSize(2);
-        final Map<String, List<AppUsagePeriod>> userMap1 = appUsagePeriodMap.get(1L);
-        assertThat(userMap1).hasSize(2);
-        List<AppUsagePeriod> appUsagePeriodList = userMap1.get(packageName1);
-        assertThat(appUsagePeriodList).hasSize(3);
-        assertAppUsagePeriod(appUsagePeriodList.get(0), 1, 2);
-        assertAppUsagePeriod(appUsagePeriodList.get(1), 2, 4);
-        assertAppUsagePeriod(appUsagePeriodList.get(2), 3, 4);
-        appUsagePeriodList = userMap1.get(packageName2);
-        assertThat(appUsagePeriodList).hasSize(1);
-        assertAppUsagePeriod(appUsagePeriodList.get(0), 2, 4);
-        final Map<String, List<AppUsagePeriod>> userMap2 = appUsagePeriodMap.get(2L);
-        assertThat(userMap2).hasSize(1);
-        appUsagePeriodList = userMap2.get(packageName2);
-        assertThat(appUsagePeriodList).hasSize(2);
-        assertAppUsagePeriod(appUsagePeriodList.get(0), 1, 2);
-        assertAppUsagePeriod(appUsagePeriodList.get(1), 3, 4);
-    }
-
-    @Test
-    public void buildAppUsagePeriodList_emptyEventList_returnNull() {
-        assertThat(DataProcessor.buildAppUsagePeriodList(
-                mContext, new ArrayList<>(), new ArrayList<>(), 0, 1)).isNull();
-    }
-
-    @Test
-    public void buildAppUsagePeriodList_emptyActivityList_returnNull() {
-        final List<AppUsageEvent> appUsageEvents = new ArrayList<>();
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.DEVICE_SHUTDOWN, /*timestamp=*/ 1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.DEVICE_SHUTDOWN, /*timestamp=*/ 2));
-
-        assertThat(DataProcessor.buildAppUsagePeriodList(
-                mContext, appUsageEvents, new ArrayList<>(), 0, 3)).isNull();
-    }
-
-    @Test
-    public void buildAppUsagePeriodListPerInstance_returnExpectedResult() {
-        final List<AppUsageEvent> appUsageEvents = new ArrayList<>();
-        // Fake data earlier than time range.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 1));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 2));
-        // Fake resume event earlier than time range.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 3));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 120000));
-        // Fake normal data.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 150000));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 200000));
-        // Fake two adjacent resume events.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 300000));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 400000));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 500000));
-        // Fake no start event when stop event happens.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_STOPPED, /*timestamp=*/ 600000));
-        // There exists start event when device shutdown event happens. Shutdown is later than
-        // default complete time.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 700000));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.DEVICE_SHUTDOWN, /*timestamp=*/ 800000));
-        // There exists start event when device shutdown event happens. Shutdown is earlier than
-        // default complete time.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 900000));
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.DEVICE_SHUTDOWN, /*timestamp=*/ 910000));
-        // There exists start event when the period ends.
-        appUsageEvents.add(buildAppUsageEvent(
-                AppUsageEventType.ACTIVITY_RESUMED, /*timestamp=*/ 1000000));
-
-        final List<AppUsagePeriod> appUsagePeriodList =
-                DataProcessor.buildAppUsagePeriodListPerInstance(appUsageEvents, 100000, 1100000);
-
-        assertThat(appUsagePeriodList).hasSize(7);
-        assertAppUsagePeriod(appUsagePeriodList.get(0), 100000, 120000);
-        assertAppUsagePeriod(appUsagePeriodList.get(1), 150000, 200000);
-        assertAppUsagePeriod(appUsagePeriodList.get(2), 300000, 500000);
-        assertAppUsagePeriod(appUsagePeriodList.get(3), 570000, 600000);
-        assertAppUsagePeriod(appUsagePeriodList.get(4), 700000, 730000);
-        assertAppUsagePeriod(appUsagePeriodList.get(5), 900000, 910000);
-        assertAppUsagePeriod(appUsagePeriodList.get(6), 1000000, 1100000);
-    }
-
     @Test
     public void excludePowerConnectedTime_startEndNotCharging_returnExpectedResult() {
         final List<AppUsagePeriod> appUsagePeriodList = List.of(
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+public class SubscriptionSnapshotTest {
+    private static final int SUB_ID = 1;
+    private static final String DISPLAY_NAME = "carrier";
+
+    @Mock
+    private SubscriptionManager mSubscriptionManager;
+    @Mock
+    private TelephonyManager mTelephonyManager;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mContext).when(mContext).getApplicationContext();
+        when(mContext.getSystemService(SubscriptionManager.class)).thenReturn(mSubscriptionManager);
+        when(mContext.getSystemService(TelephonyManager.class)).thenReturn(mTelephonyManager);
+        final SubscriptionInfo info = mock(SubscriptionInfo.class);
+        when(info.getSubscriptionId()).thenReturn(SUB_ID);
+        when(info.getDisplayName()).thenReturn(DISPLAY_NAME);
+        when(mSubscriptionManager.getAvailableSubscriptionInfoList())
+                .thenReturn(Arrays.asList(info));
+        when(mSubscriptionManager.getActiveSubscriptionInfoList())
+                .thenReturn(Arrays.asList(info));
+        SubscriptionSnapshot.resetForTesting();
+    }
+
+    @After
+    public void tearDown() {
+        SubscriptionSnapshot.resetForTesting();
+    }
+
+    @Test
+    public void get_beforeMonitoringStarted_notShared() {
+        SubscriptionSnapshot.get(mContext);
+        SubscriptionSnapshot.get(mContext);
+
+        verify(mSubscriptionManager, times(2)).getAvailableSubscriptionInfoList();
+    }
+
+    @Test
+    public void get_subscriptionsNotChanged_shareSnapshot() {
+        SubscriptionSnapshot.get(mContext);
+        captureListener().onSubscriptionsChanged();
+
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(mContext);
+
+        assertThat(SubscriptionSnapshot.get(mContext)).isSameInstanceAs(snapshot);
+        assertThat(snapshot.getAvailableSubscriptions()).hasSize(1);
+        assertThat(snapshot.getActiveSubscriptions()).hasSize(1);
+        assertThat(snapshot.getUniqueDisplayNames()).containsExactly(SUB_ID, DISPLAY_NAME);
+        verify(mSubscriptionManager, times(2)).getAvailableSubscriptionInfoList();
+    }
+
+    @Test
+    public void get_subscriptionsChanged_rebuildSnapshot() {
+        SubscriptionSnapshot.get(mContext);
+        final SubscriptionManager.OnSubscriptionsChangedListener listener = captureListener();
+        listener.onSubscriptionsChanged();
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(mContext);
+
+        listener.onSubscriptionsChanged();
+
+        assertThat(SubscriptionSnapshot.get(mContext)).isNotSameInstanceAs(snapshot);
+    }
+
+    @Test
+    public void get_defaultSubscriptionChanged_rebuildSnapshot() {
+        SubscriptionSnapshot.get(mContext);
+        captureListener().onSubscriptionsChanged();
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(mContext);
+
+        captureReceiver().onReceive(mContext,
+                new Intent(SubscriptionManager.ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED));
+
+        final SubscriptionSnapshot newSnapshot = SubscriptionSnapshot.get(mContext);
+        assertThat(newSnapshot).isNotSameInstanceAs(snapshot);
+        assertThat(SubscriptionSnapshot.get(mContext)).isSameInstanceAs(newSnapshot);
+    }
+
+    @Test
+    public void get_defaultSubscriptionChangedBeforeMonitoring_notShared() {
+        SubscriptionSnapshot.get(mContext);
+
+        captureReceiver().onReceive(mContext,
+                new Intent(SubscriptionManager.ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED));
+
+        assertThat(SubscriptionSnapshot.get(mContext))
+                .isNotSameInstanceAs(SubscriptionSnapshot.get(mContext));
+    }
+
+    @Test
+    public void get_otherContextOfSameApplication_shareSnapshot() {
+        SubscriptionSnapshot.get(mContext);
+        captureListener().onSubscriptionsChanged();
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(mContext);
+        final Context activityContext = spy(RuntimeEnvironment.application);
+        doReturn(mContext).when(activityContext).getApplicationContext();
+        when(activityContext.getSystemService(SubscriptionManager.class))
+                .thenReturn(mock(SubscriptionManager.class));
+
+        assertThat(SubscriptionSnapshot.get(activityContext)).isSameInstanceAs(snapshot);
+    }
+
+    @Test
+    public void get_otherApplication_notShared() {
+        SubscriptionSnapshot.get(mContext);
+        captureListener().onSubscriptionsChanged();
+        final SubscriptionSnapshot snapshot = SubscriptionSnapshot.get(mContext);
+        final Context otherContext = spy(RuntimeEnvironment.application);
+        doReturn(otherContext).when(otherContext).getApplicationContext();
+        when(otherContext.getSystemService(SubscriptionManager.class))
+                .thenReturn(mock(SubscriptionManager.class));
+
+        assertThat(SubscriptionSnapshot.get(otherContext)).isNotSameInstanceAs(snapshot);
+    }
+
+    private BroadcastReceiver captureReceiver() {
+        final ArgumentCaptor<BroadcastReceiver> captor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mContext).registerReceiver(captor.capture(), any(IntentFilter.class));
+        return captor.getValue();
+    }
+
+    private SubscriptionManager.OnSubscriptionsChangedListener captureListener() {
+        final ArgumentCaptor<SubscriptionManager.OnSubscriptionsChangedListener> captor =
+                ArgumentCaptor.forClass(SubscriptionManager.OnSubscriptionsChangedListener.class);
+        verify(mSubscriptionManager).addOnSubscriptionsChangedListener(any(), captor.capture());
+        return captor.getValue();
+    }
+}
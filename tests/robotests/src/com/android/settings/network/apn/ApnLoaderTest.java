@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.apn;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.Telephony;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApnLoaderTest {
+    private static final int SUB_ID = 1;
+    private static final Uri SIM_APN_URI =
+            Uri.withAppendedPath(Telephony.Carriers.SIM_APN_URI, String.valueOf(SUB_ID));
+    private static final Uri PREFERRED_APN_URI =
+            Uri.withAppendedPath(Uri.parse(ApnSettings.PREFERRED_APN_URI), "subId/" + SUB_ID);
+
+    @Mock
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        ApnLoader.invalidateCache();
+    }
+
+    @After
+    public void tearDown() {
+        ApnLoader.invalidateCache();
+    }
+
+    @Test
+    public void queryApnList_parseRowsAndSelectedKey() {
+        final MatrixCursor cursor = new MatrixCursor(ApnEditor.sProjection);
+        cursor.addRow(buildRow(1, "internet", "default,supl"));
+        cursor.addRow(buildRow(2, "mms", "mms"));
+        mockQuery(cursor, "2");
+
+        final ApnLoader.ApnList apnList =
+                ApnLoader.queryApnList(mContentResolver, SUB_ID, "selection");
+
+        assertThat(apnList.mSelectedKey).isEqualTo("2");
+        assertThat(apnList.mEntries).hasSize(2);
+        assertThat(apnList.mEntries.get(0).mKey).isEqualTo("1");
+        assertThat(apnList.mEntries.get(0).mName).isEqualTo("internet");
+        assertThat(apnList.mEntries.get(0).isSelectable()).isTrue();
+        assertThat(apnList.mEntries.get(1).isSelectable()).isFalse();
+    }
+
+    @Test
+    public void queryApnList_cacheApnDataForEditor() {
+        final MatrixCursor cursor = new MatrixCursor(ApnEditor.sProjection);
+        cursor.addRow(buildRow(1, "internet", "default"));
+        mockQuery(cursor, null);
+
+        ApnLoader.queryApnList(mContentResolver, SUB_ID, "selection");
+
+        final Uri uri = ContentUris.withAppendedId(Telephony.Carriers.CONTENT_URI, 1);
+        final ApnEditor.ApnData apnData = ApnLoader.getCachedApnData(uri);
+        assertThat(apnData.getUri()).isEqualTo(uri);
+        assertThat(apnData.getString(ApnEditor.NAME_INDEX)).isEqualTo("internet");
+
+        ApnLoader.invalidateCache();
+
+        assertThat(ApnLoader.getCachedApnData(uri)).isNull();
+    }
+
+    @Test
+    public void queryApnList_invalidatedWhileQuerying_notCacheApnData() {
+        final MatrixCursor cursor = new MatrixCursor(ApnEditor.sProjection);
+        cursor.addRow(buildRow(1, "internet", "default"));
+        mockQuery(cursor, null);
+        when(mContentResolver.query(eq(SIM_APN_URI), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    // The carriers table is modified while the rows are being read.
+                    ApnLoader.invalidateCache();
+                    return cursor;
+                });
+
+        assertThat(ApnLoader.queryApnList(mContentResolver, SUB_ID, "selection").mEntries)
+                .hasSize(1);
+
+        assertThat(ApnLoader.getCachedApnData(
+                ContentUris.withAppendedId(Telephony.Carriers.CONTENT_URI, 1))).isNull();
+    }
+
+    @Test
+    public void stop_dropCachedApnData() {
+        final MatrixCursor cursor = new MatrixCursor(ApnEditor.sProjection);
+        cursor.addRow(buildRow(1, "internet", "default"));
+        mockQuery(cursor, null);
+        final Context context = mock(Context.class);
+        when(context.getContentResolver()).thenReturn(mContentResolver);
+        final ApnLoader loader = new ApnLoader(context, false /* hideImsApn */, apnList -> {});
+        loader.start();
+        ApnLoader.queryApnList(mContentResolver, SUB_ID, "selection");
+        final Uri uri = ContentUris.withAppendedId(Telephony.Carriers.CONTENT_URI, 1);
+        assertThat(ApnLoader.getCachedApnData(uri)).isNotNull();
+
+        loader.stop();
+
+        assertThat(ApnLoader.getCachedApnData(uri)).isNull();
+    }
+
+    @Test
+    public void queryApnList_nullCursor_returnNull() {
+        mockQuery(null, null);
+
+        assertThat(ApnLoader.queryApnList(mContentResolver, SUB_ID, "selection")).isNull();
+    }
+
+    @Test
+    public void apnEntry_sameFields_isEqual() {
+        final ApnLoader.ApnEntry entry = new ApnLoader.ApnEntry("1", "internet", "apn.com",
+                "default", "", "", Telephony.Carriers.UNEDITED);
+
+        assertThat(entry).isEqualTo(new ApnLoader.ApnEntry("1", "internet", "apn.com",
+                "default", "", "", Telephony.Carriers.UNEDITED));
+        assertThat(entry).isNotEqualTo(new ApnLoader.ApnEntry("1", "internet", "apn2.com",
+                "default", "", "", Telephony.Carriers.UNEDITED));
+    }
+
+    private void mockQuery(MatrixCursor cursor, String selectedKey) {
+        when(mContentResolver.query(eq(SIM_APN_URI), any(), any(), any(), any()))
+                .thenReturn(cursor);
+        final MatrixCursor preferredCursor =
+                new MatrixCursor(new String[] {Telephony.Carriers._ID});
+        if (selectedKey != null) {
+            preferredCursor.addRow(new Object[] {selectedKey});
+        }
+        when(mContentResolver.query(eq(PREFERRED_APN_URI), any(), any(), any(), any()))
+                .thenReturn(preferredCursor);
+    }
+
+    private static Object[] buildRow(int id, String name, String type) {
+        final Object[] row = new Object[ApnEditor.sProjection.length];
+        row[ApnEditor.ID_INDEX] = id;
+        row[ApnEditor.NAME_INDEX] = name;
+        row[ApnEditor.APN_INDEX] = name + ".com";
+        row[ApnEditor.TYPE_INDEX] = type;
+        row[ApnEditor.EDITED_INDEX] = Telephony.Carriers.UNEDITED;
+        return row;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.apn;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import android.content.Context;
+import android.provider.Telephony;
+
+import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApnSettingsTest {
+    private static final String APN_LIST_KEY = "apn_list";
+
+    private ApnSettings mFragment;
+    private PreferenceCategory mApnList;
+
+    @Before
+    public void setUp() {
+        final Context context = RuntimeEnvironment.application;
+        final PreferenceManager preferenceManager = new PreferenceManager(context);
+        final PreferenceScreen screen = preferenceManager.createPreferenceScreen(context);
+        mApnList = new PreferenceCategory(context);
+        mApnList.setKey(APN_LIST_KEY);
+        screen.addPreference(mApnList);
+        mFragment = spy(new ApnSettings());
+        doReturn(preferenceManager).when(mFragment).getPreferenceManager();
+        doReturn(mApnList).when(mFragment).findPreference(APN_LIST_KEY);
+    }
+
+    @Test
+    public void onApnListLoaded_newApns_addPreferences() {
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("2", "mms", "mms")));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        final ApnPreference internet = getApnPreference("1");
+        assertThat(internet.getTitle().toString()).isEqualTo("internet");
+        assertThat(internet.getOrder()).isEqualTo(0);
+        assertThat(internet.isChecked()).isTrue();
+        assertThat(getApnPreference("2").getSelectable()).isFalse();
+        assertThat(getApnPreference("2").getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void onApnListLoaded_apnAdded_keepExistingPreferences() {
+        mFragment.onApnListLoaded(buildApnList("1", buildEntry("1", "internet", "default")));
+        final ApnPreference internet = getApnPreference("1");
+
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("3", "ims", "default")));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(getApnPreference("1")).isSameInstanceAs(internet);
+        assertThat(getApnPreference("3").getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void onApnListLoaded_apnRemoved_removePreference() {
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("2", "mms", "mms")));
+        final ApnPreference internet = getApnPreference("1");
+
+        mFragment.onApnListLoaded(buildApnList("1", buildEntry("1", "internet", "default")));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(1);
+        assertThat(getApnPreference("1")).isSameInstanceAs(internet);
+        assertThat(mApnList.<Preference>findPreference("2")).isNull();
+    }
+
+    @Test
+    public void onApnListLoaded_apnChanged_recreatePreference() {
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("2", "mms", "mms")));
+        final ApnPreference internet = getApnPreference("1");
+        final ApnPreference mms = getApnPreference("2");
+
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "renamed", "default"), buildEntry("2", "mms", "mms")));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(getApnPreference("1")).isNotSameInstanceAs(internet);
+        assertThat(getApnPreference("1").getTitle().toString()).isEqualTo("renamed");
+        assertThat(getApnPreference("1").isChecked()).isTrue();
+        assertThat(getApnPreference("2")).isSameInstanceAs(mms);
+    }
+
+    @Test
+    public void onApnListLoaded_apnsReordered_updateOrders() {
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("2", "other", "default")));
+        final ApnPreference internet = getApnPreference("1");
+        final ApnPreference other = getApnPreference("2");
+
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("2", "other", "default"), buildEntry("1", "internet", "default")));
+
+        assertThat(getApnPreference("1")).isSameInstanceAs(internet);
+        assertThat(getApnPreference("2")).isSameInstanceAs(other);
+        assertThat(other.getOrder()).isEqualTo(0);
+        assertThat(internet.getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void onApnListLoaded_preferredApnChanged_updateCheckedPreference() {
+        mFragment.onApnListLoaded(buildApnList("1",
+                buildEntry("1", "internet", "default"), buildEntry("2", "other", "default")));
+        final ApnPreference internet = getApnPreference("1");
+        final ApnPreference other = getApnPreference("2");
+
+        mFragment.onApnListLoaded(buildApnList("2",
+                buildEntry("1", "internet", "default"), buildEntry("2", "other", "default")));
+
+        assertThat(getApnPreference("1")).isSameInstanceAs(internet);
+        assertThat(getApnPreference("2")).isSameInstanceAs(other);
+        assertThat(internet.isChecked()).isFalse();
+        assertThat(other.isChecked()).isTrue();
+    }
+
+    private ApnPreference getApnPreference(String key) {
+        return mApnList.findPreference(key);
+    }
+
+    private static ApnLoader.ApnList buildApnList(String selectedKey,
+            ApnLoader.ApnEntry... entries) {
+        return new ApnLoader.ApnList(Arrays.asList(entries), selectedKey);
+    }
+
+    private static ApnLoader.ApnEntry buildEntry(String key, String name, String type) {
+        return new ApnLoader.ApnEntry(key, name, name + ".com", type, "" /* mvnoType */,
+                "" /* mvnoMatchData */, Telephony.Carriers.UNEDITED);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.ims;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.telephony.AccessNetworkConstants;
+import android.telephony.ims.ImsException;
+import android.telephony.ims.ImsMmTelManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImsQueryServiceTest {
+    private static final int SUB_ID = 1;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final AtomicInteger mLoadCount = new AtomicInteger();
+    private final AtomicInteger mRegisterCount = new AtomicInteger();
+    private ImsQueryService mQueryService;
+    private ImsMmTelManager.RegistrationCallback mRegistrationCallback;
+    private ImsMmTelManager.RegistrationCallback mUnregisteredCallback;
+    private boolean mIsActiveSubscription = true;
+    private boolean mIsRegisterFailed;
+
+    @Before
+    public void setUp() {
+        mQueryService = new ImsQueryService(ApplicationProvider.getApplicationContext()) {
+            @Override
+            void registerSubscriptionsChangedListener() {
+            }
+
+            @Override
+            boolean isActiveSubscriptionId(int subId) {
+                return mIsActiveSubscription;
+            }
+
+            @Override
+            void registerImsRegistrationCallback(int subId,
+                    ImsMmTelManager.RegistrationCallback callback) throws ImsException {
+                mRegisterCount.incrementAndGet();
+                if (mIsRegisterFailed) {
+                    throw new ImsException("test", ImsException.CODE_ERROR_SERVICE_UNAVAILABLE);
+                }
+                mRegistrationCallback = callback;
+            }
+
+            @Override
+            void unregisterImsRegistrationCallback(int subId,
+                    ImsMmTelManager.RegistrationCallback callback) {
+                mUnregisteredCallback = callback;
+            }
+        };
+    }
+
+    @Test
+    public void query_identicalQueryInFlight_loadOnce() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        final Future<Boolean> first = executor.submit(() -> query(() -> {
+            started.countDown();
+            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return loadTrue();
+        }));
+        started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        final Future<Boolean> second = Executors.newSingleThreadExecutor().submit(
+                () -> query(this::loadTrue));
+        release.countDown();
+
+        assertThat(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(mLoadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void query_resultCached_notLoadAgain() throws Exception {
+        query(this::loadTrue);
+
+        assertThat(query(this::loadTrue)).isTrue();
+        assertThat(mLoadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void query_differentCapability_loadEach() throws Exception {
+        query(this::loadTrue);
+
+        mQueryService.query(SUB_ID, ImsQueryService.QUERY_SUPPORTED,
+                /* capability= */ 2, AccessNetworkConstants.TRANSPORT_TYPE_WWAN, this::loadTrue);
+
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void query_imsRegistrationChanged_loadAgain() throws Exception {
+        query(this::loadTrue);
+
+        mRegistrationCallback.onRegistered(AccessNetworkConstants.TRANSPORT_TYPE_WLAN);
+        query(this::loadTrue);
+
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void query_failed_notCached() throws Exception {
+        assertThrows(ImsException.class, () -> query(() -> {
+            mLoadCount.incrementAndGet();
+            throw new ImsException("test", ImsException.CODE_ERROR_SERVICE_UNAVAILABLE);
+        }));
+
+        assertThat(query(this::loadTrue)).isTrue();
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void query_timedOut_notCached() throws Exception {
+        assertThrows(TimeoutException.class, () -> query(() -> {
+            mLoadCount.incrementAndGet();
+            throw new TimeoutException();
+        }));
+
+        assertThat(query(this::loadTrue)).isTrue();
+        assertThat(mLoadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void query_registerCallbackFailed_registerAgainOnNextQuery() throws Exception {
+        mIsRegisterFailed = true;
+        query(this::loadTrue);
+        query(this::loadTrue);
+        assertThat(mRegisterCount.get()).isEqualTo(2);
+
+        mIsRegisterFailed = false;
+        query(this::loadTrue);
+        query(this::loadTrue);
+        assertThat(mRegisterCount.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void onSubscriptionsChanged_subscriptionRemoved_unregisterCallback() throws Exception {
+        query(this::loadTrue);
+
+        mQueryService.onSubscriptionsChanged();
+        assertThat(mUnregisteredCallback).isNull();
+
+        mIsActiveSubscription = false;
+        mQueryService.onSubscriptionsChanged();
+        assertThat(mUnregisteredCallback).isSameInstanceAs(mRegistrationCallback);
+
+        query(this::loadTrue);
+        assertThat(mLoadCount.get()).isEqualTo(2);
+        assertThat(mRegisterCount.get()).isEqualTo(2);
+    }
+
+    private boolean query(ImsQueryService.Loader<Boolean> loader) throws Exception {
+        return mQueryService.query(SUB_ID, ImsQueryService.QUERY_SUPPORTED,
+                /* capability= */ 1, AccessNetworkConstants.TRANSPORT_TYPE_WWAN, loader);
+    }
+
+    private Boolean loadTrue() {
+        mLoadCount.incrementAndGet();
+        return true;
+    }
+}
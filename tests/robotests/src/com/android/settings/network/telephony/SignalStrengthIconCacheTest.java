@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network.telephony;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class SignalStrengthIconCacheTest {
+    private static final int NUM_LEVELS = 5;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        SignalStrengthIconCache.clear();
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void getSignalStrengthIcon_sameState_sharePixels() {
+        final BitmapDrawable icon1 = getIcon(2 /* level */, false /* carrierNetworkChanged */);
+        final BitmapDrawable icon2 = getIcon(2 /* level */, false /* carrierNetworkChanged */);
+
+        assertThat(icon1).isNotSameInstanceAs(icon2);
+        assertThat(icon1.getBitmap()).isSameInstanceAs(icon2.getBitmap());
+    }
+
+    @Test
+    public void getSignalStrengthIcon_differentLevel_notShared() {
+        final BitmapDrawable icon1 = getIcon(2 /* level */, false /* carrierNetworkChanged */);
+        final BitmapDrawable icon2 = getIcon(3 /* level */, false /* carrierNetworkChanged */);
+
+        assertThat(icon1.getBitmap()).isNotSameInstanceAs(icon2.getBitmap());
+    }
+
+    @Test
+    public void getSignalStrengthIcon_differentLayoutDirection_notShared() {
+        final BitmapDrawable icon1 = getIcon(2 /* level */, false /* carrierNetworkChanged */);
+        final Configuration config = new Configuration(mContext.getResources().getConfiguration());
+        config.setLayoutDirection(new Locale("ar"));
+        mContext = mContext.createConfigurationContext(config);
+
+        final BitmapDrawable icon2 = getIcon(2 /* level */, false /* carrierNetworkChanged */);
+
+        assertThat(icon1.getBitmap()).isNotSameInstanceAs(icon2.getBitmap());
+    }
+
+    @Test
+    public void getSignalStrengthIcon_carrierNetworkChanged_notCached() {
+        final Drawable icon = MobileNetworkUtils.getSignalStrengthIcon(mContext, 2, NUM_LEVELS,
+                MobileNetworkUtils.NO_CELL_DATA_TYPE_ICON, false /* cutOut */,
+                true /* carrierNetworkChanged */);
+
+        assertThat(icon).isNotInstanceOf(BitmapDrawable.class);
+    }
+
+    private BitmapDrawable getIcon(int level, boolean carrierNetworkChanged) {
+        return (BitmapDrawable) MobileNetworkUtils.getSignalStrengthIcon(mContext, level,
+                NUM_LEVELS, MobileNetworkUtils.NO_CELL_DATA_TYPE_ICON, false /* cutOut */,
+                carrierNetworkChanged);
+    }
+}
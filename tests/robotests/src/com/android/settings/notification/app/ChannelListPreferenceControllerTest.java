@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.app;
+
+import static android.app.NotificationManager.IMPORTANCE_DEFAULT;
+import static android.app.NotificationManager.IMPORTANCE_NONE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.content.Context;
+import android.util.ArrayMap;
+
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceGroup;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.notification.NotificationBackend;
+import com.android.settingslib.PrimarySwitchPreference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class ChannelListPreferenceControllerTest {
+    private static final int GROUP_COUNT = 5;
+    private static final int CHANNELS_PER_GROUP = 100;
+    private static final int CHANNEL_COUNT = GROUP_COUNT * CHANNELS_PER_GROUP;
+
+    private Context mContext;
+    @Mock
+    private NotificationBackend mBackend;
+
+    private ChannelListPreferenceController mController;
+    private PreferenceCategory mGroupList;
+    private List<NotificationChannelGroup> mGroups;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = ApplicationProvider.getApplicationContext();
+
+        NotificationBackend.AppRow appRow = new NotificationBackend.AppRow();
+        appRow.uid = 42;
+        appRow.pkg = "com.example.messenger";
+        appRow.sentByChannel = new HashMap<>();
+
+        mController = spy(new ChannelListPreferenceController(mContext, mBackend));
+        mController.onResume(appRow, null, null, null, null, null, new ArrayList<>());
+
+        mGroupList = new PreferenceCategory(mContext);
+        PreferenceManager preferenceManager = new PreferenceManager(mContext);
+        PreferenceScreen preferenceScreen = preferenceManager.createPreferenceScreen(mContext);
+        preferenceScreen.addPreference(mGroupList);
+
+        mGroups = new ArrayList<>();
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            NotificationChannelGroup group =
+                    new NotificationChannelGroup("group" + i, "Group " + i);
+            for (int j = 0; j < CHANNELS_PER_GROUP; j++) {
+                group.addChannel(new NotificationChannel(
+                        "channel" + i + "_" + j, "Channel " + i + "_" + j, IMPORTANCE_DEFAULT));
+            }
+            mGroups.add(group);
+        }
+    }
+
+    @Test
+    public void applyDiff_firstLoad_bindsAllChannels() {
+        ChannelListPreferenceController.ChannelListDiff diff =
+                mController.computeDiff(mGroups, new ArrayMap<>(), null);
+
+        mController.applyDiff(mGroupList, diff);
+
+        assertThat(diff.mStructureChanged).isTrue();
+        assertThat(diff.mChangedChannels).hasSize(CHANNEL_COUNT);
+        assertThat(mGroupList.getPreferenceCount()).isEqualTo(GROUP_COUNT);
+        verify(mController, times(CHANNEL_COUNT))
+                .updateSingleChannelPrefs(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void applyDiff_importanceChanged_onlyRebindsChangedChannels() {
+        ChannelListPreferenceController.ChannelListDiff firstDiff =
+                mController.computeDiff(mGroups, new ArrayMap<>(), null);
+        mController.applyDiff(mGroupList, firstDiff);
+        clearInvocations(mController);
+
+        getChannel(0, "channel0_3").setImportance(IMPORTANCE_NONE);
+        getChannel(2, "channel2_50").setImportance(IMPORTANCE_NONE);
+        getChannel(4, "channel4_99").setImportance(IMPORTANCE_NONE);
+        ChannelListPreferenceController.ChannelListDiff diff = mController.computeDiff(
+                mGroups, firstDiff.mStates, firstDiff.mStructure);
+        mController.applyDiff(mGroupList, diff);
+
+        assertThat(diff.mStructureChanged).isFalse();
+        assertThat(diff.mChangedChannels).containsExactly(
+                "channel0_3", "channel2_50", "channel4_99");
+        verify(mController, times(3)).updateSingleChannelPrefs(any(), any(), anyBoolean());
+        PrimarySwitchPreference channelPref =
+                ((PreferenceGroup) mGroupList.getPreference(2)).findPreference("channel2_50");
+        assertThat(channelPref.getCheckedState()).isFalse();
+    }
+
+    @Test
+    public void applyDiff_nothingChanged_noRebind() {
+        ChannelListPreferenceController.ChannelListDiff firstDiff =
+                mController.computeDiff(mGroups, new ArrayMap<>(), null);
+        mController.applyDiff(mGroupList, firstDiff);
+        clearInvocations(mController);
+
+        ChannelListPreferenceController.ChannelListDiff diff = mController.computeDiff(
+                mGroups, firstDiff.mStates, firstDiff.mStructure);
+        mController.applyDiff(mGroupList, diff);
+
+        assertThat(diff.mChangedChannels).isEmpty();
+        verify(mController, times(0)).updateSingleChannelPrefs(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void computeDiff_nameChanged_rebindsChannel() {
+        ChannelListPreferenceController.ChannelListDiff firstDiff =
+                mController.computeDiff(mGroups, new ArrayMap<>(), null);
+        mController.applyDiff(mGroupList, firstDiff);
+
+        getChannel(3, "channel3_7").setName("renamed");
+        ChannelListPreferenceController.ChannelListDiff diff = mController.computeDiff(
+                mGroups, firstDiff.mStates, firstDiff.mStructure);
+
+        assertThat(diff.mChangedChannels).containsExactly("channel3_7");
+        assertThat(diff.mStates.get("channel3_7"))
+                .isNotEqualTo(firstDiff.mStates.get("channel3_7"));
+    }
+
+    @Test
+    public void applyDiff_channelRemoved_removesRowWithoutRebind() {
+        ChannelListPreferenceController.ChannelListDiff firstDiff =
+                mController.computeDiff(mGroups, new ArrayMap<>(), null);
+        mController.applyDiff(mGroupList, firstDiff);
+        clearInvocations(mController);
+
+        mGroups.get(1).getChannels().remove(getChannel(1, "channel1_10"));
+        ChannelListPreferenceController.ChannelListDiff diff = mController.computeDiff(
+                mGroups, firstDiff.mStates, firstDiff.mStructure);
+        mController.applyDiff(mGroupList, diff);
+
+        assertThat(diff.mStructureChanged).isTrue();
+        assertThat(diff.mChangedChannels).isEmpty();
+        verify(mController, times(0)).updateSingleChannelPrefs(any(), any(), anyBoolean());
+        PreferenceGroup group1 = (PreferenceGroup) mGroupList.getPreference(1);
+        // Group toggle plus the remaining channels.
+        assertThat(group1.getPreferenceCount()).isEqualTo(CHANNELS_PER_GROUP);
+        assertThat((Object) group1.findPreference("channel1_10")).isNull();
+    }
+
+    private NotificationChannel getChannel(int groupIndex, String id) {
+        for (NotificationChannel channel : mGroups.get(groupIndex).getChannels()) {
+            if (id.equals(channel.getId())) {
+                return channel;
+            }
+        }
+        return null;
+    }
+}
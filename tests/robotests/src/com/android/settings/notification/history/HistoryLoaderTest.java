@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.history;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationHistory;
+import android.app.NotificationHistory.HistoricalNotification;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Icon;
+import android.net.Uri;
+import android.os.LocaleList;
+import android.os.Parcel;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.notification.NotificationBackend;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class HistoryLoaderTest {
+    private static final int UID = 10001;
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    @Mock
+    private NotificationBackend mBackend;
+    @Mock
+    private PackageManager mPackageManager;
+
+    private Context mContext;
+    private final List<List<NotificationHistoryPackage>> mPages = new ArrayList<>();
+    private final List<Boolean> mIsLast = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        HistoryLoader.clearAppInfoCache();
+        mContext = ApplicationProvider.getApplicationContext();
+        when(mPackageManager.getApplicationInfoAsUser(anyString(), anyInt(), anyInt()))
+                .thenReturn(new ApplicationInfo());
+        when(mPackageManager.getApplicationLabel(any())).thenReturn("label");
+        final ColorDrawable icon = new ColorDrawable();
+        when(mPackageManager.getApplicationIcon(any(ApplicationInfo.class))).thenReturn(icon);
+        when(mPackageManager.getUserBadgedIcon(any(), any())).thenReturn(icon);
+    }
+
+    @Test
+    public void groupByPackage_groupByUidAndPackage() {
+        final NotificationHistory history = createHistory(
+                createNotification("pkg1", UID, 1),
+                createNotification("pkg1", UID, 2),
+                createNotification("pkg1", UID + 1, 3),
+                createNotification("pkg2", UID, 4));
+
+        final List<NotificationHistoryPackage> packages = HistoryLoader.groupByPackage(history);
+
+        assertThat(packages).hasSize(3);
+        assertThat(packages.get(0).pkgName).isEqualTo("pkg1");
+        assertThat(packages.get(0).uid).isEqualTo(UID);
+        assertThat(packages.get(0).notifications).hasSize(2);
+        assertThat(packages.get(0).getMostRecent()).isEqualTo(2);
+        assertThat(packages.get(1).uid).isEqualTo(UID + 1);
+        assertThat(packages.get(2).pkgName).isEqualTo("pkg2");
+    }
+
+    @Test
+    public void load_deliverPagesMostRecentFirst() {
+        final int packageCount = HistoryLoader.PAGE_SIZE + 2;
+        final HistoricalNotification[] notifications = new HistoricalNotification[packageCount];
+        for (int i = 0; i < packageCount; i++) {
+            notifications[i] = createNotification("pkg" + i, UID, i);
+        }
+        when(mBackend.getNotificationHistory(anyString(), any()))
+                .thenReturn(createHistory(notifications));
+
+        load();
+
+        assertThat(mPages).hasSize(2);
+        assertThat(mPages.get(0)).hasSize(HistoryLoader.PAGE_SIZE);
+        assertThat(mPages.get(1)).hasSize(2);
+        assertThat(mIsLast).containsExactly(false, true).inOrder();
+        assertThat(mPages.get(0).get(0).pkgName).isEqualTo("pkg" + (packageCount - 1));
+        assertThat(mPages.get(1).get(1).pkgName).isEqualTo("pkg0");
+    }
+
+    @Test
+    public void load_emptyHistory_deliverEmptyLastPage() {
+        when(mBackend.getNotificationHistory(anyString(), any())).thenReturn(createHistory());
+
+        load();
+
+        assertThat(mPages).hasSize(1);
+        assertThat(mPages.get(0)).isEmpty();
+        assertThat(mIsLast).containsExactly(true);
+    }
+
+    @Test
+    public void loadAppInfo_cached_resolveOnce() throws Exception {
+        final HistoryLoader loader = new HistoryLoader(mContext, mBackend, mPackageManager);
+
+        loader.loadAppInfo(new NotificationHistoryPackage(PACKAGE_NAME, UID), nhp -> {});
+        final NotificationHistoryPackage nhp = new NotificationHistoryPackage(PACKAGE_NAME, UID);
+        loader.loadAppInfo(nhp, p -> {});
+
+        assertThat(nhp.label.toString()).isEqualTo("label");
+        verify(mPackageManager).getApplicationInfoAsUser(eq(PACKAGE_NAME), anyInt(), anyInt());
+    }
+
+    @Test
+    public void loadAppInfo_packageChanged_resolveAgain() throws Exception {
+        final HistoryLoader loader = new HistoryLoader(mContext, mBackend, mPackageManager);
+        loader.loadAppInfo(new NotificationHistoryPackage(PACKAGE_NAME, UID), nhp -> {});
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", PACKAGE_NAME, /* fragment= */ null)));
+        ShadowLooper.idleMainLooper();
+        loader.loadAppInfo(new NotificationHistoryPackage(PACKAGE_NAME, UID), nhp -> {});
+
+        verify(mPackageManager, times(2))
+                .getApplicationInfoAsUser(eq(PACKAGE_NAME), anyInt(), anyInt());
+    }
+
+    @Test
+    public void loadAppInfo_localeChanged_resolveAgain() throws Exception {
+        new HistoryLoader(mContext, mBackend, mPackageManager)
+                .loadAppInfo(new NotificationHistoryPackage(PACKAGE_NAME, UID), nhp -> {});
+
+        final Configuration config = new Configuration(mContext.getResources().getConfiguration());
+        config.setLocales(new LocaleList(Locale.FRANCE));
+        new HistoryLoader(mContext.createConfigurationContext(config), mBackend, mPackageManager)
+                .loadAppInfo(new NotificationHistoryPackage(PACKAGE_NAME, UID), nhp -> {});
+
+        verify(mPackageManager, times(2))
+                .getApplicationInfoAsUser(eq(PACKAGE_NAME), anyInt(), anyInt());
+    }
+
+    private void load() {
+        new HistoryLoader(mContext, mBackend, mPackageManager).load((page, isLast) -> {
+            mPages.add(page);
+            mIsLast.add(isLast);
+        });
+    }
+
+    private static HistoricalNotification createNotification(String packageName, int uid,
+            long postedTimeMs) {
+        return new HistoricalNotification.Builder()
+                .setPackage(packageName)
+                .setUid(uid)
+                .setUserId(0)
+                .setChannelName("channel")
+                .setChannelId("channel_id")
+                .setPostedTimeMs(postedTimeMs)
+                .setTitle("title " + postedTimeMs)
+                .setText("text")
+                .setIcon(Icon.createWithResource("android", 1))
+                .build();
+    }
+
+    /** Returns a history which can be read, like the one received from the backend. */
+    private static NotificationHistory createHistory(HistoricalNotification... notifications) {
+        final NotificationHistory history = new NotificationHistory();
+        for (HistoricalNotification notification : notifications) {
+            history.addNotificationToWrite(notification);
+        }
+        history.poolStringsFromNotifications();
+        final Parcel parcel = Parcel.obtain();
+        history.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final NotificationHistory readHistory = NotificationHistory.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        return readHistory;
+    }
+}
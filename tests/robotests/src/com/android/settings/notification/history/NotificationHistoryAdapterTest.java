@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification.history;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.app.INotificationManager;
+import android.app.NotificationHistory.HistoricalNotification;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.internal.logging.UiEventLogger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationHistoryAdapterTest {
+
+    @Mock
+    private INotificationManager mNm;
+    @Mock
+    private NotificationHistoryRecyclerView mListView;
+    @Mock
+    private NotificationHistoryAdapter.OnItemDeletedListener mListener;
+    @Mock
+    private UiEventLogger mUiEventLogger;
+    @Mock
+    private RecyclerView.AdapterDataObserver mObserver;
+
+    private NotificationHistoryAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mAdapter = new NotificationHistoryAdapter(mNm, mListView, mListener, mUiEventLogger);
+    }
+
+    @Test
+    public void onRebuildComplete_dispatchOnlyChangedItems() {
+        mAdapter.onRebuildComplete(new ArrayList<>(Arrays.asList(
+                createNotification(2, "title 2"), createNotification(1, "title 1"))));
+        mAdapter.registerAdapterDataObserver(mObserver);
+
+        mAdapter.onRebuildComplete(new ArrayList<>(Arrays.asList(
+                createNotification(3, "title 3"),
+                createNotification(2, "title 2"),
+                createNotification(1, "updated title 1"))));
+
+        assertThat(mAdapter.getItemCount()).isEqualTo(3);
+        verify(mObserver).onItemRangeInserted(0, 1);
+        verify(mObserver).onItemRangeChanged(2, 1, null);
+        verify(mObserver, never()).onItemRangeRemoved(anyInt(), anyInt());
+        verify(mObserver, never()).onChanged();
+    }
+
+    @Test
+    public void onRebuildComplete_removedItems_dispatchRemoval() {
+        mAdapter.onRebuildComplete(new ArrayList<>(Arrays.asList(
+                createNotification(2, "title 2"), createNotification(1, "title 1"))));
+        mAdapter.registerAdapterDataObserver(mObserver);
+
+        mAdapter.onRebuildComplete(new ArrayList<>(Arrays.asList(
+                createNotification(2, "title 2"))));
+
+        assertThat(mAdapter.getItemCount()).isEqualTo(1);
+        verify(mObserver).onItemRangeRemoved(1, 1);
+        verify(mObserver, never()).onChanged();
+    }
+
+    private static HistoricalNotification createNotification(long postedTimeMs, String title) {
+        return new HistoricalNotification.Builder()
+                .setPackage("com.example.app")
+                .setUid(10001)
+                .setPostedTimeMs(postedTimeMs)
+                .setTitle(title)
+                .build();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.testutils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Measures the latency, throughput and allocation of code running on the host JVM.
+ *
+ * <p>Benchmarks only run when the {@code settings.benchmark} system property is {@code true}, see
+ * {@link #isEnabled()}. Each measurement is written as one JSON object per line and appended to
+ * the file set by the {@code settings.benchmark.output} system property, or to stdout if none is
+ * set, so that results can be compared across builds. The iteration counts can be changed with
+ * the {@code settings.benchmark.warmup} and {@code settings.benchmark.iterations} system
+ * properties.
+ */
+public final class BenchmarkRunner {
+    public static final String PROPERTY_ENABLED = "settings.benchmark";
+    public static final String PROPERTY_WARMUP = "settings.benchmark.warmup";
+    public static final String PROPERTY_ITERATIONS = "settings.benchmark.iterations";
+    public static final String PROPERTY_OUTPUT = "settings.benchmark.output";
+
+    private static final int DEFAULT_WARMUP = 1;
+    private static final int DEFAULT_ITERATIONS = 3;
+
+    private final String mSuite;
+    private final int mWarmup;
+    private final int mIterations;
+    private final String mOutputPath;
+    // Keeps the results reachable so that the measured code is not optimized away.
+    private volatile Object mSink;
+
+    public BenchmarkRunner(String suite) {
+        mSuite = suite;
+        mWarmup = Integer.getInteger(PROPERTY_WARMUP, DEFAULT_WARMUP);
+        mIterations = Math.max(1, Integer.getInteger(PROPERTY_ITERATIONS, DEFAULT_ITERATIONS));
+        mOutputPath = System.getProperty(PROPERTY_OUTPUT);
+    }
+
+    /** Whether the benchmarks are requested, they are skipped by the regular test runs. */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY_ENABLED);
+    }
+
+    /** Measured values of one stage. */
+    public static final class Result {
+        public final String stage;
+        public final String variant;
+        public final int iterations;
+        public final double opsPerSecond;
+        public final double p50Millis;
+        public final double p99Millis;
+        // -1 if the JVM can not measure the allocations of a thread.
+        public final long allocatedBytesPerOp;
+
+        Result(String stage, String variant, int iterations, double opsPerSecond,
+                double p50Millis, double p99Millis, long allocatedBytesPerOp) {
+            this.stage = stage;
+            this.variant = variant;
+            this.iterations = iterations;
+            this.opsPerSecond = opsPerSecond;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.allocatedBytesPerOp = allocatedBytesPerOp;
+        }
+    }
+
+    /**
+     * Runs {@code operation} on the calling thread, reports the measurement of {@code stage} and
+     * returns the result of the last run.
+     */
+    public <T> T measure(String stage, String variant, Supplier<T> operation) {
+        for (int i = 0; i < mWarmup; i++) {
+            mSink = operation.get();
+        }
+        final long[] durationsNs = new long[mIterations];
+        final long threadId = Thread.currentThread().getId();
+        final long startAllocated = getAllocatedBytes(threadId);
+        T result = null;
+        for (int i = 0; i < mIterations; i++) {
+            final long startNs = System.nanoTime();
+            result = operation.get();
+            durationsNs[i] = System.nanoTime() - startNs;
+        }
+        final long endAllocated = getAllocatedBytes(threadId);
+        mSink = result;
+
+        final long totalNs = Arrays.stream(durationsNs).sum();
+        Arrays.sort(durationsNs);
+        report(new Result(stage, variant, mIterations,
+                totalNs == 0 ? 0 : mIterations * 1e9 / totalNs,
+                percentileMillis(durationsNs, 50), percentileMillis(durationsNs, 99),
+                startAllocated < 0 || endAllocated < 0
+                        ? -1 : (endAllocated - startAllocated) / mIterations));
+        return result;
+    }
+
+    /** Returns the JSON line of {@code result}. */
+    public String toJson(Result result) {
+        return String.format(Locale.ENGLISH,
+                "{\"suite\":\"%s\",\"stage\":\"%s\",\"variant\":\"%s\",\"iterations\":%d,"
+                        + "\"opsPerSecond\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,"
+                        + "\"allocatedBytesPerOp\":%d}",
+                mSuite, result.stage, result.variant, result.iterations, result.opsPerSecond,
+                result.p50Millis, result.p99Millis, result.allocatedBytesPerOp);
+    }
+
+    private void report(Result result) {
+        final String json = toJson(result);
+        if (mOutputPath == null || mOutputPath.isEmpty()) {
+            System.out.println(json);
+            return;
+        }
+        try (FileWriter writer = new FileWriter(mOutputPath, /* append= */ true)) {
+            writer.write(json);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Nearest-rank percentile of the sorted durations.
+    private static double percentileMillis(long[] sortedDurationsNs, int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sortedDurationsNs.length);
+        return sortedDurationsNs[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static long getAllocatedBytes(long threadId) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()
+                || !sunBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunBean.getThreadAllocatedBytes(threadId);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.users;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.UserManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class UserIconCacheTest {
+    private static final int USER_ID = 10;
+    private static final int ICON_SIZE = 48;
+
+    @Mock
+    private UserManager mUserManager;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        UserIconCache.clear();
+        mContext = spy(ApplicationProvider.getApplicationContext());
+        doReturn(mUserManager).when(mContext).getSystemService(UserManager.class);
+        doReturn(Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888))
+                .when(mUserManager).getUserIcon(USER_ID);
+    }
+
+    @Test
+    public void loadIcon_iconEncircledAtRequestedSize() {
+        BitmapDrawable icon = (BitmapDrawable) UserIconCache.loadIcon(mContext, USER_ID,
+                ICON_SIZE);
+
+        assertThat(icon.getBitmap().getWidth()).isEqualTo(ICON_SIZE);
+        assertThat(icon.getBitmap().getHeight()).isEqualTo(ICON_SIZE);
+    }
+
+    @Test
+    public void getCachedIcon_afterLoad_returnsIconWithoutDecoding() {
+        UserIconCache.loadIcon(mContext, USER_ID, ICON_SIZE);
+
+        assertThat(UserIconCache.getCachedIcon(mContext, USER_ID, ICON_SIZE)).isNotNull();
+        assertThat(UserIconCache.getCachedIcon(mContext, USER_ID, ICON_SIZE * 2)).isNull();
+        verify(mUserManager, times(1)).getUserIcon(USER_ID);
+    }
+
+    @Test
+    public void invalidate_cachedIconDropped() {
+        UserIconCache.loadIcon(mContext, USER_ID, ICON_SIZE);
+
+        UserIconCache.invalidate(USER_ID);
+
+        assertThat(UserIconCache.getCachedIcon(mContext, USER_ID, ICON_SIZE)).isNull();
+        UserIconCache.loadIcon(mContext, USER_ID, ICON_SIZE);
+        verify(mUserManager, times(2)).getUserIcon(USER_ID);
+    }
+}
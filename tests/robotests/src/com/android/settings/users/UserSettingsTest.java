@@ -27,6 +27,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -61,6 +62,7 @@ import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceManager;
 import androidx.preference.PreferenceScreen;
 
+import com.android.settings.R;
 import com.android.settings.SettingsActivity;
 import com.android.settings.SubSettings;
 import com.android.settings.testutils.shadow.SettingsShadowResources;
@@ -142,6 +144,7 @@ public class UserSettingsTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        UserIconCache.clear();
         mActivity = spy(ActivityController.of(new FragmentActivity()).get());
         mContext = spy(RuntimeEnvironment.application);
         mUserCapabilities = UserCapabilities.create(mContext);
@@ -699,8 +702,10 @@ public class UserSettingsTest {
         UserInfo currentUser = getAdminUser(true);
         currentUser.iconPath = "/data/system/users/0/photo.png";
         givenUsers(currentUser);
-        mFragment.mUserIcons.put(ACTIVE_USER_ID,
-                Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888));
+        doReturn(Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888))
+                .when(mUserManager).getUserIcon(ACTIVE_USER_ID);
+        UserIconCache.loadIcon(mContext, ACTIVE_USER_ID, getUserIconSize());
+        clearInvocations(mUserManager);
 
         mFragment.updateUserList();
 
@@ -714,8 +719,6 @@ public class UserSettingsTest {
         UserInfo currentUser = getAdminUser(true);
         currentUser.iconPath = "/data/system/users/0/photo.png";
         givenUsers(currentUser);
-        // create a non-empty sparsearray
-        mFragment.mUserIcons.put(5, Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888));
         Bitmap userIcon = Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888);
         doReturn(userIcon).when(mUserManager).getUserIcon(ACTIVE_USER_ID);
 
@@ -856,6 +859,11 @@ public class UserSettingsTest {
         }
     }
 
+    private int getUserIconSize() {
+        return mActivity.getResources().getDimensionPixelSize(
+                R.dimen.multiple_users_user_icon_size);
+    }
+
     private void givenUsers(UserInfo... userInfo) {
         List<UserInfo> users = Arrays.asList(userInfo);
         doReturn(users).when(mUserManager).getUsers();
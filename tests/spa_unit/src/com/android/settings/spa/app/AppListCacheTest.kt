@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.spa.app
+
+import android.app.usage.StorageStats
+import android.app.usage.StorageStatsManager
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.settingslib.spaprivileged.framework.common.storageStatsManager
+import com.google.common.truth.Truth.assertThat
+import java.util.UUID
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.mockito.Mockito.any
+import org.mockito.Mockito.eq
+import org.mockito.Spy
+import org.mockito.junit.MockitoJUnit
+import org.mockito.junit.MockitoRule
+import org.mockito.Mockito.`when` as whenever
+
+@RunWith(AndroidJUnit4::class)
+class AppListCacheTest {
+    @get:Rule
+    val mockito: MockitoRule = MockitoJUnit.rule()
+
+    @Spy
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    @Mock
+    private lateinit var storageStatsManager: StorageStatsManager
+
+    @Before
+    fun setUp() {
+        whenever(context.storageStatsManager).thenReturn(storageStatsManager)
+        AppListCache.clear()
+    }
+
+    @After
+    fun tearDown() {
+        AppListCache.clear()
+    }
+
+    @Test
+    fun refreshStorageSizeBytes_sizeChanged_refreshMemo() {
+        mockStorageSizeBytes(100)
+        assertThat(AppListCache.refreshStorageSizeBytes(context, STORAGE_APP)).isEqualTo(100)
+        assertThat(AppListCache.getCachedStorageSizeBytes(context, STORAGE_APP)).isEqualTo(100)
+
+        mockStorageSizeBytes(200)
+
+        assertThat(AppListCache.refreshStorageSizeBytes(context, STORAGE_APP)).isEqualTo(200)
+        assertThat(AppListCache.getCachedStorageSizeBytes(context, STORAGE_APP)).isEqualTo(200)
+    }
+
+    @Test
+    fun mapAppRecords_sameApp_reuseRecord() = runTest {
+        var transformCount = 0
+
+        val recordLists = flowOf(listOf(APP), listOf(APP, OTHER_APP))
+            .mapAppRecords { app ->
+                transformCount++
+                AppRecordWithSize(app)
+            }
+            .toList()
+
+        assertThat(recordLists[1][0]).isSameInstanceAs(recordLists[0][0])
+        assertThat(recordLists[1][1].app).isSameInstanceAs(OTHER_APP)
+        assertThat(transformCount).isEqualTo(2)
+    }
+
+    @Test
+    fun mapAppRecords_newAppInstance_transformAgain() = runTest {
+        val reloadedApp = ApplicationInfo().apply { packageName = PACKAGE_NAME }
+
+        val recordLists = flowOf(listOf(APP), listOf(reloadedApp))
+            .mapAppRecords(::AppRecordWithSize)
+            .toList()
+
+        assertThat(recordLists[1][0].app).isSameInstanceAs(reloadedApp)
+    }
+
+    private fun mockStorageSizeBytes(codeBytes: Long) {
+        whenever(
+            storageStatsManager.queryStatsForPackage(eq(STORAGE_UUID), eq(PACKAGE_NAME), any())
+        ).thenReturn(StorageStats().apply { this.codeBytes = codeBytes })
+    }
+
+    private companion object {
+        const val PACKAGE_NAME = "package.name"
+        val STORAGE_UUID: UUID = UUID.randomUUID()
+        val APP = ApplicationInfo().apply { packageName = PACKAGE_NAME }
+        val STORAGE_APP = ApplicationInfo().apply {
+            packageName = PACKAGE_NAME
+            storageUuid = STORAGE_UUID
+        }
+        val OTHER_APP = ApplicationInfo().apply { packageName = "other.package.name" }
+    }
+}
@@ -105,4 +105,25 @@ public class TopLevelStoragePreferenceControllerTest {
         assertThat(preference.getSummary()).isEqualTo(ResourcesUtils.getResourcesString(
                 mContext, "storage_summary", percentage, freeSpace));
     }
+
+    @Test
+    public void getSummaryInBackground_shouldDisplayUsedPercentAndFreeSpace() {
+        final VolumeInfo volumeInfo = mVolumes.get(0);
+        when(volumeInfo.isMountedReadable()).thenReturn(true);
+        when(volumeInfo.getType()).thenReturn(VolumeInfo.TYPE_PRIVATE);
+        when(mStorageManagerVolumeProvider
+                .getTotalBytes(nullable(StorageStatsManager.class), nullable(VolumeInfo.class)))
+                .thenReturn(500L);
+        when(mStorageManagerVolumeProvider
+                .getFreeBytes(nullable(StorageStatsManager.class), nullable(VolumeInfo.class)))
+                .thenReturn(0L);
+        when(mController.getStorageManagerVolumeProvider())
+                .thenReturn(mStorageManagerVolumeProvider);
+        final String percentage = NumberFormat.getPercentInstance().format(1);
+        final String freeSpace = Formatter.formatFileSize(mContext, 0);
+
+        assertThat(mController.getSummaryInBackground()).isEqualTo(
+                ResourcesUtils.getResourcesString(
+                        mContext, "storage_summary", percentage, freeSpace));
+    }
 }
@@ -37,6 +37,7 @@ import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.android.settings.network.CarrierConfigCache;
+import com.android.settings.network.SubscriptionSnapshot;
 import com.android.settingslib.core.lifecycle.Lifecycle;
 
 import org.junit.Before;
@@ -107,6 +108,7 @@ public class NetworkProviderBackupCallingGroupTest {
         mSubscriptionInfoList.add(mSubscriptionInfo2);
         when(mSubscriptionManager.getActiveSubscriptionInfoList()).thenReturn(
                 mSubscriptionInfoList);
+        SubscriptionSnapshot.resetForTesting();
 
         CarrierConfigCache.setTestInstance(mContext, mCarrierConfigCache);
         mCarrierConfig = new PersistableBundle();
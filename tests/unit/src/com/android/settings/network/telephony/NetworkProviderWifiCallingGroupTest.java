@@ -45,6 +45,7 @@ import androidx.preference.PreferenceScreen;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.android.settings.network.SubscriptionSnapshot;
 import com.android.settings.network.ims.MockWfcQueryImsState;
 import com.android.settingslib.core.lifecycle.Lifecycle;
 
@@ -108,6 +109,7 @@ public class NetworkProviderWifiCallingGroupTest {
         when(mSubscriptionInfo.getSubscriptionId()).thenReturn(SUB_ID);
         when(mSubscriptionManager.getActiveSubscriptionInfoList()).thenReturn(
                 Arrays.asList(mSubscriptionInfo));
+        SubscriptionSnapshot.resetForTesting();
 
         mCarrierConfig = new PersistableBundle();
         doReturn(mCarrierConfig).when(mCarrierConfigManager).getConfigForSubId(SUB_ID);
@@ -199,6 +199,35 @@ public class NetworkSelectSettingsTest {
         assertThat(preference.getOperatorName()).isEqualTo(mCellId2.getOperatorAlphaLong());
     }
 
+    @Test
+    @UiThreadTest
+    public void scanResultHandler_partialResults_keepPreferencesInPlace() {
+        mNetworkSelectSettings.onCreateInitialization();
+        mNetworkSelectSettings.enablePreferenceScreen(true);
+        mNetworkSelectSettings.scanResultHandler(Arrays.asList(mCellInfo1, mCellInfo2));
+        final Preference preference1 = mPreferenceCategory.getPreference(0);
+        final Preference preference2 = mPreferenceCategory.getPreference(1);
+
+        mNetworkSelectSettings.scanResultHandler(Arrays.asList(mCellInfo2));
+
+        assertThat(mPreferenceCategory.getPreferenceCount()).isEqualTo(2);
+        assertThat(mPreferenceCategory.getPreference(0)).isSameInstanceAs(preference1);
+        assertThat(mPreferenceCategory.getPreference(1)).isSameInstanceAs(preference2);
+    }
+
+    @Test
+    public void getOperatorKey_samePlmnDifferentRat_differentKey() {
+        final CellInfo lteCellInfo = createLteCellInfo(false, 123, "123", "232", "CarrierA");
+        final CellInfo gsmCellInfo = createGsmCellInfo(false, 123, "123", "232", "CarrierA");
+
+        assertThat(NetworkSelectSettings.getOperatorKey(lteCellInfo.getCellIdentity()))
+                .isNotEqualTo(NetworkSelectSettings.getOperatorKey(
+                        gsmCellInfo.getCellIdentity()));
+        assertThat(NetworkSelectSettings.getOperatorKey(lteCellInfo.getCellIdentity()))
+                .isEqualTo(NetworkSelectSettings.getOperatorKey(createLteCellInfo(
+                        true, 1234, "123", "232", "CarrierA").getCellIdentity()));
+    }
+
     @Test
     @UiThreadTest
     public void updateForbiddenPlmns_forbiddenPlmnsNull_shouldNotCrash() {